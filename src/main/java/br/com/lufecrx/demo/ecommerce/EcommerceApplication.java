@@ -3,11 +3,13 @@ package br.com.lufecrx.demo.ecommerce;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 @EnableCaching
+@EnableScheduling
 @SpringBootApplication
 public class EcommerceApplication {
 
@@ -5,18 +5,24 @@ import java.util.Optional;
 import java.util.ResourceBundle;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.http.CatalogETags;
 import br.com.lufecrx.demo.ecommerce.api.model.Category;
+import br.com.lufecrx.demo.ecommerce.api.model.Revision;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.RevisedDTO;
 import br.com.lufecrx.demo.ecommerce.api.service.domain.category.CategoryService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -45,20 +51,40 @@ public class CategoryController {
 
     /**
      * This method returns a specific category by its ID. 
+     * The response is tagged with the version and the time of the last change of the category (ETag and Last-Modified), so a
+     * conditional request whose tag still matches is answered with 304 Not Modified, without reading the category.
+     * The tag is the version of the category returned, which may be older than the current one while it is cached.
+     * The same tag can be sent in If-Match to rename the category only if it was not changed since.
      * @param categoryId The ID of the category to be found, passed as a request parameter.
-     * @return The DTO of the category found.
+     * @param request The request, with its conditional headers.
+     * @return The DTO of the category found, or an empty response if it was not modified.
      */
     @Operation(summary = "Find a category by its ID", description = "Find a category by its ID and return its DTO")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Category found"),
+        @ApiResponse(responseCode = "304", description = "Category not modified"),
         @ApiResponse(responseCode = "404", description = "Category not found")
     })
     @GetMapping("/find")
     public ResponseEntity<CategoryDTO> findById(
-            @RequestParam(name = "category") Long categoryId) {
+            @RequestParam(name = "category") Long categoryId,
+            WebRequest request) {
         
-        Optional<CategoryDTO> opt = categoryService.getCategoryById(categoryId);
-        return ResponseEntity.ok(opt.get());
+        // The current version is enough to tell that the client has it, but the body may be older if it is cached
+        Optional<Revision> revision = categoryService.getRevision(categoryId);
+        if (revision.isPresent()) {
+            String current = CatalogETags.ofEntity("category", categoryId, revision.get().version());
+            if (CatalogETags.isListed(request.getHeader(HttpHeaders.IF_NONE_MATCH), current)
+                    && request.checkNotModified(current, revision.get().updatedAt().toEpochMilli())) {
+                return CatalogETags.notModified();
+            }
+        }
+
+        RevisedDTO<CategoryDTO> category = categoryService.getCategoryById(categoryId);
+        if (request.checkNotModified(CatalogETags.ofEntity("category", categoryId, category.version()), category.updatedAt().toEpochMilli())) {
+            return CatalogETags.notModified();
+        }
+        return ResponseEntity.ok().cacheControl(CatalogETags.CACHE_CONTROL).body(category.content());
     }
 
     /**
@@ -83,19 +109,24 @@ public class CategoryController {
      * This method renames a category with the given data.
      * @param categoryActualId The ID of the category to be renamed, passed as a request parameter.
      * @param categoryDTO The DTO of the category with the new name, passed as a request body.
+     * @param ifMatch The ETag of the category read by the client, to rename it only if it was not changed since. Optional.
      * @return A message indicating that the category was renamed.
      */
     @Operation(summary = "Rename a category", description = "Rename a category with the given data")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Category updated"),
-        @ApiResponse(responseCode = "404", description = "Category not found")
+        @ApiResponse(responseCode = "404", description = "Category not found"),
+        @ApiResponse(responseCode = "409", description = "Category renamed by another request at the same time"),
+        @ApiResponse(responseCode = "412", description = "Category changed since the ETag of If-Match was read")
     })
     @PutMapping("/rename")
     public ResponseEntity<String> rename(
             @RequestParam(name = "category") Long categoryIdToBeRenamed, 
-            @RequestBody @Valid CategoryDTO categoryWithNewName) {
+            @RequestBody @Valid CategoryDTO categoryWithNewName,
+            @RequestHeader(name = "If-Match", required = false) String ifMatch) {
         
-        categoryService.renameCategory(categoryIdToBeRenamed, categoryWithNewName);
+        categoryService.renameCategory(categoryIdToBeRenamed, categoryWithNewName,
+                CatalogETags.expectedVersion("category", categoryIdToBeRenamed, ifMatch));
         return ResponseEntity.ok(bundle.getString("category.successfully_updated"));
     }
 
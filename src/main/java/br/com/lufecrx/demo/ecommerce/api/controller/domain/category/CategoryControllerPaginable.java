@@ -6,10 +6,14 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.http.CatalogETags;
 import br.com.lufecrx.demo.ecommerce.api.model.Category;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.RevisedDTO;
 import br.com.lufecrx.demo.ecommerce.api.service.domain.category.CategoryServicePaginable;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.pagination.PaginationMode;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
@@ -17,6 +21,8 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 /**
  * The CategoryControllerPaginable class is responsible for handling the HTTP requests related to categories with pagination.
  * It uses the CategoryServicePaginable to perform operations on the database. 
+ * The listings are tagged with the version of the catalog they were read at (ETag), so a conditional request whose
+ * tag still matches is answered with 304 Not Modified, without sending the categories again.
  * 
  * @see CategoryServicePaginable
  * @see Category
@@ -25,6 +31,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 @RequestMapping("/categories/paginable")
 @ApiResponses(value = {
     @ApiResponse(responseCode = "200", description = "Categories found"),
+    @ApiResponse(responseCode = "304", description = "Categories not modified"),
     @ApiResponse(responseCode = "400", description = "Invalid arguments to pagination"),
     @ApiResponse(responseCode = "404", description = "Categories not found")
 })
@@ -41,6 +48,8 @@ public class CategoryControllerPaginable {
      * @param page The page number to be returned.
      * @param size The number of elements per page. Note: the default value is 10 and the maximum value is 60.
      * @param sort An array of strings with the format "field,direction" to sort the results. Note: the default value is "name,asc".
+     * @param mode The pagination mode: "page" (default) returns the exact total, "slice" skips the count and "approximate" returns an approximate total.
+     * @param request The request, with its conditional headers.
      * @return The list of categories found.
      */
     @Operation(summary = "Find all categories with pagination", 
@@ -49,8 +58,14 @@ public class CategoryControllerPaginable {
     public ResponseEntity<Iterable<CategoryDTO>> findAll(
             @RequestParam(required = false, defaultValue = "0") int page,
             @RequestParam(required = false, defaultValue = "10") int size,
-            @RequestParam(value = "sort", defaultValue = "name,asc") String[] sort) {
-        Iterable<CategoryDTO> entities = categoryService.getWithPagination(page, size, sort);
-        return ResponseEntity.ok(entities);
+            @RequestParam(value = "sort", defaultValue = "name,asc") String[] sort,
+            @RequestParam(name = "mode", defaultValue = "page") String mode,
+            WebRequest request) {
+        RevisedDTO<? extends Iterable<CategoryDTO>> entities = switch (PaginationMode.from(mode)) {
+            case PAGE -> categoryService.getWithPagination(page, size, sort);
+            case SLICE -> categoryService.getWithSlice(page, size, sort, false);
+            case APPROXIMATE -> categoryService.getWithSlice(page, size, sort, true);
+        };
+        return CatalogETags.listing(request, entities);
     }
 }
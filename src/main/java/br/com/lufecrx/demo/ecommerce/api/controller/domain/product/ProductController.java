@@ -1,26 +1,43 @@
 package br.com.lufecrx.demo.ecommerce.api.controller.domain.product;
 
+import java.io.IOException;
 import java.util.Locale;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.zip.GZIPOutputStream;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.http.CatalogETags;
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import br.com.lufecrx.demo.ecommerce.api.model.Revision;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.PriceAdjustmentReportDTO;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductImportReportDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductPatchDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.RevisedDTO;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductExportService;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductImportFormat;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductImportService;
 import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 
 /**
@@ -40,8 +57,15 @@ public class ProductController {
 
     private final ProductService productService;
 
-    public ProductController(@Qualifier("standard") ProductService productService) {
+    private final ProductImportService productImportService;
+
+    private final ProductExportService productExportService;
+
+    public ProductController(@Qualifier("standard") ProductService productService, ProductImportService productImportService,
+            ProductExportService productExportService) {
         this.productService = productService;
+        this.productImportService = productImportService;
+        this.productExportService = productExportService;
     }
 
     private final ResourceBundle bundle = ResourceBundle.getBundle("messages", Locale.getDefault());
@@ -63,36 +87,104 @@ public class ProductController {
 
     /**
      * This method returns a specific product by its ID. 
+     * The response is tagged with the version and the time of the last change of the product (ETag and Last-Modified), so a
+     * conditional request whose tag still matches is answered with 304 Not Modified, without reading the product.
+     * The tag is the version of the product returned, which may be older than the current one while it is cached.
+     * The same tag can be sent in If-Match to update the product only if it was not changed since.
      * @param productId The ID of the product to be found, passed as a request parameter.
-     * @return The DTO of the product found.
+     * @param request The request, with its conditional headers.
+     * @return The DTO of the product found, or an empty response if it was not modified.
      */
     @Operation(summary = "Find a product by its ID", description = "Find a product by its ID")
     @ApiResponse(responseCode = "200", description = "Product found")
+    @ApiResponse(responseCode = "304", description = "Product not modified")
     @GetMapping("/find")
     public ResponseEntity<Optional<ProductDTO>> findById(
-            @RequestParam(name = "product") Long productId) {
+            @RequestParam(name = "product") Long productId,
+            WebRequest request) {
         
-        Optional<ProductDTO> product = productService.getProductById(productId);
-        return ResponseEntity.ok(product);
+        // The current version is enough to tell that the client has it, but the body may be older if it is cached
+        Optional<Revision> revision = productService.getRevision(productId);
+        if (revision.isPresent()) {
+            String current = CatalogETags.ofEntity("product", productId, revision.get().version());
+            if (CatalogETags.isListed(request.getHeader(HttpHeaders.IF_NONE_MATCH), current)
+                    && request.checkNotModified(current, revision.get().updatedAt().toEpochMilli())) {
+                return CatalogETags.notModified();
+            }
+        }
+
+        RevisedDTO<ProductDTO> product = productService.getProductById(productId);
+        if (request.checkNotModified(CatalogETags.ofEntity("product", productId, product.version()), product.updatedAt().toEpochMilli())) {
+            return CatalogETags.notModified();
+        }
+        return ResponseEntity.ok().cacheControl(CatalogETags.CACHE_CONTROL).body(Optional.of(product.content()));
     }
 
     /**
      * This method updates a product with the given data.
      * @param productId The ID of the product to be updated, passed as a request parameter.
      * @param productUpdated The DTO of the product with the new data, passed as a request body.
+     * @param ifMatch The ETag of the product read by the client, to update it only if it was not changed since. Optional.
      * @return A message indicating that the product was successfully updated.
      */
     @Operation(summary = "Update a product", description = "Update a product with the given data")
     @ApiResponse(responseCode = "200", description = "Product updated")
+    @ApiResponse(responseCode = "409", description = "Product updated by another request at the same time")
+    @ApiResponse(responseCode = "412", description = "Product changed since the ETag of If-Match was read")
     @PutMapping("/update")
     public ResponseEntity<String> update(
             @RequestParam(name = "product") Long productId,
-            @RequestBody @Valid ProductDTO productUpdated) {
+            @RequestBody @Valid ProductDTO productUpdated,
+            @RequestHeader(name = "If-Match", required = false) String ifMatch) {
+        
+        productService.updateProduct(productId, productUpdated, CatalogETags.expectedVersion("product", productId, ifMatch));
+        return ResponseEntity.ok(bundle.getString("product.successfully_updated"));
+    }
+
+    /**
+     * This method changes the name and/or the price of a product, keeping the fields that are not sent.
+     * It is done with a single UPDATE statement, without reading the product.
+     * @param productId The ID of the product to be updated, passed as a request parameter.
+     * @param patch The fields to be changed, passed as a request body.
+     * @param ifMatch The ETag of the product read by the client, to update it only if it was not changed since. Optional.
+     * @return A message indicating that the product was successfully updated.
+     */
+    @Operation(summary = "Partially update a product", description = "Change the name and/or the price of a product")
+    @ApiResponse(responseCode = "200", description = "Product updated")
+    @ApiResponse(responseCode = "412", description = "Product changed since the ETag of If-Match was read")
+    @PatchMapping("/update")
+    public ResponseEntity<String> patch(
+            @RequestParam(name = "product") Long productId,
+            @RequestBody @Valid ProductPatchDTO patch,
+            @RequestHeader(name = "If-Match", required = false) String ifMatch) {
         
-        productService.updateProduct(productId, productUpdated);
+        productService.patchProduct(productId, patch, CatalogETags.expectedVersion("product", productId, ifMatch));
         return ResponseEntity.ok(bundle.getString("product.successfully_updated"));
     }
 
+    /**
+     * This method adjusts the prices of all the products of a category at once, by a percentage or by an amount.
+     * @param categoryId The ID of the category of the products, passed as a request parameter.
+     * @param type The type of adjustment: "percentage" or "absolute".
+     * @param amount The percentage (e.g. 7 for +7%) or the amount to add to the prices. Negative values lower the prices.
+     * @param dryRun True to only count the products that would be adjusted, without changing them.
+     * @return The number of products adjusted.
+     */
+    @Operation(summary = "Adjust the prices of a category", 
+            description = "Adjust the prices of all the products of a category by a percentage or by an amount, with a single update. The prices never go below zero.")
+    @ApiResponse(responseCode = "200", description = "Prices adjusted, or counted in a dry run")
+    @ApiResponse(responseCode = "400", description = "Invalid type or amount")
+    @ApiResponse(responseCode = "404", description = "Category not found")
+    @PostMapping("/prices/adjust")
+    public ResponseEntity<PriceAdjustmentReportDTO> adjustPrices(
+            @RequestParam(name = "category") Long categoryId,
+            @RequestParam(name = "type") String type,
+            @RequestParam(name = "amount") Double amount,
+            @RequestParam(name = "dryRun", defaultValue = "false") boolean dryRun) {
+
+        return ResponseEntity.ok(productService.adjustPrices(categoryId, type, amount, dryRun));
+    }
+
     /**
      * This method deletes a product by its ID.
      * @param productId The ID of the product to be deleted, passed as a request parameter.
@@ -107,4 +199,52 @@ public class ProductController {
         productService.deleteProduct(productId);
         return ResponseEntity.ok(bundle.getString("product.successfully_deleted"));
     }
+
+    /**
+     * This method imports products in bulk from a NDJSON or CSV file sent as the request body.
+     * The body is read as a stream, so the file is never loaded in memory as a whole.
+     * @param request The request, whose content type selects the format of the file.
+     * @return The number of products imported and the errors of the rows that were not imported.
+     * @throws IOException If the body cannot be opened.
+     */
+    @Operation(summary = "Import products", description = "Import products in bulk from a NDJSON (application/x-ndjson) or CSV (text/csv) file")
+    @ApiResponse(responseCode = "200", description = "Products imported, the rows that failed are reported")
+    @PostMapping(value = "/import", consumes = { "application/x-ndjson", "text/csv" })
+    public ResponseEntity<ProductImportReportDTO> importProducts(HttpServletRequest request) throws IOException {
+        
+        ProductImportFormat format = ProductImportFormat.from(request.getContentType());
+        ProductImportReportDTO report = productImportService.importProducts(request.getInputStream(), format);
+        return ResponseEntity.ok(report);
+    }
+
+    /**
+     * This method exports all the products as NDJSON, one product per line, ordered by id.
+     * Only the admins can export the products.
+     * The products are written to the response as they are read from the database, so the whole catalog is never in memory.
+     * The response is compressed with gzip if the client accepts it.
+     * @param acceptEncoding The encodings accepted by the client.
+     * @param response The response where the products are written.
+     * @throws IOException If the response cannot be written.
+     */
+    @Operation(summary = "Export all products", description = "Stream all the products as NDJSON, compressed with gzip if the client accepts it")
+    @ApiResponse(responseCode = "200", description = "Products exported")
+    @ApiResponse(responseCode = "403", description = "You are not authorized to export the products")
+    @GetMapping("/export")
+    public void export(
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response) throws IOException {
+
+        response.setContentType("application/x-ndjson");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"products.ndjson\"");
+
+        if (acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip")) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+            GZIPOutputStream output = new GZIPOutputStream(response.getOutputStream(), 64 * 1024);
+            productExportService.exportProducts(output);
+            output.finish();
+        } else {
+            productExportService.exportProducts(response.getOutputStream());
+        }
+    }
 }
@@ -1,14 +1,23 @@
 package br.com.lufecrx.demo.ecommerce.api.controller.domain.product;
 
+import java.util.List;
+
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.MissingServletRequestParameterException;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.http.CatalogETags;
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.CursorPageDTO;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.RevisedDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.SliceDTO;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.pagination.PaginationMode;
 import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductServicePaginable;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -17,6 +26,8 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 /**
  * The ProductControllerPaginable class is responsible for handling the HTTP requests related to products with pagination.
  * It uses the ProductServicePaginable to perform operations on the database. 
+ * The listings are tagged with the version of the catalog they were read at (ETag), so a conditional request whose
+ * tag still matches is answered with 304 Not Modified, without sending the products again.
  * 
  * @see ProductServicePaginable
  * @see Product
@@ -25,6 +36,7 @@ import io.swagger.v3.oas.annotations.responses.ApiResponses;
 @RequestMapping("/products/paginable")
 @ApiResponses(value = {
     @ApiResponse(responseCode = "200", description = "Products found"),
+    @ApiResponse(responseCode = "304", description = "Products not modified"),
     @ApiResponse(responseCode = "400", description = "Invalid arguments to pagination"),
     @ApiResponse(responseCode = "404", description = "Products not found")
 })
@@ -41,6 +53,8 @@ public class ProductControllerPaginable {
      * @param page The page number to be returned.
      * @param size The number of elements per page. Note: the default value is 10 and the maximum value is 60.
      * @param sort An array of strings with the format "field,direction" to sort the results. Note: the default value is "name,asc".
+     * @param mode The pagination mode: "page" (default) returns the exact total, "slice" skips the count and "approximate" returns an approximate total.
+     * @param request The request, with its conditional headers.
      * @return The list of products found.
      */
     @Operation(summary = "Find all products with pagination", 
@@ -49,9 +63,40 @@ public class ProductControllerPaginable {
     public ResponseEntity<Iterable<ProductDTO>> findAll(
             @RequestParam(required = false, defaultValue = "0") int page,
             @RequestParam(required = false, defaultValue = "10") int size,
-            @RequestParam(value = "sort", defaultValue = "name,asc") String[] sort) {
-        Iterable<ProductDTO> entities = productService.getWithPagination(page, size, sort);
-        return ResponseEntity.ok(entities);
+            @RequestParam(value = "sort", defaultValue = "name,asc") String[] sort,
+            @RequestParam(name = "mode", defaultValue = "page") String mode,
+            WebRequest request) {
+        RevisedDTO<? extends Iterable<ProductDTO>> entities = switch (PaginationMode.from(mode)) {
+            case PAGE -> productService.getWithPagination(page, size, sort);
+            case SLICE -> productService.getWithSlice(page, size, sort, false);
+            case APPROXIMATE -> productService.getWithSlice(page, size, sort, true);
+        };
+        return CatalogETags.listing(request, entities);
+    }
+
+    /**
+     * This method returns all products with keyset (cursor based) pagination, sorting the results by the given field.
+     * The first page is requested without the after parameter, and each page returns the cursor to the next one.
+     * @param after The cursor returned with the previous page. Note: it is only valid for the same sort.
+     * @param size The number of elements per page. Note: the default value is 10 and the maximum value is 60.
+     * @param sort An array of strings with the format "field,direction" to sort the results. Note: the field must be name, price or id and the default value is "name,asc".
+     * @param request The request, with its conditional headers.
+     * @return The products of the page and the cursor to the next page, which is null on the last page.
+     */
+    @Operation(summary = "Find all products with keyset pagination", 
+            description = "Find all products with cursor based pagination. The cost of a page does not depend on its depth. Note: Maximum size is 60.")
+    @GetMapping("/cursor")
+    public ResponseEntity<CursorPageDTO<ProductDTO>> findAllWithCursor(
+            @RequestParam(name = "after", required = false) String after,
+            @RequestParam(required = false, defaultValue = "10") int size,
+            @RequestParam(value = "sort", defaultValue = "name,asc") String[] sort,
+            WebRequest request) {
+        if (request.checkNotModified(CatalogETags.ofCatalog(productService.getCatalogVersion()))) {
+            return CatalogETags.notModified();
+        }
+
+        CursorPageDTO<ProductDTO> products = productService.getWithCursor(after, size, sort);
+        return ResponseEntity.ok().cacheControl(CatalogETags.CACHE_CONTROL).body(products);
     }
 
     /**
@@ -62,10 +107,11 @@ public class ProductControllerPaginable {
      * @param maxPrice the maximum price
      * @param page the page number
      * @param size the number of products per page
+     * @param mode the pagination mode: "page" (default) returns the exact total, "slice" skips the count and "approximate" returns an approximate total.
+     * @param request the request, with its conditional headers
      * @return A list of products that match the search criteria.
      */
     @Operation(summary = "Search for products", description = "Search for products by name, category, and price range")
-    @ApiResponse(responseCode = "200", description = "Products found")
     @GetMapping("/search")
     public ResponseEntity<Iterable<ProductDTO>> search(
             @RequestParam(name = "name", required = false) String name,
@@ -74,9 +120,87 @@ public class ProductControllerPaginable {
             @RequestParam(name = "maxPrice", required = false) Double maxPrice,
             @RequestParam(name = "page", defaultValue = "0") int page,
             @RequestParam(name = "size", defaultValue = "10") int size, 
-            @RequestParam(name = "sort", defaultValue = "id,asc") String[] sort) {
-        
-        Iterable<ProductDTO> products = productService.searchProducts(name, categoryName, minPrice, maxPrice, page, size, sort);
-        return ResponseEntity.ok(products);
+            @RequestParam(name = "sort", defaultValue = "id,asc") String[] sort,
+            @RequestParam(name = "mode", defaultValue = "page") String mode,
+            WebRequest request) {
+
+        RevisedDTO<? extends Iterable<ProductDTO>> products = switch (PaginationMode.from(mode)) {
+            case PAGE -> productService.searchProducts(name, categoryName, minPrice, maxPrice, page, size, sort);
+            case SLICE -> productService.searchProductsSlice(name, categoryName, minPrice, maxPrice, page, size, sort, false);
+            case APPROXIMATE -> productService.searchProductsSlice(name, categoryName, minPrice, maxPrice, page, size, sort, true);
+        };
+        return CatalogETags.listing(request, products);
+    }
+
+    /**
+     * This method searches for products by a free text query, returning the most relevant products first.
+     * @param query the text to be searched in the name of the products
+     * @param categoryName the name of the category
+     * @param minPrice the minimum price
+     * @param maxPrice the maximum price
+     * @param page the page number
+     * @param size the number of products per page. Note: the default value is 10 and the maximum value is 60.
+     * @param request the request, with its conditional headers
+     * @return A slice of products that match the search criteria, ordered by relevance.
+     */
+    @Operation(summary = "Search for products by relevance", 
+            description = "Search for products by a free text query, ordered by relevance, optionally filtered by category and price range. Note: Maximum size is 60.")
+    @GetMapping("/search/ranked")
+    public ResponseEntity<SliceDTO<ProductDTO>> searchRanked(
+            @RequestParam(name = "q") String query,
+            @RequestParam(name = "category", required = false) String categoryName,
+            @RequestParam(name = "minPrice", required = false) Double minPrice,
+            @RequestParam(name = "maxPrice", required = false) Double maxPrice,
+            @RequestParam(name = "page", defaultValue = "0") int page,
+            @RequestParam(name = "size", defaultValue = "10") int size,
+            WebRequest request) {
+
+        return CatalogETags.listing(request, productService.searchProductsRanked(query, categoryName, minPrice, maxPrice, page, size));
+    }
+
+    /**
+     * This method searches for products in the in-memory index, returning the most relevant products first.
+     * The products must contain all the terms of the name, in their names or categories.
+     * The facets are only offered here, and not by the search of the database, because they are counted by the index,
+     * whose matching (all the terms, in the names or categories) differs from the one of the database.
+     * @param name the terms to be searched in the name and categories of the products. Note: it is required without facets.
+     * @param categoryName the name or part of the name of the category, ignoring the case
+     * @param minPrice the minimum price
+     * @param maxPrice the maximum price
+     * @param page the page number
+     * @param size the number of products per page. Note: the default value is 10 and the maximum value is 60.
+     * @param facets true to return the number of matches per category and per price range with the page. Without a name, the products are ordered by id.
+     * @param categories the exact names of the categories to filter by, only used with facets
+     * @param categoryMatch "any" (default) if the products must have any of the categories, "all" if they must have all of them
+     * @param request the request, with its conditional headers
+     * @throws MissingServletRequestParameterException If the name is missing without facets, the exception MissingServletRequestParameterException is thrown.
+     * @return A page of products that match the search criteria, ordered by relevance, with the facet counts if requested.
+     */
+    @Operation(summary = "Search for products in the index", 
+            description = "Search for products containing all the terms of the name in the in-memory index, ordered by relevance, optionally filtered by category and price range, with the facet counts of all the matches if requested. Note: Maximum size is 60.")
+    @ApiResponse(responseCode = "200", description = "Products found")
+    @ApiResponse(responseCode = "503", description = "Product search index not available")
+    @GetMapping("/search/indexed")
+    public ResponseEntity<Iterable<ProductDTO>> searchIndexed(
+            @RequestParam(name = "name", required = false) String name,
+            @RequestParam(name = "category", required = false) String categoryName,
+            @RequestParam(name = "minPrice", required = false) Double minPrice,
+            @RequestParam(name = "maxPrice", required = false) Double maxPrice,
+            @RequestParam(name = "page", defaultValue = "0") int page,
+            @RequestParam(name = "size", defaultValue = "10") int size,
+            @RequestParam(name = "facets", defaultValue = "false") boolean facets,
+            @RequestParam(name = "categories", required = false) List<String> categories,
+            @RequestParam(name = "categoryMatch", defaultValue = "any") String categoryMatch,
+            WebRequest request) throws MissingServletRequestParameterException {
+
+        if (facets) {
+            return CatalogETags.listing(request, productService.searchProductsWithFacets(name, categoryName, categories, categoryMatch, minPrice, maxPrice, page, size));
+        }
+
+        if (name == null) {
+            throw new MissingServletRequestParameterException("name", "String");
+        }
+
+        return CatalogETags.listing(request, productService.searchProductsIndexed(name, categoryName, minPrice, maxPrice, page, size));
     }
 }
@@ -9,6 +9,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import br.com.lufecrx.demo.ecommerce.api.model.Wishlist;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.WishlistDTO;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.pagination.PaginationMode;
 import br.com.lufecrx.demo.ecommerce.api.service.domain.wishlist.WishlistServicePaginable;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -41,6 +42,7 @@ public class WishlistControllerPaginable {
      * @param page The page number to be returned.
      * @param size The number of elements per page. Note: the default value is 10 and the maximum value is 10.
      * @param sort An array of strings with the format "field,direction" to sort the results. Note: the default value is "name,asc".
+     * @param mode The pagination mode: "page" (default) returns the exact total, "slice" skips the count and "approximate" returns an approximate total.
      * @return The list of wishlists found.
      */
     @Operation(summary = "Find all wishlists with pagination", 
@@ -49,8 +51,13 @@ public class WishlistControllerPaginable {
     public ResponseEntity<Iterable<WishlistDTO>> findAll(
         @RequestParam(required = false, defaultValue = "0") int page,
         @RequestParam(required = false, defaultValue = "10") int size,
-        @RequestParam(value = "sort", defaultValue = "name,asc") String[] sort) {
-        Iterable<WishlistDTO> entities = wishlistService.getWithPagination(page, size, sort);
+        @RequestParam(value = "sort", defaultValue = "name,asc") String[] sort,
+        @RequestParam(name = "mode", defaultValue = "page") String mode) {
+        Iterable<WishlistDTO> entities = switch (PaginationMode.from(mode)) {
+            case PAGE -> wishlistService.getWithPagination(page, size, sort);
+            case SLICE -> wishlistService.getWithSlice(page, size, sort, false);
+            case APPROXIMATE -> wishlistService.getWithSlice(page, size, sort, true);
+        };
         return ResponseEntity.ok(entities);
     }
 
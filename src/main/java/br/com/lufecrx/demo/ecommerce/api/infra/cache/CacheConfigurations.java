@@ -0,0 +1,276 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.StreamSupport;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import com.github.benmanes.caffeine.cache.Weigher;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation.CacheInvalidationBus;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation.CacheInvalidationTransport;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation.InMemoryCacheInvalidationTransport;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation.PostgresCacheInvalidationTransport;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.warmup.HotKeyStore;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.warmup.HotKeyTracker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class is responsible for configuring the caches of the application.
+ * Each cache is a bounded Caffeine cache configured by a spec in the application.properties, e.g.
+ * "maximumSize=10000,expireAfterWrite=10m". A cache bounded by maximumWeight weighs each entry by the number of
+ * elements it holds, so a page of 60 products weighs 60 times a single product.
+ * The statistics of the caches are always recorded, so their hits, misses and evictions are exposed by the actuator
+ * metrics (cache.gets, cache.puts, cache.evictions).
+ * The entries by id (product, category, wishlist) are kept in other caches than the lists and searches (products, categories,
+ * wishlists), since they are evicted per key while the lists are invalidated by generation.
+ * The caches without a spec, if any, use the default spec, so no cache of the application is unbounded.
+ *
+ * @see CacheGenerations
+ */
+@Configuration
+@Slf4j
+public class CacheConfigurations {
+
+    /**
+     * The weight of an entry that is not a collection.
+     */
+    static final int SINGLE_ENTRY_WEIGHT = 1;
+
+    @Value("${api.cache.default.spec:maximumSize=1000,expireAfterWrite=10m}")
+    private String defaultSpec;
+
+    @Value("${api.cache.product.spec:maximumSize=10000,expireAfterWrite=10m}")
+    private String productSpec;
+
+    @Value("${api.cache.category.spec:maximumSize=1000,expireAfterWrite=30m}")
+    private String categorySpec;
+
+    @Value("${api.cache.wishlist.spec:maximumSize=10000,expireAfterWrite=5m}")
+    private String wishlistSpec;
+
+    @Value("${api.cache.products.spec:maximumSize=10000,expireAfterWrite=10m}")
+    private String productsSpec;
+
+    @Value("${api.cache.categories.spec:maximumSize=1000,expireAfterWrite=30m}")
+    private String categoriesSpec;
+
+    @Value("${api.cache.wishlists.spec:maximumSize=10000,expireAfterWrite=5m}")
+    private String wishlistsSpec;
+
+    @Value("${api.cache.coalescing.timeout:2s}")
+    private Duration coalescingTimeout;
+
+    @Value("${api.cache.coalescing.stale-size:10000}")
+    private long staleSize;
+
+    @Value("${api.cache.coalescing.stale-ttl:1h}")
+    private Duration staleTtl;
+
+    @Value("${api.cache.product.refresh-after:2m}")
+    private Duration productRefreshAfter;
+
+    @Value("${api.cache.category.refresh-after:5m}")
+    private Duration categoryRefreshAfter;
+
+    @Value("${api.cache.products.refresh-after:2m}")
+    private Duration productsRefreshAfter;
+
+    @Value("${api.cache.categories.refresh-after:5m}")
+    private Duration categoriesRefreshAfter;
+
+    @Value("${api.cache.invalidation.transport:postgres}")
+    private String invalidationTransport;
+
+    @Value("${api.cache.refresh.threads:2}")
+    private int refreshThreads;
+
+    @Value("${api.cache.refresh.queue-size:100}")
+    private int refreshQueueSize;
+
+    @Value("${api.cache.warmup.tracked-keys:1000}")
+    private int trackedKeys;
+
+    /**
+     * Creates the cache manager with a bounded Caffeine cache per cache name.
+     * The caches coalesce the concurrent loads of the same key of the synchronized cacheable methods (sync = true), and the
+     * catalog caches serve their stale entries while they are reloaded in the background.
+     * The wishlists are not reloaded in the background, since their methods read the authenticated user.
+     * @return CacheManager configured
+     * @throws IllegalArgumentException If a spec is invalid or uses refreshAfterWrite, which needs a loader that annotation-driven caches do not have.
+     */
+    @Bean
+    public CoalescingCacheManager cacheManager(CacheRefresher cacheRefresher) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setCaffeine(builder("default", defaultSpec));
+
+        Map<String, String> specs = Map.of(
+                "product", productSpec,
+                "category", categorySpec,
+                "wishlist", wishlistSpec,
+                "products", productsSpec,
+                "categories", categoriesSpec,
+                "wishlists", wishlistsSpec);
+
+        specs.forEach((name, spec) -> {
+            cacheManager.registerCustomCache(name, builder(name, spec).build());
+            log.info("Cache {} configured with {}", name, spec);
+        });
+        Map<String, Duration> refreshAfter = Map.of(
+                "product", productRefreshAfter,
+                "category", categoryRefreshAfter,
+                "products", productsRefreshAfter,
+                "categories", categoriesRefreshAfter);
+
+        return new CoalescingCacheManager(cacheManager, coalescingTimeout, staleSize, staleTtl, refreshAfter, cacheRefresher);
+    }
+
+    /**
+     * Creates the transport of the cache invalidations between the nodes: postgres (LISTEN/NOTIFY) or memory (single node and tests).
+     * @return CacheInvalidationTransport configured
+     * @throws IllegalArgumentException If the transport is unknown.
+     */
+    @Bean(destroyMethod = "close")
+    public CacheInvalidationTransport cacheInvalidationTransport(DataSource dataSource, JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        return switch (invalidationTransport) {
+            case "postgres" -> new PostgresCacheInvalidationTransport(dataSource, jdbcTemplate, objectMapper);
+            case "memory" -> new InMemoryCacheInvalidationTransport();
+            default -> throw new IllegalArgumentException("Unknown cache invalidation transport: " + invalidationTransport);
+        };
+    }
+
+    /**
+     * Creates the bus that broadcasts the invalidations of the caches to the other nodes and applies theirs.
+     * @return CacheInvalidationBus configured
+     */
+    @Bean
+    public CacheInvalidationBus cacheInvalidationBus(CacheInvalidationTransport transport, CoalescingCacheManager cacheManager, CacheGenerations cacheGenerations) {
+        CacheInvalidationBus bus = new CacheInvalidationBus(transport, cacheManager, cacheGenerations);
+        cacheManager.setInvalidationListener(bus);
+        cacheGenerations.setInvalidationListener(bus);
+        return bus;
+    }
+
+    /**
+     * Creates the refresher of the stale entries of the caches, with a bounded executor.
+     * @return CacheRefresher configured
+     */
+    @Bean(destroyMethod = "shutdown")
+    public CacheRefresher cacheRefresher(PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        return new CacheRefresher(refreshThreads, refreshQueueSize, transactionManager, meterRegistry);
+    }
+
+    /**
+     * Creates the tracker of the hottest keys of the catalog caches, preloaded on the next startup.
+     * The wishlists are not tracked, since their keys cannot be loaded without the user.
+     * @return HotKeyTracker configured
+     */
+    @Bean
+    public HotKeyTracker hotKeyTracker(CoalescingCacheManager cacheManager) {
+        HotKeyTracker tracker = new HotKeyTracker(Set.of("product", "category", "products", "categories"), trackedKeys);
+        cacheManager.setHotKeyTracker(tracker);
+        return tracker;
+    }
+
+    /**
+     * Creates the store of the hottest keys, shared by all the nodes.
+     * @return HotKeyStore configured
+     */
+    @Bean
+    public HotKeyStore hotKeyStore(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        return new HotKeyStore(jdbcTemplate, objectMapper);
+    }
+
+    /**
+     * Creates the key generator of the cached pages and searches of the products.
+     * @return KeyGenerator of the products
+     */
+    @Bean
+    public KeyGenerator productsKeyGenerator(CacheGenerations cacheGenerations) {
+        return new PaginationKeyGenerator(cacheGenerations, "products", false);
+    }
+
+    /**
+     * Creates the key generator of the cached pages of the categories.
+     * @return KeyGenerator of the categories
+     */
+    @Bean
+    public KeyGenerator categoriesKeyGenerator(CacheGenerations cacheGenerations) {
+        return new PaginationKeyGenerator(cacheGenerations, "categories", false);
+    }
+
+    /**
+     * Creates the key generator of the cached wishlists, which are kept per user.
+     * @return KeyGenerator of the wishlists
+     */
+    @Bean
+    public KeyGenerator wishlistsKeyGenerator(CacheGenerations cacheGenerations) {
+        return new PaginationKeyGenerator(cacheGenerations, "wishlists", true);
+    }
+
+    /**
+     * Binds the statistics of the decorated Caffeine caches to the metrics, since the actuator only knows the Caffeine caches themselves.
+     * @return CacheMeterBinderProvider of the coalescing caches
+     */
+    @Bean
+    public CacheMeterBinderProvider<CoalescingCache> coalescingCacheMeterBinderProvider() {
+        return (cache, tags) -> {
+            if (cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> nativeCache) {
+                return new CaffeineCacheMetrics<>(nativeCache, cache.getName(), tags);
+            }
+            return null;
+        };
+    }
+
+    /**
+     * Create the builder of a cache from its spec, recording its statistics.
+     */
+    static Caffeine<Object, Object> builder(String name, String spec) {
+        CaffeineSpec caffeineSpec = CaffeineSpec.parse(spec);
+        if (spec.contains("refreshAfterWrite")) {
+            throw new IllegalArgumentException("The cache " + name + " cannot use refreshAfterWrite, since it has no loader: " + spec);
+        }
+
+        Caffeine<Object, Object> builder = Caffeine.from(caffeineSpec).recordStats();
+        if (spec.contains("maximumWeight")) {
+            builder.weigher(entryWeigher());
+        }
+        return builder;
+    }
+
+    /**
+     * Weigh the entries by the number of elements they hold: pages, slices and collections weigh their size.
+     */
+    static Weigher<Object, Object> entryWeigher() {
+        return (key, value) -> {
+            if (value instanceof Collection<?> elements) {
+                return Math.max(SINGLE_ENTRY_WEIGHT, elements.size());
+            }
+            if (value instanceof Iterable<?> elements) {
+                long weight = elements.spliterator().getExactSizeIfKnown();
+                if (weight < 0) {
+                    weight = StreamSupport.stream(elements.spliterator(), false).count();
+                }
+                return (int) Math.max(SINGLE_ENTRY_WEIGHT, Math.min(Integer.MAX_VALUE, weight));
+            }
+            return SINGLE_ENTRY_WEIGHT;
+        };
+    }
+}
@@ -0,0 +1,137 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation.CacheInvalidationListener;
+import br.com.lufecrx.demo.ecommerce.auth.model.User;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class is responsible for the generations of the cached lists and searches.
+ * The key of a cached list starts with the current generation of its scope (e.g. "products", or "wishlists" of a user).
+ * A write advances the generation of the scope, so the following reads use new keys and the old entries are never read
+ * again: they are not evicted at once, but expire or are evicted by the size of the cache. This replaces evicting all the
+ * entries of a cache, which also flushed the entries by id and the entries of the other users.
+ * The generations come from a single sequence, so a generation is never reused, even by a scope that was forgotten and
+ * created again. That allows to bound the number of scopes kept.
+ *
+ * Used in the keys of the cached methods, through the key generators of the scopes.
+ *
+ * @see PaginationKeyGenerator
+ */
+@Component("cacheGenerations")
+@Slf4j
+public class CacheGenerations {
+
+    private static final long MAXIMUM_SCOPES = 100_000;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private volatile CacheInvalidationListener invalidationListener;
+
+    private final Cache<String, Long> generations = Caffeine.newBuilder()
+            .maximumSize(MAXIMUM_SCOPES)
+            .build();
+
+    /**
+     * Set the listener of the advanced generations, to broadcast them to the other nodes.
+     *
+     * @param invalidationListener the listener
+     */
+    public void setInvalidationListener(CacheInvalidationListener invalidationListener) {
+        this.invalidationListener = invalidationListener;
+    }
+
+    /**
+     * Get the current generation of the given scope.
+     *
+     * @param scope the scope, usually the name of the cache
+     * @return the current generation
+     */
+    public long current(String scope) {
+        return generations.get(scope, key -> sequence.incrementAndGet());
+    }
+
+    /**
+     * Get the current generation of the given scope for a user.
+     *
+     * @param scope the scope, usually the name of the cache
+     * @param userId the id of the user
+     * @return the current generation of the scope of the user
+     */
+    public long currentOfUser(String scope, Long userId) {
+        return current(userScope(scope, userId));
+    }
+
+    /**
+     * Get the id of the authenticated user, for the scopes per user.
+     *
+     * @return the id of the authenticated user
+     */
+    public static Long authenticatedUserId() {
+        return ((User) SecurityContextHolder.getContext().getAuthentication().getPrincipal()).getId();
+    }
+
+    /**
+     * Advance the generation of the given scope, in this node and in the others.
+     * If a transaction is active, the generation is advanced again after its commit, since a concurrent read may have cached
+     * the data before the commit under the new generation, and the other nodes are only notified after the commit.
+     *
+     * @param scope the scope, usually the name of the cache
+     */
+    public void advance(String scope) {
+        advanceLocally(scope);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    advanceLocally(scope);
+                    notifyAdvance(scope);
+                }
+            });
+        } else {
+            notifyAdvance(scope);
+        }
+    }
+
+    /**
+     * Advance the generation of the given scope for a user.
+     *
+     * @param scope the scope, usually the name of the cache
+     * @param userId the id of the user
+     */
+    public void advanceOfUser(String scope, Long userId) {
+        advance(userScope(scope, userId));
+    }
+
+    /**
+     * Advance the generation of the given scope only in this node, e.g. when another node advanced it.
+     *
+     * @param scope the scope, usually the name of the cache
+     */
+    public void advanceLocally(String scope) {
+        long generation = sequence.incrementAndGet();
+        generations.put(scope, generation);
+        log.debug("Cache scope {} advanced to generation {}", scope, generation);
+    }
+
+    private void notifyAdvance(String scope) {
+        CacheInvalidationListener listener = invalidationListener;
+        if (listener != null) {
+            listener.onAdvance(scope);
+        }
+    }
+
+    private static String userScope(String scope, Long userId) {
+        return scope + ":" + userId;
+    }
+}
@@ -0,0 +1,120 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class reloads the stale entries of the caches in the background (stale-while-revalidate).
+ * The reloads run in a bounded executor: when all its threads are busy and its queue is full, the reload is rejected and
+ * the stale value keeps being served until the entry expires, when it is loaded synchronously.
+ * Each reload runs in a read-only transaction, since the cached methods read lazy associations that the request thread
+ * reads in its open session.
+ * The metrics are cache.stale.hits, the stale values served, and cache.refreshes, the reloads by result (success,
+ * failure or rejected), both tagged with the cache name.
+ *
+ * @see CoalescingCache
+ */
+@Slf4j
+public class CacheRefresher {
+
+    private final ThreadPoolExecutor executor;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Create the refresher of the caches.
+     *
+     * @param threads the number of threads that reload the entries
+     * @param queueSize the maximum number of reloads waiting for a thread
+     * @param transactionManager the transaction manager of the reloads
+     * @param meterRegistry the registry of the metrics
+     */
+    public CacheRefresher(int threads, int queueSize, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), new CustomizableThreadFactory("cache-refresh-"));
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Count a stale value served by a cache.
+     *
+     * @param cacheName the name of the cache
+     */
+    public void staleHit(String cacheName) {
+        Counter.builder("cache.stale.hits")
+                .description("The number of stale values served while they are reloaded")
+                .tag("cache", cacheName)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Reload an entry in the background.
+     *
+     * @param cacheName the name of the cache
+     * @param loader the loader of the entry
+     * @param onLoaded called with the value loaded, if the reload succeeds
+     * @param onDone called when the reload ends, even if it fails or is rejected
+     */
+    public void refresh(String cacheName, Callable<?> loader, Consumer<Object> onLoaded, Runnable onDone) {
+        try {
+            executor.execute(() -> {
+                try {
+                    onLoaded.accept(transactionTemplate.execute(status -> call(loader)));
+                    count(cacheName, "success");
+                } catch (RuntimeException ex) {
+                    log.warn("Failed to refresh an entry of cache {}, serving the stale value until it expires", cacheName, ex);
+                    count(cacheName, "failure");
+                } finally {
+                    onDone.run();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            log.debug("Refresh of an entry of cache {} rejected, the executor is full", cacheName);
+            count(cacheName, "rejected");
+            onDone.run();
+        }
+    }
+
+    /**
+     * Stop the threads of the executor, without waiting for the pending reloads.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void count(String cacheName, String result) {
+        Counter.builder("cache.refreshes")
+                .description("The number of background reloads of stale entries")
+                .tag("cache", cacheName)
+                .tag("result", result)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    private static Object call(Callable<?> loader) {
+        try {
+            return loader.call();
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
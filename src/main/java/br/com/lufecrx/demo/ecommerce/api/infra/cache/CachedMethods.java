@@ -0,0 +1,72 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * This class describes the cached methods of the pagination keys by name, so the keys can be saved outside of the JVM
+ * (hot keys, snapshots) and resolved again later, possibly by another version of the application.
+ * A method is only resolved if it is still a cacheable method of the application, so a saved key cannot be used to call
+ * any other method.
+ *
+ * @see PaginationKey
+ */
+public final class CachedMethods {
+
+    private static final String BASE_PACKAGE = "br.com.lufecrx.demo.ecommerce.";
+
+    private CachedMethods() {
+    }
+
+    /**
+     * Get the names of the parameter types of a method, as accepted by {@link #resolveParameterTypes(String[])}.
+     *
+     * @param method the method
+     * @return the names of its parameter types
+     */
+    public static String[] parameterTypeNames(Method method) {
+        return Arrays.stream(method.getParameterTypes()).map(Class::getName).toArray(String[]::new);
+    }
+
+    /**
+     * Resolve the parameter types from their names.
+     *
+     * @param parameterTypeNames the names of the parameter types
+     * @return the parameter types
+     * @throws IllegalArgumentException If a type cannot be found.
+     */
+    public static Class<?>[] resolveParameterTypes(String[] parameterTypeNames) {
+        Class<?>[] parameterTypes = new Class<?>[parameterTypeNames.length];
+        for (int i = 0; i < parameterTypes.length; i++) {
+            parameterTypes[i] = ClassUtils.resolveClassName(parameterTypeNames[i], CachedMethods.class.getClassLoader());
+        }
+        return parameterTypes;
+    }
+
+    /**
+     * Resolve a cacheable method of the application.
+     *
+     * @param className the name of the class that declares the method
+     * @param methodName the name of the method
+     * @param parameterTypes the parameter types of the method
+     * @return the method
+     * @throws IllegalArgumentException If the class is not of the application or the method is not cacheable.
+     */
+    public static Method resolve(String className, String methodName, Class<?>[] parameterTypes) {
+        if (!className.startsWith(BASE_PACKAGE)) {
+            throw new IllegalArgumentException("Class outside of the application: " + className);
+        }
+
+        Class<?> type = ClassUtils.resolveClassName(className, CachedMethods.class.getClassLoader());
+        Method method = ReflectionUtils.findMethod(type, methodName, parameterTypes);
+        if (method == null || !AnnotatedElementUtils.hasAnnotation(method, Cacheable.class)) {
+            throw new IllegalArgumentException("Not a cacheable method: " + className + "." + methodName);
+        }
+        return method;
+    }
+}
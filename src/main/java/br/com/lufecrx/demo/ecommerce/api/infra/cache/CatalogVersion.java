@@ -0,0 +1,46 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class is responsible for the version of the catalog, a counter shared by all the nodes in the catalog_version table.
+ * Each write that changes the cached lists of the products or categories increments it, together with the generation of
+ * their caches, so a copy of the caches taken at a version is only valid while the catalog is still at that version.
+ * The version is a single row, so the catalog writes are serialized on it, which is fine for writes made by the admins.
+ *
+ * Used to validate the snapshots of the caches.
+ *
+ * @see br.com.lufecrx.demo.ecommerce.api.infra.cache.snapshot.CacheSnapshots
+ */
+@Component
+@Slf4j
+public class CatalogVersion {
+
+    private static final String SELECT_VERSION = "SELECT version FROM catalog_version WHERE id = 1";
+
+    private static final String INCREMENT_VERSION = "UPDATE catalog_version SET version = version + 1 WHERE id = 1";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Get the current version of the catalog.
+     *
+     * @return the current version
+     */
+    public long current() {
+        return jdbcTemplate.queryForObject(SELECT_VERSION, Long.class);
+    }
+
+    /**
+     * Increment the version of the catalog, in the transaction of the write if there is one.
+     */
+    public void increment() {
+        jdbcTemplate.update(INCREMENT_VERSION);
+        log.debug("Catalog version incremented");
+    }
+}
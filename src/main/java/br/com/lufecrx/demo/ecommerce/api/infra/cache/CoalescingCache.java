@@ -0,0 +1,334 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.cache.Cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation.CacheInvalidationListener;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.warmup.HotKeyTracker;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class decorates a cache of any cache manager to coalesce the concurrent loads of the same key (single flight).
+ * When a synchronized cacheable method (sync = true) misses, the first caller loads the value while the others wait for it,
+ * so N concurrent misses of a hot key execute a single query instead of N.
+ * The waiters wait up to the configured timeout. After it, they are served the last value loaded for the key, even if it
+ * expired in the meantime, and only wait for the load if there is no such stale value.
+ * The stale values are kept in a bounded side cache. An eviction or a clear, which follows a write in this node or in
+ * another one, drops them too, so a value older than the write is never served after it.
+ * If the cache has a refresh-after duration, an entry older than it is still served at once, but it is reloaded in the
+ * background by the CacheRefresher (stale-while-revalidate). The entries that expired in the decorated cache, the hard
+ * staleness limit, are loaded synchronously as usual.
+ *
+ * @see CoalescingCacheManager
+ * @see CacheRefresher
+ */
+@Slf4j
+public class CoalescingCache implements Cache {
+
+    private final Cache delegate;
+
+    private final Duration timeout;
+
+    private final ConcurrentMap<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final com.github.benmanes.caffeine.cache.Cache<Object, StaleValue> stale;
+
+    private final Duration refreshAfter;
+
+    private final CacheRefresher refresher;
+
+    private final Set<Object> refreshing = ConcurrentHashMap.newKeySet();
+
+    private volatile CacheInvalidationListener invalidationListener;
+
+    private volatile HotKeyTracker hotKeyTracker;
+
+    /**
+     * The last value loaded for a key and when it was loaded.
+     */
+    private record StaleValue(Object value, long loadedAt) {
+    }
+
+    /**
+     * Create the coalescing decorator of a cache.
+     *
+     * @param delegate the decorated cache
+     * @param timeout how long a caller waits for the load of another caller before being served a stale value
+     * @param staleSize the maximum number of stale values kept
+     * @param staleTtl how long a stale value can be served after it was loaded
+     * @param refreshAfter how long after being loaded an entry is reloaded in the background, or null to never reload it
+     * @param refresher the refresher of the entries, or null to never reload them
+     */
+    public CoalescingCache(Cache delegate, Duration timeout, long staleSize, Duration staleTtl, Duration refreshAfter, CacheRefresher refresher) {
+        this.delegate = delegate;
+        this.timeout = timeout;
+        this.refreshAfter = refreshAfter;
+        this.refresher = refresher;
+        this.stale = Caffeine.newBuilder()
+                .maximumSize(staleSize)
+                .expireAfterWrite(staleTtl)
+                .build();
+    }
+
+    /**
+     * Set the listener of the evictions and clears of this cache, to broadcast them to the other nodes.
+     *
+     * @param invalidationListener the listener
+     */
+    public void setInvalidationListener(CacheInvalidationListener invalidationListener) {
+        this.invalidationListener = invalidationListener;
+    }
+
+    /**
+     * Set the tracker of the hottest keys of this cache, to preload them on the next startup.
+     *
+     * @param hotKeyTracker the tracker
+     */
+    public void setHotKeyTracker(HotKeyTracker hotKeyTracker) {
+        this.hotKeyTracker = hotKeyTracker;
+    }
+
+    /**
+     * Get the decorated cache.
+     *
+     * @return the decorated cache
+     */
+    public Cache getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        return delegate.get(key);
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return delegate.get(key, type);
+    }
+
+    /**
+     * Get the value of the key, loading it once for all the concurrent callers if it is not cached.
+     * If it is cached but stale, it is returned and reloaded in the background.
+     * The access is counted by the hot key tracker, if any.
+     *
+     * @throws ValueRetrievalException If the load fails, with the exception of the loader as the cause, for all the callers waiting for it.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        HotKeyTracker tracker = hotKeyTracker;
+        if (tracker != null) {
+            tracker.record(getName(), key);
+        }
+
+        ValueWrapper cached = delegate.get(key);
+        if (cached != null) {
+            refreshIfStale(key, cached.get(), valueLoader);
+            return (T) cached.get();
+        }
+
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> current = inFlight.putIfAbsent(key, load);
+        if (current != null) {
+            return (T) await(key, current, valueLoader);
+        }
+
+        try {
+            // Another caller may have finished the load between the lookup and the registration
+            cached = delegate.get(key);
+            Object value = cached != null ? cached.get() : valueLoader.call();
+            if (cached == null) {
+                put(key, value);
+            }
+            load.complete(value);
+            return (T) value;
+        } catch (Exception ex) {
+            load.completeExceptionally(ex);
+            throw new ValueRetrievalException(key, valueLoader, ex);
+        } finally {
+            inFlight.remove(key, load);
+        }
+    }
+
+    /**
+     * Reload the entry in the background if it was loaded more than refresh-after ago and it is not being reloaded yet.
+     * The value reloaded only replaces the cached one if the entry was not evicted or replaced in the meantime.
+     */
+    private void refreshIfStale(Object key, Object value, Callable<?> valueLoader) {
+        if (refresher == null || refreshAfter == null) {
+            return;
+        }
+
+        StaleValue loaded = stale.getIfPresent(key);
+        if (loaded == null || loaded.value() != value || System.nanoTime() - loaded.loadedAt() < refreshAfter.toNanos()) {
+            return;
+        }
+
+        refresher.staleHit(getName());
+        if (!refreshing.add(key)) {
+            return;
+        }
+
+        refresher.refresh(getName(), valueLoader, reloaded -> {
+            ValueWrapper current = delegate.get(key);
+            if (current != null && current.get() == value) {
+                put(key, reloaded);
+            }
+        }, () -> refreshing.remove(key));
+    }
+
+    /**
+     * Wait for the load of another caller, falling back to the stale value after the timeout.
+     */
+    private Object await(Object key, CompletableFuture<Object> load, Callable<?> valueLoader) {
+        try {
+            try {
+                return load.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                StaleValue value = stale.getIfPresent(key);
+                if (value != null) {
+                    log.warn("Load of key {} in cache {} is taking more than {}, serving the stale value", key, getName(), timeout);
+                    return value.value();
+                }
+                // Without a stale value, there is nothing better to do than waiting
+                return load.get();
+            }
+        } catch (ExecutionException ex) {
+            throw new ValueRetrievalException(key, valueLoader, ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, ex);
+        }
+    }
+
+    @Override
+    public CompletableFuture<?> retrieve(Object key) {
+        return delegate.retrieve(key);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> retrieve(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+        return delegate.retrieve(key, valueLoader);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+        stale.put(key, new StaleValue(value, System.nanoTime()));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = delegate.putIfAbsent(key, value);
+        if (existing == null) {
+            stale.put(key, new StaleValue(value, System.nanoTime()));
+        }
+        return existing;
+    }
+
+    /**
+     * Evict the key and its stale value, in this node and in the others.
+     */
+    @Override
+    public void evict(Object key) {
+        evictLocally(key);
+        notifyEvict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean evicted = delegate.evictIfPresent(key);
+        stale.invalidate(key);
+        // Another node may have the key even if this one does not
+        notifyEvict(key);
+        return evicted;
+    }
+
+    @Override
+    public void clear() {
+        clearLocally();
+        notifyClear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        stale.invalidateAll();
+        boolean invalidated = delegate.invalidate();
+        notifyClear();
+        return invalidated;
+    }
+
+    /**
+     * Evict the keys, in this node and in the others, e.g. after a bulk update. The other nodes are notified of the keys
+     * in batches instead of one by one. Their stale values are dropped too.
+     *
+     * @param keys the keys to evict
+     */
+    public void evictAll(Collection<?> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        keys.forEach(this::evictLocally);
+
+        CacheInvalidationListener listener = invalidationListener;
+        if (listener != null) {
+            listener.onEvictAll(getName(), keys);
+        }
+    }
+
+    /**
+     * Evict the key and its stale value only from this node, e.g. when another node evicted it.
+     *
+     * @param key the key to evict
+     */
+    public void evictLocally(Object key) {
+        delegate.evict(key);
+        stale.invalidate(key);
+    }
+
+    /**
+     * Clear the cache only in this node, e.g. when another node cleared it.
+     */
+    public void clearLocally() {
+        delegate.clear();
+        stale.invalidateAll();
+    }
+
+    private void notifyEvict(Object key) {
+        CacheInvalidationListener listener = invalidationListener;
+        if (listener != null) {
+            listener.onEvict(getName(), key);
+        }
+    }
+
+    private void notifyClear() {
+        CacheInvalidationListener listener = invalidationListener;
+        if (listener != null) {
+            listener.onClear(getName());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation.CacheInvalidationListener;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.warmup.HotKeyTracker;
+
+/**
+ * This class decorates any cache manager, so each of its caches coalesces the concurrent loads of the same key and, if it
+ * has a refresh-after duration, reloads its stale entries in the background.
+ *
+ * @see CoalescingCache
+ */
+public class CoalescingCacheManager implements CacheManager {
+
+    private final CacheManager delegate;
+
+    private final Duration timeout;
+
+    private final long staleSize;
+
+    private final Duration staleTtl;
+
+    private final Map<String, Duration> refreshAfter;
+
+    private final CacheRefresher refresher;
+
+    private final ConcurrentMap<String, CoalescingCache> caches = new ConcurrentHashMap<>();
+
+    private volatile CacheInvalidationListener invalidationListener;
+
+    private volatile HotKeyTracker hotKeyTracker;
+
+    /**
+     * Create the coalescing decorator of a cache manager.
+     *
+     * @param delegate the decorated cache manager
+     * @param timeout how long a caller waits for the load of another caller before being served a stale value
+     * @param staleSize the maximum number of stale values kept per cache
+     * @param staleTtl how long a stale value can be served after it was loaded
+     * @param refreshAfter the refresh-after durations of the caches that are reloaded in the background
+     * @param refresher the refresher of the entries, or null to never reload them
+     */
+    public CoalescingCacheManager(CacheManager delegate, Duration timeout, long staleSize, Duration staleTtl,
+                                  Map<String, Duration> refreshAfter, CacheRefresher refresher) {
+        this.delegate = delegate;
+        this.timeout = timeout;
+        this.staleSize = staleSize;
+        this.staleTtl = staleTtl;
+        this.refreshAfter = refreshAfter;
+        this.refresher = refresher;
+    }
+
+    /**
+     * Set the listener of the evictions and clears of the caches, to broadcast them to the other nodes.
+     *
+     * @param invalidationListener the listener
+     */
+    public void setInvalidationListener(CacheInvalidationListener invalidationListener) {
+        this.invalidationListener = invalidationListener;
+        caches.values().forEach(cache -> cache.setInvalidationListener(invalidationListener));
+    }
+
+    /**
+     * Set the tracker of the hottest keys of the caches, to preload them on the next startup.
+     *
+     * @param hotKeyTracker the tracker
+     */
+    public void setHotKeyTracker(HotKeyTracker hotKeyTracker) {
+        this.hotKeyTracker = hotKeyTracker;
+        caches.values().forEach(cache -> cache.setHotKeyTracker(hotKeyTracker));
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        CoalescingCache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+
+        Cache target = delegate.getCache(name);
+        if (target == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, key -> {
+            CoalescingCache coalescingCache = new CoalescingCache(target, timeout, staleSize, staleTtl, refreshAfter.get(name), refresher);
+            coalescingCache.setInvalidationListener(invalidationListener);
+            coalescingCache.setHotKeyTracker(hotKeyTracker);
+            return coalescingCache;
+        });
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+}
@@ -0,0 +1,67 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Class to represent the key of a cached page, slice or search.
+ * Unlike a key made by concatenating the parameters, the parameters are compared one by one, so page=1,size=10 and
+ * page=11,size=0 are different keys. The hash is computed once, when the key is created, since the key is hashed on
+ * every lookup of the cache.
+ *
+ * @param method the cached method, so the methods of the same cache have different keys
+ * @param generation the generation of the scope of the cache when the key was created
+ * @param userId the id of the authenticated user, for the caches per user, or null
+ * @param params the parameters of the method
+ * @param hash the precomputed hash of the other components
+ *
+ * @see PaginationKeyGenerator
+ */
+public record PaginationKey(
+        Method method,
+        long generation,
+        Long userId,
+        Object[] params,
+        int hash) {
+
+    /**
+     * Create the key of a call.
+     *
+     * @param method the cached method
+     * @param generation the generation of the scope of the cache
+     * @param userId the id of the authenticated user, or null
+     * @param params the parameters of the call
+     * @return the key
+     */
+    public static PaginationKey of(Method method, long generation, Long userId, Object[] params) {
+        int hash = method.hashCode();
+        hash = 31 * hash + Long.hashCode(generation);
+        hash = 31 * hash + Objects.hashCode(userId);
+        hash = 31 * hash + Arrays.deepHashCode(params);
+        return new PaginationKey(method, generation, userId, params, hash);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        return other instanceof PaginationKey key
+                && hash == key.hash
+                && generation == key.generation
+                && method.equals(key.method)
+                && Objects.equals(userId, key.userId)
+                && Arrays.deepEquals(params, key.params);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return method.getName() + "@" + generation + (userId != null ? "/" + userId : "") + Arrays.deepToString(params);
+    }
+}
@@ -0,0 +1,49 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache;
+
+import java.lang.reflect.Method;
+
+import org.springframework.cache.interceptor.KeyGenerator;
+
+/**
+ * This class generates the keys of the cached pages, slices and searches of a scope (e.g. "products").
+ * The key holds the method, the current generation of the scope, the authenticated user for the caches per user and the
+ * parameters themselves, instead of a string built from them, so the keys cannot collide and no string is built per
+ * lookup. Each lookup allocates the key and a copy of the parameters, since the array of the invocation may be reused by
+ * the caller and the key must not change once it is cached.
+ *
+ * Used by the cacheable methods, e.g. keyGenerator = "productsKeyGenerator".
+ *
+ * @see PaginationKey
+ * @see CacheGenerations
+ */
+public class PaginationKeyGenerator implements KeyGenerator {
+
+    private final CacheGenerations cacheGenerations;
+
+    private final String scope;
+
+    private final boolean perUser;
+
+    /**
+     * Create the key generator of a scope.
+     *
+     * @param cacheGenerations the generations of the scopes
+     * @param scope the scope, usually the name of the cache
+     * @param perUser whether each user has its own entries and generation
+     */
+    public PaginationKeyGenerator(CacheGenerations cacheGenerations, String scope, boolean perUser) {
+        this.cacheGenerations = cacheGenerations;
+        this.scope = scope;
+        this.perUser = perUser;
+    }
+
+    @Override
+    public Object generate(Object target, Method method, Object... params) {
+        if (!perUser) {
+            return PaginationKey.of(method, cacheGenerations.current(scope), null, params.clone());
+        }
+
+        Long userId = CacheGenerations.authenticatedUserId();
+        return PaginationKey.of(method, cacheGenerations.currentOfUser(scope, userId), userId, params.clone());
+    }
+}
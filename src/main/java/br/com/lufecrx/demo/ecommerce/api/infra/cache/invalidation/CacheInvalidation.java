@@ -0,0 +1,70 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Class to represent an invalidation of a cache, broadcast to the other nodes.
+ * The sequence is increased by the node for each invalidation of the cache, so a receiver detects the invalidations it
+ * missed.
+ *
+ * @param node the id of the node that published the invalidation
+ * @param cache the name of the cache
+ * @param sequence the sequence number of the invalidation in the cache, per node
+ * @param type what was invalidated
+ * @param key the evicted key, or the list of evicted keys, or the advanced generation scope, or null to clear the cache
+ *
+ * @see CacheInvalidationBus
+ */
+public record CacheInvalidation(
+        String node,
+        String cache,
+        long sequence,
+        Type type,
+        Object key) {
+
+    /**
+     * The kinds of invalidation.
+     */
+    public enum Type {
+        /**
+         * A key was evicted.
+         */
+        EVICT,
+        /**
+         * Several keys were evicted, e.g. by a bulk update.
+         */
+        EVICT_ALL,
+        /**
+         * The whole cache was cleared.
+         */
+        CLEAR,
+        /**
+         * The generation of a scope of the cache was advanced.
+         */
+        ADVANCE
+    }
+
+    /**
+     * Get the key as it is used by the caches. The ids are the only numeric keys and are Long, but a transport may
+     * deserialize a number as another type.
+     *
+     * @return the key
+     */
+    public Object normalizedKey() {
+        return normalize(key);
+    }
+
+    /**
+     * Get the keys of an EVICT_ALL invalidation as they are used by the caches.
+     *
+     * @return the keys
+     */
+    public List<Object> normalizedKeys() {
+        return ((Collection<?>) key).stream().map(CacheInvalidation::normalize).toList();
+    }
+
+    private static Object normalize(Object key) {
+        return key instanceof Number number ? Long.valueOf(number.longValue()) : key;
+    }
+}
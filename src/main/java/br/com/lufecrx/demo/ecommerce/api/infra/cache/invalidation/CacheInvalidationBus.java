@@ -0,0 +1,203 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CacheGenerations;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CoalescingCache;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class broadcasts the invalidations of the local caches to the other nodes and applies theirs, so a write in one
+ * node does not leave the other nodes serving the old data until the entries expire.
+ * Each node numbers its invalidations per cache. A receiver ignores the invalidations it already applied, so they are
+ * idempotent, and when it detects a gap in the sequence of a node, it clears the whole cache, since it cannot know which
+ * entries it missed. It also clears all the caches when the transport reports that invalidations may have been lost.
+ * The invalidations received are applied only locally, so they are not broadcast again.
+ * The keys evicted together, e.g. by a bulk update, are published in batches, small enough for the payload of any transport.
+ * Other in-memory structures derived from the database, e.g. the search index of the products, are kept in sync the same
+ * way: they publish under a name that is not a cache, and the invalidations received under that name are passed to the
+ * handler they registered, including a clear when invalidations were missed.
+ *
+ * @see CacheInvalidationTransport
+ */
+@Slf4j
+public class CacheInvalidationBus implements CacheInvalidationListener {
+
+    static final int EVICT_BATCH_SIZE = 500;
+
+    private final String node = UUID.randomUUID().toString();
+
+    private final CacheInvalidationTransport transport;
+
+    private final CacheManager cacheManager;
+
+    private final CacheGenerations cacheGenerations;
+
+    private final ConcurrentMap<String, AtomicLong> published = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> received = new HashMap<>();
+
+    private final ConcurrentMap<String, CacheInvalidationListener> handlers = new ConcurrentHashMap<>();
+
+    /**
+     * Create the bus and subscribe it to the transport.
+     *
+     * @param transport the transport of the invalidations
+     * @param cacheManager the manager of the local caches
+     * @param cacheGenerations the generations of the local caches
+     */
+    public CacheInvalidationBus(CacheInvalidationTransport transport, CacheManager cacheManager, CacheGenerations cacheGenerations) {
+        this.transport = transport;
+        this.cacheManager = cacheManager;
+        this.cacheGenerations = cacheGenerations;
+        transport.subscribe(this::receive, this::resync);
+    }
+
+    /**
+     * Get the id of this node.
+     *
+     * @return the id of the node
+     */
+    public String getNode() {
+        return node;
+    }
+
+    /**
+     * Register the handler of the invalidations received under a name that is not a cache.
+     *
+     * @param name the name the invalidations are published under
+     * @param handler the handler that applies them locally
+     */
+    public void register(String name, CacheInvalidationListener handler) {
+        handlers.put(name, handler);
+    }
+
+    @Override
+    public void onEvict(String cache, Object key) {
+        publish(cache, CacheInvalidation.Type.EVICT, key);
+    }
+
+    @Override
+    public void onEvictAll(String cache, Collection<?> keys) {
+        List<Object> batch = new ArrayList<>(Math.min(keys.size(), EVICT_BATCH_SIZE));
+        for (Object key : keys) {
+            batch.add(key);
+            if (batch.size() == EVICT_BATCH_SIZE) {
+                publish(cache, CacheInvalidation.Type.EVICT_ALL, List.copyOf(batch));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            publish(cache, CacheInvalidation.Type.EVICT_ALL, List.copyOf(batch));
+        }
+    }
+
+    @Override
+    public void onClear(String cache) {
+        publish(cache, CacheInvalidation.Type.CLEAR, null);
+    }
+
+    @Override
+    public void onAdvance(String scope) {
+        // The scopes per user are named after their cache, e.g. "wishlists:42"
+        int separator = scope.indexOf(':');
+        publish(separator < 0 ? scope : scope.substring(0, separator), CacheInvalidation.Type.ADVANCE, scope);
+    }
+
+    private void publish(String cache, CacheInvalidation.Type type, Object key) {
+        long sequence = published.computeIfAbsent(cache, name -> new AtomicLong()).incrementAndGet();
+        transport.publish(new CacheInvalidation(node, cache, sequence, type, key));
+    }
+
+    /**
+     * Apply an invalidation of another node, unless it was already applied.
+     *
+     * @param invalidation the invalidation received
+     */
+    synchronized void receive(CacheInvalidation invalidation) {
+        if (node.equals(invalidation.node())) {
+            return;
+        }
+
+        String stream = invalidation.node() + "/" + invalidation.cache();
+        Long last = received.get(stream);
+        if (last != null && invalidation.sequence() <= last) {
+            log.debug("Ignoring the invalidation {} already applied", invalidation);
+            return;
+        }
+
+        received.put(stream, invalidation.sequence());
+        if (last != null && invalidation.sequence() > last + 1) {
+            log.warn("Missed {} invalidations of cache {} from node {}, clearing it",
+                    invalidation.sequence() - last - 1, invalidation.cache(), invalidation.node());
+            clearLocally(invalidation.cache());
+            return;
+        }
+        apply(invalidation);
+    }
+
+    private void apply(CacheInvalidation invalidation) {
+        CacheInvalidationListener handler = handlers.get(invalidation.cache());
+        if (handler != null) {
+            switch (invalidation.type()) {
+                case EVICT -> handler.onEvict(invalidation.cache(), invalidation.normalizedKey());
+                case EVICT_ALL -> handler.onEvictAll(invalidation.cache(), invalidation.normalizedKeys());
+                case CLEAR -> handler.onClear(invalidation.cache());
+                case ADVANCE -> handler.onAdvance((String) invalidation.key());
+            }
+            return;
+        }
+
+        switch (invalidation.type()) {
+            case EVICT -> evictLocally(invalidation.cache(), List.of(invalidation.normalizedKey()));
+            case EVICT_ALL -> evictLocally(invalidation.cache(), invalidation.normalizedKeys());
+            case CLEAR -> clearLocally(invalidation.cache());
+            case ADVANCE -> cacheGenerations.advanceLocally((String) invalidation.key());
+        }
+    }
+
+    private void evictLocally(String name, List<Object> keys) {
+        Cache cache = cacheManager.getCache(name);
+        if (cache instanceof CoalescingCache coalescingCache) {
+            keys.forEach(coalescingCache::evictLocally);
+        } else if (cache != null) {
+            keys.forEach(cache::evict);
+        }
+    }
+
+    private void clearLocally(String name) {
+        CacheInvalidationListener handler = handlers.get(name);
+        if (handler != null) {
+            handler.onClear(name);
+            return;
+        }
+
+        Cache cache = cacheManager.getCache(name);
+        if (cache instanceof CoalescingCache coalescingCache) {
+            coalescingCache.clearLocally();
+        } else if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Clear all the local caches and forget the sequences received, when invalidations may have been lost.
+     */
+    synchronized void resync() {
+        log.warn("Cache invalidations may have been lost, clearing all the caches");
+        received.clear();
+        cacheManager.getCacheNames().forEach(this::clearLocally);
+        handlers.keySet().forEach(this::clearLocally);
+    }
+}
@@ -0,0 +1,41 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation;
+
+import java.util.Collection;
+
+/**
+ * Interface of the listener of the local invalidations of the caches, so they are broadcast to the other nodes.
+ *
+ * @see CacheInvalidationBus
+ */
+public interface CacheInvalidationListener {
+
+    /**
+     * Called when a key is evicted from a cache.
+     *
+     * @param cache the name of the cache
+     * @param key the evicted key
+     */
+    void onEvict(String cache, Object key);
+
+    /**
+     * Called when several keys are evicted from a cache at once.
+     *
+     * @param cache the name of the cache
+     * @param keys the evicted keys
+     */
+    void onEvictAll(String cache, Collection<?> keys);
+
+    /**
+     * Called when a cache is cleared.
+     *
+     * @param cache the name of the cache
+     */
+    void onClear(String cache);
+
+    /**
+     * Called when the generation of a scope is advanced.
+     *
+     * @param scope the scope, the name of the cache optionally followed by ':' and the user id
+     */
+    void onAdvance(String scope);
+}
@@ -0,0 +1,32 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation;
+
+import java.util.function.Consumer;
+
+/**
+ * Interface of the transports that broadcast the invalidations of the caches between the nodes.
+ * The transports may lose messages, e.g. while reconnecting: the receivers detect it by the sequence numbers, or by the
+ * resync callback of the transport.
+ *
+ * @see PostgresCacheInvalidationTransport
+ * @see InMemoryCacheInvalidationTransport
+ */
+public interface CacheInvalidationTransport extends AutoCloseable {
+
+    /**
+     * Broadcast an invalidation to all the nodes, including the one that publishes it.
+     *
+     * @param invalidation the invalidation
+     */
+    void publish(CacheInvalidation invalidation);
+
+    /**
+     * Start receiving the invalidations.
+     *
+     * @param receiver called with each invalidation received
+     * @param resync called when invalidations may have been lost, e.g. after the transport reconnected
+     */
+    void subscribe(Consumer<CacheInvalidation> receiver, Runnable resync);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,30 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * This class broadcasts the invalidations in memory, to the receivers subscribed to the same instance.
+ * It is used by the tests, where the nodes are buses of the same JVM, and by single-node deployments.
+ * The invalidations are delivered synchronously, in the thread that publishes them.
+ */
+public class InMemoryCacheInvalidationTransport implements CacheInvalidationTransport {
+
+    private final List<Consumer<CacheInvalidation>> receivers = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+        receivers.forEach(receiver -> receiver.accept(invalidation));
+    }
+
+    @Override
+    public void subscribe(Consumer<CacheInvalidation> receiver, Runnable resync) {
+        receivers.add(receiver);
+    }
+
+    @Override
+    public void close() {
+        receivers.clear();
+    }
+}
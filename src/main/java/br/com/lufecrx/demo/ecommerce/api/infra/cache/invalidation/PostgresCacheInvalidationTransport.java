@@ -0,0 +1,134 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class broadcasts the invalidations through the LISTEN/NOTIFY of PostgreSQL, so no other infrastructure is needed.
+ * The invalidations are published with pg_notify, as JSON, in the channel "cache_invalidation". A thread listens to the
+ * channel with a dedicated connection, taken from the pool for the life of the application.
+ * When the connection fails, the thread reconnects and asks the receiver to resync, since the notifications sent in the
+ * meantime are lost.
+ */
+@Slf4j
+public class PostgresCacheInvalidationTransport implements CacheInvalidationTransport {
+
+    static final String CHANNEL = "cache_invalidation";
+
+    private static final int POLL_TIMEOUT_MILLIS = 1000;
+
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+
+    private final DataSource dataSource;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    private volatile boolean running = true;
+
+    private Thread listener;
+
+    /**
+     * Create the PostgreSQL transport.
+     *
+     * @param dataSource the data source of the listening connection
+     * @param jdbcTemplate the template used to notify
+     * @param objectMapper the mapper of the invalidations to JSON
+     */
+    public PostgresCacheInvalidationTransport(DataSource dataSource, JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+        try {
+            jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class, CHANNEL, objectMapper.writeValueAsString(invalidation));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Invalid cache invalidation: " + invalidation, ex);
+        } catch (RuntimeException ex) {
+            // The other nodes detect the gap in the sequence and resync
+            log.error("Failed to publish the invalidation {}", invalidation, ex);
+        }
+    }
+
+    @Override
+    public synchronized void subscribe(Consumer<CacheInvalidation> receiver, Runnable resync) {
+        listener = new Thread(() -> listen(receiver, resync), "cache-invalidation-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    private void listen(Consumer<CacheInvalidation> receiver, Runnable resync) {
+        boolean reconnecting = false;
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                log.info("Listening to the cache invalidations in channel {}", CHANNEL);
+
+                if (reconnecting) {
+                    resync.run();
+                    reconnecting = false;
+                }
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(POLL_TIMEOUT_MILLIS);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        receive(notification.getParameter(), receiver);
+                    }
+                }
+            } catch (SQLException ex) {
+                if (!running) {
+                    return;
+                }
+                log.error("Cache invalidation listener disconnected, reconnecting in {} ms", RECONNECT_DELAY_MILLIS, ex);
+                reconnecting = true;
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void receive(String payload, Consumer<CacheInvalidation> receiver) {
+        try {
+            receiver.accept(objectMapper.readValue(payload, CacheInvalidation.class));
+        } catch (JsonProcessingException ex) {
+            log.warn("Ignoring the malformed cache invalidation {}", payload, ex);
+        } catch (RuntimeException ex) {
+            log.error("Failed to apply the cache invalidation {}", payload, ex);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.cache.support.NullValue;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CacheGenerations;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CachedMethods;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CatalogVersion;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CoalescingCache;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CoalescingCacheManager;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.PaginationKey;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class saves the cached lists of the catalog (products and categories caches) to a binary snapshot file when the
+ * application stops, and reloads them when it starts, so a restarted node serves them from memory at once instead of
+ * querying the database, e.g. in a rolling restart.
+ * The file starts with a header (magic number, format version and catalog version) followed by the entries, serialized
+ * in a single object stream so the classes are described once. Only the classes of the keys and values of the catalog
+ * caches are read back, and the size of the file and the depth and size of the object graph are limited.
+ * The snapshot is only reloaded if the catalog is still at the version it was taken at, so it is discarded if the
+ * products or categories were written in the meantime. Only the entries of the current generation are saved, since the
+ * others cannot be read anymore, and they are reloaded under the current generation of the restarted node.
+ * The snapshot is reloaded before the warm-up of the caches, which then finds most of the hot lists already cached.
+ * The snapshots are only used if the property api.cache.snapshot.enabled is true.
+ *
+ * @see CatalogVersion
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@Slf4j
+public class CacheSnapshots implements ApplicationRunner {
+
+    private static final int MAGIC = 0x45435348;
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final long MAX_SIZE = 256L * 1024 * 1024;
+
+    private static final List<String> CACHES = List.of("products", "categories");
+
+    /**
+     * Only the classes of the cached keys and values can be read from the snapshot: the parameters of the cached methods
+     * and the pages of DTOs they return. The arrays are matched by the class of their elements.
+     */
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=20;maxrefs=1000000;maxarray=100000;maxbytes=" + MAX_SIZE + ";"
+            + "java.lang.Object;java.lang.String;java.lang.Number;java.lang.Integer;java.lang.Long;java.lang.Double;"
+            + "java.lang.Boolean;java.lang.Enum;"
+            + "java.util.ArrayList;java.util.Arrays$ArrayList;java.util.HashMap;java.util.LinkedHashMap;java.util.TreeMap;"
+            + "java.util.HashSet;java.util.LinkedHashSet;java.util.Map$Entry;java.util.Collections$*;java.util.ImmutableCollections$*;java.util.CollSer;"
+            + "org.springframework.data.domain.*;br.com.lufecrx.demo.ecommerce.api.model.dto.*;!*");
+
+    @Autowired
+    private CoalescingCacheManager cacheManager;
+
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
+    @Autowired
+    private CatalogVersion catalogVersion;
+
+    @Value("${api.cache.snapshot.enabled:false}")
+    private boolean enabled;
+
+    @Value("${api.cache.snapshot.file:cache-snapshot.bin}")
+    private Path file;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled) {
+            restore(file);
+        }
+    }
+
+    /**
+     * Save the snapshot when the application stops gracefully.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (enabled) {
+            save(file);
+        }
+    }
+
+    /**
+     * Save the current entries of the catalog caches to the file, replacing it atomically.
+     * The catalog version is read before the entries, so an entry loaded after a concurrent write makes the snapshot
+     * stale rather than wrong.
+     *
+     * @param target the snapshot file
+     * @return the number of entries saved, or -1 if the snapshot could not be saved
+     */
+    public int save(Path target) {
+        long start = System.currentTimeMillis();
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        int entries = 0;
+
+        try {
+            long version = catalogVersion.current();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(version);
+
+                ObjectOutputStream objects = new ObjectOutputStream(out);
+                for (String name : CACHES) {
+                    entries += write(objects, name);
+                }
+                objects.writeBoolean(false);
+                objects.flush();
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Saved {} entries of the caches to the snapshot {} at catalog version {} in {} ms",
+                    entries, target, version, System.currentTimeMillis() - start);
+            return entries;
+        } catch (IOException | RuntimeException ex) {
+            log.warn("Could not save the snapshot of the caches to {}", target, ex);
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException deleteEx) {
+                log.debug("Could not delete the temporary snapshot {}", temporary, deleteEx);
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Reload the entries of the snapshot file into the catalog caches, if it was taken at the current catalog version.
+     * The entries whose method cannot be resolved anymore are skipped, and a corrupted file stops the reload, keeping the
+     * entries read until then.
+     *
+     * @param source the snapshot file
+     * @return the number of entries reloaded
+     */
+    public int restore(Path source) {
+        if (!Files.isRegularFile(source)) {
+            log.info("No snapshot of the caches found at {}", source);
+            return 0;
+        }
+
+        long start = System.currentTimeMillis();
+        int entries = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source), 64 * 1024))) {
+            if (Files.size(source) > MAX_SIZE) {
+                log.warn("Ignoring the snapshot of the caches {}, larger than {} bytes", source, MAX_SIZE);
+                return 0;
+            }
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                log.warn("Ignoring the snapshot of the caches {}, unknown format", source);
+                return 0;
+            }
+
+            long version = in.readLong();
+            long current = catalogVersion.current();
+            if (version != current) {
+                log.info("Ignoring the snapshot of the caches {}, taken at catalog version {} while it is {}", source, version, current);
+                return 0;
+            }
+
+            ObjectInputStream objects = new ObjectInputStream(in);
+            objects.setObjectInputFilter(FILTER);
+            while (objects.readBoolean()) {
+                entries += read(objects);
+            }
+            log.info("Reloaded {} entries of the caches from the snapshot {} in {} ms", entries, source, System.currentTimeMillis() - start);
+        } catch (EOFException ex) {
+            log.warn("Ignoring the snapshot of the caches {}, truncated after {} entries", source, entries);
+        } catch (IOException | ClassNotFoundException | RuntimeException ex) {
+            log.warn("Could not read the snapshot of the caches {}, {} entries reloaded", source, entries, ex);
+        }
+        return entries;
+    }
+
+    /**
+     * Write the entries of the current generation of a cache.
+     */
+    private int write(ObjectOutputStream objects, String name) throws IOException {
+        if (!(cacheManager.getCache(name) instanceof CoalescingCache cache)
+                || !(cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> nativeCache)) {
+            return 0;
+        }
+
+        long generation = cacheGenerations.current(name);
+        int entries = 0;
+        for (Map.Entry<?, ?> entry : nativeCache.asMap().entrySet()) {
+            if (entry.getKey() instanceof PaginationKey key && key.generation() == generation && key.userId() == null
+                    && !(entry.getValue() instanceof NullValue)) {
+                Method method = key.method();
+                objects.writeBoolean(true);
+                objects.writeUTF(name);
+                objects.writeUTF(method.getDeclaringClass().getName());
+                objects.writeUTF(method.getName());
+                objects.writeObject(CachedMethods.parameterTypeNames(method));
+                objects.writeObject(key.params());
+                objects.writeObject(entry.getValue());
+                entries++;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Read an entry and put it in its cache under the current generation.
+     */
+    private int read(ObjectInputStream objects) throws IOException, ClassNotFoundException {
+        String name = objects.readUTF();
+        String className = objects.readUTF();
+        String methodName = objects.readUTF();
+        String[] parameterTypes = (String[]) objects.readObject();
+        Object[] params = (Object[]) objects.readObject();
+        Object value = objects.readObject();
+
+        Method method;
+        try {
+            method = CachedMethods.resolve(className, methodName, CachedMethods.resolveParameterTypes(parameterTypes));
+        } catch (IllegalArgumentException ex) {
+            log.debug("Skipping the snapshot entry of {}.{}: {}", className, methodName, ex.getMessage());
+            return 0;
+        }
+
+        if (!CACHES.contains(name)) {
+            return 0;
+        }
+        cacheManager.getCache(name).put(PaginationKey.of(method, cacheGenerations.current(name), null, params), value);
+        return 1;
+    }
+}
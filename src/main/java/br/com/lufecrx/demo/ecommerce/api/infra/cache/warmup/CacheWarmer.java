@@ -0,0 +1,230 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache.warmup;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.context.ApplicationContext;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.ReflectionUtils;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.PaginationKey;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.warmup.HotKeyTracker.HotKey;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.category.CategoryService;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class preloads the hottest keys of the catalog caches when the application starts, so the first requests after a
+ * deploy do not all hit the database, and periodically saves the hottest keys tracked by this node for the next start.
+ * The warm-up runs before the application is ready, so the readiness probe only reports UP when it is done or after its
+ * timeout. The keys are loaded by calling the cached methods through their proxies, in parallel, by at most the
+ * configured number of threads, each call in a read-only transaction since the methods read lazy associations.
+ * The keys are also saved when the application stops, so a deploy starts with the keys of the nodes it replaces.
+ * The metrics are cache.warmup.duration, cache.warmup.keys by result (loaded from the table, warmed or failed) and
+ * cache.warmup.coverage, the ratio of the loaded keys that were warmed.
+ * The warm-up is only done if the property api.cache.warmup.enabled is true.
+ *
+ * @see HotKeyTracker
+ * @see HotKeyStore
+ */
+@Component
+@Slf4j
+public class CacheWarmer implements ApplicationRunner {
+
+    @Autowired
+    private HotKeyTracker hotKeyTracker;
+
+    @Autowired
+    private HotKeyStore hotKeyStore;
+
+    @Autowired
+    @Qualifier("standard")
+    private ProductService productService;
+
+    @Autowired
+    @Qualifier("standard")
+    private CategoryService categoryService;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${api.cache.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${api.cache.warmup.max-keys:500}")
+    private int maxKeys;
+
+    @Value("${api.cache.warmup.concurrency:4}")
+    private int concurrency;
+
+    @Value("${api.cache.warmup.timeout:60s}")
+    private Duration timeout;
+
+    @Value("${api.cache.warmup.tracked-keys:1000}")
+    private int trackedKeys;
+
+    @Value("${api.cache.warmup.retention:7d}")
+    private Duration retention;
+
+    private final AtomicLong durationMillis = new AtomicLong();
+
+    private final AtomicInteger loadedKeys = new AtomicInteger();
+
+    private final AtomicInteger warmedKeys = new AtomicInteger();
+
+    private final AtomicInteger failedKeys = new AtomicInteger();
+
+    /**
+     * Register the metrics of the warm-up.
+     */
+    @PostConstruct
+    public void init() {
+        TimeGauge.builder("cache.warmup.duration", durationMillis, TimeUnit.MILLISECONDS, AtomicLong::get)
+                .description("The duration of the warm-up of the caches on startup")
+                .register(meterRegistry);
+        registerKeys("loaded", loadedKeys);
+        registerKeys("warmed", warmedKeys);
+        registerKeys("failed", failedKeys);
+        Gauge.builder("cache.warmup.coverage", this, warmer -> warmer.coverage())
+                .description("The ratio of the hot keys loaded on startup that were warmed")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (enabled) {
+            warmUp();
+        }
+    }
+
+    /**
+     * Preload the hottest keys saved by the nodes, waiting at most the configured timeout.
+     * The keys not warmed by then are loaded by the requests as usual.
+     */
+    public void warmUp() {
+        long start = System.currentTimeMillis();
+        List<HotKey> hotKeys;
+        try {
+            hotKeys = hotKeyStore.load(maxKeys);
+        } catch (DataAccessException ex) {
+            log.warn("Could not load the hot keys, the caches will not be warmed up", ex);
+            return;
+        }
+
+        loadedKeys.set(hotKeys.size());
+        warmedKeys.set(0);
+        failedKeys.set(0);
+
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, concurrency), new CustomizableThreadFactory("cache-warmup-"));
+        try {
+            hotKeys.forEach(hotKey -> executor.execute(() -> {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> warm(hotKey));
+                    warmedKeys.incrementAndGet();
+                } catch (RuntimeException ex) {
+                    failedKeys.incrementAndGet();
+                    log.debug("Could not warm key {} of cache {}: {}", hotKey.key(), hotKey.cache(), ex.getMessage());
+                }
+            }));
+            executor.shutdown();
+            if (!executor.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Warm-up of the caches did not finish in {}, the remaining keys are not warmed", timeout);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+
+        durationMillis.set(System.currentTimeMillis() - start);
+        log.info("Warmed up {} of {} hot keys of the caches in {} ms ({} failed)",
+                warmedKeys.get(), loadedKeys.get(), durationMillis.get(), failedKeys.get());
+    }
+
+    /**
+     * Save the hottest keys tracked by this node and delete the keys not saved by any node for the retention.
+     */
+    @Scheduled(initialDelayString = "${api.cache.warmup.save-interval:PT5M}", fixedDelayString = "${api.cache.warmup.save-interval:PT5M}")
+    public void saveHotKeys() {
+        try {
+            List<HotKey> hotKeys = hotKeyTracker.hottest(trackedKeys);
+            hotKeyStore.save(hotKeys);
+            int deleted = hotKeyStore.deleteOlderThan(retention);
+            log.debug("Saved {} hot keys of the caches, deleted {} old ones", hotKeys.size(), deleted);
+        } catch (DataAccessException ex) {
+            log.warn("Could not save the hot keys of the caches", ex);
+        }
+    }
+
+    /**
+     * Save the hottest keys when the application stops, for the nodes that replace it.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (enabled) {
+            saveHotKeys();
+        }
+    }
+
+    /**
+     * Get the ratio of the loaded keys that were warmed, 1 if there were no keys to warm.
+     *
+     * @return the coverage of the warm-up
+     */
+    public double coverage() {
+        int loaded = loadedKeys.get();
+        return loaded == 0 ? 1.0 : (double) warmedKeys.get() / loaded;
+    }
+
+    /**
+     * Load a key by calling its cached method through the proxy, which puts it in the cache.
+     */
+    private void warm(HotKey hotKey) {
+        switch (hotKey.cache()) {
+            case "product" -> productService.getProductById(((Number) hotKey.key()).longValue());
+            case "category" -> categoryService.getCategoryById(((Number) hotKey.key()).longValue());
+            default -> {
+                if (!(hotKey.key() instanceof PaginationKey key)) {
+                    throw new IllegalArgumentException("Unsupported key of cache " + hotKey.cache());
+                }
+                Object bean = applicationContext.getBean(key.method().getDeclaringClass());
+                ReflectionUtils.invokeMethod(key.method(), bean, key.params());
+            }
+        }
+    }
+
+    private void registerKeys(String result, AtomicInteger keys) {
+        Gauge.builder("cache.warmup.keys", keys, AtomicInteger::get)
+                .description("The number of hot keys loaded on startup, warmed and failed")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
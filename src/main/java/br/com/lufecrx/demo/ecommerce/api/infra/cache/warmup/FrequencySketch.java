@@ -0,0 +1,98 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache.warmup;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * This class estimates how often the keys are accessed with a count-min sketch, in a fixed amount of memory whatever the
+ * number of distinct keys.
+ * Each access increments one counter per row, chosen by a different hash of the key, and the estimate is the lowest of
+ * them, so it can only overestimate the frequency, when other keys share all its counters.
+ * The counters are halved after a number of accesses proportional to the width (aging), so the keys that were hot in the
+ * past give way to the keys that are hot now.
+ *
+ * @see HotKeyTracker
+ */
+public class FrequencySketch {
+
+    private static final long[] SEEDS = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private static final int DEPTH = SEEDS.length;
+
+    /**
+     * The number of accesses per counter of a row after which the counters are halved.
+     */
+    private static final int SAMPLE_FACTOR = 10;
+
+    private final AtomicIntegerArray counters;
+
+    private final int width;
+
+    private final int sampleSize;
+
+    private final AtomicInteger accesses = new AtomicInteger();
+
+    /**
+     * Create the sketch sized for the given number of keys.
+     *
+     * @param expectedKeys the number of distinct keys expected to be tracked, rounded up to a power of two
+     */
+    public FrequencySketch(int expectedKeys) {
+        this.width = Integer.highestOneBit((Math.max(16, expectedKeys) - 1) << 1);
+        this.counters = new AtomicIntegerArray(DEPTH * width);
+        this.sampleSize = SAMPLE_FACTOR * width;
+    }
+
+    /**
+     * Count an access to the key.
+     *
+     * @param hash the hash of the key
+     * @return the estimated frequency of the key, including this access
+     */
+    public int increment(int hash) {
+        int frequency = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, counters.incrementAndGet(index(hash, row)));
+        }
+
+        if (accesses.incrementAndGet() >= sampleSize) {
+            age();
+        }
+        return frequency;
+    }
+
+    /**
+     * Estimate the frequency of the key.
+     *
+     * @param hash the hash of the key
+     * @return the estimated frequency of the key
+     */
+    public int frequency(int hash) {
+        int frequency = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, counters.get(index(hash, row)));
+        }
+        return frequency;
+    }
+
+    /**
+     * Halve all the counters. The concurrent increments may be halved or not, which only makes the estimates approximate.
+     */
+    private synchronized void age() {
+        if (accesses.get() < sampleSize) {
+            return;
+        }
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, counters.get(i) >>> 1);
+        }
+        accesses.set(accesses.get() / 2);
+    }
+
+    private int index(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return row * width + ((int) h & (width - 1));
+    }
+}
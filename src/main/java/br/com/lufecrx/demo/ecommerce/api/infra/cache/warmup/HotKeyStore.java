@@ -0,0 +1,169 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache.warmup;
+
+import java.lang.reflect.Method;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CachedMethods;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.PaginationKey;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.warmup.HotKeyTracker.HotKey;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class persists the hottest keys of the caches in the cache_hot_keys table, shared by all the nodes.
+ * The keys are stored as JSON: an id is stored as {"id": 42}, and a pagination key as the class, name and parameter types
+ * of its method with the parameters of the call, without the generation, which is only valid in the node that created it.
+ * Each node updates the frequency of the keys it tracked, so the table holds the hottest keys of the whole cluster, and the
+ * keys not recorded by any node for the retention are deleted.
+ * The methods are resolved by {@link CachedMethods}, so the table cannot be used to call any other method.
+ *
+ * @see CacheWarmer
+ */
+@Slf4j
+public class HotKeyStore {
+
+    private static final String UPDATE_KEY = "UPDATE cache_hot_keys SET frequency = ?, recorded_at = ? WHERE cache_name = ? AND cache_key = ?";
+
+    private static final String INSERT_KEY = "INSERT INTO cache_hot_keys (cache_name, cache_key, frequency, recorded_at) VALUES (?, ?, ?, ?)";
+
+    private static final String SELECT_HOTTEST = "SELECT cache_name, cache_key, frequency FROM cache_hot_keys ORDER BY frequency DESC LIMIT ?";
+
+    private static final String DELETE_OLDER = "DELETE FROM cache_hot_keys WHERE recorded_at < ?";
+
+    private static final int MAX_KEY_LENGTH = 2048;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Create the store of the hot keys.
+     *
+     * @param jdbcTemplate the template used to read and write the table
+     * @param objectMapper the mapper of the keys to JSON
+     */
+    public HotKeyStore(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Save the frequencies of the keys, inserting the keys that are not stored yet.
+     * The keys that cannot be stored (unknown types or too long) are skipped.
+     *
+     * @param hotKeys the keys to save
+     */
+    public void save(List<HotKey> hotKeys) {
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Object[]> rows = new ArrayList<>(hotKeys.size());
+        for (HotKey hotKey : hotKeys) {
+            String key = encode(hotKey.key());
+            if (key != null && key.length() <= MAX_KEY_LENGTH) {
+                rows.add(new Object[] { hotKey.frequency(), now, hotKey.cache(), key });
+            }
+        }
+
+        int[] updated = jdbcTemplate.batchUpdate(UPDATE_KEY, rows);
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                Object[] row = rows.get(i);
+                try {
+                    jdbcTemplate.update(INSERT_KEY, row[2], row[3], row[0], row[1]);
+                } catch (DuplicateKeyException ex) {
+                    // Another node inserted it in the meantime, its frequency is as good as ours
+                }
+            }
+        }
+    }
+
+    /**
+     * Load the hottest keys, from the most to the least accessed.
+     * The keys that cannot be read anymore, e.g. because their method was renamed, are skipped.
+     *
+     * @param limit the maximum number of keys
+     * @return the hottest keys
+     */
+    public List<HotKey> load(int limit) {
+        List<HotKey> hotKeys = new ArrayList<>();
+        jdbcTemplate.query(SELECT_HOTTEST, rs -> {
+            String cache = rs.getString("cache_name");
+            String key = rs.getString("cache_key");
+            try {
+                hotKeys.add(new HotKey(cache, decode(key), rs.getLong("frequency")));
+            } catch (JsonProcessingException | RuntimeException ex) {
+                log.warn("Ignoring the hot key {} of cache {} that cannot be read: {}", key, cache, ex.getMessage());
+            }
+        }, limit);
+        return hotKeys;
+    }
+
+    /**
+     * Delete the keys that were not saved by any node for the given duration.
+     *
+     * @param retention how long a key is kept after it was last saved
+     * @return the number of keys deleted
+     */
+    public int deleteOlderThan(Duration retention) {
+        return jdbcTemplate.update(DELETE_OLDER, Timestamp.from(Instant.now().minus(retention)));
+    }
+
+    /**
+     * Encode a key as JSON, or return null if its type is not supported.
+     */
+    String encode(Object key) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        if (key instanceof PaginationKey paginationKey) {
+            Method method = paginationKey.method();
+            json.put("class", method.getDeclaringClass().getName());
+            json.put("method", method.getName());
+            json.put("parameterTypes", CachedMethods.parameterTypeNames(method));
+            json.put("params", paginationKey.params());
+        } else if (key instanceof Long || key instanceof Integer || key instanceof String) {
+            json.put("id", key);
+        } else {
+            return null;
+        }
+
+        try {
+            return objectMapper.writeValueAsString(json);
+        } catch (JsonProcessingException ex) {
+            log.warn("Hot key {} cannot be saved: {}", key, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Decode a key encoded by {@link #encode(Object)}. The pagination keys are created with the generation 0.
+     *
+     * @throws IllegalArgumentException If the method of the key is not a cacheable method of the application.
+     */
+    Object decode(String key) throws JsonProcessingException {
+        JsonNode json = objectMapper.readTree(key);
+        if (json.has("id")) {
+            JsonNode id = json.get("id");
+            return id.isIntegralNumber() ? id.asLong() : id.asText();
+        }
+
+        Class<?>[] parameterTypes = CachedMethods.resolveParameterTypes(objectMapper.treeToValue(json.path("parameterTypes"), String[].class));
+        Method method = CachedMethods.resolve(json.path("class").asText(), json.path("method").asText(), parameterTypes);
+
+        JsonNode values = json.path("params");
+        Object[] params = new Object[parameterTypes.length];
+        for (int i = 0; i < params.length; i++) {
+            params[i] = objectMapper.treeToValue(values.path(i), parameterTypes[i]);
+        }
+        return PaginationKey.of(method, 0, null, params);
+    }
+}
@@ -0,0 +1,122 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache.warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.PaginationKey;
+
+/**
+ * This class tracks the most accessed keys of the catalog caches, to preload them when the application starts.
+ * The accesses are counted by a {@link FrequencySketch}, so the memory used does not grow with the number of distinct
+ * keys. Only the candidates to the hottest keys are kept, and they are pruned to the capacity
+ * whenever they reach twice it, keeping the ones with the highest estimates.
+ * The generation of a pagination key is ignored, so a page keeps its frequency when the generation of its cache advances.
+ * Only the catalog caches should be tracked: the keys of the caches per user (wishlists) cannot be loaded without the user.
+ *
+ * @see CacheWarmer
+ */
+public class HotKeyTracker {
+
+    /**
+     * A tracked key and its estimated frequency.
+     *
+     * @param cache the name of the cache
+     * @param key the key, an id or a {@link PaginationKey}
+     * @param frequency the estimated number of recent accesses
+     */
+    public record HotKey(String cache, Object key, long frequency) {
+    }
+
+    private record Candidate(String cache, Object key) {
+    }
+
+    private final Set<String> caches;
+
+    private final int capacity;
+
+    private final FrequencySketch sketch;
+
+    private final ConcurrentMap<Integer, Candidate> candidates = new ConcurrentHashMap<>();
+
+    /**
+     * Create the tracker of the given caches.
+     *
+     * @param caches the names of the tracked caches
+     * @param capacity the number of hottest keys kept
+     */
+    public HotKeyTracker(Set<String> caches, int capacity) {
+        this.caches = caches;
+        this.capacity = capacity;
+        // The sketch counts all the keys accessed, not only the hottest, so it is much wider than the capacity
+        this.sketch = new FrequencySketch(capacity * 16);
+    }
+
+    /**
+     * Count an access to a key of a cache. The keys of the caches that are not tracked are ignored.
+     *
+     * @param cache the name of the cache
+     * @param key the key accessed
+     */
+    public void record(String cache, Object key) {
+        if (!caches.contains(cache)) {
+            return;
+        }
+
+        int hash = hash(cache, key);
+        sketch.increment(hash);
+        if (!candidates.containsKey(hash) && candidates.putIfAbsent(hash, new Candidate(cache, key)) == null
+                && candidates.size() > 2 * capacity) {
+            prune();
+        }
+    }
+
+    /**
+     * Get the hottest keys, from the most to the least accessed.
+     *
+     * @param limit the maximum number of keys
+     * @return the hottest keys and their estimated frequencies
+     */
+    public List<HotKey> hottest(int limit) {
+        List<HotKey> hottest = new ArrayList<>();
+        candidates.forEach((hash, candidate) -> {
+            int frequency = sketch.frequency(hash);
+            if (frequency > 0) {
+                hottest.add(new HotKey(candidate.cache(), candidate.key(), frequency));
+            }
+        });
+        hottest.sort(Comparator.comparingLong(HotKey::frequency).reversed());
+        return hottest.size() > limit ? hottest.subList(0, limit) : hottest;
+    }
+
+    /**
+     * Remove the least accessed candidates, keeping as many as the capacity.
+     */
+    private synchronized void prune() {
+        if (candidates.size() <= 2 * capacity) {
+            return;
+        }
+
+        List<Map.Entry<Integer, Integer>> frequencies = new ArrayList<>(candidates.size());
+        candidates.keySet().forEach(hash -> frequencies.add(Map.entry(hash, sketch.frequency(hash))));
+        frequencies.sort(Map.Entry.<Integer, Integer>comparingByValue().reversed());
+        frequencies.subList(capacity, frequencies.size()).forEach(entry -> candidates.remove(entry.getKey()));
+    }
+
+    /**
+     * Hash the key of a cache, without the generation of the pagination keys.
+     */
+    private static int hash(String cache, Object key) {
+        int hash = cache.hashCode();
+        if (key instanceof PaginationKey paginationKey) {
+            hash = 31 * hash + paginationKey.method().hashCode();
+            return 31 * hash + Arrays.deepHashCode(paginationKey.params());
+        }
+        return 31 * hash + key.hashCode();
+    }
+}
@@ -0,0 +1,46 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.database;
+
+import java.sql.DatabaseMetaData;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class identifies the database the application is connected to.
+ * It is used to choose between the PostgreSQL specific queries and their portable fallbacks (e.g. H2 in the tests).
+ */
+@Component
+@Slf4j
+public class DatabaseVendor {
+
+    private final boolean postgres;
+
+    /**
+     * Read the database product name once from the connection metadata.
+     * @param dataSource the data source of the application
+     */
+    public DatabaseVendor(DataSource dataSource) {
+        String productName;
+        try {
+            productName = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+        } catch (MetaDataAccessException ex) {
+            log.warn("Could not identify the database vendor, using the portable queries", ex);
+            productName = "unknown";
+        }
+        this.postgres = "PostgreSQL".equalsIgnoreCase(productName);
+        log.info("Connected to database {}", productName);
+    }
+
+    /**
+     * Check if the application is connected to PostgreSQL.
+     * @return true if the database is PostgreSQL, false otherwise
+     */
+    public boolean isPostgres() {
+        return postgres;
+    }
+}
@@ -0,0 +1,134 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.http;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+import br.com.lufecrx.demo.ecommerce.api.model.dto.RevisedDTO;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.version.VersionMismatchException;
+
+/**
+ * This class creates the entity tags of the catalog responses, used with WebRequest.checkNotModified to answer the
+ * conditional requests (If-None-Match and If-Modified-Since) with 304 Not Modified before the response is built.
+ * A product or category is tagged with its version, so the same tag is sent back in If-Match to update it conditionally.
+ * The listings are tagged with the catalog version, which changes on every write of the products or categories.
+ * The version is the one read with the listing, which may come from a cache, so the tag always matches the body sent.
+ * The tags are strong: the same tag always means the same body for the same URL.
+ * The responses are marked no-cache, so the clients keep them but revalidate them on each use.
+ *
+ * @see br.com.lufecrx.demo.ecommerce.api.infra.cache.CatalogVersion
+ */
+public final class CatalogETags {
+
+    /**
+     * The cache control of the catalog responses. It replaces the default of Spring Security (no-store), which does not
+     * let the clients keep the responses to revalidate them.
+     */
+    public static final CacheControl CACHE_CONTROL = CacheControl.noCache();
+
+    private CatalogETags() {
+    }
+
+    /**
+     * Create the tag of an entity of the catalog.
+     *
+     * @param type the type of the entity, e.g. "product"
+     * @param id the id of the entity
+     * @param version the version of the entity
+     * @return the quoted entity tag
+     */
+    public static String ofEntity(String type, Long id, Long version) {
+        return "\"" + type + "-" + id + "-" + version + "\"";
+    }
+
+    /**
+     * Check if a conditional read already has the given tag, before the entity is loaded. Unlike checkNotModified, it
+     * does not set the tag on the response, so the tag of the body returned can still be set when they differ.
+     * The tags of If-None-Match are compared weakly.
+     *
+     * @param ifNoneMatch the If-None-Match header, or null if the read is not conditional
+     * @param etag the quoted entity tag
+     * @return true if the header lists the tag or is "*", false otherwise
+     */
+    public static boolean isListed(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || ifNoneMatch.isBlank()) {
+            return false;
+        }
+        return Arrays.stream(ifNoneMatch.split(","))
+                .map(String::trim)
+                .map(tag -> tag.startsWith("W/") ? tag.substring(2) : tag)
+                .anyMatch(tag -> tag.equals("*") || tag.equals(etag));
+    }
+
+    /**
+     * Read the version expected by a conditional update from its If-Match header.
+     * The header may list several tags: the first strong tag of the same entity is used.
+     *
+     * @param type the type of the entity, e.g. "product"
+     * @param id the id of the entity
+     * @param ifMatch the If-Match header, or null if the update is not conditional
+     * @throws VersionMismatchException If no tag of the header can match the entity, the exception VersionMismatchException is thrown.
+     * @return the expected version, or null if any version can be updated (no header or "*")
+     */
+    public static Long expectedVersion(String type, Long id, String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank()) {
+            return null;
+        }
+
+        List<String> tags = Arrays.stream(ifMatch.split(",")).map(String::trim).toList();
+        if (tags.contains("*")) {
+            return null;
+        }
+
+        // Weak tags never match an If-Match, so only the quoted tags of this entity are read
+        String prefix = "\"" + type + "-" + id + "-";
+        for (String tag : tags) {
+            if (tag.startsWith(prefix) && tag.endsWith("\"") && tag.length() > prefix.length() + 1) {
+                try {
+                    return Long.valueOf(tag.substring(prefix.length(), tag.length() - 1));
+                } catch (NumberFormatException ex) {
+                    // Not one of our tags, try the next one
+                }
+            }
+        }
+        throw new VersionMismatchException(type, id);
+    }
+
+    /**
+     * Create the tag of a listing of the catalog.
+     *
+     * @param catalogVersion the current version of the catalog
+     * @return the quoted entity tag
+     */
+    public static String ofCatalog(long catalogVersion) {
+        return "\"catalog-" + catalogVersion + "\"";
+    }
+
+    /**
+     * Create the response of a listing of the catalog, tagged with the catalog version it was read at.
+     * A conditional request whose tag matches is answered with 304 Not Modified, without the body.
+     *
+     * @param request the request, with its conditional headers
+     * @param listing the listing and the catalog version read before it
+     * @return the 200 response with the listing, or the empty 304 Not Modified response
+     */
+    public static <T> ResponseEntity<T> listing(WebRequest request, RevisedDTO<? extends T> listing) {
+        if (request.checkNotModified(ofCatalog(listing.version()))) {
+            return notModified();
+        }
+        return ResponseEntity.ok().cacheControl(CACHE_CONTROL).body(listing.content());
+    }
+
+    /**
+     * Create the response of a conditional request whose tag matched. The tag itself was already set by checkNotModified.
+     *
+     * @return the empty 304 Not Modified response
+     */
+    public static <T> ResponseEntity<T> notModified() {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(CACHE_CONTROL).build();
+    }
+}
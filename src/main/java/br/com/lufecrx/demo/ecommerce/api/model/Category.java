@@ -1,14 +1,22 @@
 package br.com.lufecrx.demo.ecommerce.api.model;
 
+import java.time.Instant;
+
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import jakarta.validation.constraints.NotBlank;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
 /**
@@ -37,5 +45,29 @@ public class Category {
      */
     @NotBlank(message = "Category name cannot be blank")
     private String name;
-    
+
+    /*
+     * The time of the last change of the category, set by Hibernate on each insert and update.
+     * It is used to answer the conditional requests of the category (ETag and Last-Modified).
+     */
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    @EqualsAndHashCode.Exclude
+    private Instant updatedAt;
+
+    /*
+     * The version of the category, incremented by Hibernate on each update.
+     * An update of a stale copy of the category fails instead of overwriting a concurrent change.
+     */
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    @EqualsAndHashCode.Exclude
+    private Long version;
+
+    public Category(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
 }
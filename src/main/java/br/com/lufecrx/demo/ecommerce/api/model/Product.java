@@ -1,9 +1,15 @@
 package br.com.lufecrx.demo.ecommerce.api.model;
 
+import java.time.Instant;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.UpdateTimestamp;
+
 import jakarta.persistence.CascadeType;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
@@ -13,12 +19,15 @@ import jakarta.persistence.JoinColumn;
 import jakarta.persistence.JoinTable;
 import jakarta.persistence.ManyToMany;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 /**
  * A Product represents an item that can be added to a Wishlist.
@@ -54,17 +63,43 @@ public class Product {
     @Min(value = 0, message = "Price cannot be less than zero")
     private Double price;
 
+    /*
+     * The time of the last change of the product, set by Hibernate on each insert and update.
+     * It is used to answer the conditional requests of the product (ETag and Last-Modified).
+     */
+    @UpdateTimestamp
+    @Column(name = "updated_at", nullable = false)
+    @EqualsAndHashCode.Exclude
+    private Instant updatedAt;
+
+    /*
+     * The version of the product, incremented by Hibernate on each update.
+     * An update of a stale copy of the product fails instead of overwriting a concurrent change.
+     */
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    @EqualsAndHashCode.Exclude
+    private Long version;
+
     /*
      * The wishlists that the product belongs to.
+     * The associations are not part of equals, hashCode and toString, so adding a product to a set does not load them.
      */
     @ManyToMany(mappedBy = "products")
     @Builder.Default
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     private Set<Wishlist> wishlists = new HashSet<>();
 
     /*
      * The categories that the product belongs to.
+     * They are loaded in batches: reading the categories of a product of a page loads the categories of the whole page in one query.
      */
     @ManyToMany(fetch = FetchType.LAZY, cascade = CascadeType.ALL)
+    @BatchSize(size = 100)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     @JoinTable(name = "product_categories",
                joinColumns = @JoinColumn(name = "product_id"),
                inverseJoinColumns = @JoinColumn(name = "category_id"))
@@ -0,0 +1,18 @@
+package br.com.lufecrx.demo.ecommerce.api.model;
+
+import java.time.Instant;
+
+/**
+ * A Revision identifies the state of a product or category without loading it.
+ * It is used to answer the conditional requests: the version is the entity tag and the time of the change is the last modification date.
+ *
+ * @param version the version of the entity, incremented on each update
+ * @param updatedAt the time of the last change of the entity
+ *
+ * @see Product
+ * @see Category
+ */
+public record Revision(
+        Long version,
+        Instant updatedAt) {
+}
@@ -3,7 +3,11 @@ package br.com.lufecrx.demo.ecommerce.api.model;
 import java.util.HashSet;
 import java.util.Set;
 
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.ColumnDefault;
+
 import br.com.lufecrx.demo.ecommerce.auth.model.User;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
@@ -14,11 +18,14 @@ import jakarta.persistence.JoinTable;
 import jakarta.persistence.ManyToMany;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import jakarta.validation.constraints.NotBlank;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 /**
  * A Wishlist represents a list of products that a user wants to buy.
@@ -47,10 +54,25 @@ public class Wishlist {
     @NotBlank(message = "Wishlist name cannot be blank")
     private String name;
 
+    /*
+     * The version of the wishlist, incremented by Hibernate on each update, including the changes of its products.
+     * Concurrent changes of the same wishlist fail instead of overwriting each other.
+     */
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    @EqualsAndHashCode.Exclude
+    private Long version;
+
     /*
      * The set of products in the wishlist.
+     * They are loaded in batches: reading the products of a wishlist of a page loads the products of the whole page in one query.
+     * The associations are not part of equals, hashCode and toString, so adding a wishlist to a set does not load them.
      */
     @ManyToMany
+    @BatchSize(size = 100)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     @JoinTable(
         name = "wishlist_product",
         joinColumns = @JoinColumn(name = "wishlist_id"),
@@ -63,6 +85,8 @@ public class Wishlist {
      */
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
     private User user;
 
     /**
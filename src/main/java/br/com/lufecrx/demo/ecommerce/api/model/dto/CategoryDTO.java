@@ -1,5 +1,6 @@
 package br.com.lufecrx.demo.ecommerce.api.model.dto;
 
+import java.io.Serializable;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -14,7 +15,7 @@ import br.com.lufecrx.demo.ecommerce.api.model.Category;
  */
 public record CategoryDTO(
     String name
-) {
+) implements Serializable {
 
     /**
      * Method to convert a category to a category DTO.
@@ -0,0 +1,15 @@
+package br.com.lufecrx.demo.ecommerce.api.model.dto;
+
+import java.util.List;
+
+/**
+ * Class to represent a page of a keyset (cursor based) pagination.
+ * Instead of a total, it carries the opaque cursor to request the next page.
+ * @param content the elements of the page.
+ * @param nextCursor the cursor to be sent as the "after" parameter to get the next page, or null if this is the last page.
+ */
+public record CursorPageDTO<T>(
+    List<T> content,
+    String nextCursor
+) {
+}
@@ -0,0 +1,31 @@
+package br.com.lufecrx.demo.ecommerce.api.model.dto;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class to represent a page of a search with the facet counts of all its results.
+ * Like a Spring Page, it is iterable over its content.
+ * @param content the elements of the page.
+ * @param page the page number.
+ * @param size the number of elements per page.
+ * @param totalElements the number of elements that match the search.
+ * @param categoryCounts the number of matching elements per category name, the largest first.
+ * @param priceBuckets the number of matching elements per price range.
+ */
+public record FacetedPageDTO<T>(
+    List<T> content,
+    int page,
+    int size,
+    long totalElements,
+    Map<String, Long> categoryCounts,
+    List<PriceBucketDTO> priceBuckets
+) implements Iterable<T>, Serializable {
+
+    @Override
+    public Iterator<T> iterator() {
+        return content.iterator();
+    }
+}
@@ -0,0 +1,11 @@
+package br.com.lufecrx.demo.ecommerce.api.model.dto;
+
+/**
+ * Class to represent the result of a bulk price adjustment.
+ * @param affected the number of products whose prices were adjusted, or would be in a dry run.
+ * @param dryRun true if the prices were not changed, only counted.
+ */
+public record PriceAdjustmentReportDTO(
+        long affected,
+        boolean dryRun) {
+}
@@ -0,0 +1,15 @@
+package br.com.lufecrx.demo.ecommerce.api.model.dto;
+
+import java.io.Serializable;
+
+/**
+ * Class to represent the number of products of a price range in a faceted search.
+ * @param from the lowest price of the range, inclusive.
+ * @param to the highest price of the range, exclusive, or null for the last range.
+ * @param count the number of products in the range.
+ */
+public record PriceBucketDTO(
+        Double from,
+        Double to,
+        long count) implements Serializable {
+}
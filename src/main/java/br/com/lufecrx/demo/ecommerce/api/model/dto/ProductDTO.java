@@ -1,8 +1,12 @@
 package br.com.lufecrx.demo.ecommerce.api.model.dto;
 
+import java.io.Serializable;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
+import br.com.lufecrx.demo.ecommerce.api.model.Category;
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
 
 /**
@@ -16,7 +20,7 @@ import br.com.lufecrx.demo.ecommerce.api.model.Product;
 public record ProductDTO(
         String name,
         Double price,
-        Set<CategoryDTO> categories) {
+        Set<CategoryDTO> categories) implements Serializable {
 
     /**
      * Method to convert a product to a product DTO.
@@ -24,7 +28,19 @@ public record ProductDTO(
      * @return the product DTO.
      */
     public static ProductDTO from(Product product) {
-        Set<CategoryDTO> categories = product.getCategories() != null ? CategoryDTO.from(product.getCategories()) : new HashSet<>();
+        return from(product, CategoryDTO::from);
+    }
+
+    /**
+     * Method to convert a product to a product DTO, mapping its categories with the given function, e.g. to share the category DTOs.
+     * @param product the product to be converted.
+     * @param categoryMapper the function to convert each category of the product.
+     * @return the product DTO.
+     */
+    public static ProductDTO from(Product product, Function<Category, CategoryDTO> categoryMapper) {
+        Set<CategoryDTO> categories = product.getCategories() != null
+                ? product.getCategories().stream().map(categoryMapper).collect(Collectors.toSet())
+                : new HashSet<>();
         return new ProductDTO(product.getProductName(), product.getPrice(), categories);
     }
 
@@ -34,6 +50,6 @@ public record ProductDTO(
      * @return the set of product DTOs.
      */
     public static Set<ProductDTO> from(Set<Product> products) {
-        return products.stream().map(ProductDTO::from).collect(java.util.stream.Collectors.toSet());
+        return products.stream().map(ProductDTO::from).collect(Collectors.toSet());
     }
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package br.com.lufecrx.demo.ecommerce.api.model.dto;
+
+/**
+ * Class to represent a row of a product import that could not be imported.
+ * @param line the line number of the row in the imported file, starting at 1.
+ * @param message the reason why the row was not imported.
+ */
+public record ProductImportErrorDTO(
+        long line,
+        String message) {
+}
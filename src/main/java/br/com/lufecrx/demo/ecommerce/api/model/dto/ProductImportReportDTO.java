@@ -0,0 +1,15 @@
+package br.com.lufecrx.demo.ecommerce.api.model.dto;
+
+import java.util.List;
+
+/**
+ * Class to represent the result of a product import.
+ * @param imported the number of products imported.
+ * @param failed the number of rows that could not be imported.
+ * @param errors the errors of the failed rows, limited to the first ones so the report stays small.
+ */
+public record ProductImportReportDTO(
+        long imported,
+        long failed,
+        List<ProductImportErrorDTO> errors) {
+}
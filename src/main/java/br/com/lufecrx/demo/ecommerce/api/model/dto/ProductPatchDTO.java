@@ -0,0 +1,22 @@
+package br.com.lufecrx.demo.ecommerce.api.model.dto;
+
+import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+
+/**
+ * Class to represent a partial update of a product: only the fields that are not null are changed.
+ * The categories are not part of it, since they are not stored in the row of the product.
+ * @param name the new name of the product, or null to keep it.
+ * @param price the new price of the product, or null to keep it.
+ * 
+ * @see Product
+ */
+public record ProductPatchDTO(
+        @Pattern(regexp = ".*\\S.*", message = "Product name cannot be blank")
+        @Size(max = 255, message = "Product name cannot be longer than 255 characters")
+        String name,
+        @Min(value = 0, message = "Price cannot be less than zero")
+        Double price) {
+}
@@ -0,0 +1,30 @@
+package br.com.lufecrx.demo.ecommerce.api.model.dto;
+
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Class to represent a DTO with the revision of the entity it was read from.
+ * It is cached with the DTO, so the conditional responses are tagged with the version of the body actually returned,
+ * even when the cached DTO is older than the entity.
+ * The listings of the catalog are revised by the version of the catalog, read before them, and have no time of change.
+ * @param content the DTO.
+ * @param version the version of the entity when it was read.
+ * @param updatedAt the time of the last change of the entity when it was read, or null for a listing.
+ * 
+ * @see br.com.lufecrx.demo.ecommerce.api.model.Revision
+ */
+public record RevisedDTO<T>(
+        T content,
+        Long version,
+        Instant updatedAt) implements Serializable {
+
+    /**
+     * Create a listing of the catalog with the version of the catalog it was read at.
+     * @param content the listing.
+     * @param catalogVersion the version of the catalog, read before the listing.
+     */
+    public RevisedDTO(T content, Long catalogVersion) {
+        this(content, catalogVersion, null);
+    }
+}
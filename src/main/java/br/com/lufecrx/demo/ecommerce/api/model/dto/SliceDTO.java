@@ -0,0 +1,42 @@
+package br.com.lufecrx.demo.ecommerce.api.model.dto;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.data.domain.Slice;
+
+/**
+ * Class to represent a page of a paginated listing without the exact total.
+ * Like a Spring Page, it is iterable over its content.
+ * @param content the elements of the page.
+ * @param page the page number.
+ * @param size the number of elements per page.
+ * @param hasNext whether there is a next page.
+ * @param approximateTotal the approximate number of elements of the listing, or null if it was not requested.
+ */
+public record SliceDTO<T>(
+    List<T> content,
+    int page,
+    int size,
+    boolean hasNext,
+    Long approximateTotal
+) implements Iterable<T>, Serializable {
+
+    /**
+     * Method to convert a slice of entities to a slice DTO.
+     * @param slice the slice to be converted.
+     * @param mapper the function to convert each element.
+     * @param approximateTotal the approximate total, or null.
+     * @return the slice DTO.
+     */
+    public static <E, T> SliceDTO<T> from(Slice<E> slice, Function<E, T> mapper, Long approximateTotal) {
+        return new SliceDTO<>(slice.getContent().stream().map(mapper).toList(), slice.getNumber(), slice.getSize(), slice.hasNext(), approximateTotal);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return content.iterator();
+    }
+}
@@ -1,10 +1,17 @@
 package br.com.lufecrx.demo.ecommerce.api.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import br.com.lufecrx.demo.ecommerce.api.model.Category;
+import br.com.lufecrx.demo.ecommerce.api.model.Revision;
 
 /**
  * This interface is a repository for the Category entity.
@@ -25,4 +32,29 @@ public interface CategoryRepository extends JpaRepository<Category, Long> {
      */
     boolean existsByName(String name);
 
+    /**
+     * Find the categories with the given names, with a single query.
+     * 
+     * @param names The names of the categories.
+     * @return The categories found. The names that do not exist are left out.
+     */
+    List<Category> findByNameIn(Collection<String> names);
+
+    /**
+     * Find a slice of the categories without counting them.
+     * 
+     * @param pageable The pageable object.
+     * @return A Slice containing the categories.
+     */
+    Slice<Category> findSliceBy(Pageable pageable);
+
+    /**
+     * Find the version and the time of the last change of a category, without loading it.
+     * 
+     * @param id The id of the category.
+     * @return The revision of the category, or empty if the category does not exist.
+     */
+    @Query("SELECT new br.com.lufecrx.demo.ecommerce.api.model.Revision(c.version, c.updatedAt) FROM Category c WHERE c.id = :id")
+    Optional<Revision> findRevisionById(@Param("id") Long id);
+
 }
@@ -1,16 +1,27 @@
 package br.com.lufecrx.demo.ecommerce.api.repository;
 
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import br.com.lufecrx.demo.ecommerce.api.model.Revision;
+import jakarta.persistence.QueryHint;
 
-public interface ProductRepository extends JpaRepository<Product, Long> {
+public interface ProductRepository extends JpaRepository<Product, Long>, ProductSearchRepository {
     
     @Query("SELECT p FROM Product p JOIN p.categories c WHERE " +
            "(:productName IS NULL OR p.productName LIKE %:productName%) AND " +
@@ -21,4 +32,276 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
                                                                @Param("minPrice") Double minPrice, 
                                                                @Param("maxPrice") Double maxPrice, 
                                                                Pageable pageable);
+
+    /**
+     * Find the first page of a keyset (seek) pagination.
+     * The result is a plain list, so no count query is executed.
+     *
+     * @param pageable The limit and the sort (sort key followed by the id).
+     * @return The first products in the given order.
+     */
+    @Query("SELECT p FROM Product p")
+    List<Product> findKeysetFirstPage(Pageable pageable);
+
+    /**
+     * Find the products that come after the given name and id, in ascending order.
+     *
+     * @param productName The name of the last product of the previous page.
+     * @param id The id of the last product of the previous page.
+     * @param pageable The limit and the sort (productName, id ascending).
+     * @return The products after the given position.
+     */
+    @Query("SELECT p FROM Product p WHERE (p.productName, p.id) > (:productName, :id)")
+    List<Product> findKeysetByNameAfter(@Param("productName") String productName,
+                                        @Param("id") Long id,
+                                        Pageable pageable);
+
+    /**
+     * Find the products that come after the given name and id, in descending order.
+     *
+     * @param productName The name of the last product of the previous page.
+     * @param id The id of the last product of the previous page.
+     * @param pageable The limit and the sort (productName, id descending).
+     * @return The products after the given position.
+     */
+    @Query("SELECT p FROM Product p WHERE (p.productName, p.id) < (:productName, :id)")
+    List<Product> findKeysetByNameBefore(@Param("productName") String productName,
+                                         @Param("id") Long id,
+                                         Pageable pageable);
+
+    /**
+     * Find the products that come after the given price and id, in ascending order.
+     *
+     * @param price The price of the last product of the previous page.
+     * @param id The id of the last product of the previous page.
+     * @param pageable The limit and the sort (price, id ascending).
+     * @return The products after the given position.
+     */
+    @Query("SELECT p FROM Product p WHERE (p.price, p.id) > (:price, :id)")
+    List<Product> findKeysetByPriceAfter(@Param("price") Double price,
+                                         @Param("id") Long id,
+                                         Pageable pageable);
+
+    /**
+     * Find the products that come after the given price and id, in descending order.
+     *
+     * @param price The price of the last product of the previous page.
+     * @param id The id of the last product of the previous page.
+     * @param pageable The limit and the sort (price, id descending).
+     * @return The products after the given position.
+     */
+    @Query("SELECT p FROM Product p WHERE (p.price, p.id) < (:price, :id)")
+    List<Product> findKeysetByPriceBefore(@Param("price") Double price,
+                                          @Param("id") Long id,
+                                          Pageable pageable);
+
+    /**
+     * Find the products with an id greater than the given one, in ascending order.
+     *
+     * @param id The id of the last product of the previous page.
+     * @param pageable The limit and the sort (id ascending).
+     * @return The products after the given position.
+     */
+    @Query("SELECT p FROM Product p WHERE p.id > :id")
+    List<Product> findKeysetByIdAfter(@Param("id") Long id, Pageable pageable);
+
+    /**
+     * Find the products with an id lower than the given one, in descending order.
+     *
+     * @param id The id of the last product of the previous page.
+     * @param pageable The limit and the sort (id descending).
+     * @return The products after the given position.
+     */
+    @Query("SELECT p FROM Product p WHERE p.id < :id")
+    List<Product> findKeysetByIdBefore(@Param("id") Long id, Pageable pageable);
+
+    /**
+     * Find a slice of the products without counting them.
+     *
+     * @param pageable The page, size and sort.
+     * @return The products of the page and whether there is a next one.
+     */
+    Slice<Product> findSliceBy(Pageable pageable);
+
+    /**
+     * Find a slice of the products that match the search filters without counting them.
+     * The filters are the same of {@link #findByNameAndCategoryAndPriceRange}.
+     *
+     * @param productName The name or part of the name of the product.
+     * @param categoryName The name or part of the name of a category of the product.
+     * @param minPrice The minimum price.
+     * @param maxPrice The maximum price.
+     * @param pageable The page, size and sort.
+     * @return The matching products of the page and whether there is a next one.
+     */
+    @Query("SELECT p FROM Product p JOIN p.categories c WHERE " +
+           "(:productName IS NULL OR p.productName LIKE %:productName%) AND " +
+           "(:categoryName IS NULL OR c.name LIKE %:categoryName%) AND " +
+           "(p.price BETWEEN :minPrice AND :maxPrice)")
+    Slice<Product> findSliceByNameAndCategoryAndPriceRange(@Param("productName") String productName,
+                                                           @Param("categoryName") String categoryName,
+                                                           @Param("minPrice") Double minPrice,
+                                                           @Param("maxPrice") Double maxPrice,
+                                                           Pageable pageable);
+
+    /**
+     * Count the rows of the search, the same way the count query of the paginated search does.
+     *
+     * @param productName The name or part of the name of the product.
+     * @param categoryName The name or part of the name of a category of the product.
+     * @param minPrice The minimum price.
+     * @param maxPrice The maximum price.
+     * @return The number of rows of the search.
+     */
+    @Query("SELECT COUNT(p) FROM Product p JOIN p.categories c WHERE " +
+           "(:productName IS NULL OR p.productName LIKE %:productName%) AND " +
+           "(:categoryName IS NULL OR c.name LIKE %:categoryName%) AND " +
+           "(p.price BETWEEN :minPrice AND :maxPrice)")
+    long countByNameAndCategoryAndPriceRange(@Param("productName") String productName,
+                                             @Param("categoryName") String categoryName,
+                                             @Param("minPrice") Double minPrice,
+                                             @Param("maxPrice") Double maxPrice);
+
+    /**
+     * Find the products with an id in the given range, with their categories, to build the search index.
+     *
+     * @param fromId The first id of the range.
+     * @param toId The last id of the range.
+     * @return The products of the range.
+     */
+    @Query("SELECT DISTINCT p FROM Product p LEFT JOIN FETCH p.categories WHERE p.id BETWEEN :fromId AND :toId")
+    List<Product> findWithCategoriesByIdBetween(@Param("fromId") Long fromId, @Param("toId") Long toId);
+
+    /**
+     * Find the products with the given ids, with their categories initialized.
+     * Used to reindex the products changed by another node.
+     * 
+     * @param ids The ids of the products.
+     * @return The products that exist.
+     */
+    @Query("SELECT DISTINCT p FROM Product p LEFT JOIN FETCH p.categories WHERE p.id IN :ids")
+    List<Product> findWithCategoriesByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Find the products of a category, with all their categories, to update the search index.
+     *
+     * @param categoryId The id of the category.
+     * @return The products of the category.
+     */
+    @Query("SELECT DISTINCT p FROM Product p LEFT JOIN FETCH p.categories " +
+           "WHERE p.id IN (SELECT cp.id FROM Product cp JOIN cp.categories c WHERE c.id = :categoryId)")
+    List<Product> findWithCategoriesByCategoryId(@Param("categoryId") Long categoryId);
+
+    /**
+     * Find the lowest product id.
+     *
+     * @return The lowest id, or null if there are no products.
+     */
+    @Query("SELECT MIN(p.id) FROM Product p")
+    Long findMinId();
+
+    /**
+     * Find the highest product id.
+     *
+     * @return The highest id, or null if there are no products.
+     */
+    @Query("SELECT MAX(p.id) FROM Product p")
+    Long findMaxId();
+
+    /**
+     * Stream all the products ordered by id, to export the catalog.
+     * The rows are read through a server-side cursor with the given fetch size instead of being loaded at once, and the
+     * entities are read-only, so they are not checked for changes. Must be called in a transaction and the stream must be closed.
+     *
+     * @return The stream of products.
+     */
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT p FROM Product p ORDER BY p.id")
+    Stream<Product> streamAllByOrderById();
+
+    /**
+     * Find the names of the categories of the given products, with one query instead of one per product.
+     *
+     * @param ids The ids of the products.
+     * @return Pairs of product id and category name.
+     */
+    @Query("SELECT p.id, c.name FROM Product p JOIN p.categories c WHERE p.id IN :ids")
+    List<Object[]> findCategoryNamesByProductIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Find the ids of the products of a category, e.g. to evict them from the cache when the category changes.
+     *
+     * @param categoryId The id of the category.
+     * @return The ids of the products of the category.
+     */
+    @Query("SELECT p.id FROM Product p JOIN p.categories c WHERE c.id = :categoryId")
+    List<Long> findIdsByCategoryId(@Param("categoryId") Long categoryId);
+
+    /**
+     * Find the version and the time of the last change of a product, without loading it.
+     *
+     * @param id The id of the product.
+     * @return The revision of the product, or empty if the product does not exist.
+     */
+    @Query("SELECT new br.com.lufecrx.demo.ecommerce.api.model.Revision(p.version, p.updatedAt) FROM Product p WHERE p.id = :id")
+    Optional<Revision> findRevisionById(@Param("id") Long id);
+
+    /**
+     * Set the time of the last change of the given products, e.g. when the name of one of their categories changes.
+     * Their versions are incremented too, so the copies read before the change are stale.
+     *
+     * @param ids The ids of the products.
+     * @param updatedAt The time of the change.
+     * @return The number of products updated.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Product p SET p.updatedAt = :updatedAt, p.version = p.version + 1 WHERE p.id IN :ids")
+    int touchAll(@Param("ids") Collection<Long> ids, @Param("updatedAt") Instant updatedAt);
+
+    /**
+     * Adjust the prices of all the products of a category with a single statement, as price * factor + delta.
+     * The prices are rounded to cents and never go below zero. The versions are incremented, like any other update.
+     *
+     * @param categoryId The id of the category.
+     * @param factor The factor the prices are multiplied by, 1 to keep them.
+     * @param delta The amount added to the prices, 0 to keep them.
+     * @param updatedAt The time of the change.
+     * @return The number of products updated.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Product p SET p.price = CASE WHEN ROUND(p.price * :factor + :delta, 2) < 0 THEN 0.0 " +
+           "ELSE ROUND(p.price * :factor + :delta, 2) END, p.updatedAt = :updatedAt, p.version = p.version + 1 " +
+           "WHERE p.id IN (SELECT cp.id FROM Product cp JOIN cp.categories c WHERE c.id = :categoryId)")
+    int adjustPricesByCategoryId(@Param("categoryId") Long categoryId,
+                                 @Param("factor") double factor,
+                                 @Param("delta") double delta,
+                                 @Param("updatedAt") Instant updatedAt);
+
+    /**
+     * Update the name and/or the price of a product with a single statement, without loading it.
+     * The null values are kept, and the update only happens if the product still has the expected version.
+     *
+     * @param id The id of the product.
+     * @param productName The new name, or null to keep the current one.
+     * @param price The new price, or null to keep the current one.
+     * @param version The expected version, or null to update any version.
+     * @param updatedAt The time of the change.
+     * @return The number of products updated: 0 if the product does not exist or has another version.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE Product p SET p.productName = COALESCE(:productName, p.productName), " +
+           "p.price = COALESCE(:price, p.price), p.updatedAt = :updatedAt, p.version = p.version + 1 " +
+           "WHERE p.id = :id AND (:version IS NULL OR p.version = :version)")
+    int patch(@Param("id") Long id,
+              @Param("productName") String productName,
+              @Param("price") Double price,
+              @Param("version") Long version,
+              @Param("updatedAt") Instant updatedAt);
 }   
@@ -0,0 +1,27 @@
+package br.com.lufecrx.demo.ecommerce.api.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import br.com.lufecrx.demo.ecommerce.api.model.Product;
+
+/**
+ * This interface is a custom fragment of the ProductRepository for the ranked product search.
+ * 
+ * @see ProductSearchRepositoryImpl
+ */
+public interface ProductSearchRepository {
+
+    /**
+     * Search the products by a free text query and order them by relevance.
+     * All the filters are optional: null or blank values are not applied.
+     * 
+     * @param query The text to be searched in the name of the products.
+     * @param categoryName The name or part of the name of a category of the product.
+     * @param minPrice The minimum price.
+     * @param maxPrice The maximum price.
+     * @param pageable The page and size. The sort is ignored, since the products are ordered by relevance.
+     * @return The matching products of the page, the most relevant first, and whether there is a next page.
+     */
+    Slice<Product> searchRanked(String query, String categoryName, Double minPrice, Double maxPrice, Pageable pageable);
+}
@@ -0,0 +1,141 @@
+package br.com.lufecrx.demo.ecommerce.api.repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.database.DatabaseVendor;
+import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+/**
+ * This class implements the ranked product search.
+ * On PostgreSQL, it uses the full-text and trigram indexes created by the migrations in db/vendor/postgresql:
+ * the products match if the query matches the full-text document, is contained in the name or is similar to it,
+ * and they are ranked by the full-text rank plus the trigram similarity.
+ * On the other databases (e.g. H2 in the tests), it falls back to a case insensitive LIKE, ranking the exact matches
+ * first and the prefix matches second.
+ * 
+ * @see ProductSearchRepository
+ */
+public class ProductSearchRepositoryImpl implements ProductSearchRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private DatabaseVendor databaseVendor;
+
+    @Override
+    public Slice<Product> searchRanked(String query, String categoryName, Double minPrice, Double maxPrice, Pageable pageable) {
+        String text = query == null ? "" : query.trim();
+        String category = categoryName == null ? "" : categoryName.trim();
+
+        Query search = databaseVendor.isPostgres()
+                ? nativeSearch(text, category, minPrice, maxPrice)
+                : portableSearch(text, category, minPrice, maxPrice);
+
+        // Fetch one extra row to know if there is a next page without counting
+        search.setFirstResult((int) pageable.getOffset());
+        search.setMaxResults(pageable.getPageSize() + 1);
+
+        @SuppressWarnings("unchecked")
+        List<Product> products = search.getResultList();
+
+        boolean hasNext = products.size() > pageable.getPageSize();
+        return new SliceImpl<>(hasNext ? products.subList(0, pageable.getPageSize()) : products, pageable, hasNext);
+    }
+
+    /**
+     * Build the PostgreSQL search. Only the present filters are added, so that no parameter is bound as an untyped null.
+     */
+    private Query nativeSearch(String text, String category, Double minPrice, Double maxPrice) {
+        StringBuilder sql = new StringBuilder("SELECT p.* FROM products p WHERE 1 = 1");
+        Map<String, Object> parameters = new HashMap<>();
+
+        if (!text.isEmpty()) {
+            sql.append(" AND (p.search_vector @@ websearch_to_tsquery('simple', :text)")
+                    .append(" OR p.product_name ILIKE :textPattern")
+                    .append(" OR p.product_name % :text)");
+            parameters.put("text", text);
+            parameters.put("textPattern", containsPattern(text));
+        }
+        if (!category.isEmpty()) {
+            sql.append(" AND EXISTS (SELECT 1 FROM product_categories pc JOIN categories c ON c.id = pc.category_id")
+                    .append(" WHERE pc.product_id = p.id AND c.name ILIKE :categoryPattern)");
+            parameters.put("categoryPattern", containsPattern(category));
+        }
+        appendPriceRange(sql, parameters, "p.price", minPrice, maxPrice);
+
+        if (!text.isEmpty()) {
+            sql.append(" ORDER BY ts_rank(p.search_vector, websearch_to_tsquery('simple', :text))")
+                    .append(" + similarity(p.product_name, :text) DESC, p.id");
+        } else {
+            sql.append(" ORDER BY p.id");
+        }
+
+        Query search = entityManager.createNativeQuery(sql.toString(), Product.class);
+        parameters.forEach(search::setParameter);
+        return search;
+    }
+
+    /**
+     * Build the portable JPQL search, used when the database is not PostgreSQL.
+     */
+    private Query portableSearch(String text, String category, Double minPrice, Double maxPrice) {
+        StringBuilder jpql = new StringBuilder("SELECT p FROM Product p WHERE 1 = 1");
+        Map<String, Object> parameters = new HashMap<>();
+
+        if (!text.isEmpty()) {
+            jpql.append(" AND LOWER(p.productName) LIKE :textPattern ESCAPE '\\'");
+            parameters.put("textPattern", containsPattern(text.toLowerCase()));
+        }
+        if (!category.isEmpty()) {
+            jpql.append(" AND EXISTS (SELECT 1 FROM p.categories c WHERE LOWER(c.name) LIKE :categoryPattern ESCAPE '\\')");
+            parameters.put("categoryPattern", containsPattern(category.toLowerCase()));
+        }
+        appendPriceRange(jpql, parameters, "p.price", minPrice, maxPrice);
+
+        if (!text.isEmpty()) {
+            jpql.append(" ORDER BY CASE WHEN LOWER(p.productName) = :text THEN 0")
+                    .append(" WHEN LOWER(p.productName) LIKE :prefixPattern ESCAPE '\\' THEN 1 ELSE 2 END, p.id");
+            parameters.put("text", text.toLowerCase());
+            parameters.put("prefixPattern", escapeLike(text.toLowerCase()) + "%");
+        } else {
+            jpql.append(" ORDER BY p.id");
+        }
+
+        Query search = entityManager.createQuery(jpql.toString(), Product.class);
+        parameters.forEach(search::setParameter);
+        return search;
+    }
+
+    private static void appendPriceRange(StringBuilder query, Map<String, Object> parameters, String column, Double minPrice, Double maxPrice) {
+        if (minPrice != null) {
+            query.append(" AND ").append(column).append(" >= :minPrice");
+            parameters.put("minPrice", minPrice);
+        }
+        if (maxPrice != null) {
+            query.append(" AND ").append(column).append(" <= :maxPrice");
+            parameters.put("maxPrice", maxPrice);
+        }
+    }
+
+    private static String containsPattern(String value) {
+        return "%" + escapeLike(value) + "%";
+    }
+
+    /**
+     * Escape the LIKE wildcards of the user input, so that they are matched literally.
+     */
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -4,6 +4,7 @@ import java.util.Optional;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import br.com.lufecrx.demo.ecommerce.api.model.Wishlist;
@@ -73,4 +74,21 @@ public interface WishlistRepository extends JpaRepository<Wishlist, Long> {
      * @return A Page containing the wishlists.
      */
     Page<Wishlist> findAllByUser(User user, Pageable pageable);
+
+    /**
+     * Find a slice of the wishlists that belong to the given user, without counting them.
+     * 
+     * @param user The user that owns the wishlists.
+     * @param pageable The pageable object.
+     * @return A Slice containing the wishlists.
+     */
+    Slice<Wishlist> findSliceByUser(User user, Pageable pageable);
+
+    /**
+     * Count the wishlists that belong to the given user.
+     * 
+     * @param user The user that owns the wishlists.
+     * @return The number of wishlists of the user.
+     */
+    long countByUser(User user);
 }
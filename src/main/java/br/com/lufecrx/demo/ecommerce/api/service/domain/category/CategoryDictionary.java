@@ -0,0 +1,138 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.category;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CacheGenerations;
+import br.com.lufecrx.demo.ecommerce.api.model.Category;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.repository.CategoryRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class keeps an in-memory dictionary of all the categories: the ids by name and a single DTO per category.
+ * The categories are a small table that rarely changes but is read by every product, so the products are mapped with
+ * the shared DTOs (flyweights) instead of a new DTO per category of each product, and the names are resolved without a query each.
+ *
+ * The dictionary is an immutable snapshot replaced as a whole (copy-on-write), so the reads never lock.
+ * It belongs to the generation of the "categories" scope it was loaded in: every write of the categories advances it,
+ * in this node and in the others, and the next read loads a new snapshot.
+ * A snapshot can still be behind the database for an instant, so the ids are only hints: the callers load the
+ * categories by id and check their names.
+ *
+ * @see CacheGenerations
+ */
+@Component
+@Slf4j
+public class CategoryDictionary {
+
+    private static final String SCOPE = "categories";
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * The categories of a generation.
+     */
+    private record Snapshot(long generation, Map<String, Long> idsByName, Map<Long, CategoryDTO> dtosById) {
+    }
+
+    /**
+     * Get the ids of the categories with the given names. The unknown names are left out.
+     *
+     * @param names the names of the categories
+     * @return the ids by name of the known categories
+     */
+    public Map<String, Long> idsOf(Collection<String> names) {
+        Map<String, Long> idsByName = current().idsByName();
+
+        Map<String, Long> ids = new HashMap<>();
+        for (String name : names) {
+            Long id = idsByName.get(name);
+            if (id != null) {
+                ids.put(name, id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Get the DTO of a category, shared by all the products of the category.
+     * A category that is not in the dictionary yet, or that was renamed since, is mapped to a new DTO.
+     *
+     * @param category the category
+     * @return the DTO of the category
+     */
+    public CategoryDTO dtoOf(Category category) {
+        CategoryDTO dto = current().dtosById().get(category.getId());
+        return dto != null && dto.name().equals(category.getName()) ? dto : CategoryDTO.from(category);
+    }
+
+    /**
+     * Get the DTO of a category by its name, shared by all the products of the category.
+     *
+     * @param name the name of the category
+     * @return the DTO of the category
+     */
+    public CategoryDTO dtoOf(String name) {
+        Snapshot current = current();
+        Long id = current.idsByName().get(name);
+        return id != null ? current.dtosById().get(id) : new CategoryDTO(name);
+    }
+
+    /**
+     * Get the DTOs of a set of categories.
+     *
+     * @param categories the categories
+     * @return the DTOs of the categories
+     */
+    public Set<CategoryDTO> dtosOf(Set<Category> categories) {
+        return categories.stream().map(this::dtoOf).collect(Collectors.toSet());
+    }
+
+    /**
+     * Get the snapshot of the current generation, loading it if the categories changed.
+     * Only one thread loads a new snapshot; the generation is read before the categories, so a write during the load
+     * makes the next read load them again.
+     */
+    private Snapshot current() {
+        long generation = cacheGenerations.current(SCOPE);
+        Snapshot current = snapshot;
+        if (current != null && current.generation() == generation) {
+            return current;
+        }
+
+        synchronized (this) {
+            generation = cacheGenerations.current(SCOPE);
+            current = snapshot;
+            if (current == null || current.generation() != generation) {
+                current = load(generation);
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    private Snapshot load(long generation) {
+        Map<String, Long> idsByName = new HashMap<>();
+        Map<Long, CategoryDTO> dtosById = new HashMap<>();
+        for (Category category : categoryRepository.findAll()) {
+            idsByName.put(category.getName(), category.getId());
+            dtosById.put(category.getId(), CategoryDTO.from(category));
+        }
+
+        log.debug("Loaded the dictionary of {} categories for generation {}", idsByName.size(), generation);
+        return new Snapshot(generation, Map.copyOf(idsByName), Map.copyOf(dtosById));
+    }
+}
@@ -1,20 +1,32 @@
 package br.com.lufecrx.demo.ecommerce.api.service.domain.category;
 
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CacheGenerations;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CatalogVersion;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CoalescingCache;
 import br.com.lufecrx.demo.ecommerce.api.model.Category;
+import br.com.lufecrx.demo.ecommerce.api.model.Revision;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.RevisedDTO;
 import br.com.lufecrx.demo.ecommerce.api.repository.CategoryRepository;
+import br.com.lufecrx.demo.ecommerce.api.repository.ProductRepository;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.search.ProductIndexer;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.category.CategoryAlreadyExistsException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.category.CategoryNotFoundException;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.version.VersionMismatchException;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -30,15 +42,29 @@ public class CategoryService {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private ProductIndexer productIndexer;
+
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
+    @Autowired
+    private CatalogVersion catalogVersion;
+
+    @Autowired
+    private CacheManager cacheManager;
+
     /**
      * Create a new category with the given data and save it to the database. 
-     * CacheEvict annotation is used to remove all entries from the cache when a new category is created.
+     * The generation of the cached category lists is advanced, so they are read again. The categories cached by id are kept.
      * 
      * @param category the data of the new category.
      * @throws CategoryAlreadyExistsException If a category with the same name already exists, the exception CategoryAlreadyExistsException is thrown.
      * 
      */
-    @CacheEvict(value = "categories", allEntries = true)
     public void createCategory(CategoryDTO category) {
         log.info("Creating category with name {}", category.name());
 
@@ -51,60 +77,102 @@ public class CategoryService {
                 .build();
 
         categoryRepository.save(newCategory);
+
+        cacheGenerations.advance("categories");
+        catalogVersion.increment();
     }
 
     /**
      * Retrieve a specific category by its ID. 
      * Cacheable annotation is used to cache the result of this method, so that the next time it is called with the same parameters, the result is returned from the cache.
+     * The cache is synchronized, so the stale entry is served while it is reloaded in the background.
+     * The category is returned with the version it was read at, which may be older than the current one when it is cached.
      * 
      * @param categoryId the ID of the category to retrieve
      * @throws CategoryNotFoundException If the category does not exist, the exception CategoryNotFoundException is thrown.
-     * @return the category with the given ID
+     * @return the category with the given ID and its version
      * 
      */
-    @Cacheable(value = "categories", key = "#categoryId")
-    public Optional<CategoryDTO> getCategoryById(Long categoryId) {
+    @Cacheable(value = "category", key = "#categoryId", sync = true)
+    public RevisedDTO<CategoryDTO> getCategoryById(Long categoryId) {
         log.info("Getting category by ID {}", categoryId);
 
         Optional<Category> category = categoryRepository.findById(categoryId);
         
         if (category.isPresent()) {
-            return Optional.of(CategoryDTO.from(category.get()));
+            return new RevisedDTO<>(CategoryDTO.from(category.get()), category.get().getVersion(), category.get().getUpdatedAt());
         } else {
             throw new CategoryNotFoundException(categoryId);
         }
     }
 
+    /**
+     * Get the version and the time of the last change of the category with the given ID, to answer the conditional requests.
+     * It is read without loading the category and it is not cached, so it is always up to date.
+     * 
+     * @param categoryId the ID of the category
+     * @return the revision of the category, or empty if the category does not exist
+     */
+    public Optional<Revision> getRevision(Long categoryId) {
+        return categoryRepository.findRevisionById(categoryId);
+    }
+
+    /**
+     * Get the current version of the catalog, which changes on every write of the products or categories.
+     * It is the version of all the category listings, to answer their conditional requests.
+     * 
+     * @return the current version of the catalog
+     */
+    public long getCatalogVersion() {
+        return catalogVersion.current();
+    }
+
     /**
      * Rename the category with the given ID with the new data. 
-     * CacheEvict annotation is used to remove all entries from the cache when a category is renamed.
+     * CacheEvict annotation is used to remove only the cached entry of this category. The generation of the cached category lists
+     * is advanced, and the cached products of the category are evicted, since the products include the names of their categories.
+     * The category is saved with the version it was read with, so a concurrent rename fails instead of being overwritten.
      * 
      * @param categoryId the ID of the category to rename
      * @param updatedCategory the new data of the category
+     * @param expectedVersion the version the client read (If-Match), or null to rename any version
      * @throws CategoryNotFoundException If the category does not exist, the exception CategoryNotFoundException is thrown.
+     * @throws VersionMismatchException If the category does not have the expected version, the exception VersionMismatchException is thrown.
      * 
      */
-    @CacheEvict(value = "categories", allEntries = true)
-    public void renameCategory(Long categoryId, CategoryDTO updatedCategory) {
+    @CacheEvict(value = "category", key = "#categoryId")
+    public void renameCategory(Long categoryId, CategoryDTO updatedCategory, Long expectedVersion) {
         log.info("Updating category with ID {}", categoryId);
 
         Category category = categoryRepository.findById(categoryId)
                 .orElseThrow(() -> new CategoryNotFoundException(categoryId));
 
+        if (expectedVersion != null && !expectedVersion.equals(category.getVersion())) {
+            throw new VersionMismatchException("category", categoryId);
+        }
+
         category.setName(updatedCategory.name());
 
         categoryRepository.save(category);
+
+        // The category names are indexed with the products
+        productIndexer.onCategoryChanged(categoryId);
+
+        cacheGenerations.advance("categories");
+        catalogVersion.increment();
+        evictProducts(productRepository.findIdsByCategoryId(categoryId));
     }
 
     /**
      * Delete the category with the given ID.
-     * CacheEvict annotation is used to remove all entries from the cache when a category is deleted.
+     * CacheEvict annotation is used to remove only the cached entry of this category. The generation of the cached category lists
+     * is advanced, and the cached products of the category are evicted, since the products include the names of their categories.
      * 
      * @param categoryId the ID of the category to delete
      * @throws CategoryNotFoundException If the category does not exist, the exception CategoryNotFoundException is thrown.
      * 
      */
-    @CacheEvict(value = "categories", allEntries = true)
+    @CacheEvict(value = "category", key = "#categoryId")
     public void deleteCategory(Long categoryId) {
         log.info("Deleting category with ID {}", categoryId);
 
@@ -112,7 +180,36 @@ public class CategoryService {
             throw new CategoryNotFoundException(categoryId);
         }
 
+        // The products of the category must be found before it is deleted
+        List<Long> productIds = productRepository.findIdsByCategoryId(categoryId);
         categoryRepository.deleteById(categoryId);
+
+        cacheGenerations.advance("categories");
+        catalogVersion.increment();
+        evictProducts(productIds);
+    }
+
+    /**
+     * Evict the given products from the cache and advance the generation of the cached product lists.
+     * The time of the last change of the products is updated, since their DTOs include the names of their categories.
+     * 
+     * @param productIds the IDs of the products of a changed category
+     * 
+     */
+    private void evictProducts(List<Long> productIds) {
+        if (!productIds.isEmpty()) {
+            productRepository.touchAll(productIds, Instant.now());
+        }
+
+        // Evicted in one batch, so the other nodes are not notified once per product
+        Cache products = cacheManager.getCache("product");
+        if (products instanceof CoalescingCache coalescingCache) {
+            coalescingCache.evictAll(productIds);
+        } else if (products != null) {
+            productIds.forEach(products::evict);
+        }
+
+        cacheGenerations.advance("products");
     }
 
 }
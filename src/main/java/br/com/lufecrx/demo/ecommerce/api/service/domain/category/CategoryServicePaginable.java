@@ -6,12 +6,16 @@ import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
 import br.com.lufecrx.demo.ecommerce.api.model.Category;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.RevisedDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.SliceDTO;
 import br.com.lufecrx.demo.ecommerce.api.repository.CategoryRepository;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.pagination.ApproximateTotalService;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.category.CategoriesEmptyException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidArgumentsToPaginationException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidSortDirectionException;
@@ -19,6 +23,10 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * This class is a paginable version of the CategoryService class, responsible for managing the categories with pagination.
+ * The keys of the cached pages are made by the categoriesKeyGenerator, with the generation of the categories, which is advanced by every write.
+ * The caches are synchronized, so the concurrent misses load once, and their stale entries are served while they are reloaded in the background.
+ * The cached listings hold the version of the catalog read before them, so they are tagged with the version of the body
+ * actually returned, even by a node that did not receive the advance of the generation yet.
  * 
  * @see CategoryService
  * 
@@ -31,6 +39,9 @@ public class CategoryServicePaginable extends CategoryService {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private ApproximateTotalService approximateTotalService;
+
     /**
      * Retrieve categories with pagination.
      * Cacheable annotation is used to cache the result of this method, so that the next time it is called with the same parameters, the result is returned from the cache.
@@ -41,11 +52,11 @@ public class CategoryServicePaginable extends CategoryService {
      * @throws InvalidArgumentsToPaginationException If the page or size are negative, the exception InvalidArgumentsToPagination is thrown.
      * @throws InvalidSortDirectionException If the sorting direction is invalid (not "asc" or "desc"), the exception InvalidSortDirectionException is thrown.
      * @throws CategoriesEmptyException If there are no categories in the database, the exception CategoriesEmptyException is thrown.
-     * @return the categories list with pagination
+     * @return the categories list with pagination and the version of the catalog
      * 
      */
-    @Cacheable(value = "categories", key = "#page.toString() + #size.toString() + T(java.util.Arrays).toString(#sort)")
-    public Iterable<CategoryDTO> getWithPagination(int page, int size, String[] sort) {
+    @Cacheable(value = "categories", keyGenerator = "categoriesKeyGenerator", sync = true)
+    public RevisedDTO<Iterable<CategoryDTO>> getWithPagination(int page, int size, String[] sort) {
 
         if (page < 0 || size < 0) {
             throw new InvalidArgumentsToPaginationException();
@@ -67,13 +78,64 @@ public class CategoryServicePaginable extends CategoryService {
 
         Pageable pageRequest = PageRequest.of(page, size, Sort.by(direction, property));
 
+        long catalogVersion = getCatalogVersion();
         Page<Category> categories = categoryRepository.findAll(pageRequest);
 
         if (!categories.iterator().hasNext()) {
             throw new CategoriesEmptyException();
         }
 
-        return categories.map(CategoryDTO::from);
+        return new RevisedDTO<>(categories.map(CategoryDTO::from), catalogVersion);
+    }
+
+    /**
+     * Retrieve categories with pagination, without counting them.
+     * The slice only tells if there is a next page, so the COUNT query of the paginated listing is not executed.
+     * If requested, an approximate total is added, taken from the database statistics or from a count cached for some seconds.
+     * Cacheable annotation is used to cache the result of this method, so that the next time it is called with the same parameters, the result is returned from the cache.
+     * 
+     * @param page the page number
+     * @param size the number of elements per page
+     * @param sort the sorting criteria (property and direction)
+     * @param approximateTotal whether the approximate total must be included
+     * @throws InvalidArgumentsToPaginationException If the page or size are negative, the exception InvalidArgumentsToPagination is thrown.
+     * @throws InvalidSortDirectionException If the sorting direction is invalid (not "asc" or "desc"), the exception InvalidSortDirectionException is thrown.
+     * @throws CategoriesEmptyException If there are no categories in the database, the exception CategoriesEmptyException is thrown.
+     * @return the categories slice and the version of the catalog
+     * 
+     */
+    @Cacheable(value = "categories", keyGenerator = "categoriesKeyGenerator", sync = true)
+    public RevisedDTO<SliceDTO<CategoryDTO>> getWithSlice(int page, int size, String[] sort, boolean approximateTotal) {
+
+        if (page < 0 || size < 0) {
+            throw new InvalidArgumentsToPaginationException();
+        }
+
+        if (sort.length != 2 || (!sort[1].equalsIgnoreCase("asc") && !sort[1].equalsIgnoreCase("desc"))) {
+            throw new InvalidSortDirectionException();
+        }
+
+        // If the size is greater than 60, set it to 60
+        if (size > 60) {
+            size = 60;
+        }
+
+        log.info("Getting all categories with slice pagination, page {}, size {} and sort {}", page, size, sort);
+
+        Pageable pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sort[1]), sort[0]));
+
+        long catalogVersion = getCatalogVersion();
+        Slice<Category> categories = categoryRepository.findSliceBy(pageRequest);
+
+        if (!categories.hasContent()) {
+            throw new CategoriesEmptyException();
+        }
+
+        Long total = approximateTotal
+                ? approximateTotalService.unfilteredTotal("categories", categoryRepository::count)
+                : null;
+
+        return new RevisedDTO<>(SliceDTO.from(categories, CategoryDTO::from, total), catalogVersion);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.pagination;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.database.DatabaseVendor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class provides approximate totals for the paginated listings, so that they do not execute a COUNT query per request.
+ * Unfiltered listings use the row estimate kept by the PostgreSQL statistics (pg_class.reltuples).
+ * Filtered listings, and databases without statistics, use an exact count that is cached per normalized filter for a time to live.
+ * 
+ */
+@Service
+@Slf4j
+public class ApproximateTotalService {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DatabaseVendor databaseVendor;
+
+    @Value("${api.pagination.approximate-total.ttl:60}")
+    private long ttlSeconds;
+
+    @Value("${api.pagination.approximate-total.max-entries:10000}")
+    private int maxEntries;
+
+    private final Map<String, CachedTotal> totals = new ConcurrentHashMap<>();
+
+    /**
+     * A counted total and the instant it expires, in milliseconds.
+     */
+    private record CachedTotal(long total, long expiresAt) {
+    }
+
+    /**
+     * Get the approximate number of rows of a whole table.
+     * 
+     * @param table the name of the table
+     * @param exactCount the count to be used when the statistics are not available
+     * @return the approximate total
+     */
+    public long unfilteredTotal(String table, LongSupplier exactCount) {
+        if (databaseVendor.isPostgres()) {
+            // reltuples is -1 (or 0 in old versions) while the table has never been analyzed
+            Long estimate = jdbcTemplate.query("SELECT reltuples::bigint FROM pg_class WHERE oid = to_regclass(?)",
+                    rs -> rs.next() ? rs.getLong(1) : null, table);
+
+            if (estimate != null && estimate > 0) {
+                return estimate;
+            }
+        }
+        return filteredTotal(table, "", exactCount);
+    }
+
+    /**
+     * Get the total of a filtered listing, counting it only if there is no valid cached total for the same filter.
+     * 
+     * @param table the name of the table, used to separate the filters of each listing
+     * @param filterKey the normalized filter, built with {@link #filterKey(Object...)}
+     * @param exactCount the count of the filtered listing
+     * @return the cached or counted total
+     */
+    public long filteredTotal(String table, String filterKey, LongSupplier exactCount) {
+        String key = table + ':' + filterKey;
+        long now = System.currentTimeMillis();
+
+        CachedTotal cached = totals.get(key);
+        if (cached != null && cached.expiresAt() > now) {
+            return cached.total();
+        }
+
+        long total = exactCount.getAsLong();
+        log.debug("Counted {} rows for {}", total, key);
+
+        if (totals.size() >= maxEntries) {
+            // Drop the expired totals first and everything if the map is still full, so it stays bounded
+            totals.values().removeIf(value -> value.expiresAt() <= now);
+            if (totals.size() >= maxEntries) {
+                totals.clear();
+            }
+        }
+        totals.put(key, new CachedTotal(total, now + ttlSeconds * 1000));
+        return total;
+    }
+
+    /**
+     * Build the normalized key of a filter: blank strings are the same as no filter and the strings are trimmed.
+     * The case is kept, because the searches are case sensitive.
+     * 
+     * @param filters the values of the filter
+     * @return the normalized key
+     */
+    public static String filterKey(Object... filters) {
+        StringBuilder key = new StringBuilder();
+        for (Object filter : filters) {
+            String value = filter == null ? "" : filter.toString().trim();
+            key.append(value.length()).append(':').append(value).append(';');
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,30 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.pagination;
+
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidArgumentsToPaginationException;
+
+/**
+ * The response modes of the paginated listings.
+ * PAGE returns a Spring Page with the exact total, which costs a COUNT query per request.
+ * SLICE only tells if there is a next page, so no count is executed.
+ * APPROXIMATE is a slice with a total taken from the database statistics or from a cached count.
+ */
+public enum PaginationMode {
+    PAGE,
+    SLICE,
+    APPROXIMATE;
+
+    /**
+     * Parse the mode received as a request parameter, ignoring the case.
+     * @param mode the name of the mode
+     * @throws InvalidArgumentsToPaginationException If the mode is unknown, the exception InvalidArgumentsToPaginationException is thrown.
+     * @return the pagination mode
+     */
+    public static PaginationMode from(String mode) {
+        for (PaginationMode value : values()) {
+            if (value.name().equalsIgnoreCase(mode)) {
+                return value;
+            }
+        }
+        throw new InvalidArgumentsToPaginationException();
+    }
+}
@@ -0,0 +1,48 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.product;
+
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.InvalidPriceAdjustmentException;
+
+/**
+ * The kinds of bulk price adjustment. Both are applied as price * factor + delta, so the UPDATE is the same for both.
+ * PERCENTAGE changes the prices by a percentage of themselves, e.g. 7 raises them by 7% and -10 lowers them by 10%.
+ * ABSOLUTE adds the same amount to all the prices, e.g. -5 lowers them by 5.
+ * 
+ * @see ProductService#adjustPrices
+ */
+public enum PriceAdjustmentType {
+    PERCENTAGE,
+    ABSOLUTE;
+
+    /**
+     * Parse the type received as a request parameter, ignoring the case.
+     * @param type the name of the type
+     * @throws InvalidPriceAdjustmentException If the type is unknown, the exception InvalidPriceAdjustmentException is thrown.
+     * @return the type of adjustment
+     */
+    public static PriceAdjustmentType from(String type) {
+        for (PriceAdjustmentType value : values()) {
+            if (value.name().equalsIgnoreCase(type)) {
+                return value;
+            }
+        }
+        throw new InvalidPriceAdjustmentException();
+    }
+
+    /**
+     * The factor the prices are multiplied by.
+     * @param amount the amount of the adjustment
+     * @return the factor
+     */
+    public double factor(double amount) {
+        return this == PERCENTAGE ? 1 + amount / 100 : 1;
+    }
+
+    /**
+     * The amount added to the prices after they are multiplied.
+     * @param amount the amount of the adjustment
+     * @return the delta
+     */
+    public double delta(double amount) {
+        return this == ABSOLUTE ? amount : 0;
+    }
+}
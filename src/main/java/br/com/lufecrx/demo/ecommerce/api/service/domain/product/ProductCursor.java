@@ -0,0 +1,89 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.product;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.springframework.data.domain.Sort;
+
+import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidCursorException;
+
+/**
+ * Class to represent the position of a keyset (seek) pagination over the products.
+ * The cursor stores the sort property and direction it was created for, the sort key of the last product returned and its id.
+ * It is sent to the clients as an opaque URL-safe token.
+ *
+ * @param property the sort property (productName, price or id)
+ * @param direction the sort direction
+ * @param key the value of the sort property of the last product returned
+ * @param id the id of the last product returned
+ *
+ * @see ProductServicePaginable
+ */
+public record ProductCursor(
+        String property,
+        Sort.Direction direction,
+        String key,
+        Long id) {
+
+    private static final String VERSION = "v1";
+
+    private static final String SEPARATOR = "|";
+
+    /**
+     * Create the cursor that points after the given product.
+     *
+     * @param product the last product of the page
+     * @param property the sort property
+     * @param direction the sort direction
+     * @return the cursor to request the next page
+     */
+    public static ProductCursor after(Product product, String property, Sort.Direction direction) {
+        String key = switch (property) {
+            case "productName" -> product.getProductName();
+            case "price" -> product.getPrice().toString();
+            default -> product.getId().toString();
+        };
+        return new ProductCursor(property, direction, key, product.getId());
+    }
+
+    /**
+     * Encode the cursor as an opaque token.
+     * The key is the last field, so it can contain the separator.
+     *
+     * @return the URL-safe token
+     */
+    public String encode() {
+        String raw = String.join(SEPARATOR, VERSION, property, direction.name(), id.toString(), key);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a token created by {@link #encode()}.
+     *
+     * @param token the token received from the client
+     * @throws InvalidCursorException If the token is malformed, the exception InvalidCursorException is thrown.
+     * @return the decoded cursor
+     */
+    public static ProductCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\" + SEPARATOR, 5);
+
+            if (parts.length != 5 || !VERSION.equals(parts[0])) {
+                throw new InvalidCursorException();
+            }
+
+            ProductCursor cursor = new ProductCursor(parts[1], Sort.Direction.valueOf(parts[2]), parts[4], Long.valueOf(parts[3]));
+
+            // Validate the key against the type of the sort property
+            if (cursor.property().equals("price")) {
+                Double.valueOf(cursor.key());
+            }
+            return cursor;
+        } catch (IllegalArgumentException ex) {
+            // Base64 errors, unknown directions and invalid numbers are all IllegalArgumentException
+            throw new InvalidCursorException();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.product;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
+import br.com.lufecrx.demo.ecommerce.api.repository.ProductRepository;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.category.CategoryDictionary;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class represents the service that exports the whole catalog, e.g. for the partners.
+ * The products are read through a database cursor and written as NDJSON (one {@link ProductDTO} per line) as they are
+ * read, in chunks: the categories of a chunk are loaded with a single query, the chunk is written and flushed, and the
+ * persistence context is cleared. So the memory used does not depend on the size of the catalog.
+ * 
+ * @see ProductRepository#streamAllByOrderById()
+ */
+@Service
+@Slf4j
+public class ProductExportService {
+
+    /*
+     * The number of products written between two flushes, the same as the fetch size of the cursor
+     */
+    private static final int CHUNK_SIZE = 1000;
+
+    private static final byte[] LINE_SEPARATOR = { '\n' };
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CategoryDictionary categoryDictionary;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Write all the products ordered by id as NDJSON.
+     * The output is not closed, so the caller can finish a compression stream wrapping the response.
+     * 
+     * @param output the stream where the products are written
+     * @throws IOException If the output cannot be written, e.g. because the client disconnected.
+     * @return the number of products exported
+     */
+    @Transactional(readOnly = true)
+    public long exportProducts(OutputStream output) throws IOException {
+        log.info("Exporting all products");
+        long start = System.currentTimeMillis();
+
+        ObjectWriter writer = objectMapper.writerFor(ProductDTO.class);
+        List<Product> chunk = new ArrayList<>(CHUNK_SIZE);
+        long exported = 0;
+
+        try (Stream<Product> products = productRepository.streamAllByOrderById()) {
+            Iterator<Product> iterator = products.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == CHUNK_SIZE) {
+                    exported += writeChunk(chunk, writer, output);
+                }
+            }
+            exported += writeChunk(chunk, writer, output);
+        }
+
+        log.info("Exported {} products in {} ms", exported, System.currentTimeMillis() - start);
+        return exported;
+    }
+
+    private int writeChunk(List<Product> chunk, ObjectWriter writer, OutputStream output) throws IOException {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+
+        // Load the categories of the whole chunk at once instead of initializing the lazy collection of each product
+        Map<Long, Set<CategoryDTO>> categories = new HashMap<>();
+        List<Long> ids = chunk.stream().map(Product::getId).toList();
+        for (Object[] row : productRepository.findCategoryNamesByProductIds(ids)) {
+            categories.computeIfAbsent((Long) row[0], id -> new HashSet<>()).add(categoryDictionary.dtoOf((String) row[1]));
+        }
+
+        for (Product product : chunk) {
+            ProductDTO dto = new ProductDTO(product.getProductName(), product.getPrice(), categories.getOrDefault(product.getId(), Set.of()));
+            output.write(writer.writeValueAsBytes(dto));
+            output.write(LINE_SEPARATOR);
+        }
+        output.flush();
+
+        // Detach the written products, so the persistence context does not grow with the export
+        int written = chunk.size();
+        chunk.clear();
+        entityManager.clear();
+        return written;
+    }
+}
@@ -0,0 +1,148 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.product;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
+
+/**
+ * The formats accepted by the product import. Both have one product per line, so the file is read as a stream.
+ * <ul>
+ * <li>NDJSON: one {@link ProductDTO} in JSON per line, e.g. {"name":"Phone","price":10.0,"categories":[{"name":"Smartphones"}]}</li>
+ * <li>CSV: the columns name, price and categories, with the categories separated by "|". The fields can be quoted with
+ * double quotes, but a quoted field cannot contain a line break. The first line is skipped if it is a header.</li>
+ * </ul>
+ * 
+ * @see ProductImportService
+ */
+public enum ProductImportFormat {
+
+    NDJSON("application/x-ndjson"),
+    CSV("text/csv");
+
+    private final MediaType mediaType;
+
+    ProductImportFormat(String mediaType) {
+        this.mediaType = MediaType.parseMediaType(mediaType);
+    }
+
+    /**
+     * Find the format of a content type.
+     * 
+     * @param contentType the content type of the request, with or without parameters (e.g. charset)
+     * @throws IllegalArgumentException If the content type is not supported, the exception IllegalArgumentException is thrown.
+     * @return the format
+     */
+    public static ProductImportFormat from(String contentType) {
+        MediaType requested = MediaType.parseMediaType(contentType);
+        return Arrays.stream(values())
+                .filter(format -> format.mediaType.isCompatibleWith(requested))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unsupported import format: " + contentType));
+    }
+
+    /**
+     * The media type of the format.
+     * 
+     * @return the media type
+     */
+    public MediaType mediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Check if a line is the header of the file, which is not imported.
+     * 
+     * @param line the first line of the file
+     * @return true if the line is a header, false otherwise
+     */
+    public boolean isHeader(String line) {
+        return this == CSV && line.trim().toLowerCase(Locale.ROOT).startsWith("name");
+    }
+
+    /**
+     * Parse a line into a product.
+     * 
+     * @param line the line, without the line break
+     * @param objectMapper the mapper of the JSON lines
+     * @throws IllegalArgumentException If the line is malformed, the exception IllegalArgumentException is thrown.
+     * @return the product of the line, not validated
+     */
+    public ProductDTO parse(String line, ObjectMapper objectMapper) {
+        if (this == NDJSON) {
+            try {
+                return objectMapper.readValue(line, ProductDTO.class);
+            } catch (JsonProcessingException ex) {
+                throw new IllegalArgumentException(ex.getOriginalMessage(), ex);
+            }
+        }
+
+        List<String> fields = splitCsv(line);
+        if (fields.size() < 2 || fields.size() > 3) {
+            throw new IllegalArgumentException("Expected the columns name, price and categories, found " + fields.size() + " columns");
+        }
+
+        Double price;
+        try {
+            price = fields.get(1).isBlank() ? null : Double.valueOf(fields.get(1).trim());
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid price '" + fields.get(1) + "'", ex);
+        }
+
+        Set<CategoryDTO> categories = new LinkedHashSet<>();
+        if (fields.size() == 3) {
+            for (String category : fields.get(2).split("\\|")) {
+                if (!category.isBlank()) {
+                    categories.add(new CategoryDTO(category.trim()));
+                }
+            }
+        }
+        return new ProductDTO(fields.get(0).trim(), price, categories);
+    }
+
+    /*
+     * Split a CSV line (RFC 4180) into its fields. Quoted fields can contain commas and escaped quotes ("").
+     */
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,294 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.product;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CacheGenerations;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CatalogVersion;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductImportErrorDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductImportReportDTO;
+import br.com.lufecrx.demo.ecommerce.api.repository.CategoryRepository;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.search.ProductIndexDocument;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.search.ProductIndexer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class represents the service that imports products in bulk, e.g. for the catalog synchronization.
+ * The file is read as a stream, one product per line, so its size is not limited by the memory.
+ * The categories are resolved once through an in-memory map of names to ids instead of a query per category,
+ * the products are inserted with JDBC batches of api.products.import.batch-size rows, each batch in its own
+ * transaction, and the generation of the cached product lists is advanced once at the end of the import.
+ * The rows that are malformed or invalid are skipped and reported with their line numbers.
+ * 
+ * @see ProductImportFormat
+ */
+@Service
+@Slf4j
+public class ProductImportService {
+
+    private final static ResourceBundle bundle = ResourceBundle.getBundle("messages", Locale.getDefault());
+
+    private static final String INSERT_CATEGORY = "INSERT INTO categories (name, updated_at) VALUES (?, CURRENT_TIMESTAMP)";
+
+    private static final String INSERT_PRODUCT = "INSERT INTO products (product_name, price, updated_at) VALUES (?, ?, CURRENT_TIMESTAMP)";
+
+    private static final String INSERT_PRODUCT_CATEGORY = "INSERT INTO product_categories (product_id, category_id) VALUES (?, ?)";
+
+    /*
+     * The size of the name columns of the products and categories tables
+     */
+    private static final int MAX_NAME_LENGTH = 255;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private ProductIndexer productIndexer;
+
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
+    @Autowired
+    private CatalogVersion catalogVersion;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${api.products.import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${api.products.import.max-reported-errors:1000}")
+    private int maxReportedErrors;
+
+    /**
+     * A valid row waiting to be inserted.
+     */
+    private record ImportRow(long line, String name, Double price, Set<String> categories) {
+    }
+
+    /**
+     * The rows of a batch inserted in the database and the categories created for them.
+     */
+    private record InsertedBatch(List<ProductIndexDocument> documents, Map<String, Long> createdCategories) {
+    }
+
+    /**
+     * The progress of an import.
+     */
+    private class ImportReport {
+
+        private long imported;
+
+        private long failed;
+
+        private final List<ProductImportErrorDTO> errors = new ArrayList<>();
+
+        void error(long line, String message) {
+            failed++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new ProductImportErrorDTO(line, message));
+            }
+        }
+
+        ProductImportReportDTO toDTO() {
+            return new ProductImportReportDTO(imported, failed, List.copyOf(errors));
+        }
+    }
+
+    /**
+     * Import the products of a file. The categories that do not exist are created, like when a single product is created.
+     * Each batch is committed independently, so the rows imported before a failed batch are kept.
+     * The generation of the cached product lists is advanced once, when the import ends. The products cached by id are kept,
+     * since the import only creates products.
+     * 
+     * @param input the content of the file, read line by line
+     * @param format the format of the file
+     * @return the number of products imported and the errors of the rows that were not imported
+     */
+    public ProductImportReportDTO importProducts(InputStream input, ProductImportFormat format) {
+        log.info("Importing products from {}", format);
+        long start = System.currentTimeMillis();
+
+        // Resolve the categories in memory instead of querying them for each row
+        Map<String, Long> categoryIds = new HashMap<>();
+        categoryRepository.findAll().forEach(category -> categoryIds.putIfAbsent(category.getName(), category.getId()));
+        int existingCategories = categoryIds.size();
+
+        ImportReport report = new ImportReport();
+        List<ImportRow> batch = new ArrayList<>(batchSize);
+        long lineNumber = 0;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (lineNumber == 1 && format.isHeader(line))) {
+                    continue;
+                }
+
+                try {
+                    batch.add(validate(lineNumber, format.parse(line, objectMapper)));
+                } catch (IllegalArgumentException ex) {
+                    report.error(lineNumber, ex.getMessage());
+                }
+
+                if (batch.size() >= batchSize) {
+                    flush(batch, categoryIds, report);
+                    batch.clear();
+                }
+            }
+        } catch (IOException ex) {
+            // The rows read until the failure are still imported
+            log.error("Failed to read the products to import at line {}", lineNumber + 1, ex);
+            report.error(lineNumber + 1, bundle.getString("product.import_read_failed"));
+        }
+        flush(batch, categoryIds, report);
+
+        cacheGenerations.advance("products");
+        if (categoryIds.size() > existingCategories) {
+            cacheGenerations.advance("categories");
+        }
+        catalogVersion.increment();
+
+        log.info("Imported {} products with {} failed rows in {} ms", report.imported, report.failed, System.currentTimeMillis() - start);
+        return report.toDTO();
+    }
+
+    /*
+     * Check the row against the constraints of the products table, so a single invalid row does not fail its whole batch.
+     */
+    private ImportRow validate(long line, ProductDTO product) {
+        if (product.name() == null || product.name().isBlank() || product.name().length() > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException(bundle.getString("product.import_invalid_name"));
+        }
+        if (product.price() == null || product.price().isNaN() || product.price().isInfinite() || product.price() < 0) {
+            throw new IllegalArgumentException(bundle.getString("product.import_invalid_price"));
+        }
+
+        Set<String> categories = new LinkedHashSet<>();
+        if (product.categories() != null) {
+            for (CategoryDTO category : product.categories()) {
+                if (category == null || category.name() == null || category.name().isBlank() || category.name().length() > MAX_NAME_LENGTH) {
+                    throw new IllegalArgumentException(bundle.getString("product.import_invalid_category"));
+                }
+                categories.add(category.name());
+            }
+        }
+        return new ImportRow(line, product.name(), product.price(), categories);
+    }
+
+    /*
+     * Insert a batch in its own transaction. If it fails, all its rows are reported and the import goes on.
+     */
+    private void flush(List<ImportRow> batch, Map<String, Long> categoryIds, ImportReport report) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        InsertedBatch inserted;
+        try {
+            inserted = transactionTemplate.execute(status -> insert(batch, categoryIds));
+        } catch (DataAccessException | TransactionException ex) {
+            log.error("Failed to import a batch of {} products starting at line {}", batch.size(), batch.get(0).line(), ex);
+            String reason = ex.getMostSpecificCause().getMessage();
+            batch.forEach(row -> report.error(row.line(), bundle.getString("product.import_batch_failed").replace("{reason}", String.valueOf(reason))));
+            return;
+        }
+
+        // The categories created by a rolled back batch do not exist, so they are only cached after the commit
+        categoryIds.putAll(inserted.createdCategories());
+        report.imported += batch.size();
+
+        // Keep the in-memory search index up to date
+        productIndexer.onImported(inserted.documents());
+    }
+
+    private InsertedBatch insert(List<ImportRow> batch, Map<String, Long> categoryIds) {
+        Map<String, Long> createdCategories = new HashMap<>();
+        for (ImportRow row : batch) {
+            for (String category : row.categories()) {
+                if (!categoryIds.containsKey(category) && !createdCategories.containsKey(category)) {
+                    createdCategories.put(category, insertCategory(category));
+                }
+            }
+        }
+
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(connection -> connection.prepareStatement(INSERT_PRODUCT, new String[] { "id" }),
+                new BatchPreparedStatementSetter() {
+
+                    @Override
+                    public void setValues(PreparedStatement statement, int i) throws SQLException {
+                        statement.setString(1, batch.get(i).name());
+                        statement.setDouble(2, batch.get(i).price());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return batch.size();
+                    }
+                }, keys);
+
+        List<Map<String, Object>> generatedIds = keys.getKeyList();
+        List<ProductIndexDocument> documents = new ArrayList<>(batch.size());
+        List<Object[]> links = new ArrayList<>();
+
+        for (int i = 0; i < batch.size(); i++) {
+            ImportRow row = batch.get(i);
+            Long productId = ((Number) generatedIds.get(i).values().iterator().next()).longValue();
+
+            for (String category : row.categories()) {
+                Long categoryId = createdCategories.getOrDefault(category, categoryIds.get(category));
+                links.add(new Object[] { productId, categoryId });
+            }
+            documents.add(new ProductIndexDocument(productId, row.name(), row.price(), row.categories()));
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_PRODUCT_CATEGORY, links);
+        return new InsertedBatch(documents, createdCategories);
+    }
+
+    private Long insertCategory(String name) {
+        KeyHolder key = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(INSERT_CATEGORY, new String[] { "id" });
+            statement.setString(1, name);
+            return statement;
+        }, key);
+        return ((Number) key.getKeys().values().iterator().next()).longValue();
+    }
+}
@@ -1,23 +1,48 @@
 package br.com.lufecrx.demo.ecommerce.api.service.domain.product;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CacheGenerations;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CatalogVersion;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CoalescingCache;
 import br.com.lufecrx.demo.ecommerce.api.model.Category;
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import br.com.lufecrx.demo.ecommerce.api.model.Revision;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.PriceAdjustmentReportDTO;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductPatchDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.RevisedDTO;
 import br.com.lufecrx.demo.ecommerce.api.repository.CategoryRepository;
 import br.com.lufecrx.demo.ecommerce.api.repository.ProductRepository;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.category.CategoryDictionary;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.search.ProductIndexer;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.category.CategoryNotFoundException;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.InvalidPriceAdjustmentException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.ProductNotFoundException;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.version.VersionMismatchException;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.ShoppingCartRepository;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -36,16 +61,33 @@ public class ProductService {
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private ProductIndexer productIndexer;
+
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
+    @Autowired
+    private CatalogVersion catalogVersion;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private CategoryDictionary categoryDictionary;
+
+    @Autowired
+    private ShoppingCartRepository shoppingCartRepository;
+
     /**
      * Create a new product with the given data and save it to the database.
      * The method validateCategories is used to verify if the categories already exist in the database.
-     * CacheEvict annotation is used to remove all entries from the cache when a new product is created.
+     * The generation of the cached product lists and the catalog version are advanced, so they are read again. The products cached by id are kept.
      * 
      * @param product the data of the new product
      * @see validateCategories
      * 
      */
-    @CacheEvict(value = "products", allEntries = true)
     public void createProduct(ProductDTO product) {
         log.info("Creating product with name {}", product.name());
 
@@ -57,42 +99,78 @@ public class ProductService {
                 .categories(categories.orElse(null))
                 .build();
 
-        productRepository.save(newProduct);
+        Product savedProduct = productRepository.save(newProduct);
+
+        // Keep the in-memory search index up to date
+        productIndexer.onSaved(savedProduct);
+
+        cacheGenerations.advance("products");
+        catalogVersion.increment();
     }
 
     /**
      * Retrieve a specific product by its ID. 
      * Cacheable annotation is used to cache the result of this method, so that the next time it is called with the same parameters, the result is returned from the cache.
+     * The cache is synchronized, so the concurrent calls with the same ID while it is not cached execute a single query,
+     * and the stale entry is served while it is reloaded in the background.
+     * The product is returned with the version it was read at, which may be older than the current one when it is cached.
      * 
      * @param productId the ID of the product to retrieve
      * @throws ProductNotFoundException If the product does not exist, the exception ProductNotFoundException is thrown.
-     * @return the product with the given ID
+     * @return the product with the given ID and its version
      */
-    @Cacheable(value = "products", key = "#productId")
-    public Optional<ProductDTO> getProductById(Long productId) {
+    @Cacheable(value = "product", key = "#productId", sync = true)
+    public RevisedDTO<ProductDTO> getProductById(Long productId) {
         log.info("Getting product by ID {}", productId);
 
         Optional<Product> product = productRepository.findById(productId);
         
         // Return the product if it exists, otherwise throw an exception
         if (product.isPresent()) {
-            return Optional.of(ProductDTO.from(product.get()));
+            return new RevisedDTO<>(toDTO(product.get()), product.get().getVersion(), product.get().getUpdatedAt());
         } else {
             throw new ProductNotFoundException(productId);
         }
     }
 
+    /**
+     * Get the version and the time of the last change of the product with the given ID, to answer the conditional requests.
+     * It is read without loading the product and it is not cached, so it is always up to date.
+     * 
+     * @param productId the ID of the product
+     * @return the revision of the product, or empty if the product does not exist
+     */
+    public Optional<Revision> getRevision(Long productId) {
+        return productRepository.findRevisionById(productId);
+    }
+
+    /**
+     * Get the current version of the catalog, which changes on every write of the products or categories.
+     * It is the version of all the product listings, to answer their conditional requests.
+     * 
+     * @return the current version of the catalog
+     */
+    public long getCatalogVersion() {
+        return catalogVersion.current();
+    }
+
     /**
      * Update the product with the given ID with the new data. 
-     * CacheEvict annotation is used to remove all entries from the cache when a product is updated.
+     * Only the cached entry of this product is evicted, and the generation of the cached product lists is advanced.
+     * The product is saved with the version it was read with, so a concurrent update between the read and the save fails
+     * with ObjectOptimisticLockingFailureException instead of being overwritten.
+     * The product and the subtotals of the carts with it are written in a single transaction, so a cart is never left
+     * with the old price of a product saved with a new one.
      * 
      * @param productId the ID of the product to update
      * @param updatedProduct the new data of the product
+     * @param expectedVersion the version the client read (If-Match), or null to update any version
      * @throws ProductNotFoundException If the product does not exist, the exception ProductNotFoundException is thrown.
+     * @throws VersionMismatchException If the product does not have the expected version, the exception VersionMismatchException is thrown.
      * 
      */
-    @CacheEvict(value = "products", allEntries = true)
-    public void updateProduct(Long productId, ProductDTO updatedProduct) {
+    @Transactional
+    public void updateProduct(Long productId, ProductDTO updatedProduct, Long expectedVersion) {
         log.info("Updating product with ID {}", productId);
 
         Optional<Set<Category>> categories = validateCategories(updatedProduct, categoryRepository);
@@ -102,25 +180,165 @@ public class ProductService {
         if (existingProduct.isPresent()) {
             Product product = existingProduct.get();
 
+            if (expectedVersion != null && !expectedVersion.equals(product.getVersion())) {
+                throw new VersionMismatchException("product", productId);
+            }
+
+            boolean priceChanged = !Objects.equals(product.getPrice(), updatedProduct.price());
+
             product.setProductName(updatedProduct.name());
             product.setPrice(updatedProduct.price());
             product.setCategories(categories.orElse(null));
+            // A change of the categories alone does not update the row, so the time of the change is set explicitly
+            product.setUpdatedAt(Instant.now());
 
-            productRepository.save(product);
+            Product savedProduct = productRepository.save(product);
+
+            // Keep the in-memory search index up to date, once the transaction commits
+            productIndexer.onSaved(savedProduct);
+
+            if (priceChanged) {
+                // The subtotals of the carts are kept with the current prices
+                shoppingCartRepository.refreshTotalsByProductId(productId);
+            }
+
+            evictProducts(List.of(productId));
+            cacheGenerations.advance("products");
+            catalogVersion.increment();
         } else {
             throw new ProductNotFoundException(productId);
         }
     }
 
+    /**
+     * Change the name and/or the price of the product with the given ID, with a single UPDATE statement instead of loading and saving it.
+     * The version is checked and incremented by the same statement, so the check cannot race with another update.
+     * Only the cached entry of this product is evicted, and the generation of the cached product lists is advanced.
+     * The product and the subtotals of the carts with it are written in a single transaction.
+     * 
+     * @param productId the ID of the product to update
+     * @param patch the fields to change, the null ones are kept
+     * @param expectedVersion the version the client read (If-Match), or null to update any version
+     * @throws ProductNotFoundException If the product does not exist, the exception ProductNotFoundException is thrown.
+     * @throws VersionMismatchException If the product does not have the expected version, the exception VersionMismatchException is thrown.
+     * 
+     */
+    @Transactional
+    public void patchProduct(Long productId, ProductPatchDTO patch, Long expectedVersion) {
+        log.info("Patching product with ID {}", productId);
+
+        int updated = productRepository.patch(productId, patch.name(), patch.price(), expectedVersion, Instant.now());
+
+        if (updated == 0) {
+            // Nothing was updated: find out why only on this unusual path
+            if (!productRepository.existsById(productId)) {
+                throw new ProductNotFoundException(productId);
+            }
+            throw new VersionMismatchException("product", productId);
+        }
+
+        // Keep the in-memory search index up to date, once the transaction commits
+        productIndexer.onUpdated(productId);
+
+        if (patch.price() != null) {
+            // The subtotals of the carts are kept with the current prices
+            shoppingCartRepository.refreshTotalsByProductId(productId);
+        }
+
+        evictProducts(List.of(productId));
+        cacheGenerations.advance("products");
+        catalogVersion.increment();
+    }
+
+    /**
+     * Adjust the prices of all the products of a category with a single set-based UPDATE, e.g. to raise them by 7%.
+     * The prices are rounded to cents and never go below zero. The ids of the products are read to count them in a dry run
+     * and to evict them from the cache in one batch, instead of one update and one eviction per product.
+     * The generation of the cached product lists and the catalog version are advanced, and the products of the category are reindexed.
+     * The subtotals of the carts with these products are recalculated.
+     * The prices, the subtotals of the carts and the catalog version are written in a single transaction.
+     * 
+     * @param categoryId the ID of the category of the products
+     * @param type the type of adjustment, "percentage" or "absolute"
+     * @param amount the percentage or the amount to add, negative to lower the prices
+     * @param dryRun true to only count the products, without changing them
+     * @throws InvalidPriceAdjustmentException If the type is unknown or the percentage is lower than -100, the exception InvalidPriceAdjustmentException is thrown.
+     * @throws CategoryNotFoundException If the category does not exist, the exception CategoryNotFoundException is thrown.
+     * @return the number of products adjusted, or that would be adjusted in a dry run
+     */
+    @Transactional
+    public PriceAdjustmentReportDTO adjustPrices(Long categoryId, String type, Double amount, boolean dryRun) {
+        log.info("Adjusting the prices of the products of category {} by {} ({}), dry run: {}", categoryId, amount, type, dryRun);
+
+        PriceAdjustmentType adjustment = PriceAdjustmentType.from(type);
+        if (amount == null || !Double.isFinite(amount) || (adjustment == PriceAdjustmentType.PERCENTAGE && amount < -100)) {
+            throw new InvalidPriceAdjustmentException();
+        }
+
+        if (!categoryRepository.existsById(categoryId)) {
+            throw new CategoryNotFoundException(categoryId);
+        }
+
+        if (dryRun) {
+            return new PriceAdjustmentReportDTO(productRepository.findIdsByCategoryId(categoryId).size(), true);
+        }
+
+        int updated = productRepository.adjustPricesByCategoryId(categoryId, adjustment.factor(amount), adjustment.delta(amount), Instant.now());
+        if (updated == 0) {
+            return new PriceAdjustmentReportDTO(0, false);
+        }
+
+        // Read after the update, in its transaction: the updated rows stay locked until the commit, so a product cannot
+        // leave the category before it is evicted, and a product that joined it in the meantime is only evicted again
+        List<Long> productIds = productRepository.findIdsByCategoryId(categoryId);
+
+        // The prices are indexed for the price facets, once the transaction commits
+        productIndexer.onCategoryChanged(categoryId);
+
+        // The subtotals of the carts are kept with the current prices, with a single statement for all the carts
+        shoppingCartRepository.refreshTotalsByCategoryId(categoryId);
+
+        evictProducts(productIds);
+        cacheGenerations.advance("products");
+        catalogVersion.increment();
+        return new PriceAdjustmentReportDTO(updated, false);
+    }
+
+    /*
+     * Evict the products from the cache in one batch. If a transaction is active, they are evicted again from this node
+     * after the commit, since a concurrent read may have cached them before it. The other nodes are notified on commit.
+     */
+    private void evictProducts(Collection<Long> productIds) {
+        Cache products = cacheManager.getCache("product");
+        if (products instanceof CoalescingCache coalescingCache) {
+            coalescingCache.evictAll(productIds);
+        } else if (products != null) {
+            productIds.forEach(products::evict);
+        }
+
+        if (products != null && TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    if (products instanceof CoalescingCache coalescingCache) {
+                        productIds.forEach(coalescingCache::evictLocally);
+                    } else {
+                        productIds.forEach(products::evict);
+                    }
+                }
+            });
+        }
+    }
+
     /**
      * Delete the product with the given ID.
-     * CacheEvict annotation is used to remove all entries from the cache when a product is deleted.
+     * CacheEvict annotation is used to remove only the cached entry of this product, and the generation of the cached product lists is advanced.
      * 
      * @param productId the ID of the product to delete
      * @throws ProductNotFoundException If the product does not exist, the exception ProductNotFoundException is thrown.
      * 
      */
-    @CacheEvict(value = "products", allEntries = true)
+    @CacheEvict(value = "product", key = "#productId")
     public void deleteProduct(Long productId) {
         log.info("Deleting product with ID {}", productId);
 
@@ -128,6 +346,11 @@ public class ProductService {
 
         if (existingProduct.isPresent()) {
             productRepository.delete(existingProduct.get());
+
+            productIndexer.onDeleted(productId);
+
+            cacheGenerations.advance("products");
+            catalogVersion.increment();
         } else {
             throw new ProductNotFoundException(productId);
         }
@@ -135,8 +358,9 @@ public class ProductService {
 
     /**
      * Validate the categories of a product. 
-     * If a category already exists in the database, it is added to the list of existing categories.
-     * If a category does not exist, it is saved to the database and added to the list of existing categories.
+     * The categories are resolved with the ids of the category dictionary and loaded with a single query, their names are
+     * checked since the dictionary can be behind the database for an instant. The names missing from the dictionary are
+     * searched with a single query, and the categories that do not exist are saved to the database.
      * 
      * @param product the product to validate
      * @param categoryRepository the repository for the Category entity
@@ -147,24 +371,49 @@ public class ProductService {
         log.info("Validating categories for product with name {}", product.name());
 
         Set<Category> existingCategories = new HashSet<>();
+        Set<String> missing = product.categories().stream()
+                .map(CategoryDTO::name)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
 
-        for (CategoryDTO categoryDTO : product.categories()) {
-            Optional<Category> existingCategory = categoryRepository.findByName(categoryDTO.name());
-
-            if (existingCategory.isPresent()) {
-                // If the category already exists, add it to the list of existing categories
-                existingCategories.add(existingCategory.get());
-            } else {
-                // If the category doesn't exist, save it to the database and add it to the list of existing categories
-                Category category = Category.builder()
-                                .name(categoryDTO.name())
-                                .build();
+        Map<String, Long> knownIds = missing.isEmpty() ? Map.of() : categoryDictionary.idsOf(missing);
+        if (!knownIds.isEmpty()) {
+            for (Category category : categoryRepository.findAllById(knownIds.values())) {
+                if (missing.remove(category.getName())) {
+                    existingCategories.add(category);
+                }
+            }
+        }
 
-                Category savedCategory = categoryRepository.save(category);
-                existingCategories.add(savedCategory);
+        // The names unknown to the dictionary, or whose category changed since, are searched at once
+        if (!missing.isEmpty()) {
+            for (Category category : categoryRepository.findByNameIn(missing)) {
+                if (missing.remove(category.getName())) {
+                    existingCategories.add(category);
+                }
             }
         }
+
+        // If a category doesn't exist, save it to the database and add it to the list of existing categories
+        if (!missing.isEmpty()) {
+            List<Category> categories = missing.stream()
+                    .map(name -> Category.builder().name(name).build())
+                    .toList();
+            existingCategories.addAll(categoryRepository.saveAll(categories));
+
+            // The category lists and the category dictionary are read again
+            cacheGenerations.advance("categories");
+        }
         // Return the list of existing categories
         return Optional.ofNullable(existingCategories.isEmpty() ? null : existingCategories);
     }
+
+    /**
+     * Convert a product to a DTO, sharing the DTOs of its categories through the category dictionary.
+     * 
+     * @param product the product to convert, with its categories
+     * @return the DTO of the product
+     */
+    protected ProductDTO toDTO(Product product) {
+        return ProductDTO.from(product, categoryDictionary::dtoOf);
+    }
 }
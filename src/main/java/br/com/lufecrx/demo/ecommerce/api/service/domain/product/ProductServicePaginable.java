@@ -1,5 +1,6 @@
 package br.com.lufecrx.demo.ecommerce.api.service.domain.product;
 
+import java.util.List;
 import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,19 +9,32 @@ import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.CursorPageDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.FacetedPageDTO;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.RevisedDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.SliceDTO;
 import br.com.lufecrx.demo.ecommerce.api.repository.ProductRepository;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.pagination.ApproximateTotalService;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.search.ProductIndexer;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidArgumentsToPaginationException;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidCursorException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidSortDirectionException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.ProductsEmptyException;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.SearchIndexUnavailableException;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * This class is a paginable version of the ProductService class, responsible for managing the products with pagination.
+ * The keys of the cached pages and searches are made by the productsKeyGenerator, with the generation of the products, which is advanced by every write.
+ * The caches are synchronized, so the concurrent misses load once, and their stale entries are served while they are reloaded in the background.
+ * The cached listings hold the version of the catalog read before them, so they are tagged with the version of the body
+ * actually returned, even by a node that did not receive the advance of the generation yet.
  * 
  * @see ProductService
  * 
@@ -33,6 +47,11 @@ public class ProductServicePaginable extends ProductService {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private ApproximateTotalService approximateTotalService;
+
+    @Autowired
+    private ProductIndexer productIndexer;
 
     /**
      * Retrieve products with pagination.
@@ -44,11 +63,11 @@ public class ProductServicePaginable extends ProductService {
      * @throws InvalidArgumentsToPaginationException If the page or size are negative, the exception InvalidArgumentsToPagination is thrown.
      * @throws InvalidSortDirectionException If the sorting direction is invalid (not "asc" or "desc"), the exception InvalidSortDirectionException is thrown.
      * @throws ProductsEmptyException If there are no products in the database, the exception ProductsEmptyException is thrown.
-     * @return the products list with pagination
+     * @return the products list with pagination and the version of the catalog
      * 
      */
-    @Cacheable(value = "products", key = "#page.toString() + #size.toString() + T(java.util.Arrays).toString(#sort)")
-    public Iterable<ProductDTO> getWithPagination(int page, int size, String[] sort) {
+    @Cacheable(value = "products", keyGenerator = "productsKeyGenerator", sync = true)
+    public RevisedDTO<Iterable<ProductDTO>> getWithPagination(int page, int size, String[] sort) {
 
         if (page < 0 || size < 0) {
             throw new InvalidArgumentsToPaginationException();
@@ -70,17 +89,21 @@ public class ProductServicePaginable extends ProductService {
 
         Pageable pageRequest = PageRequest.of(page, size, Sort.by(direction, property));
 
+        long catalogVersion = getCatalogVersion();
         Page<Product> products = productRepository.findAll(pageRequest);
 
         if (!products.iterator().hasNext()) {
             throw new ProductsEmptyException();
         }
 
-        return products.map(ProductDTO::from);
+        return new RevisedDTO<>(products.map(this::toDTO), catalogVersion);
     }
 
     /**
      * Search for products by name, category, and price range.
+     * The search is done in the database, which matches part of the name and honors the sort. The search ordered by relevance
+     * of the in-memory index is made by {@link #searchProductsIndexed}.
+     * The cache is synchronized, so the concurrent calls with the same parameters while they are not cached execute a single search.
      * @param name the name of the product
      * @param categoryName the name of the category 
      * @param minPrice the minimum price
@@ -89,10 +112,10 @@ public class ProductServicePaginable extends ProductService {
      * @throws InvalidArgumentsToPaginationException If the page or size are negative, the exception InvalidArgumentsToPagination is thrown.
      * @throws InvalidSortDirectionException If the sorting direction is invalid (not "asc" or "desc"), the exception InvalidSortDirectionException is thrown.
      * @throws ProductsEmptyException If there are no products that match the search criteria, the exception ProductsEmptyException is thrown.
-     * @return The list of products that match the search criteria.
+     * @return The list of products that match the search criteria and the version of the catalog.
      */
-    @Cacheable(value = "products", key = "#name + #categoryName + #minPrice.toString() + #maxPrice.toString() + #page.toString() + #size.toString() + T(java.util.Arrays).toString(#sort)")
-    public Iterable<ProductDTO> searchProducts(String name, String categoryName, Double minPrice, Double maxPrice, int page, int size, String[] sort) {
+    @Cacheable(value = "products", keyGenerator = "productsKeyGenerator", sync = true)
+    public RevisedDTO<Iterable<ProductDTO>> searchProducts(String name, String categoryName, Double minPrice, Double maxPrice, int page, int size, String[] sort) {
         log.info("Searching for products with name {}, category {}, min price {}, and max price {}", name, categoryName, minPrice, maxPrice);
 
         if (page < 0 || size < 0) {
@@ -105,12 +128,336 @@ public class ProductServicePaginable extends ProductService {
 
         Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sort[1]), sort[0]));
 
+        long catalogVersion = getCatalogVersion();
         Optional<Page<Product>> products = productRepository.findByNameAndCategoryAndPriceRange(name, categoryName, minPrice, maxPrice, pageable);
 
         if (products.isPresent()) {
-            return products.get().map(ProductDTO::from);
+            return new RevisedDTO<>(products.get().map(this::toDTO), catalogVersion);
         } else {
             throw new ProductsEmptyException();
         }
     }
+
+    /**
+     * Search for products by name, category, and price range in the in-memory index.
+     * The products must contain all the terms of the name (in their names or categories) and are ordered by relevance.
+     * The category is matched by part of its name ignoring the case.
+     * Cacheable annotation is used to cache the result of this method, so that the next time it is called with the same parameters, the result is returned from the cache.
+     * @param name the terms to be searched in the name and categories of the products
+     * @param categoryName the name or part of the name of the category
+     * @param minPrice the minimum price
+     * @param maxPrice the maximum price
+     * @param page the page number
+     * @param size the number of elements per page
+     * @throws InvalidArgumentsToPaginationException If the page or size are negative, the exception InvalidArgumentsToPagination is thrown.
+     * @throws SearchIndexUnavailableException If the in-memory index is disabled or not rebuilt yet, the exception SearchIndexUnavailableException is thrown.
+     * @throws ProductsEmptyException If there are no products that match the search criteria, the exception ProductsEmptyException is thrown.
+     * @return The page of products that match the search criteria, ordered by relevance, and the version of the catalog.
+     */
+    @Cacheable(value = "products", keyGenerator = "productsKeyGenerator", sync = true)
+    public RevisedDTO<Page<ProductDTO>> searchProductsIndexed(String name, String categoryName, Double minPrice, Double maxPrice, int page, int size) {
+        log.info("Searching for products in the index with name {}, category {}, min price {}, and max price {}", name, categoryName, minPrice, maxPrice);
+
+        if (page < 0 || size < 0) {
+            throw new InvalidArgumentsToPaginationException();
+        }
+
+        if (!productIndexer.isReady()) {
+            throw new SearchIndexUnavailableException();
+        }
+
+        // The size must be between 1 and 60
+        size = Math.max(1, Math.min(size, 60));
+
+        long catalogVersion = getCatalogVersion();
+        Page<ProductDTO> products = productIndexer.search(name, categoryName, minPrice, maxPrice, PageRequest.of(page, size));
+
+        if (!products.hasContent()) {
+            throw new ProductsEmptyException();
+        }
+
+        return new RevisedDTO<>(products, catalogVersion);
+    }
+
+    /**
+     * Retrieve products with pagination, without counting them.
+     * The slice only tells if there is a next page, so the COUNT query of the paginated listing is not executed.
+     * If requested, an approximate total is added, taken from the database statistics or from a count cached for some seconds.
+     * Cacheable annotation is used to cache the result of this method, so that the next time it is called with the same parameters, the result is returned from the cache.
+     * 
+     * @param page the page number
+     * @param size the number of elements per page
+     * @param sort the sorting criteria (property and direction)
+     * @param approximateTotal whether the approximate total must be included
+     * @throws InvalidArgumentsToPaginationException If the page or size are negative, the exception InvalidArgumentsToPagination is thrown.
+     * @throws InvalidSortDirectionException If the sorting direction is invalid (not "asc" or "desc"), the exception InvalidSortDirectionException is thrown.
+     * @throws ProductsEmptyException If there are no products in the database, the exception ProductsEmptyException is thrown.
+     * @return the products slice and the version of the catalog
+     * 
+     */
+    @Cacheable(value = "products", keyGenerator = "productsKeyGenerator", sync = true)
+    public RevisedDTO<SliceDTO<ProductDTO>> getWithSlice(int page, int size, String[] sort, boolean approximateTotal) {
+
+        if (page < 0 || size < 0) {
+            throw new InvalidArgumentsToPaginationException();
+        }
+
+        if (sort.length != 2 || (!sort[1].equalsIgnoreCase("asc") && !sort[1].equalsIgnoreCase("desc"))) {
+            throw new InvalidSortDirectionException();
+        }
+
+        // If the size is greater than 60, set it to 60
+        if (size > 60) {
+            size = 60;
+        }
+
+        log.info("Getting all products with slice pagination, page {} and size {}", page, size);
+
+        Pageable pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sort[1]), sort[0]));
+
+        long catalogVersion = getCatalogVersion();
+        Slice<Product> products = productRepository.findSliceBy(pageRequest);
+
+        if (!products.hasContent()) {
+            throw new ProductsEmptyException();
+        }
+
+        Long total = approximateTotal
+                ? approximateTotalService.unfilteredTotal("products", productRepository::count)
+                : null;
+
+        return new RevisedDTO<>(SliceDTO.from(products, this::toDTO, total), catalogVersion);
+    }
+
+    /**
+     * Search for products by name, category, and price range, without counting them.
+     * If requested, an approximate total is added, counted once per filter and cached for some seconds.
+     * @param name the name of the product
+     * @param categoryName the name of the category 
+     * @param minPrice the minimum price
+     * @param maxPrice the maximum price 
+     * @param page the page number
+     * @param size the number of elements per page
+     * @param sort the sorting criteria (property and direction)
+     * @param approximateTotal whether the approximate total must be included
+     * @throws InvalidArgumentsToPaginationException If the page or size are negative, the exception InvalidArgumentsToPagination is thrown.
+     * @throws InvalidSortDirectionException If the sorting direction is invalid (not "asc" or "desc"), the exception InvalidSortDirectionException is thrown.
+     * @throws ProductsEmptyException If there are no products that match the search criteria, the exception ProductsEmptyException is thrown.
+     * @return The slice of products that match the search criteria and the version of the catalog.
+     */
+    @Cacheable(value = "products", keyGenerator = "productsKeyGenerator", sync = true)
+    public RevisedDTO<SliceDTO<ProductDTO>> searchProductsSlice(String name, String categoryName, Double minPrice, Double maxPrice, int page, int size, String[] sort, boolean approximateTotal) {
+        log.info("Searching for a slice of products with name {}, category {}, min price {}, and max price {}", name, categoryName, minPrice, maxPrice);
+
+        if (page < 0 || size < 0) {
+            throw new InvalidArgumentsToPaginationException();
+        }
+
+        if (sort.length != 2 || (!sort[1].equalsIgnoreCase("asc") && !sort[1].equalsIgnoreCase("desc"))) {
+            throw new InvalidSortDirectionException();
+        }
+
+        // The size is capped at 60, like the other paginations
+        size = Math.max(1, Math.min(size, 60));
+
+        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sort[1]), sort[0]));
+
+        long catalogVersion = getCatalogVersion();
+        Slice<Product> products = productRepository.findSliceByNameAndCategoryAndPriceRange(name, categoryName, minPrice, maxPrice, pageable);
+
+        if (!products.hasContent()) {
+            throw new ProductsEmptyException();
+        }
+
+        Long total = approximateTotal
+                ? approximateTotalService.filteredTotal("products",
+                        ApproximateTotalService.filterKey(name, categoryName, minPrice, maxPrice),
+                        () -> productRepository.countByNameAndCategoryAndPriceRange(name, categoryName, minPrice, maxPrice))
+                : null;
+
+        return new RevisedDTO<>(SliceDTO.from(products, this::toDTO, total), catalogVersion);
+    }
+
+    /**
+     * Search for products by a free text query and order them by relevance.
+     * On PostgreSQL, the search uses the full-text and trigram indexes of the products, so it does not scan the whole catalog.
+     * The category and the price range are optional filters. No count query is executed.
+     * Cacheable annotation is used to cache the result of this method, so that the next time it is called with the same parameters, the result is returned from the cache.
+     * @param query the text to be searched in the name of the products
+     * @param categoryName the name or part of the name of the category
+     * @param minPrice the minimum price
+     * @param maxPrice the maximum price
+     * @param page the page number
+     * @param size the number of elements per page
+     * @throws InvalidArgumentsToPaginationException If the page or size are negative, the exception InvalidArgumentsToPagination is thrown.
+     * @throws ProductsEmptyException If there are no products that match the search criteria, the exception ProductsEmptyException is thrown.
+     * @return The slice of products that match the search criteria, the most relevant first, and the version of the catalog.
+     */
+    @Cacheable(value = "products", keyGenerator = "productsKeyGenerator", sync = true)
+    public RevisedDTO<SliceDTO<ProductDTO>> searchProductsRanked(String query, String categoryName, Double minPrice, Double maxPrice, int page, int size) {
+        log.info("Searching for products ranked by relevance to {}, category {}, min price {}, and max price {}", query, categoryName, minPrice, maxPrice);
+
+        if (page < 0 || size < 0) {
+            throw new InvalidArgumentsToPaginationException();
+        }
+
+        // The size must be between 1 and 60
+        size = Math.max(1, Math.min(size, 60));
+
+        long catalogVersion = getCatalogVersion();
+        Slice<Product> products = productRepository.searchRanked(query, categoryName, minPrice, maxPrice, PageRequest.of(page, size));
+
+        if (!products.hasContent()) {
+            throw new ProductsEmptyException();
+        }
+
+        return new RevisedDTO<>(SliceDTO.from(products, this::toDTO, null), catalogVersion);
+    }
+
+    /**
+     * Search for products and count all the matches per category and per price range (facets).
+     * The search and the counts are answered by the in-memory index: the category and price filters are intersections
+     * of bitmaps of product ids, so the counts do not need a query per facet.
+     * With a name, the products are ordered by relevance, otherwise by id.
+     * Cacheable annotation is used to cache the result of this method, so that the next time it is called with the same parameters, the result is returned from the cache.
+     * @param name the terms to be searched in the name and categories of the products
+     * @param categoryName the name or part of the name of the category
+     * @param categories the exact names of the categories to filter by
+     * @param categoryMatch "any" if the products must have any of the categories, "all" if they must have all of them
+     * @param minPrice the minimum price
+     * @param maxPrice the maximum price
+     * @param page the page number
+     * @param size the number of elements per page
+     * @throws InvalidArgumentsToPaginationException If the page or size are negative or the category match is not "any" or "all", the exception InvalidArgumentsToPagination is thrown.
+     * @throws SearchIndexUnavailableException If the in-memory index is disabled or not rebuilt yet, the exception SearchIndexUnavailableException is thrown.
+     * @throws ProductsEmptyException If there are no products that match the search criteria, the exception ProductsEmptyException is thrown.
+     * @return The page of products that match the search criteria, the total and the facet counts of all the matches, and the version of the catalog.
+     */
+    @Cacheable(value = "products", keyGenerator = "productsKeyGenerator", sync = true)
+    public RevisedDTO<FacetedPageDTO<ProductDTO>> searchProductsWithFacets(String name, String categoryName, List<String> categories, String categoryMatch,
+            Double minPrice, Double maxPrice, int page, int size) {
+        log.info("Searching for products with facets by name {}, category {}, categories {} ({}), min price {}, and max price {}",
+                name, categoryName, categories, categoryMatch, minPrice, maxPrice);
+
+        if (page < 0 || size < 0) {
+            throw new InvalidArgumentsToPaginationException();
+        }
+
+        boolean matchAllCategories = switch (categoryMatch.toLowerCase()) {
+            case "any" -> false;
+            case "all" -> true;
+            default -> throw new InvalidArgumentsToPaginationException();
+        };
+
+        if (!productIndexer.isReady()) {
+            throw new SearchIndexUnavailableException();
+        }
+
+        // The size must be between 1 and 60
+        size = Math.max(1, Math.min(size, 60));
+
+        long catalogVersion = getCatalogVersion();
+        FacetedPageDTO<ProductDTO> products = productIndexer.searchWithFacets(name, categoryName, categories, matchAllCategories,
+                minPrice, maxPrice, PageRequest.of(page, size));
+
+        if (products.content().isEmpty()) {
+            throw new ProductsEmptyException();
+        }
+
+        return new RevisedDTO<>(products, catalogVersion);
+    }
+
+    /**
+     * Retrieve products with keyset (seek) pagination.
+     * Instead of an offset, the page starts right after the position encoded in the cursor, so the database seeks the
+     * (sort key, id) index created by the migration V15 (or the primary key, for the id) directly and the cost of a page
+     * does not grow with its depth. No count query is executed.
+     * The result is not cached, since crawlers walking the whole catalog would fill the cache with entries read only once.
+     * 
+     * @param after the cursor returned with the previous page, or null to get the first page
+     * @param size the number of elements per page
+     * @param sort the sorting criteria (property and direction). The property must be name, productName, price or id.
+     * @throws InvalidArgumentsToPaginationException If the size is negative or the sort property is not supported, the exception InvalidArgumentsToPagination is thrown.
+     * @throws InvalidSortDirectionException If the sorting direction is invalid (not "asc" or "desc"), the exception InvalidSortDirectionException is thrown.
+     * @throws InvalidCursorException If the cursor is malformed or was created for another sorting, the exception InvalidCursorException is thrown.
+     * @throws ProductsEmptyException If there are no products in the database, the exception ProductsEmptyException is thrown.
+     * @return the products of the page and the cursor to the next page
+     * 
+     */
+    public CursorPageDTO<ProductDTO> getWithCursor(String after, int size, String[] sort) {
+
+        if (size < 0) {
+            throw new InvalidArgumentsToPaginationException();
+        }
+
+        if (sort.length != 2 || (!sort[1].equalsIgnoreCase("asc") && !sort[1].equalsIgnoreCase("desc"))) {
+            throw new InvalidSortDirectionException();
+        }
+
+        // The size must be between 1 and 60
+        size = Math.max(1, Math.min(size, 60));
+
+        String property = switch (sort[0]) {
+            case "name", "productName" -> "productName";
+            case "price" -> "price";
+            case "id" -> "id";
+            default -> throw new InvalidArgumentsToPaginationException();
+        };
+        Sort.Direction direction = Sort.Direction.fromString(sort[1]);
+
+        log.info("Getting products with keyset pagination, size {} and sort {} {}", size, property, direction);
+
+        // Fetch one extra row to know if there is a next page without counting
+        Sort order = property.equals("id") ? Sort.by(direction, "id") : Sort.by(direction, property).and(Sort.by(direction, "id"));
+        Pageable limit = PageRequest.of(0, size + 1, order);
+
+        List<Product> products;
+        if (after == null || after.isBlank()) {
+            products = productRepository.findKeysetFirstPage(limit);
+
+            if (products.isEmpty()) {
+                throw new ProductsEmptyException();
+            }
+        } else {
+            ProductCursor cursor = ProductCursor.decode(after);
+
+            // A cursor is only valid for the sorting it was created for
+            if (!cursor.property().equals(property) || cursor.direction() != direction) {
+                throw new InvalidCursorException();
+            }
+            products = findAfter(cursor, limit);
+        }
+
+        boolean hasNext = products.size() > size;
+        List<Product> content = hasNext ? products.subList(0, size) : products;
+
+        String nextCursor = hasNext
+                ? ProductCursor.after(content.get(content.size() - 1), property, direction).encode()
+                : null;
+
+        return new CursorPageDTO<>(content.stream().map(this::toDTO).toList(), nextCursor);
+    }
+
+    /**
+     * Find the products after the position of the cursor, using the seek query of the cursor sorting.
+     * 
+     * @param cursor the position of the last product of the previous page
+     * @param limit the limit and the sorting of the query
+     * @return the products after the cursor
+     */
+    private List<Product> findAfter(ProductCursor cursor, Pageable limit) {
+        boolean ascending = cursor.direction().isAscending();
+
+        return switch (cursor.property()) {
+            case "productName" -> ascending
+                    ? productRepository.findKeysetByNameAfter(cursor.key(), cursor.id(), limit)
+                    : productRepository.findKeysetByNameBefore(cursor.key(), cursor.id(), limit);
+            case "price" -> ascending
+                    ? productRepository.findKeysetByPriceAfter(Double.valueOf(cursor.key()), cursor.id(), limit)
+                    : productRepository.findKeysetByPriceBefore(Double.valueOf(cursor.key()), cursor.id(), limit);
+            default -> ascending
+                    ? productRepository.findKeysetByIdAfter(cursor.id(), limit)
+                    : productRepository.findKeysetByIdBefore(cursor.id(), limit);
+        };
+    }
 }
\ No newline at end of file
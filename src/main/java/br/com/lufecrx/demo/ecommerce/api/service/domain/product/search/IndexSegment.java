@@ -0,0 +1,205 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.product.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable segment of the in-memory search index.
+ * The postings of each term are sorted by the ordinal of the documents in the segment, with the term frequencies in a parallel array.
+ * Deleting a document does not change the segment: it returns a copy that shares the postings and has the document marked in the tombstones.
+ * 
+ * @see ProductSearchIndex
+ */
+final class IndexSegment {
+
+    /**
+     * The postings of a term: the ordinals of the documents that contain it and how many times.
+     */
+    record Postings(int[] ordinals, int[] frequencies) {
+    }
+
+    /**
+     * Growable arrays used to accumulate the postings of a term while a segment is built.
+     */
+    private static final class PostingsBuilder {
+
+        private int[] ordinals = new int[4];
+
+        private int[] frequencies = new int[4];
+
+        private int size;
+
+        void add(int ordinal, int frequency) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            ordinals[size] = ordinal;
+            frequencies[size] = frequency;
+            size++;
+        }
+
+        Postings build() {
+            return new Postings(Arrays.copyOf(ordinals, size), Arrays.copyOf(frequencies, size));
+        }
+    }
+
+    private final ProductIndexDocument[] documents;
+
+    private final int[] lengths;
+
+    private final Map<String, Postings> postings;
+
+    private final Map<Long, Integer> ordinals;
+
+    private final BitSet deleted;
+
+    private final int liveCount;
+
+    private final long liveLength;
+
+    private IndexSegment(ProductIndexDocument[] documents, int[] lengths, Map<String, Postings> postings,
+            Map<Long, Integer> ordinals, BitSet deleted, int liveCount, long liveLength) {
+        this.documents = documents;
+        this.lengths = lengths;
+        this.postings = postings;
+        this.ordinals = ordinals;
+        this.deleted = deleted;
+        this.liveCount = liveCount;
+        this.liveLength = liveLength;
+    }
+
+    /**
+     * Build a segment with the given documents, tokenizing their names and categories.
+     * 
+     * @param source the documents of the segment, with distinct ids
+     * @return the new segment
+     */
+    static IndexSegment build(List<ProductIndexDocument> source) {
+        ProductIndexDocument[] documents = source.toArray(ProductIndexDocument[]::new);
+        int[] lengths = new int[documents.length];
+        Map<Long, Integer> ordinals = new HashMap<>(documents.length * 2);
+
+        // Accumulate the postings in growable arrays, in ordinal order
+        Map<String, PostingsBuilder> builders = new HashMap<>();
+        long totalLength = 0;
+
+        for (int ordinal = 0; ordinal < documents.length; ordinal++) {
+            ProductIndexDocument document = documents[ordinal];
+            ordinals.put(document.id(), ordinal);
+
+            Map<String, Integer> frequencies = new HashMap<>();
+            List<String> tokens = ProductSearchIndex.tokenize(document.name());
+            for (String category : document.categories()) {
+                tokens.addAll(ProductSearchIndex.tokenize(category));
+            }
+            for (String token : tokens) {
+                frequencies.merge(token, 1, Integer::sum);
+            }
+
+            lengths[ordinal] = tokens.size();
+            totalLength += tokens.size();
+
+            final int current = ordinal;
+            frequencies.forEach((term, frequency) ->
+                    builders.computeIfAbsent(term, key -> new PostingsBuilder()).add(current, frequency));
+        }
+
+        Map<String, Postings> postings = new HashMap<>(builders.size() * 2);
+        builders.forEach((term, builder) -> postings.put(term, builder.build()));
+
+        return new IndexSegment(documents, lengths, postings, ordinals, new BitSet(), documents.length, totalLength);
+    }
+
+    /**
+     * Merge segments into a new one with only their live documents.
+     * 
+     * @param segments the segments to be merged
+     * @return the merged segment
+     */
+    static IndexSegment merge(List<IndexSegment> segments) {
+        List<ProductIndexDocument> live = new ArrayList<>();
+        for (IndexSegment segment : segments) {
+            live.addAll(segment.liveDocuments());
+        }
+        return build(live);
+    }
+
+    /**
+     * Mark the documents with the given ids as deleted, if they are live in this segment.
+     * 
+     * @param ids the ids of the products
+     * @return a copy of the segment with the documents deleted, or this segment if none of them is live in it
+     */
+    IndexSegment delete(Collection<Long> ids) {
+        BitSet tombstones = null;
+        int removed = 0;
+        long removedLength = 0;
+
+        for (Long id : ids) {
+            Integer ordinal = ordinals.get(id);
+            if (ordinal == null || deleted.get(ordinal) || (tombstones != null && tombstones.get(ordinal))) {
+                continue;
+            }
+            if (tombstones == null) {
+                tombstones = (BitSet) deleted.clone();
+            }
+            tombstones.set(ordinal);
+            removed++;
+            removedLength += lengths[ordinal];
+        }
+
+        if (tombstones == null) {
+            return this;
+        }
+        return new IndexSegment(documents, lengths, postings, ordinals, tombstones, liveCount - removed, liveLength - removedLength);
+    }
+
+    List<ProductIndexDocument> liveDocuments() {
+        List<ProductIndexDocument> live = new ArrayList<>(liveCount);
+        for (int ordinal = 0; ordinal < documents.length; ordinal++) {
+            if (!deleted.get(ordinal)) {
+                live.add(documents[ordinal]);
+            }
+        }
+        return live;
+    }
+
+    ProductIndexDocument live(Long id) {
+        Integer ordinal = ordinals.get(id);
+        return ordinal == null || deleted.get(ordinal) ? null : documents[ordinal];
+    }
+
+    Postings postings(String term) {
+        return postings.get(term);
+    }
+
+    boolean isDeleted(int ordinal) {
+        return deleted.get(ordinal);
+    }
+
+    ProductIndexDocument document(int ordinal) {
+        return documents[ordinal];
+    }
+
+    int length(int ordinal) {
+        return lengths[ordinal];
+    }
+
+    int size() {
+        return documents.length;
+    }
+
+    int liveCount() {
+        return liveCount;
+    }
+
+    long liveLength() {
+        return liveLength;
+    }
+}
@@ -0,0 +1,405 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.product.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import br.com.lufecrx.demo.ecommerce.api.model.dto.PriceBucketDTO;
+
+/**
+ * The facets of the in-memory product index: a compressed bitmap of product ids per category and per price bucket,
+ * and a column of the prices sorted in primitive arrays.
+ * The category filters (any or all of several categories) and the price ranges are answered with bitmap operations,
+ * and the facet counts of a search with the cardinality of the intersection of its matches with each bitmap,
+ * without loading the products.
+ * <p>
+ * Like {@link ProductSearchIndex}, the bitmaps are immutable and published through an {@link AtomicReference},
+ * so the searches never lock, and the writes are serialized by a lock and copy only the bitmaps they change.
+ * The ids are stored as ints, so the product ids must not exceed {@link Integer#MAX_VALUE}.
+ *
+ * @see ProductIndexer
+ */
+public class ProductFacetEngine {
+
+    /**
+     * The facet counts of a search.
+     * @param categories the number of matches per category name, the largest first.
+     * @param priceBuckets the number of matches per price bucket, the cheapest first.
+     */
+    public record FacetCounts(Map<String, Long> categories, List<PriceBucketDTO> priceBuckets) {
+    }
+
+    /**
+     * An immutable view of the facets. The bitmaps are never changed after they are published.
+     */
+    private record Snapshot(RoaringBitmap all, Map<String, RoaringBitmap> categories, RoaringBitmap[] buckets, PriceColumn prices) {
+    }
+
+    /*
+     * The lower bounds of the price buckets, ascending. The last bucket has no upper bound.
+     */
+    private final double[] boundaries;
+
+    private final AtomicReference<Snapshot> snapshot;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * Create an empty facet engine.
+     *
+     * @param boundaries the lower bounds of the price buckets. They are sorted and the duplicates are ignored.
+     */
+    public ProductFacetEngine(double[] boundaries) {
+        this.boundaries = Arrays.stream(boundaries).sorted().distinct().toArray();
+        if (this.boundaries.length == 0) {
+            throw new IllegalArgumentException("At least one price bucket is required");
+        }
+        RoaringBitmap[] buckets = new RoaringBitmap[this.boundaries.length];
+        Arrays.setAll(buckets, bucket -> new RoaringBitmap());
+        this.snapshot = new AtomicReference<>(new Snapshot(new RoaringBitmap(), Map.of(), buckets, PriceColumn.sorted(Map.of())));
+    }
+
+    /**
+     * Replace the whole content of the facets, e.g. with the documents of a rebuild.
+     *
+     * @param documents all the documents of the index
+     */
+    public void replace(Collection<ProductIndexDocument> documents) {
+        RoaringBitmap all = new RoaringBitmap();
+        Map<String, RoaringBitmap> categories = new HashMap<>();
+        RoaringBitmap[] buckets = new RoaringBitmap[boundaries.length];
+        Arrays.setAll(buckets, bucket -> new RoaringBitmap());
+        Map<Integer, Double> prices = new HashMap<>(documents.size() * 2);
+
+        for (ProductIndexDocument document : documents) {
+            int id = toInt(document.id());
+            all.add(id);
+            for (String category : document.categories()) {
+                categories.computeIfAbsent(category, name -> new RoaringBitmap()).add(id);
+            }
+            if (document.price() != null) {
+                buckets[bucketOf(document.price())].add(id);
+                prices.put(id, document.price());
+            }
+        }
+
+        categories.values().forEach(RoaringBitmap::runOptimize);
+        Arrays.stream(buckets).forEach(RoaringBitmap::runOptimize);
+        all.runOptimize();
+
+        writeLock.lock();
+        try {
+            snapshot.set(new Snapshot(all, Map.copyOf(categories), buckets, PriceColumn.sorted(prices)));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Add or replace documents in the facets.
+     *
+     * @param documents the new versions of the documents
+     */
+    public void upsert(Collection<ProductIndexDocument> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        write(documents, List.of());
+    }
+
+    /**
+     * Remove documents from the facets.
+     *
+     * @param ids the ids of the products
+     */
+    public void delete(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        write(List.of(), ids);
+    }
+
+    /**
+     * Remove the previous version of the changed documents from every bitmap that contains them and add the new one.
+     * Only the bitmaps that change are copied.
+     */
+    private void write(Collection<ProductIndexDocument> upserts, Collection<Long> deletes) {
+        writeLock.lock();
+        try {
+            Snapshot current = snapshot.get();
+            RoaringBitmap changed = new RoaringBitmap();
+            Map<Integer, Double> prices = new HashMap<>();
+            upserts.forEach(document -> changed.add(toInt(document.id())));
+            deletes.forEach(id -> changed.add(toInt(id)));
+
+            Map<String, RoaringBitmap> categories = new HashMap<>(current.categories());
+            Set<String> copied = new HashSet<>();
+            current.categories().forEach((name, bitmap) -> {
+                if (RoaringBitmap.intersects(bitmap, changed)) {
+                    categories.put(name, RoaringBitmap.andNot(bitmap, changed));
+                    copied.add(name);
+                }
+            });
+
+            RoaringBitmap[] buckets = current.buckets().clone();
+            boolean[] bucketCopied = new boolean[buckets.length];
+            for (int bucket = 0; bucket < buckets.length; bucket++) {
+                if (RoaringBitmap.intersects(buckets[bucket], changed)) {
+                    buckets[bucket] = RoaringBitmap.andNot(buckets[bucket], changed);
+                    bucketCopied[bucket] = true;
+                }
+            }
+
+            RoaringBitmap all = RoaringBitmap.andNot(current.all(), changed);
+            for (ProductIndexDocument document : upserts) {
+                int id = toInt(document.id());
+                all.add(id);
+                for (String category : document.categories()) {
+                    if (copied.add(category)) {
+                        RoaringBitmap previous = categories.get(category);
+                        categories.put(category, previous == null ? new RoaringBitmap() : previous.clone());
+                    }
+                    categories.get(category).add(id);
+                }
+                if (document.price() != null) {
+                    int bucket = bucketOf(document.price());
+                    if (!bucketCopied[bucket]) {
+                        buckets[bucket] = buckets[bucket].clone();
+                        bucketCopied[bucket] = true;
+                    }
+                    buckets[bucket].add(id);
+                    prices.put(id, document.price());
+                }
+            }
+            categories.values().removeIf(RoaringBitmap::isEmpty);
+
+            snapshot.set(new Snapshot(all, Map.copyOf(categories), buckets, current.prices().with(changed, prices)));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Find the products that pass the category and price filters.
+     *
+     * @param categories the exact names of the categories, or null or empty to not filter by them
+     * @param matchAll true if the products must have all the categories, false if any of them is enough
+     * @param categoryName the name or part of the name of a category of the products, or null
+     * @param minPrice the minimum price, inclusive, or null
+     * @param maxPrice the maximum price, inclusive, or null
+     * @return the ids of the products. The bitmap belongs to the caller.
+     */
+    public RoaringBitmap filter(Collection<String> categories, boolean matchAll, String categoryName, Double minPrice, Double maxPrice) {
+        Snapshot current = snapshot.get();
+        RoaringBitmap result = current.all().clone();
+
+        if (categories != null && !categories.isEmpty()) {
+            List<RoaringBitmap> selected = new ArrayList<>();
+            for (String category : new HashSet<>(categories)) {
+                RoaringBitmap bitmap = current.categories().get(category);
+                if (bitmap != null) {
+                    selected.add(bitmap);
+                } else if (matchAll) {
+                    return new RoaringBitmap();
+                }
+            }
+            if (selected.isEmpty()) {
+                return new RoaringBitmap();
+            }
+            RoaringBitmap[] bitmaps = selected.toArray(RoaringBitmap[]::new);
+            result.and(matchAll ? FastAggregation.and(bitmaps) : FastAggregation.or(bitmaps));
+        }
+
+        if (categoryName != null && !categoryName.isBlank()) {
+            String part = categoryName.toLowerCase(Locale.ROOT);
+            RoaringBitmap[] bitmaps = current.categories().entrySet().stream()
+                    .filter(entry -> entry.getKey().toLowerCase(Locale.ROOT).contains(part))
+                    .map(Map.Entry::getValue)
+                    .toArray(RoaringBitmap[]::new);
+            result.and(FastAggregation.or(bitmaps));
+        }
+
+        if (minPrice != null || maxPrice != null) {
+            result.and(current.prices().range(minPrice, maxPrice));
+        }
+        return result;
+    }
+
+    /**
+     * Count the matches of a search per category and per price bucket.
+     * The categories without matches are omitted, the price buckets are always listed.
+     *
+     * @param matches the ids of the products that match the search
+     * @return the facet counts
+     */
+    public FacetCounts count(RoaringBitmap matches) {
+        Snapshot current = snapshot.get();
+
+        List<Map.Entry<String, Long>> categoryCounts = new ArrayList<>();
+        current.categories().forEach((name, bitmap) -> {
+            long count = RoaringBitmap.andCardinality(matches, bitmap);
+            if (count > 0) {
+                categoryCounts.add(Map.entry(name, count));
+            }
+        });
+        categoryCounts.sort(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()));
+
+        Map<String, Long> categories = new LinkedHashMap<>();
+        categoryCounts.forEach(entry -> categories.put(entry.getKey(), entry.getValue()));
+
+        List<PriceBucketDTO> priceBuckets = new ArrayList<>(boundaries.length);
+        for (int bucket = 0; bucket < boundaries.length; bucket++) {
+            Double to = bucket + 1 < boundaries.length ? boundaries[bucket + 1] : null;
+            priceBuckets.add(new PriceBucketDTO(boundaries[bucket], to, RoaringBitmap.andCardinality(matches, current.buckets()[bucket])));
+        }
+        return new FacetCounts(categories, priceBuckets);
+    }
+
+    /**
+     * The number of products in the facets.
+     *
+     * @return the number of products
+     */
+    public long size() {
+        return snapshot.get().all().getLongCardinality();
+    }
+
+    /**
+     * The bucket of a price: the last one whose lower bound is not greater than it.
+     * The prices below the first bound are counted in the first bucket.
+     */
+    private int bucketOf(double price) {
+        int position = Arrays.binarySearch(boundaries, price);
+        int bucket = position >= 0 ? position : -position - 2;
+        return Math.max(0, bucket);
+    }
+
+    static int toInt(Long id) {
+        return Math.toIntExact(id);
+    }
+
+    /**
+     * The prices of the products sorted in primitive arrays, so a price range is found by binary search.
+     * The changes since the arrays were sorted are kept aside: the ids whose sorted entry is stale and their current
+     * prices. The column is sorted again when the changes grow, so the updates do not copy the arrays every time.
+     */
+    private static final class PriceColumn {
+
+        private static final int MIN_COMPACTION_THRESHOLD = 1024;
+
+        private final double[] prices;
+
+        private final int[] ids;
+
+        private final RoaringBitmap stale;
+
+        private final Map<Integer, Double> changes;
+
+        private PriceColumn(double[] prices, int[] ids, RoaringBitmap stale, Map<Integer, Double> changes) {
+            this.prices = prices;
+            this.ids = ids;
+            this.stale = stale;
+            this.changes = changes;
+        }
+
+        static PriceColumn sorted(Map<Integer, Double> pricesById) {
+            List<Map.Entry<Integer, Double>> entries = new ArrayList<>(pricesById.entrySet());
+            entries.sort(Map.Entry.<Integer, Double>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+
+            double[] prices = new double[entries.size()];
+            int[] ids = new int[entries.size()];
+            for (int i = 0; i < entries.size(); i++) {
+                prices[i] = entries.get(i).getValue();
+                ids[i] = entries.get(i).getKey();
+            }
+            return new PriceColumn(prices, ids, new RoaringBitmap(), Map.of());
+        }
+
+        /**
+         * Create a column where the changed ids have the given prices, or no price if they are not in the map.
+         */
+        PriceColumn with(RoaringBitmap changed, Map<Integer, Double> newPrices) {
+            RoaringBitmap nextStale = RoaringBitmap.or(stale, changed);
+            Map<Integer, Double> nextChanges = new HashMap<>(changes);
+            changed.forEach((int id) -> nextChanges.remove(id));
+            nextChanges.putAll(newPrices);
+
+            if (nextStale.getCardinality() <= Math.max(MIN_COMPACTION_THRESHOLD, prices.length / 8)) {
+                return new PriceColumn(prices, ids, nextStale, Map.copyOf(nextChanges));
+            }
+
+            Map<Integer, Double> current = new HashMap<>(prices.length + nextChanges.size());
+            for (int i = 0; i < ids.length; i++) {
+                if (!nextStale.contains(ids[i])) {
+                    current.put(ids[i], prices[i]);
+                }
+            }
+            current.putAll(nextChanges);
+            return sorted(current);
+        }
+
+        /**
+         * Find the products with a price in the range, both bounds inclusive.
+         */
+        RoaringBitmap range(Double min, Double max) {
+            int from = min == null ? 0 : lowerBound(min);
+            int to = max == null ? prices.length : upperBound(max);
+
+            RoaringBitmap result = from < to ? RoaringBitmap.bitmapOfUnordered(Arrays.copyOfRange(ids, from, to)) : new RoaringBitmap();
+            result.andNot(stale);
+
+            changes.forEach((id, price) -> {
+                if ((min == null || price >= min) && (max == null || price <= max)) {
+                    result.add(id);
+                }
+            });
+            return result;
+        }
+
+        /*
+         * The first position with a price greater than or equal to the value
+         */
+        private int lowerBound(double value) {
+            int low = 0;
+            int high = prices.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (prices[middle] < value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /*
+         * The first position with a price greater than the value
+         */
+        private int upperBound(double value) {
+            int low = 0;
+            int high = prices.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (prices[middle] <= value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.product.search;
+
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import br.com.lufecrx.demo.ecommerce.api.model.Category;
+import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
+
+/**
+ * Class to represent a product as it is stored in the in-memory search index.
+ * It is a detached copy of the entity, so the index never touches a persistence context.
+ * @param id the id of the product.
+ * @param name the name of the product.
+ * @param price the price of the product.
+ * @param categories the names of the categories of the product.
+ * 
+ * @see ProductSearchIndex
+ */
+public record ProductIndexDocument(
+        Long id,
+        String name,
+        Double price,
+        Set<String> categories) {
+
+    /**
+     * Method to convert a product to an index document. The categories must be initialized.
+     * @param product the product to be converted.
+     * @return the index document.
+     */
+    public static ProductIndexDocument from(Product product) {
+        Set<String> categories = product.getCategories() != null
+                ? product.getCategories().stream().map(Category::getName).collect(Collectors.toUnmodifiableSet())
+                : Set.of();
+        return new ProductIndexDocument(product.getId(), product.getProductName(), product.getPrice(), categories);
+    }
+
+    /**
+     * Method to convert the index document to a product DTO.
+     * @return the product DTO.
+     */
+    public ProductDTO toDTO() {
+        return toDTO(CategoryDTO::new);
+    }
+
+    /**
+     * Method to convert the index document to a product DTO, mapping the names of its categories with the given function, e.g. to share the category DTOs.
+     * @param categoryMapper the function to convert the name of each category.
+     * @return the product DTO.
+     */
+    public ProductDTO toDTO(Function<String, CategoryDTO> categoryMapper) {
+        return new ProductDTO(name, price, categories.stream().map(categoryMapper).collect(Collectors.toSet()));
+    }
+}
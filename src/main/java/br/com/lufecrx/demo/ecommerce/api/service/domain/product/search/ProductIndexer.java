@@ -0,0 +1,478 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.product.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation.CacheInvalidationBus;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation.CacheInvalidationListener;
+import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.FacetedPageDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
+import br.com.lufecrx.demo.ecommerce.api.repository.ProductRepository;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.category.CategoryDictionary;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class keeps the in-memory search index of the products up to date and searches it.
+ * The index is rebuilt in parallel from the products table when the application is ready, and updated incrementally
+ * by the product and category services. Until the first rebuild completes, {@link #isReady()} is false and the
+ * searches must use the database.
+ * The writes of the services are read in their transaction, but applied to the index and published only after it
+ * commits, since the index cannot be rolled back: a write that fails to commit is never searchable, and the searches
+ * never see uncommitted names or prices.
+ * The ids of the products written are published on the {@link CacheInvalidationBus} under {@link #INVALIDATIONS}, so the
+ * other nodes reindex them from the database. A node that missed some of them rebuilds its index.
+ * The index is only used if the property api.search.in-memory.enabled is true.
+ * The facets of the products (categories and price buckets) are kept in a {@link ProductFacetEngine} updated together with the index.
+ * 
+ * @see ProductSearchIndex
+ * @see ProductFacetEngine
+ */
+@Component
+@Slf4j
+public class ProductIndexer {
+
+    /**
+     * The name the writes of the index are published under on the invalidation bus.
+     */
+    public static final String INVALIDATIONS = "product-index";
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @Autowired
+    private CategoryDictionary categoryDictionary;
+
+    @Value("${api.search.in-memory.enabled:false}")
+    private boolean enabled;
+
+    @Value("${api.search.in-memory.rebuild-threads:4}")
+    private int rebuildThreads;
+
+    @Value("${api.search.in-memory.rebuild-batch-size:5000}")
+    private int rebuildBatchSize;
+
+    @Value("${api.search.facets.price-buckets:0,50,100,250,500,1000,2500,5000}")
+    private double[] priceBuckets;
+
+    private final ProductSearchIndex index = new ProductSearchIndex();
+
+    private ProductFacetEngine facets;
+
+    private volatile boolean ready;
+
+    private final Object writes = new Object();
+
+    /*
+     * The writes received while a rebuild is loading the products, replayed over the rebuilt index.
+     * An empty optional is a delete. Guarded by the writes lock.
+     */
+    private Map<Long, Optional<ProductIndexDocument>> pendingWrites;
+
+    // The rebuilds requested in background, including the running one
+    private final AtomicInteger rebuildRequests = new AtomicInteger();
+
+    /**
+     * Create the facet engine with the configured price buckets and receive the writes of the other nodes.
+     */
+    @PostConstruct
+    public void init() {
+        facets = new ProductFacetEngine(priceBuckets);
+        cacheInvalidationBus.register(INVALIDATIONS, new RemoteWrites());
+    }
+
+    /**
+     * Rebuild the index in background when the application is ready, so the startup is not delayed.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            rebuildInBackground();
+        }
+    }
+
+    private void rebuildInBackground() {
+        if (rebuildRequests.getAndIncrement() > 0) {
+            // The running rebuild runs once more when it completes
+            return;
+        }
+        Thread rebuild = new Thread(() -> {
+            do {
+                rebuild();
+            } while (rebuildRequests.getAndUpdate(requests -> requests > 1 ? 1 : 0) > 1);
+        }, "product-index-rebuild");
+        rebuild.setDaemon(true);
+        rebuild.start();
+    }
+
+    /**
+     * Rebuild the whole index from the products table.
+     * The id range is split in batches loaded by a pool of threads, each one building its own segment.
+     * The current index keeps serving the searches and receiving the writes until the new one is published.
+     */
+    public void rebuild() {
+        synchronized (writes) {
+            pendingWrites = new LinkedHashMap<>();
+        }
+
+        long start = System.currentTimeMillis();
+        List<IndexSegment> segments;
+        try {
+            segments = loadSegments();
+        } catch (InterruptedException | ExecutionException ex) {
+            if (ex instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            log.error("Failed to rebuild the product search index", ex);
+            synchronized (writes) {
+                pendingWrites = null;
+            }
+            return;
+        }
+
+        synchronized (writes) {
+            index.replace(segments);
+            facets.replace(segments.stream().flatMap(segment -> segment.liveDocuments().stream()).toList());
+
+            // Replay the writes that happened during the load, since the loaded rows may be older
+            List<ProductIndexDocument> upserts = new ArrayList<>();
+            List<Long> deletes = new ArrayList<>();
+            pendingWrites.forEach((id, document) -> {
+                if (document.isPresent()) {
+                    upserts.add(document.get());
+                } else {
+                    deletes.add(id);
+                }
+            });
+            index.delete(deletes);
+            index.upsert(upserts);
+            facets.delete(deletes);
+            facets.upsert(upserts);
+            pendingWrites = null;
+        }
+
+        ready = true;
+        log.info("Product search index rebuilt with {} products in {} segments in {} ms",
+                index.size(), index.segmentCount(), System.currentTimeMillis() - start);
+    }
+
+    private List<IndexSegment> loadSegments() throws InterruptedException, ExecutionException {
+        Long minId = productRepository.findMinId();
+        Long maxId = productRepository.findMaxId();
+        if (minId == null || maxId == null) {
+            return List.of();
+        }
+
+        int threads = Math.max(1, rebuildThreads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<IndexSegment>> futures = new ArrayList<>();
+            for (int worker = 0; worker < threads; worker++) {
+                // Each worker loads every threads-th batch of ids, so the segments have similar sizes
+                long first = minId + (long) worker * rebuildBatchSize;
+                long step = (long) threads * rebuildBatchSize;
+                futures.add(executor.submit(() -> {
+                    List<ProductIndexDocument> documents = new ArrayList<>();
+                    for (long from = first; from <= maxId; from += step) {
+                        long to = Math.min(maxId, from + rebuildBatchSize - 1);
+                        for (Product product : productRepository.findWithCategoriesByIdBetween(from, to)) {
+                            documents.add(ProductIndexDocument.from(product));
+                        }
+                    }
+                    return IndexSegment.build(documents);
+                }));
+            }
+
+            List<IndexSegment> segments = new ArrayList<>();
+            for (Future<IndexSegment> future : futures) {
+                segments.add(future.get());
+            }
+            return segments;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Add or replace a product in the index. The categories of the product must be initialized.
+     * 
+     * @param product the saved product
+     */
+    public void onSaved(Product product) {
+        if (!enabled) {
+            return;
+        }
+        ProductIndexDocument document = ProductIndexDocument.from(product);
+        afterCommit(List.of(document), List.of());
+    }
+
+    /**
+     * Reindex a product that was updated without being loaded, e.g. by a partial update.
+     * 
+     * @param productId the ID of the updated product
+     */
+    public void onUpdated(Long productId) {
+        if (!enabled) {
+            return;
+        }
+        List<ProductIndexDocument> documents = load(List.of(productId));
+        afterCommit(documents, documents.isEmpty() ? List.of(productId) : List.of());
+    }
+
+    /**
+     * Add the products of a bulk import to the index.
+     * 
+     * @param documents the documents of the imported products
+     */
+    public void onImported(List<ProductIndexDocument> documents) {
+        if (!enabled || documents.isEmpty()) {
+            return;
+        }
+        afterCommit(documents, List.of());
+    }
+
+    /**
+     * Remove a product from the index.
+     * 
+     * @param productId the ID of the deleted product
+     */
+    public void onDeleted(Long productId) {
+        if (!enabled) {
+            return;
+        }
+        afterCommit(List.of(), List.of(productId));
+    }
+
+    /**
+     * Reindex the products of a category, e.g. after it is renamed.
+     * 
+     * @param categoryId the ID of the category
+     */
+    public void onCategoryChanged(Long categoryId) {
+        if (!enabled) {
+            return;
+        }
+        List<ProductIndexDocument> documents = productRepository.findWithCategoriesByCategoryId(categoryId).stream()
+                .map(ProductIndexDocument::from)
+                .toList();
+        afterCommit(documents, List.of());
+    }
+
+    /*
+     * Apply the writes to the index and publish them after the commit of the current transaction, or now without one.
+     */
+    private void afterCommit(List<ProductIndexDocument> upserts, List<Long> deletes) {
+        Runnable write = () -> {
+            apply(upserts, deletes);
+            List<Long> productIds = new ArrayList<>(deletes);
+            upserts.forEach(document -> productIds.add(document.id()));
+            publish(productIds);
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    write.run();
+                }
+            });
+        } else {
+            write.run();
+        }
+    }
+
+    /*
+     * Reload the products from the database, removing the ones that no longer exist.
+     */
+    private void reindex(Collection<Long> productIds) {
+        List<ProductIndexDocument> documents = load(productIds);
+        Set<Long> found = documents.stream().map(ProductIndexDocument::id).collect(Collectors.toSet());
+        apply(documents, productIds.stream().filter(id -> !found.contains(id)).toList());
+    }
+
+    private List<ProductIndexDocument> load(Collection<Long> productIds) {
+        return productRepository.findWithCategoriesByIdIn(productIds).stream()
+                .map(ProductIndexDocument::from)
+                .toList();
+    }
+
+    private void apply(List<ProductIndexDocument> upserts, List<Long> deletes) {
+        synchronized (writes) {
+            if (pendingWrites != null) {
+                deletes.forEach(id -> pendingWrites.put(id, Optional.empty()));
+                upserts.forEach(document -> pendingWrites.put(document.id(), Optional.of(document)));
+            }
+            if (!deletes.isEmpty()) {
+                index.delete(deletes);
+            }
+            index.upsert(upserts);
+            facets.delete(deletes);
+            facets.upsert(upserts);
+        }
+    }
+
+    private void publish(List<Long> productIds) {
+        if (!productIds.isEmpty()) {
+            cacheInvalidationBus.onEvictAll(INVALIDATIONS, productIds);
+        }
+    }
+
+    /**
+     * Applies the writes of the other nodes. They are received after the transaction of the write commits, so the
+     * products are reloaded from the database.
+     */
+    private class RemoteWrites implements CacheInvalidationListener {
+
+        @Override
+        public void onEvict(String cache, Object key) {
+            onEvictAll(cache, List.of(key));
+        }
+
+        @Override
+        public void onEvictAll(String cache, Collection<?> keys) {
+            if (!enabled) {
+                return;
+            }
+            try {
+                reindex(keys.stream().map(Long.class::cast).toList());
+            } catch (RuntimeException ex) {
+                log.error("Failed to reindex the products {} written by another node, rebuilding the index", keys, ex);
+                rebuildInBackground();
+            }
+        }
+
+        @Override
+        public void onClear(String cache) {
+            if (enabled) {
+                rebuildInBackground();
+            }
+        }
+
+        @Override
+        public void onAdvance(String scope) {
+            // The index has no generations
+        }
+    }
+
+    /**
+     * Check if the index can be searched: it is enabled and the first rebuild is complete.
+     * 
+     * @return true if the index is ready, false otherwise
+     */
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * Search the products that contain all the terms of the name, ordered by relevance.
+     * Unlike the database search, the name is matched by whole terms and the category by part of its name ignoring
+     * the case. The price range is inclusive.
+     * 
+     * @param name the terms to be searched in the names and categories of the products
+     * @param categoryName the name or part of the name of a category of the product, or null
+     * @param minPrice the minimum price, or null
+     * @param maxPrice the maximum price, or null
+     * @param pageable the page and size. The sort is ignored, since the products are ordered by relevance.
+     * @return the page of products and the exact number of matches
+     */
+    public Page<ProductDTO> search(String name, String categoryName, Double minPrice, Double maxPrice, Pageable pageable) {
+        Predicate<ProductIndexDocument> filter = document -> true;
+
+        if (categoryName != null && !categoryName.isBlank()) {
+            String category = categoryName.toLowerCase(Locale.ROOT);
+            filter = filter.and(document -> document.categories().stream()
+                    .anyMatch(candidate -> candidate.toLowerCase(Locale.ROOT).contains(category)));
+        }
+        if (minPrice != null) {
+            filter = filter.and(document -> document.price() != null && document.price() >= minPrice);
+        }
+        if (maxPrice != null) {
+            filter = filter.and(document -> document.price() != null && document.price() <= maxPrice);
+        }
+
+        ProductSearchIndex.SearchResult result = index.search(name, filter, (int) pageable.getOffset(), pageable.getPageSize());
+
+        List<ProductDTO> products = result.hits().stream().map(hit -> hit.document().toDTO(categoryDictionary::dtoOf)).toList();
+        return new PageImpl<>(products, pageable, result.totalHits());
+    }
+
+    /**
+     * Search the products with the facet counts of all the matches: the number of products per category and per price bucket.
+     * With a name, the products that contain all its terms are returned ordered by relevance, otherwise all the products
+     * that pass the filters are returned ordered by id.
+     * The category and price filters are answered by the bitmaps of the facet engine.
+     * 
+     * @param name the terms to be searched in the names and categories of the products, or null
+     * @param categoryName the name or part of the name of a category of the product, or null
+     * @param categories the exact names of the categories of the product, or null
+     * @param matchAllCategories true if the product must have all the categories, false if any of them is enough
+     * @param minPrice the minimum price, or null
+     * @param maxPrice the maximum price, or null
+     * @param pageable the page and size. The sort is ignored.
+     * @return the page of products, the exact number of matches and their facet counts
+     */
+    public FacetedPageDTO<ProductDTO> searchWithFacets(String name, String categoryName, List<String> categories,
+            boolean matchAllCategories, Double minPrice, Double maxPrice, Pageable pageable) {
+        RoaringBitmap allowed = facets.filter(categories, matchAllCategories, categoryName, minPrice, maxPrice);
+        int offset = (int) Math.min(Integer.MAX_VALUE, pageable.getOffset());
+        int size = pageable.getPageSize();
+
+        RoaringBitmap matches;
+        List<ProductDTO> products = new ArrayList<>();
+        long total;
+
+        if (name != null && !name.isBlank()) {
+            RoaringBitmap found = new RoaringBitmap();
+            ProductSearchIndex.SearchResult result = index.search(name,
+                    document -> allowed.contains(ProductFacetEngine.toInt(document.id())),
+                    offset, size, id -> found.add(ProductFacetEngine.toInt(id)));
+            result.hits().forEach(hit -> products.add(hit.document().toDTO(categoryDictionary::dtoOf)));
+            matches = found;
+            total = result.totalHits();
+        } else {
+            matches = allowed;
+            total = allowed.getLongCardinality();
+            if (offset < total) {
+                // Jump to the first id of the page instead of iterating over the previous pages
+                PeekableIntIterator ids = allowed.getIntIterator();
+                ids.advanceIfNeeded(allowed.select(offset));
+                while (ids.hasNext() && products.size() < size) {
+                    index.get((long) ids.next()).ifPresent(document -> products.add(document.toDTO(categoryDictionary::dtoOf)));
+                }
+            }
+        }
+
+        ProductFacetEngine.FacetCounts counts = facets.count(matches);
+        return new FacetedPageDTO<>(products, pageable.getPageNumber(), size, total, counts.categories(), counts.priceBuckets());
+    }
+}
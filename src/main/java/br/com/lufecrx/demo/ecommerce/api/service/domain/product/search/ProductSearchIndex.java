@@ -0,0 +1,357 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.product.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory inverted index of the products, scored with BM25.
+ * The names and the category names of the products are tokenized into a single field.
+ * <p>
+ * The index is a list of immutable segments published through an {@link AtomicReference}, so the searches never lock:
+ * they read the current snapshot and keep using it even if a write publishes a new one meanwhile.
+ * The writes are serialized by a lock. Each write deletes the previous version of the products with tombstones
+ * (copy-on-write) and appends a new small segment. Small segments are merged with their neighbours when they reach
+ * a similar size, so the number of segments stays logarithmic on the number of documents and the merges also drop
+ * the deleted documents.
+ * 
+ * @see IndexSegment
+ * @see ProductIndexer
+ */
+public class ProductSearchIndex {
+
+    /**
+     * The term frequency saturation of BM25.
+     */
+    static final double K1 = 1.2;
+
+    /**
+     * The length normalization of BM25.
+     */
+    static final double B = 0.75;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * Segments with more than this ratio of deleted documents are compacted.
+     */
+    private static final double MAX_DELETED_RATIO = 0.3;
+
+    /**
+     * An immutable view of the index: its segments and the statistics of the live documents.
+     */
+    private record Snapshot(List<IndexSegment> segments, int liveCount, long liveLength) {
+
+        static final Snapshot EMPTY = new Snapshot(List.of(), 0, 0);
+
+        static Snapshot of(List<IndexSegment> segments) {
+            int liveCount = 0;
+            long liveLength = 0;
+            for (IndexSegment segment : segments) {
+                liveCount += segment.liveCount();
+                liveLength += segment.liveLength();
+            }
+            return new Snapshot(List.copyOf(segments), liveCount, liveLength);
+        }
+    }
+
+    /**
+     * A document found by a search and its score.
+     * @param document the document found.
+     * @param score the BM25 score of the document.
+     */
+    public record Hit(ProductIndexDocument document, double score) {
+    }
+
+    /**
+     * The result of a search.
+     * @param hits the documents of the requested page, the best first.
+     * @param totalHits the number of documents that match the search.
+     */
+    public record SearchResult(List<Hit> hits, int totalHits) {
+    }
+
+    /*
+     * The best hits first, and the lowest id first on ties so the order is stable between pages
+     */
+    private static final Comparator<Hit> BEST_FIRST = Comparator.comparingDouble(Hit::score).reversed()
+            .thenComparing(hit -> hit.document().id());
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * Split a text into normalized terms: lower case, without diacritics and split on anything that is not a letter or a digit.
+     * 
+     * @param text the text to be tokenized
+     * @return the terms, in order and with repetitions
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return tokens;
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        for (String token : SEPARATORS.split(normalized.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Search the documents that contain all the terms of the query and pass the filter, ordered by their BM25 score.
+     * 
+     * @param query the text to be searched
+     * @param filter the filter of the documents (e.g. category and price range)
+     * @param offset the number of hits to skip
+     * @param limit the maximum number of hits to return
+     * @return the hits of the page and the total number of hits
+     */
+    public SearchResult search(String query, Predicate<ProductIndexDocument> filter, int offset, int limit) {
+        return search(query, filter, offset, limit, id -> {});
+    }
+
+    /**
+     * Search the documents that contain all the terms of the query and pass the filter, ordered by their BM25 score,
+     * and report the id of every match, not only the ones of the page (e.g. to count the facets of the search).
+     * 
+     * @param query the text to be searched
+     * @param filter the filter of the documents (e.g. category and price range)
+     * @param offset the number of hits to skip
+     * @param limit the maximum number of hits to return
+     * @param onMatch the consumer of the ids of all the matching documents, in no particular order
+     * @return the hits of the page and the total number of hits
+     */
+    public SearchResult search(String query, Predicate<ProductIndexDocument> filter, int offset, int limit, LongConsumer onMatch) {
+        Snapshot current = snapshot.get();
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+
+        if (terms.isEmpty() || current.liveCount() == 0) {
+            return new SearchResult(List.of(), 0);
+        }
+
+        double averageLength = Math.max(1.0, (double) current.liveLength() / current.liveCount());
+        double[] idf = new double[terms.size()];
+        for (int i = 0; i < terms.size(); i++) {
+            idf[i] = inverseDocumentFrequency(current, terms.get(i));
+        }
+
+        // Keep only the best offset + limit hits, the worst at the head of the queue
+        int wanted = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        PriorityQueue<Hit> best = new PriorityQueue<>(Math.max(1, Math.min(wanted, 1024)), BEST_FIRST.reversed());
+        int totalHits = 0;
+
+        for (IndexSegment segment : current.segments()) {
+            IndexSegment.Postings[] termPostings = new IndexSegment.Postings[terms.size()];
+            int shortest = 0;
+            boolean allPresent = true;
+
+            for (int i = 0; i < terms.size(); i++) {
+                termPostings[i] = segment.postings(terms.get(i));
+                if (termPostings[i] == null) {
+                    allPresent = false;
+                    break;
+                }
+                if (termPostings[i].ordinals().length < termPostings[shortest].ordinals().length) {
+                    shortest = i;
+                }
+            }
+            if (!allPresent) {
+                continue;
+            }
+
+            // Drive the intersection by the shortest postings and look the other terms up by binary search
+            int[] candidates = termPostings[shortest].ordinals();
+            for (int candidate = 0; candidate < candidates.length; candidate++) {
+                int ordinal = candidates[candidate];
+                if (segment.isDeleted(ordinal)) {
+                    continue;
+                }
+
+                double score = 0;
+                boolean matches = true;
+                double normalization = K1 * (1 - B + B * segment.length(ordinal) / averageLength);
+
+                for (int i = 0; i < terms.size(); i++) {
+                    int position = i == shortest ? candidate : Arrays.binarySearch(termPostings[i].ordinals(), ordinal);
+                    if (position < 0) {
+                        matches = false;
+                        break;
+                    }
+                    int frequency = termPostings[i].frequencies()[position];
+                    score += idf[i] * frequency * (K1 + 1) / (frequency + normalization);
+                }
+
+                if (!matches || !filter.test(segment.document(ordinal))) {
+                    continue;
+                }
+
+                totalHits++;
+                onMatch.accept(segment.document(ordinal).id());
+                if (wanted > 0) {
+                    Hit hit = new Hit(segment.document(ordinal), score);
+                    if (best.size() < wanted) {
+                        best.add(hit);
+                    } else if (BEST_FIRST.compare(hit, best.peek()) < 0) {
+                        best.poll();
+                        best.add(hit);
+                    }
+                }
+            }
+        }
+
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(BEST_FIRST);
+        List<Hit> page = offset >= hits.size() ? List.of() : hits.subList(offset, hits.size());
+        return new SearchResult(List.copyOf(page), totalHits);
+    }
+
+    /**
+     * The inverse document frequency of BM25. The document frequency counts the deleted documents not merged yet, like Lucene.
+     */
+    private static double inverseDocumentFrequency(Snapshot current, String term) {
+        long documentFrequency = 0;
+        for (IndexSegment segment : current.segments()) {
+            IndexSegment.Postings postings = segment.postings(term);
+            if (postings != null) {
+                documentFrequency += postings.ordinals().length;
+            }
+        }
+        return Math.log(1 + (current.liveCount() - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    /**
+     * Add or replace documents in the index.
+     * 
+     * @param documents the new versions of the documents
+     */
+    public void upsert(Collection<ProductIndexDocument> documents) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            List<IndexSegment> segments = deleteFrom(snapshot.get().segments(), documents.stream().map(ProductIndexDocument::id).toList());
+            segments.add(IndexSegment.build(List.copyOf(documents)));
+            publish(segments, true);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Remove documents from the index.
+     * 
+     * @param ids the ids of the products
+     */
+    public void delete(Collection<Long> ids) {
+        writeLock.lock();
+        try {
+            publish(deleteFrom(snapshot.get().segments(), ids), true);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Replace the whole content of the index, e.g. with the segments built by a rebuild.
+     * 
+     * @param segments the new segments
+     */
+    void replace(List<IndexSegment> segments) {
+        writeLock.lock();
+        try {
+            // The segments of a rebuild have similar sizes and were built in parallel, so they are not merged
+            publish(new ArrayList<>(segments), false);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Find the live version of a document by its id.
+     * 
+     * @param id the id of the product
+     * @return the document, or an empty optional if it is not in the index
+     */
+    public Optional<ProductIndexDocument> get(Long id) {
+        for (IndexSegment segment : snapshot.get().segments()) {
+            ProductIndexDocument document = segment.live(id);
+            if (document != null) {
+                return Optional.of(document);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The number of live documents in the index.
+     * 
+     * @return the number of documents
+     */
+    public int size() {
+        return snapshot.get().liveCount();
+    }
+
+    /**
+     * The number of segments of the index.
+     * 
+     * @return the number of segments
+     */
+    public int segmentCount() {
+        return snapshot.get().segments().size();
+    }
+
+    /**
+     * Apply the merge policy and publish the new snapshot. Must be called holding the write lock.
+     */
+    private void publish(List<IndexSegment> segments, boolean mergeTail) {
+        segments.removeIf(segment -> segment.liveCount() == 0);
+
+        // Merge the newest segments while they are at least half the size of the previous one
+        while (mergeTail && segments.size() > 1) {
+            IndexSegment last = segments.get(segments.size() - 1);
+            IndexSegment previous = segments.get(segments.size() - 2);
+            if (last.liveCount() * 2 < previous.liveCount()) {
+                break;
+            }
+            segments.remove(segments.size() - 1);
+            segments.set(segments.size() - 1, IndexSegment.merge(List.of(previous, last)));
+        }
+
+        // Compact the segments with too many tombstones
+        for (int i = 0; i < segments.size(); i++) {
+            IndexSegment segment = segments.get(i);
+            if (segment.size() - segment.liveCount() > segment.size() * MAX_DELETED_RATIO) {
+                segments.set(i, IndexSegment.merge(List.of(segment)));
+            }
+        }
+
+        snapshot.set(Snapshot.of(segments));
+    }
+
+    private static List<IndexSegment> deleteFrom(List<IndexSegment> current, Collection<Long> ids) {
+        List<IndexSegment> segments = new ArrayList<>(current.size() + 1);
+        for (IndexSegment segment : current) {
+            segments.add(segment.delete(ids));
+        }
+        return segments;
+    }
+}
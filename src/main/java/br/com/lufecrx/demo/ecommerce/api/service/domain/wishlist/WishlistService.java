@@ -10,6 +10,7 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CacheGenerations;
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
 import br.com.lufecrx.demo.ecommerce.api.model.Wishlist;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.WishlistDTO;
@@ -38,10 +39,13 @@ public class WishlistService {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
     /**
      * Add a product to a wishlist and save it to the database. 
      * The wishlist must belong to the authenticated user.
-     * CacheEvict annotation is used to remove all entries from the cache when a product is added to a wishlist.
+     * CacheEvict annotation is used to remove only the cached entry of this wishlist, and the generation of the cached wishlists of the user is advanced.
      * 
      * @param wishlistId The ID of the wishlist to add the product.
      * @param productId The ID of the product to add to the wishlist.
@@ -49,7 +53,7 @@ public class WishlistService {
      * @throws ProductNotFoundException ProductNotFoundException is thrown if the product does not exist.
      * 
      */
-    @CacheEvict(value = "wishlists", allEntries = true)
+    @CacheEvict(value = "wishlist", key = "T(org.springframework.security.core.context.SecurityContextHolder).getContext().getAuthentication().getPrincipal().getId() + ':' + #wishlistId")
     public void addProductToWishlist(Long wishlistId, Long productId) {
         log.info("Adding product with ID {} to wishlist with ID {}", productId, wishlistId);
 
@@ -67,12 +71,14 @@ public class WishlistService {
 
         wishlist.get().addToWishlist(product.get());
         wishlistRepository.save(wishlist.get());
+
+        cacheGenerations.advanceOfUser("wishlists", user.getId());
     }
 
     /**
      * Remove a product from a wishlist and save it to the database.
      * The wishlist must belong to the authenticated user.
-     * CacheEvict annotation is used to remove all entries from the cache when a product is removed from a wishlist.
+     * CacheEvict annotation is used to remove only the cached entry of this wishlist, and the generation of the cached wishlists of the user is advanced.
      * 
      * @param wishlistId The ID of the wishlist to remove the product.
      * @param productId The ID of the product to remove from the wishlist.
@@ -80,7 +86,7 @@ public class WishlistService {
      * @throws ProductNotFoundException ProductNotFoundException is thrown if the product does not exist.
      * 
      */
-    @CacheEvict(value = "wishlists", allEntries = true)
+    @CacheEvict(value = "wishlist", key = "T(org.springframework.security.core.context.SecurityContextHolder).getContext().getAuthentication().getPrincipal().getId() + ':' + #wishlistId")
     public void removeProductFromWishlist(Long wishlistId, Long productId) {
         log.info("Removing product with ID {} from wishlist with ID {}", productId, wishlistId);
 
@@ -98,18 +104,20 @@ public class WishlistService {
 
         wishlist.get().removeFromWishlist(product.get());
         wishlistRepository.save(wishlist.get());
+
+        cacheGenerations.advanceOfUser("wishlists", user.getId());
     }
 
     /**
      * Delete a wishlist by its ID.
      * The wishlist must belong to the authenticated user.
-     * CacheEvict annotation is used to remove all entries from the cache when a wishlist is deleted.
+     * CacheEvict annotation is used to remove only the cached entry of this wishlist, and the generation of the cached wishlists of the user is advanced.
      * 
      * @param wishlistId The ID of the wishlist to delete.
      * @throws WishlistNotFoundException WishlistNotFoundException is thrown if the wishlist does not exist.
      * 
      */
-    @CacheEvict(value = "wishlists", allEntries = true)
+    @CacheEvict(value = "wishlist", key = "T(org.springframework.security.core.context.SecurityContextHolder).getContext().getAuthentication().getPrincipal().getId() + ':' + #wishlistId")
     public void deleteWishlist(Long wishlistId) {
         log.info("Deleting wishlist with ID {}", wishlistId);
 
@@ -118,6 +126,8 @@ public class WishlistService {
         Optional<Wishlist> wishlist = wishlistRepository.findByIdAndUser(wishlistId, user);
         if (wishlist.isPresent()) {
             wishlistRepository.delete(wishlist.get());
+
+            cacheGenerations.advanceOfUser("wishlists", user.getId());
         } else {
             throw new WishlistNotFoundException(wishlistId);
         }
@@ -127,14 +137,14 @@ public class WishlistService {
     /**
      * Get a wishlist by its ID.
      * The wishlist must belong to the authenticated user.
-     * Cacheable annotation is used to cache the result of this method, so that the next time it is called with the same parameters, the result is returned from the cache.
+     * Cacheable annotation is used to cache the result of this method, and the key includes the authenticated user, since each user has its own wishlists.
      * 
      * @param wishlistId The ID of the wishlist to retrieve.
      * @throws WishlistNotFoundException If the wishlist does not exist, the exception WishlistNotFoundException is thrown.
      * @return The wishlist with the given ID
      * 
      */
-    @Cacheable(value = "wishlists", key = "#wishlistId")
+    @Cacheable(value = "wishlist", key = "T(org.springframework.security.core.context.SecurityContextHolder).getContext().getAuthentication().getPrincipal().getId() + ':' + #wishlistId")
     public Optional<WishlistDTO> getWishlistById(Long wishlistId) {
         log.info("Getting wishlist by ID {}", wishlistId);
 
@@ -151,14 +161,14 @@ public class WishlistService {
     /**
      * Get a wishlist by its name.
      * The wishlist must belong to the authenticated user.
-     * Cacheable annotation is used to cache the result of this method, so that the next time it is called with the same parameters, the result is returned from the cache.
+     * Cacheable annotation is used to cache the result of this method with the wishlists of the user, since the name of a wishlist can change.
      * 
      * @param name the name of the wishlist to retrieve
      * @throws WishlistNotFoundException If the wishlist does not exist, the exception WishlistNotFoundException is thrown.
      * @return the wishlist with the given name
      * 
      */
-    @Cacheable(value = "wishlists", key = "#name")
+    @Cacheable(value = "wishlists", keyGenerator = "wishlistsKeyGenerator")
     public Optional<WishlistDTO> getWishlistByName(String name) {
         log.info("Getting wishlist by name {}", name);
 
@@ -176,13 +186,12 @@ public class WishlistService {
     /**
      * Create a new wishlist and save it to the database.
      * The wishlist must belong to the authenticated user.
-     * CacheEvict annotation is used to remove all entries from the cache when a new wishlist is created.
+     * The generation of the cached wishlists of the user is advanced, so they are read again. The entries of the other users are kept.
      * 
      * @param wishlist the data of the new wishlist
      * @throws WishlistAlreadyExistsException If a wishlist with the same name already exists, the exception WishlistAlreadyExistsException is thrown.
      * 
      */
-    @CacheEvict(value = "wishlists", allEntries = true)
     public void createWishlist(WishlistDTO wishlist) {
         log.info("Creating wishlist with name {}", wishlist.name());
 
@@ -199,11 +208,14 @@ public class WishlistService {
         newWishlist.setUser(user);
 
         wishlistRepository.save(newWishlist);
+
+        cacheGenerations.advanceOfUser("wishlists", user.getId());
     }
 
     /**
      * Rename a wishlist by its ID with the new data and save it to the database.
      * The wishlist must belong to the authenticated user.
+     * CacheEvict annotation is used to remove only the cached entry of this wishlist, and the generation of the cached wishlists of the user is advanced.
      * 
      * @param wishlistId the ID of the wishlist to rename
      * @param updatedWishlist the new data of the wishlist
@@ -211,7 +223,7 @@ public class WishlistService {
      * @throws WishlistAlreadyExistsException If a wishlist with the same name already exists, the exception WishlistAlreadyExistsException is thrown.
      * 
      */
-    @CacheEvict(value = "wishlists", allEntries = true)
+    @CacheEvict(value = "wishlist", key = "T(org.springframework.security.core.context.SecurityContextHolder).getContext().getAuthentication().getPrincipal().getId() + ':' + #wishlistId")
     public void renameWishlist(Long wishlistId, WishlistDTO updatedWishlist) {
         log.info("Updating wishlist with ID {}", wishlistId);
 
@@ -224,6 +236,8 @@ public class WishlistService {
             }
             wishlist.get().setName(updatedWishlist.name());
             wishlistRepository.save(wishlist.get());
+
+            cacheGenerations.advanceOfUser("wishlists", user.getId());
         } else {
             throw new WishlistNotFoundException(wishlistId);
         }
@@ -6,13 +6,16 @@ import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import br.com.lufecrx.demo.ecommerce.api.model.Wishlist;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.SliceDTO;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.WishlistDTO;
 import br.com.lufecrx.demo.ecommerce.api.repository.WishlistRepository;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.pagination.ApproximateTotalService;
 import br.com.lufecrx.demo.ecommerce.auth.model.User;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidArgumentsToPaginationException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidSortDirectionException;
@@ -34,10 +37,13 @@ public class WishlistServicePaginable {
     @Autowired
     private WishlistRepository wishlistRepository;
 
+    @Autowired
+    private ApproximateTotalService approximateTotalService;
+
     /**
      * Retrieve wishlists with pagination.
      * The user must be authenticated to access this method and the wishlists must belong to the authenticated user.
-     * Cacheable annotation is used to cache the result of this method, so that the next time it is called with the same parameters, the result is returned from the cache.
+     * Cacheable annotation is used to cache the result of this method, and the key includes the authenticated user, since each user has its own wishlists.
      * 
      * @param page the page number
      * @param size the number of elements per page
@@ -48,7 +54,7 @@ public class WishlistServicePaginable {
      * @return the wishlists list with pagination
      * 
      */
-    @Cacheable(value = "wishlists", key = "#page.toString() + #size.toString() + T(java.util.Arrays).toString(#sort)")
+    @Cacheable(value = "wishlists", keyGenerator = "wishlistsKeyGenerator")
     public Iterable<WishlistDTO> getWithPagination(int page, int size, String[] sort) {
         
         log.info("Getting all wishlists with pagination, page {} and size {}", page, size);
@@ -80,4 +86,56 @@ public class WishlistServicePaginable {
     
         return wishlists.map(WishlistDTO::from);
     }
+
+    /**
+     * Retrieve wishlists with pagination, without counting them.
+     * The user must be authenticated to access this method and the wishlists must belong to the authenticated user.
+     * If requested, an approximate total is added, counted once per user and cached for some seconds.
+     * Cacheable annotation is used to cache the result of this method, and the key includes the authenticated user, since each user has its own wishlists.
+     * 
+     * @param page the page number
+     * @param size the number of elements per page
+     * @param sort the sorting criteria (property and direction)
+     * @param approximateTotal whether the approximate total must be included
+     * @throws InvalidArgumentsToPaginationException If the page or size are negative, the exception InvalidArgumentsToPagination is thrown.
+     * @throws InvalidSortDirectionException If the sorting direction is invalid (not "asc" or "desc"), the exception InvalidSortDirectionException is thrown.
+     * @throws WishlistsEmptyException If the user has no wishlists, the exception WishlistsEmptyException is thrown.
+     * @return the wishlists slice
+     * 
+     */
+    @Cacheable(value = "wishlists", keyGenerator = "wishlistsKeyGenerator")
+    public SliceDTO<WishlistDTO> getWithSlice(int page, int size, String[] sort, boolean approximateTotal) {
+
+        log.info("Getting all wishlists with slice pagination, page {} and size {}", page, size);
+
+        if (page < 0 || size < 0) {
+            throw new InvalidArgumentsToPaginationException();
+        }
+
+        // If the size is greater than 10, set it to 10
+        if (size > 10) {
+            size = 10;
+        }
+
+        if (sort.length != 2 || (!sort[1].equalsIgnoreCase("asc") && !sort[1].equalsIgnoreCase("desc"))) {
+            throw new InvalidSortDirectionException();
+        }
+
+        User user = (User) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+
+        Pageable pageRequest = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(sort[1]), sort[0]));
+        Slice<Wishlist> wishlists = wishlistRepository.findSliceByUser(user, pageRequest);
+
+        if (!wishlists.hasContent()) {
+            throw new WishlistsEmptyException();
+        }
+
+        Long total = approximateTotal
+                ? approximateTotalService.filteredTotal("wishlists",
+                        ApproximateTotalService.filterKey(user.getId()),
+                        () -> wishlistRepository.countByUser(user))
+                : null;
+
+        return SliceDTO.from(wishlists, WishlistDTO::from, total);
+    }
 }
@@ -49,7 +49,10 @@ public class SecurityConfigurations {
                         .requestMatchers(HttpMethod.POST, "/auth/resend-verification").permitAll()
                         .requestMatchers(HttpMethod.POST, "/password/request-reset").permitAll()
                         .requestMatchers(HttpMethod.POST, "/password/reset").permitAll()
+                        // The export streams the whole catalog, so it is not public like the other reads of the products
+                        .requestMatchers(HttpMethod.GET, "/products/export").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.GET, "/categories/**", "/products/**").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/actuator/health", "/actuator/health/liveness", "/actuator/health/readiness").permitAll()
 
                         // Require authentication for all GET, POST, PUT, DELETE requests to /wishlists/**  
                         .requestMatchers(HttpMethod.GET, "/wishlists/**").authenticated()
@@ -57,14 +60,18 @@ public class SecurityConfigurations {
                         .requestMatchers(HttpMethod.PUT, "/wishlists/**").authenticated()
                         .requestMatchers(HttpMethod.DELETE, "/wishlists/**").authenticated()
                    
-                        // Only allow users with the ADMIN role to POST, PUT, DELETE to /products/** and /categories/**
+                        // Only allow users with the ADMIN role to POST, PUT, PATCH, DELETE to /products/** and /categories/**
                         .requestMatchers(HttpMethod.POST, "/products/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.PUT, "/products/**").hasRole("ADMIN")
+                        .requestMatchers(HttpMethod.PATCH, "/products/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.DELETE, "/products/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.POST, "/categories/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.PUT, "/categories/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.DELETE, "/categories/**").hasRole("ADMIN")
 
+                        // Only allow users with the ADMIN role to read the metrics and caches of the application
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
+
                         .anyRequest().authenticated()) // All other requests require authentication
 
                 .addFilterBefore(securityFilter, UsernamePasswordAuthenticationFilter.class)
@@ -0,0 +1,26 @@
+package br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination;
+
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The InvalidCursorException class is responsible for throwing an exception when the cursor of a keyset pagination is invalid.
+ * Examples of invalid cursors are malformed tokens and tokens created for a different sorting.
+ *
+ */
+@Slf4j
+public class InvalidCursorException extends RuntimeException {
+
+    private final static ResourceBundle bundle = ResourceBundle.getBundle("messages", Locale.getDefault());
+
+    /**
+     * Constructor for the exception that is thrown when the cursor of a keyset pagination is invalid.
+     * 
+     */
+    public InvalidCursorException() {
+        super(bundle.getString("pagination.invalid_cursor"));
+        log.error(bundle.getString("pagination.invalid_cursor"));
+    }
+}
@@ -0,0 +1,27 @@
+package br.com.lufecrx.demo.ecommerce.exception.api.domain.product;
+
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class represents the exception that is thrown when a bulk price adjustment is invalid, e.g. an unknown type or a
+ * percentage that would make the prices negative.
+ * Reference for the error message in the messages.properties file: product.invalid_price_adjustment
+ * 
+ */
+@Slf4j
+public class InvalidPriceAdjustmentException extends RuntimeException {
+
+    private final static ResourceBundle bundle = ResourceBundle.getBundle("messages", Locale.getDefault());
+
+    /**
+     * Constructor for the exception that is thrown when a bulk price adjustment is invalid.
+     * 
+     */
+    public InvalidPriceAdjustmentException() {
+        super(bundle.getString("product.invalid_price_adjustment"));
+        log.error(bundle.getString("product.invalid_price_adjustment"));
+    }
+}
@@ -0,0 +1,27 @@
+package br.com.lufecrx.demo.ecommerce.exception.api.domain.product;
+
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class represents the exception that is thrown when a search needs the in-memory product index and it is not ready,
+ * e.g. while it is rebuilt on startup or when it is disabled.
+ * Reference for the error message in the messages.properties file: product.search_index_unavailable
+ * 
+ */
+@Slf4j
+public class SearchIndexUnavailableException extends RuntimeException {
+
+    private final static ResourceBundle bundle = ResourceBundle.getBundle("messages", Locale.getDefault());
+
+    /**
+     * Constructor for the exception that is thrown when the product search index is not ready.
+     * 
+     */
+    public SearchIndexUnavailableException() {
+        super(bundle.getString("product.search_index_unavailable"));
+        log.error("Product search index is not available.");
+    }
+}
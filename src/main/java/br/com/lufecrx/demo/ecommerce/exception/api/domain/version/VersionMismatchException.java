@@ -0,0 +1,30 @@
+package br.com.lufecrx.demo.ecommerce.exception.api.domain.version;
+
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class represents the exception that is thrown when a conditional update (If-Match) finds another version of the resource,
+ * because it was changed since the client read it.
+ * Reference for the error messages in the messages.properties file: product.version_mismatch and category.version_mismatch
+ * 
+ */
+@Slf4j
+public class VersionMismatchException extends RuntimeException {
+
+    private final static ResourceBundle bundle = ResourceBundle.getBundle("messages", Locale.getDefault());
+
+    /**
+     * Constructor for the exception that is thrown when a conditional update finds another version of the resource.
+     * 
+     * @param resource the type of the resource, e.g. "product".
+     * @param id the id of the resource.
+     * 
+     */
+    public VersionMismatchException(String resource, Long id) {
+        super(bundle.getString(resource + ".version_mismatch").replace("{id}", id.toString()));
+        log.error("The {} with id {} was changed since it was read.", resource, id);
+    }
+}
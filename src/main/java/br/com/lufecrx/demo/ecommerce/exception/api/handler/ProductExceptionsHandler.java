@@ -7,9 +7,11 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.InvalidPriceAdjustmentException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.InvalidProductNameException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.ProductNotFoundException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.ProductsEmptyException;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.SearchIndexUnavailableException;
 import br.com.lufecrx.demo.ecommerce.exception.message.RestErrorMessage;
 
 /**
@@ -53,4 +55,28 @@ public class ProductExceptionsHandler extends ResponseEntityExceptionHandler {
         RestErrorMessage threatResponse = new RestErrorMessage(HttpStatus.BAD_REQUEST, ex.getMessage());
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(threatResponse);
     }
+
+    /**
+     * This method handles InvalidPriceAdjustmentException. It returns a response with status 400.
+     * @param ex InvalidPriceAdjustmentException
+     * @return ResponseEntity<RestErrorMessage> with status 400 and the exception message
+     */
+    @ExceptionHandler(InvalidPriceAdjustmentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ResponseEntity<RestErrorMessage> handleInvalidPriceAdjustmentException(InvalidPriceAdjustmentException ex) {
+        RestErrorMessage threatResponse = new RestErrorMessage(HttpStatus.BAD_REQUEST, ex.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(threatResponse);
+    }
+
+    /**
+     * This method handles SearchIndexUnavailableException. It returns a response with status 503.
+     * @param ex SearchIndexUnavailableException
+     * @return ResponseEntity<RestErrorMessage> with status 503 and the exception message
+     */
+    @ExceptionHandler(SearchIndexUnavailableException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ResponseEntity<RestErrorMessage> handleSearchIndexUnavailableException(SearchIndexUnavailableException ex) {
+        RestErrorMessage threatResponse = new RestErrorMessage(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(threatResponse);
+    }
 }
@@ -0,0 +1,52 @@
+package br.com.lufecrx.demo.ecommerce.exception.api.handler;
+
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
+
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.version.VersionMismatchException;
+import br.com.lufecrx.demo.ecommerce.exception.message.RestErrorMessage;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class is responsible for handling exceptions related to the versions of the resources (optimistic locking).
+ */
+@ControllerAdvice
+@Slf4j
+public class VersionExceptionsHandler extends ResponseEntityExceptionHandler {
+
+    private final ResourceBundle bundle = ResourceBundle.getBundle("messages", Locale.getDefault());
+
+    /**
+     * This method handles VersionMismatchException. It returns a response with status 412.
+     * @param ex VersionMismatchException
+     * @return ResponseEntity<RestErrorMessage> with status 412 and the exception message
+     */
+    @ExceptionHandler(VersionMismatchException.class)
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+    public ResponseEntity<RestErrorMessage> handleVersionMismatchException(VersionMismatchException ex) {
+        RestErrorMessage threatResponse = new RestErrorMessage(HttpStatus.PRECONDITION_FAILED, ex.getMessage());
+        return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).body(threatResponse);
+    }
+
+    /**
+     * This method handles ObjectOptimisticLockingFailureException, thrown when two requests update the same resource at the same time
+     * and the second one writes a stale copy. It returns a response with status 409.
+     * @param ex ObjectOptimisticLockingFailureException
+     * @return ResponseEntity<RestErrorMessage> with status 409 and the conflict message
+     */
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public ResponseEntity<RestErrorMessage> handleObjectOptimisticLockingFailureException(ObjectOptimisticLockingFailureException ex) {
+        log.error("Concurrent update of {} with id {}", ex.getPersistentClassName(), ex.getIdentifier());
+        RestErrorMessage threatResponse = new RestErrorMessage(HttpStatus.CONFLICT, bundle.getString("version.conflict"));
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(threatResponse);
+    }
+}
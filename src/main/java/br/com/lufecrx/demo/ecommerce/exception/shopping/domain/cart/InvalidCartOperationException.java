@@ -0,0 +1,27 @@
+package br.com.lufecrx.demo.ecommerce.exception.shopping.domain.cart;
+
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class represents the exception that is thrown when an operation of a batch of cart changes is invalid, e.g. an
+ * unknown type or a quantity missing or out of range.
+ * Reference for the error message in the messages.properties file: cart.invalid_operation
+ * 
+ */
+@Slf4j
+public class InvalidCartOperationException extends RuntimeException {
+
+    private final static ResourceBundle bundle = ResourceBundle.getBundle("messages", Locale.getDefault());
+
+    /**
+     * Constructor for the exception that is thrown when an operation of a batch of cart changes is invalid.
+     * 
+     */
+    public InvalidCartOperationException() {
+        super(bundle.getString("cart.invalid_operation"));
+        log.error(bundle.getString("cart.invalid_operation"));
+    }
+}
@@ -9,6 +9,7 @@ import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExcep
 
 import br.com.lufecrx.demo.ecommerce.exception.message.RestErrorMessage;
 import br.com.lufecrx.demo.ecommerce.exception.shopping.domain.cart.CartItemNotFoundException;
+import br.com.lufecrx.demo.ecommerce.exception.shopping.domain.cart.InvalidCartOperationException;
 import br.com.lufecrx.demo.ecommerce.exception.shopping.domain.cart.UnauthorizedCartItemUpdateException;
 
 /**
@@ -38,5 +39,16 @@ public class ShoppingCartExceptionsHandler extends ResponseEntityExceptionHandle
         RestErrorMessage threatResponse = new RestErrorMessage(HttpStatus.NOT_FOUND, ex.getMessage());
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(threatResponse);
     }
+
+    /**
+     * This method handles InvalidCartOperationException. It returns a response with status 400.
+     * @return ResponseEntity<RestErrorMessage> with status 400 and the exception message
+     */
+    @ExceptionHandler(InvalidCartOperationException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ResponseEntity<RestErrorMessage> handleInvalidCartOperationException(InvalidCartOperationException ex) {
+        RestErrorMessage threatResponse = new RestErrorMessage(HttpStatus.BAD_REQUEST, ex.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(threatResponse);
+    }
     
 }
@@ -7,16 +7,20 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import br.com.lufecrx.demo.ecommerce.shopping.cart.model.ShoppingCart;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto.CartOperationsDTO;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto.ShoppingCartDTO;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto.ShoppingCartSummaryDTO;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.service.ShoppingCartService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import jakarta.validation.Valid;
 
 /**
  * The ShoppingCartController class is responsible for handling the HTTP requests related to shopping carts.
@@ -49,6 +53,19 @@ public class ShoppingCartController {
         return ResponseEntity.ok(cart);
     }
 
+    /**
+     * This method returns the item count and the subtotal of the shopping cart of the user, e.g. for the cart badge.
+     * @return The summary of the shopping cart.
+     */
+    @Operation(summary = "Get the summary of the shopping cart of the user", description = "Get the item count and the subtotal of the shopping cart of the current user, without its items")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Shopping cart summary found"),
+    })
+    @GetMapping("/summary")
+    public ResponseEntity<ShoppingCartSummaryDTO> getSummary() {
+        return ResponseEntity.ok(shoppingCartService.getSummary());
+    }
+
     /**
      * This method adds a product to the shopping cart.
      * @param productId the ID of the product to be added to the cart, passed as a request parameter.
@@ -68,6 +85,23 @@ public class ShoppingCartController {
         return ResponseEntity.ok(bundle.getString("cart.successfully_added_product"));
     }
 
+    /**
+     * This method applies a batch of changes to the shopping cart, e.g. to restore a cart or to buy an order again.
+     * @param operations the operations to add, set the quantity of or remove products, applied in order.
+     * @return The shopping cart after the changes.
+     */
+    @Operation(summary = "Apply a batch of changes to the shopping cart", description = "Add products, set their quantities or remove them from the shopping cart of the current user in a single transaction, and return the resulting cart")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Shopping cart updated"),
+        @ApiResponse(responseCode = "400", description = "Invalid operation"),
+        @ApiResponse(responseCode = "404", description = "Product not found")
+    })
+    @PutMapping("/batch")
+    public ResponseEntity<ShoppingCartDTO> applyOperations(
+        @RequestBody @Valid CartOperationsDTO operations) {
+        return ResponseEntity.ok(shoppingCartService.applyOperations(operations.operations()));
+    }
+
     /**
      * This method removes a product from the shopping cart.
      * @param productId the ID of the product to be removed from the cart, passed as a request parameter.
@@ -9,6 +9,7 @@ import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -17,6 +18,7 @@ import lombok.NoArgsConstructor;
 /**
  * CartItem is a class that represents an item in the shopping cart.
  * It contains the product that the user has added to the cart and the quantity of the product.
+ * A cart has a single item per product: adding the product again increases its quantity.
  * 
  * @see ShoppingCart
  * @see Product
@@ -25,7 +27,7 @@ import lombok.NoArgsConstructor;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-@Table(name = "cart_item")
+@Table(name = "cart_item", uniqueConstraints = @UniqueConstraint(name = "uk_cart_item_cart_product", columnNames = { "shopping_cart_id", "product_id" }))
 @Builder
 public class CartItem {
 
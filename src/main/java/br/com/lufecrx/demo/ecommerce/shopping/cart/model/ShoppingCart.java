@@ -4,9 +4,12 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.hibernate.annotations.ColumnDefault;
+
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
 import br.com.lufecrx.demo.ecommerce.auth.model.User;
 import jakarta.persistence.CascadeType;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
@@ -15,6 +18,7 @@ import jakarta.persistence.JoinColumn;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.OneToOne;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -23,6 +27,7 @@ import lombok.NoArgsConstructor;
 /**
  * ShoppingCart is a class that represents the shopping cart of a user.
  * It contains the products that the user has added to the cart.
+ * Each user has a single shopping cart.
  * 
  * @see Product
  * @see User
@@ -31,7 +36,7 @@ import lombok.NoArgsConstructor;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-@Table(name = "shopping_cart")
+@Table(name = "shopping_cart", uniqueConstraints = @UniqueConstraint(name = "uk_shopping_cart_user", columnNames = "user_id"))
 @Builder
 public class ShoppingCart {
 
@@ -59,6 +64,24 @@ public class ShoppingCart {
      */
     private LocalDateTime updatedAt;
 
+    /**
+     * The number of units of all the items of the shopping cart, e.g. for the cart badge.
+     * It is only written by the statements that recalculate the totals from the items, never by saving the cart.
+     */
+    @ColumnDefault("0")
+    @Column(name = "item_count", nullable = false, insertable = false, updatable = false)
+    @Builder.Default
+    private Integer itemCount = 0;
+
+    /**
+     * The sum of the current prices of all the items of the shopping cart.
+     * It is only written by the statements that recalculate the totals from the items, never by saving the cart.
+     */
+    @ColumnDefault("0")
+    @Column(nullable = false, insertable = false, updatable = false)
+    @Builder.Default
+    private Double subtotal = 0.0;
+
     /**
      * The items that the user has added to the shopping cart.
      */
@@ -79,7 +102,8 @@ public class ShoppingCart {
     }
 
     /**
-     * Get the total price of the shopping cart.
+     * Get the total price of the shopping cart, calculated from the loaded items and their products.
+     * It loads every product, so the stored subtotal should be preferred.
      * 
      * @return The total price of the shopping cart.
      */
@@ -0,0 +1,22 @@
+package br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto;
+
+import br.com.lufecrx.demo.ecommerce.shopping.cart.service.CartOperationType;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+
+/**
+ * CartOperationDTO is a data transfer object that represents one change of a batch of cart changes.
+ * 
+ * @param type the type of the change: add, set or remove
+ * @param productId the id of the product
+ * @param quantity the quantity to add or to set, ignored by remove
+ * 
+ * @see CartOperationType
+ */
+public record CartOperationDTO(
+    @NotBlank(message = "Operation type cannot be blank")
+    String type,
+    @NotNull(message = "Product id cannot be null")
+    Long productId,
+    Integer quantity) {
+}
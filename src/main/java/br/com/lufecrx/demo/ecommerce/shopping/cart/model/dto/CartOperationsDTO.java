@@ -0,0 +1,21 @@
+package br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto;
+
+import java.util.List;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+
+/**
+ * CartOperationsDTO is a data transfer object that represents a batch of cart changes, e.g. to restore a cart or to buy
+ * an order again. The operations are applied in order.
+ * 
+ * @param operations the changes of the cart
+ * 
+ * @see CartOperationDTO
+ */
+public record CartOperationsDTO(
+    @NotEmpty(message = "Operations cannot be empty")
+    @Size(max = 100, message = "A batch cannot have more than 100 operations")
+    List<@Valid CartOperationDTO> operations) {
+}
@@ -8,9 +8,11 @@ import br.com.lufecrx.demo.ecommerce.shopping.cart.model.ShoppingCart;
 
 /**
  * ShoppingCartDTO is a data transfer object that represents a shopping cart.
- * It contains a list of cart items, the creation date and the last update date.
+ * It contains a list of cart items, the totals, the creation date and the last update date.
  * 
  * @param cartItems the list of cart items
+ * @param itemCount the number of units of all the items
+ * @param subtotal the sum of the prices of all the items
  * @param createdAt the creation date
  * @param updatedAt the last update date
  * 
@@ -18,6 +20,8 @@ import br.com.lufecrx.demo.ecommerce.shopping.cart.model.ShoppingCart;
  */
 public record ShoppingCartDTO(
     List<CartItemDTO> cartItems, 
+    Integer itemCount,
+    Double subtotal,
     LocalDateTime createdAt, 
     LocalDateTime updatedAt) {
 
@@ -29,7 +33,7 @@ public record ShoppingCartDTO(
      */
     public static ShoppingCartDTO from(ShoppingCart shoppingCart) {
         List<CartItemDTO> cartItemDTOs = shoppingCart.getCartItems() != null ? CartItemDTO.from(shoppingCart.getCartItems()) : new ArrayList<>();
-        return new ShoppingCartDTO(cartItemDTOs, shoppingCart.getCreatedAt(), shoppingCart.getUpdatedAt());
+        return new ShoppingCartDTO(cartItemDTOs, shoppingCart.getItemCount(), shoppingCart.getSubtotal(), shoppingCart.getCreatedAt(), shoppingCart.getUpdatedAt());
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto;
+
+import java.time.LocalDateTime;
+
+import br.com.lufecrx.demo.ecommerce.shopping.cart.model.ShoppingCart;
+
+/**
+ * ShoppingCartSummaryDTO is a data transfer object that represents the totals of a shopping cart, e.g. for the cart badge and the header total.
+ * It is read from the cart row alone, without the items and their products.
+ * 
+ * @param itemCount the number of units of all the items
+ * @param subtotal the sum of the prices of all the items
+ * @param updatedAt the last update date, null if the user does not have a cart
+ * 
+ * @see ShoppingCart
+ */
+public record ShoppingCartSummaryDTO(
+    Integer itemCount,
+    Double subtotal,
+    LocalDateTime updatedAt) {
+
+    /**
+     * The summary of a user that does not have a shopping cart yet.
+     */
+    public static final ShoppingCartSummaryDTO EMPTY = new ShoppingCartSummaryDTO(0, 0.0, null);
+}
@@ -1,13 +1,68 @@
 package br.com.lufecrx.demo.ecommerce.shopping.cart.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import br.com.lufecrx.demo.ecommerce.shopping.cart.model.CartItem;
 
 /**
  * CartItemRepository is an interface that extends the JpaRepository interface.
  * It provides methods to perform CRUD operations on CartItem entities.
+ * 
+ * @see CartItemUpsertRepository
  */
-public interface CartItemRepository extends JpaRepository<CartItem, Long> {
-    
+public interface CartItemRepository extends JpaRepository<CartItem, Long>, CartItemUpsertRepository {
+
+    /**
+     * Updates the quantity of a cart item, only if it is in the shopping cart of the given user, with a single statement.
+     * 
+     * @param id The identifier of the cart item.
+     * @param userId The identifier of the user that owns the shopping cart.
+     * @param quantity The new quantity.
+     * @return The number of items updated, 0 if the item does not exist or belongs to another user.
+     */
+    @Transactional
+    @Modifying
+    @Query("UPDATE CartItem i SET i.quantity = :quantity " +
+           "WHERE i.id = :id AND i.shoppingCart.id IN (SELECT c.id FROM ShoppingCart c WHERE c.user.id = :userId)")
+    int updateQuantityByIdAndUserId(@Param("id") Long id, @Param("userId") Long userId, @Param("quantity") Integer quantity);
+
+    /**
+     * Deletes a cart item, only if it is in the shopping cart of the given user, with a single statement.
+     * 
+     * @param id The identifier of the cart item.
+     * @param userId The identifier of the user that owns the shopping cart.
+     * @return The number of items deleted, 0 if the item does not exist or belongs to another user.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM CartItem i " +
+           "WHERE i.id = :id AND i.shoppingCart.id IN (SELECT c.id FROM ShoppingCart c WHERE c.user.id = :userId)")
+    int deleteByIdAndUserId(@Param("id") Long id, @Param("userId") Long userId);
+
+    /**
+     * Deletes the item of a product from a shopping cart, with a single statement.
+     * 
+     * @param shoppingCartId The identifier of the shopping cart.
+     * @param productId The identifier of the product.
+     * @return The number of items deleted, 0 if the product is not in the cart.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM CartItem i WHERE i.shoppingCart.id = :shoppingCartId AND i.product.id = :productId")
+    int deleteByShoppingCartIdAndProductId(@Param("shoppingCartId") Long shoppingCartId, @Param("productId") Long productId);
+
+    /**
+     * Deletes all the items of a shopping cart, with a single statement.
+     * 
+     * @param shoppingCartId The identifier of the shopping cart.
+     * @return The number of items deleted.
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM CartItem i WHERE i.shoppingCart.id = :shoppingCartId")
+    int deleteByShoppingCartId(@Param("shoppingCartId") Long shoppingCartId);
 }
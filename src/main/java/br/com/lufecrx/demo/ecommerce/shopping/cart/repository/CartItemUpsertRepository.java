@@ -0,0 +1,50 @@
+package br.com.lufecrx.demo.ecommerce.shopping.cart.repository;
+
+import java.util.Collection;
+
+/**
+ * This interface is a custom fragment of the CartItemRepository to add products to a cart with a single statement,
+ * and to apply a batch of changes of a cart with JDBC batches.
+ * 
+ * @see CartItemUpsertRepositoryImpl
+ */
+public interface CartItemUpsertRepository {
+
+    /**
+     * Add a quantity of a product to a shopping cart: the item is inserted, or the quantity of the existing item is increased.
+     * The unique constraint of the cart and product makes it atomic, so concurrent adds of the same product never duplicate the item.
+     * 
+     * @param shoppingCartId The identifier of the shopping cart.
+     * @param productId The identifier of the product.
+     * @param quantity The quantity to add.
+     * @return The number of items inserted or updated, 0 if the product does not exist.
+     */
+    int addQuantity(Long shoppingCartId, Long productId, Integer quantity);
+
+    /**
+     * Apply the changes of the items of a shopping cart: the items removed are deleted in one JDBC batch, and the others
+     * are upserted in another. The products must exist, they are not checked by the statements.
+     * 
+     * @param shoppingCartId The identifier of the shopping cart.
+     * @param changes The changes of the items, at most one per product.
+     */
+    void applyChanges(Long shoppingCartId, Collection<QuantityChange> changes);
+
+    /**
+     * The change of the item of a product.
+     * 
+     * @param productId The identifier of the product.
+     * @param replace Whether the quantity replaces the quantity of the item, instead of being added to it.
+     * @param quantity The quantity to add or to set.
+     */
+    record QuantityChange(Long productId, boolean replace, int quantity) {
+
+        /**
+         * Whether the change removes the item from the cart.
+         * @return true if the quantity is replaced by 0
+         */
+        public boolean removes() {
+            return replace && quantity == 0;
+        }
+    }
+}
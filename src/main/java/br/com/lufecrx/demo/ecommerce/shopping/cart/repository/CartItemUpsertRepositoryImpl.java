@@ -0,0 +1,94 @@
+package br.com.lufecrx.demo.ecommerce.shopping.cart.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.database.DatabaseVendor;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * This class implements the upsert of the cart items.
+ * On PostgreSQL, it uses INSERT ... ON CONFLICT DO UPDATE on the unique constraint of the cart and product.
+ * On the other databases (e.g. H2 in the tests), it falls back to the standard MERGE.
+ * In both, the product is selected by the statement itself, so a missing product inserts nothing instead of being loaded first.
+ * The batches of changes use the same upserts with positional parameters and a flag to replace the quantity instead of
+ * adding to it. They run through the JdbcTemplate, on the connection of the transaction, in a round trip per statement.
+ * 
+ * @see CartItemUpsertRepository
+ */
+public class CartItemUpsertRepositoryImpl implements CartItemUpsertRepository {
+
+    private static final String POSTGRES_UPSERT = """
+            INSERT INTO cart_item (shopping_cart_id, product_id, quantity)
+            SELECT :shoppingCartId, p.id, :quantity FROM products p WHERE p.id = :productId
+            ON CONFLICT (shopping_cart_id, product_id)
+            DO UPDATE SET quantity = cart_item.quantity + EXCLUDED.quantity, updated_at = CURRENT_TIMESTAMP
+            """;
+
+    private static final String PORTABLE_UPSERT = """
+            MERGE INTO cart_item i
+            USING (SELECT p.id AS product_id FROM products p WHERE p.id = :productId) s
+            ON i.shopping_cart_id = :shoppingCartId AND i.product_id = s.product_id
+            WHEN MATCHED THEN UPDATE SET quantity = i.quantity + :quantity
+            WHEN NOT MATCHED THEN INSERT (shopping_cart_id, product_id, quantity) VALUES (:shoppingCartId, s.product_id, :quantity)
+            """;
+
+    private static final String POSTGRES_BATCH_UPSERT = """
+            INSERT INTO cart_item (shopping_cart_id, product_id, quantity) VALUES (?, ?, ?)
+            ON CONFLICT (shopping_cart_id, product_id)
+            DO UPDATE SET quantity = CASE WHEN ? THEN EXCLUDED.quantity ELSE cart_item.quantity + EXCLUDED.quantity END,
+                updated_at = CURRENT_TIMESTAMP
+            """;
+
+    private static final String PORTABLE_BATCH_UPSERT = """
+            MERGE INTO cart_item i
+            USING (SELECT CAST(? AS BIGINT) AS shopping_cart_id, CAST(? AS BIGINT) AS product_id,
+                CAST(? AS INTEGER) AS quantity, CAST(? AS BOOLEAN) AS replace_quantity) s
+            ON i.shopping_cart_id = s.shopping_cart_id AND i.product_id = s.product_id
+            WHEN MATCHED THEN UPDATE SET quantity = CASE WHEN s.replace_quantity THEN s.quantity ELSE i.quantity + s.quantity END
+            WHEN NOT MATCHED THEN INSERT (shopping_cart_id, product_id, quantity) VALUES (s.shopping_cart_id, s.product_id, s.quantity)
+            """;
+
+    private static final String BATCH_DELETE = "DELETE FROM cart_item WHERE shopping_cart_id = ? AND product_id = ?";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DatabaseVendor databaseVendor;
+
+    @Override
+    public int addQuantity(Long shoppingCartId, Long productId, Integer quantity) {
+        return entityManager.createNativeQuery(databaseVendor.isPostgres() ? POSTGRES_UPSERT : PORTABLE_UPSERT)
+                .setParameter("shoppingCartId", shoppingCartId)
+                .setParameter("productId", productId)
+                .setParameter("quantity", quantity)
+                .executeUpdate();
+    }
+
+    @Override
+    public void applyChanges(Long shoppingCartId, Collection<QuantityChange> changes) {
+        List<Object[]> deletes = changes.stream()
+                .filter(QuantityChange::removes)
+                .map(change -> new Object[] { shoppingCartId, change.productId() })
+                .toList();
+        List<Object[]> upserts = changes.stream()
+                .filter(change -> !change.removes())
+                .map(change -> new Object[] { shoppingCartId, change.productId(), change.quantity(), change.replace() })
+                .toList();
+
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate(BATCH_DELETE, deletes);
+        }
+        if (!upserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(databaseVendor.isPostgres() ? POSTGRES_BATCH_UPSERT : PORTABLE_BATCH_UPSERT, upserts);
+        }
+    }
+}
@@ -3,14 +3,28 @@ package br.com.lufecrx.demo.ecommerce.shopping.cart.repository;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import br.com.lufecrx.demo.ecommerce.shopping.cart.model.ShoppingCart;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto.ShoppingCartSummaryDTO;
 
 /**
  * ShoppingCartRepository is an interface that extends the JpaRepository interface.
  * It provides methods to perform CRUD operations on ShoppingCart entities.
+ * 
+ * @see ShoppingCartUpsertRepository
  */
-public interface ShoppingCartRepository extends JpaRepository<ShoppingCart, Long> {
+public interface ShoppingCartRepository extends JpaRepository<ShoppingCart, Long>, ShoppingCartUpsertRepository {
+
+    /**
+     * The update of the totals of the carts from their items and the current prices, completed by the condition of the carts to update.
+     */
+    String RECALCULATE_TOTALS = "UPDATE ShoppingCart c SET " +
+            "c.itemCount = (SELECT COALESCE(SUM(i.quantity), 0) FROM CartItem i WHERE i.shoppingCart.id = c.id), " +
+            "c.subtotal = (SELECT COALESCE(SUM(i.quantity * p.price), 0.0) FROM CartItem i JOIN i.product p WHERE i.shoppingCart.id = c.id) ";
     
     /**
      * Finds a shopping cart by id and user.
@@ -28,4 +42,48 @@ public interface ShoppingCartRepository extends JpaRepository<ShoppingCart, Long
      * @return The shopping cart of the user.
      */
     Optional<ShoppingCart> findByUserId(Long userId);
+
+    /**
+     * Finds the totals of the shopping cart of a user, reading only the cart row.
+     * 
+     * @param userId The identifier of the user.
+     * @return The summary of the shopping cart, or empty if the user does not have a cart.
+     */
+    @Query("SELECT new br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto.ShoppingCartSummaryDTO(c.itemCount, c.subtotal, c.updatedAt) " +
+           "FROM ShoppingCart c WHERE c.user.id = :userId")
+    Optional<ShoppingCartSummaryDTO> findSummaryByUserId(@Param("userId") Long userId);
+
+    /**
+     * Recalculates the item count and the subtotal of a shopping cart from its items, with a single statement.
+     * The pending changes of the items are flushed first, so they are counted.
+     * 
+     * @param id The identifier of the shopping cart.
+     * @return The number of carts updated.
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query(RECALCULATE_TOTALS + "WHERE c.id = :id")
+    int refreshTotals(@Param("id") Long id);
+
+    /**
+     * Recalculates the totals of all the shopping carts that contain a product, e.g. after its price changed.
+     * 
+     * @param productId The identifier of the product.
+     * @return The number of carts updated.
+     */
+    @Transactional
+    @Modifying
+    @Query(RECALCULATE_TOTALS + "WHERE c.id IN (SELECT ci.shoppingCart.id FROM CartItem ci WHERE ci.product.id = :productId)")
+    int refreshTotalsByProductId(@Param("productId") Long productId);
+
+    /**
+     * Recalculates the totals of all the shopping carts that contain a product of a category, e.g. after the prices of the category were adjusted.
+     * 
+     * @param categoryId The identifier of the category.
+     * @return The number of carts updated.
+     */
+    @Transactional
+    @Modifying
+    @Query(RECALCULATE_TOTALS + "WHERE c.id IN (SELECT ci.shoppingCart.id FROM CartItem ci JOIN ci.product p JOIN p.categories cat WHERE cat.id = :categoryId)")
+    int refreshTotalsByCategoryId(@Param("categoryId") Long categoryId);
 }
@@ -0,0 +1,25 @@
+package br.com.lufecrx.demo.ecommerce.shopping.cart.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * This interface is a custom fragment of the ShoppingCartRepository to create the shopping carts idempotently.
+ * 
+ * @see ShoppingCartUpsertRepositoryImpl
+ */
+public interface ShoppingCartUpsertRepository {
+
+    /**
+     * Create the shopping cart of a user if it does not exist, or set the time of its last update if it does.
+     * The unique constraint of the user makes it atomic, so concurrent requests of the same user never create two carts.
+     * It runs in its own transaction when the caller has none, e.g. when the cart is created to be read.
+     * 
+     * @param userId The identifier of the user.
+     * @param now The time of the creation or of the update.
+     * @return The identifier of the shopping cart of the user.
+     */
+    @Transactional
+    Long upsertForUser(Long userId, LocalDateTime now);
+}
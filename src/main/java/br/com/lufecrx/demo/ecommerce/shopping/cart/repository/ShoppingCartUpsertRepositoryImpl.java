@@ -0,0 +1,59 @@
+package br.com.lufecrx.demo.ecommerce.shopping.cart.repository;
+
+import java.time.LocalDateTime;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.database.DatabaseVendor;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * This class implements the upsert of the shopping carts.
+ * On PostgreSQL, it uses INSERT ... ON CONFLICT DO UPDATE ... RETURNING on the unique constraint of the user, a single round trip.
+ * On the other databases (e.g. H2 in the tests), it falls back to the standard MERGE followed by a query of the id.
+ * 
+ * @see ShoppingCartUpsertRepository
+ */
+public class ShoppingCartUpsertRepositoryImpl implements ShoppingCartUpsertRepository {
+
+    private static final String POSTGRES_UPSERT = """
+            INSERT INTO shopping_cart (user_id, created_at, updated_at) VALUES (:userId, :now, :now)
+            ON CONFLICT (user_id) DO UPDATE SET updated_at = EXCLUDED.updated_at
+            RETURNING id
+            """;
+
+    private static final String PORTABLE_UPSERT = """
+            MERGE INTO shopping_cart c
+            USING (SELECT CAST(:userId AS BIGINT) AS user_id) s
+            ON c.user_id = s.user_id
+            WHEN MATCHED THEN UPDATE SET updated_at = :now
+            WHEN NOT MATCHED THEN INSERT (user_id, created_at, updated_at) VALUES (s.user_id, :now, :now)
+            """;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private DatabaseVendor databaseVendor;
+
+    @Override
+    public Long upsertForUser(Long userId, LocalDateTime now) {
+        if (databaseVendor.isPostgres()) {
+            Object id = entityManager.createNativeQuery(POSTGRES_UPSERT)
+                    .setParameter("userId", userId)
+                    .setParameter("now", now)
+                    .getSingleResult();
+            return ((Number) id).longValue();
+        }
+
+        entityManager.createNativeQuery(PORTABLE_UPSERT)
+                .setParameter("userId", userId)
+                .setParameter("now", now)
+                .executeUpdate();
+        Object id = entityManager.createNativeQuery("SELECT id FROM shopping_cart WHERE user_id = :userId")
+                .setParameter("userId", userId)
+                .getSingleResult();
+        return ((Number) id).longValue();
+    }
+}
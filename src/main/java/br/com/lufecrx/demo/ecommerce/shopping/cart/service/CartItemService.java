@@ -1,24 +1,40 @@
 package br.com.lufecrx.demo.ecommerce.shopping.cart.service;
 
+import java.time.LocalDateTime;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import br.com.lufecrx.demo.ecommerce.auth.model.User;
 import br.com.lufecrx.demo.ecommerce.exception.shopping.domain.cart.CartItemNotFoundException;
 import br.com.lufecrx.demo.ecommerce.exception.shopping.domain.cart.UnauthorizedCartItemUpdateException;
-import br.com.lufecrx.demo.ecommerce.shopping.cart.model.CartItem;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.CartItemRepository;
-import jakarta.transaction.Transactional;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.ShoppingCartRepository;
 
 /**
  * This service is responsible for handling the cart item operations.
+ * Each change of an item recalculates the item count and the subtotal of its cart in the same transaction.
+ * The items are changed by id, so the changes of the cart buffered by the write-behind mode are written first, before
+ * the transaction of the change is opened.
+ * 
+ * @see CartWriteBehindBuffer
  */
 @Service
 public class CartItemService {
     
     @Autowired
     private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private ShoppingCartRepository shoppingCartRepository;
+
+    @Autowired
+    private CartWriteBehindBuffer cartWriteBehindBuffer;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
     
     /**
      * Get the authenticated user.
@@ -30,47 +46,64 @@ public class CartItemService {
 
     /**
      * Update the quantity of a cart item.
+     * The ownership is checked by the UPDATE statement itself, without loading the item, its cart and its user.
      * 
      * @param cartItemId The identifier of the cart item to update.
      * @param quantity The new quantity of the cart item.
      * @throws CartItemNotFoundException If the cart item is not available.
      * @throws UnauthorizedCartItemUpdateException If the user is not allowed to update the cart item.
      */
-    @Transactional
     public void updateCartItemQuantity(Long cartItemId, Integer quantity) {
         User currentUser = getAuthenticatedUser();
+        cartWriteBehindBuffer.flush(currentUser.getId());
 
-        CartItem cartItem = cartItemRepository.findById(cartItemId)
-            .orElseThrow(() -> new CartItemNotFoundException());
-        
-        // Check if the user is allowed to update the cart item
-        if (!cartItem.getShoppingCart().getUser().getId().equals(currentUser.getId())) {
-            throw new UnauthorizedCartItemUpdateException();
-        }
+        transactionTemplate.executeWithoutResult(status -> {
+            // Touch the cart first, so the concurrent changes of the cart are applied one after the other
+            Long shoppingCartId = shoppingCartRepository.upsertForUser(currentUser.getId(), LocalDateTime.now());
+
+            if (cartItemRepository.updateQuantityByIdAndUserId(cartItemId, currentUser.getId(), quantity) == 0) {
+                throw notUpdated(cartItemId);
+            }
 
-        cartItem.setQuantity(quantity);
-        cartItemRepository.save(cartItem);
+            shoppingCartRepository.refreshTotals(shoppingCartId);
+        });
     }
 
     /**
      * Remove a cart item from the shopping cart.
+     * The ownership is checked by the DELETE statement itself, without loading the item, its cart and its user.
      * 
      * @param cartItemId The identifier of the cart item to remove.
      * @throws CartItemNotFoundException If the cart item is not available.
      * @throws UnauthorizedCartItemUpdateException If the user is not allowed to delete the cart item.
      */
-    @Transactional
     public void deleteCartItem(Long cartItemId) {
         User currentUser = getAuthenticatedUser();
+        cartWriteBehindBuffer.flush(currentUser.getId());
 
-        CartItem cartItem = cartItemRepository.findById(cartItemId)
-            .orElseThrow(() -> new CartItemNotFoundException());
-        
-        // Check if the user is allowed to delete the cart item
-        if (!cartItem.getShoppingCart().getUser().getId().equals(currentUser.getId())) {
-            throw new UnauthorizedCartItemUpdateException();
-        }
+        transactionTemplate.executeWithoutResult(status -> {
+            // Touch the cart first, so the concurrent changes of the cart are applied one after the other
+            Long shoppingCartId = shoppingCartRepository.upsertForUser(currentUser.getId(), LocalDateTime.now());
+
+            if (cartItemRepository.deleteByIdAndUserId(cartItemId, currentUser.getId()) == 0) {
+                throw notUpdated(cartItemId);
+            }
+
+            shoppingCartRepository.refreshTotals(shoppingCartId);
+        });
+    }
 
-        cartItemRepository.delete(cartItem);
+    /**
+     * Find out why a cart item was not updated or deleted, only on this unusual path.
+     * The transaction is rolled back by the exception, including the cart touched for it.
+     * 
+     * @param cartItemId The identifier of the cart item.
+     * @return The exception to throw.
+     */
+    private RuntimeException notUpdated(Long cartItemId) {
+        if (cartItemRepository.existsById(cartItemId)) {
+            return new UnauthorizedCartItemUpdateException();
+        }
+        return new CartItemNotFoundException();
     }
 }
@@ -0,0 +1,63 @@
+package br.com.lufecrx.demo.ecommerce.shopping.cart.service;
+
+import br.com.lufecrx.demo.ecommerce.exception.shopping.domain.cart.InvalidCartOperationException;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.CartItemUpsertRepository.QuantityChange;
+
+/**
+ * The types of the operations of a batch of cart changes.
+ * ADD increases the quantity of the product, inserting the item if needed, like adding the product to the cart.
+ * SET replaces the quantity of the product, and a quantity of 0 removes it.
+ * REMOVE removes the product, and does nothing if it is not in the cart.
+ * 
+ * The operations of a product are folded into a single change, so the batch writes each item once.
+ * 
+ * @see ShoppingCartService#applyOperations
+ */
+public enum CartOperationType {
+    ADD,
+    SET,
+    REMOVE;
+
+    /**
+     * Parse the type received in the request, ignoring the case.
+     * @param type the name of the type
+     * @throws InvalidCartOperationException If the type is unknown, the exception InvalidCartOperationException is thrown.
+     * @return the type of the operation
+     */
+    public static CartOperationType from(String type) {
+        for (CartOperationType value : values()) {
+            if (value.name().equalsIgnoreCase(type)) {
+                return value;
+            }
+        }
+        throw new InvalidCartOperationException();
+    }
+
+    /**
+     * Fold the operation into the change of its product made by the previous operations of the batch.
+     * @param previous the change of the product so far, or null if it is the first operation of the product
+     * @param productId the id of the product
+     * @param quantity the quantity of the operation
+     * @throws InvalidCartOperationException If the quantity is missing or out of range, the exception InvalidCartOperationException is thrown.
+     * @return the change of the product with this operation
+     */
+    public QuantityChange applyTo(QuantityChange previous, Long productId, Integer quantity) {
+        return switch (this) {
+            case ADD -> {
+                if (quantity == null || quantity < 1) {
+                    throw new InvalidCartOperationException();
+                }
+                yield previous == null
+                    ? new QuantityChange(productId, false, quantity)
+                    : new QuantityChange(productId, previous.replace(), previous.quantity() + quantity);
+            }
+            case SET -> {
+                if (quantity == null || quantity < 0) {
+                    throw new InvalidCartOperationException();
+                }
+                yield new QuantityChange(productId, true, quantity);
+            }
+            case REMOVE -> new QuantityChange(productId, true, 0);
+        };
+    }
+}
@@ -0,0 +1,450 @@
+package br.com.lufecrx.demo.ecommerce.shopping.cart.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.CartItemRepository;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.CartItemUpsertRepository.QuantityChange;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.ShoppingCartRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * This class buffers the changes of the shopping carts in memory and writes them behind the requests (write-behind).
+ * The changes of a user are folded as they arrive, like the operations of a batch, so a user clicking +/+/+/- on a
+ * product leaves a single change of the item, and a cart touched many times is written once per flush.
+ * The pending changes of a user are guarded by one of a fixed number of locks (lock striping), so the users on other
+ * stripes are never blocked by each other, and no lock is created per user.
+ *
+ * The pending carts are flushed every flush interval, as soon as their number reaches the flush threshold, and when the
+ * application stops. The flushes of a user run one at a time under a second set of striped locks, so the changes of a
+ * user are written in the order they were made, while the flushes of the users on other stripes run in parallel.
+ * Each batch of carts is written in its own transaction, with the items of each cart written by JDBC batches.
+ * If a batch fails, its carts are written one by one, so a cart that cannot be written (e.g. a product deleted in the
+ * meantime) only loses its own changes.
+ * The callers flush the carts of a user synchronously before reading them and at checkout, before opening their own
+ * transaction, so a request never holds two connections. If a synchronous flush fails, the changes are put back in the
+ * buffer and the exception is thrown to the caller; only the background flushes discard the changes they cannot write.
+ *
+ * The metrics are cart.write_behind.flush.lag, the time the changes of a cart waited to be written,
+ * cart.write_behind.pending, the number of carts with pending changes, and cart.write_behind.coalescing.ratio,
+ * the number of changes received per change written.
+ * The buffer is only used if the property api.cart.write-behind.enabled is true, since the changes not flushed yet are
+ * lost if the node crashes.
+ * The buffer is local to the node: the synchronous flushes only write the changes received by this node. With several
+ * nodes, it must only be enabled if the requests of a user are always routed to the same node (sticky routing by user),
+ * otherwise a read or a checkout served by another node misses the changes not written yet, and the changes of a user
+ * buffered by two nodes may be written out of order.
+ *
+ * @see ShoppingCartService
+ */
+@Component
+@Slf4j
+public class CartWriteBehindBuffer {
+
+    @Autowired
+    private ShoppingCartRepository shoppingCartRepository;
+
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${api.cart.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${api.cart.write-behind.flush-threshold:1000}")
+    private int flushThreshold;
+
+    @Value("${api.cart.write-behind.batch-size:100}")
+    private int batchSize;
+
+    @Value("${api.cart.write-behind.lock-stripes:64}")
+    private int lockStripes;
+
+    private final Map<Long, PendingCart> pendingCarts = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private Lock[] stripes;
+
+    private Lock[] flushStripes;
+
+    private ExecutorService flushExecutor;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Timer flushLag;
+
+    private Counter receivedChanges;
+
+    private Counter writtenChanges;
+
+    private Counter failedCarts;
+
+    /**
+     * The changes of the cart of a user not written yet, only accessed under the lock of its stripe.
+     */
+    private static class PendingCart {
+
+        private final long createdAt = System.nanoTime();
+
+        private final Map<Long, QuantityChange> changes = new LinkedHashMap<>();
+
+        private boolean cleared;
+
+        private LocalDateTime updatedAt;
+
+        /**
+         * The number of statements the changes are written with: the item changes, and the deletion of all the items.
+         */
+        private int writes() {
+            return changes.size() + (cleared ? 1 : 0);
+        }
+    }
+
+    /**
+     * Create the locks, the transactions and the thread of the flushes, and register the metrics of the buffer.
+     */
+    @PostConstruct
+    public void init() {
+        stripes = new Lock[Math.max(1, lockStripes)];
+        flushStripes = new Lock[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+            flushStripes[i] = new ReentrantLock();
+        }
+
+        // The flushes are committed on their own, and never join a transaction of the caller
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        flushExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("cart-write-behind-"));
+
+        flushLag = Timer.builder("cart.write_behind.flush.lag")
+                .description("The time the changes of a cart waited in memory before being written")
+                .register(meterRegistry);
+        receivedChanges = Counter.builder("cart.write_behind.changes")
+                .description("The number of changes of the carts received and written by the write-behind buffer")
+                .tag("stage", "received")
+                .register(meterRegistry);
+        writtenChanges = Counter.builder("cart.write_behind.changes")
+                .description("The number of changes of the carts received and written by the write-behind buffer")
+                .tag("stage", "written")
+                .register(meterRegistry);
+        failedCarts = Counter.builder("cart.write_behind.failures")
+                .description("The number of carts whose pending changes could not be written")
+                .register(meterRegistry);
+        Gauge.builder("cart.write_behind.pending", pendingCarts, Map::size)
+                .description("The number of carts with changes not written yet")
+                .register(meterRegistry);
+        Gauge.builder("cart.write_behind.coalescing.ratio", this, buffer -> buffer.coalescingRatio())
+                .description("The number of changes of the carts received per change written")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether the changes of the carts are buffered, instead of written by the requests.
+     *
+     * @return true if the write-behind mode is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Add a quantity of a product to the cart of a user.
+     *
+     * @param userId the id of the user
+     * @param productId the id of the product, already checked by the caller
+     * @param quantity the quantity to add
+     */
+    public void add(Long userId, Long productId, Integer quantity) {
+        change(userId, pending -> pending.changes.put(productId,
+                CartOperationType.ADD.applyTo(pending.changes.get(productId), productId, quantity)));
+    }
+
+    /**
+     * Remove a product from the cart of a user. Nothing is done if the product is not in the cart.
+     *
+     * @param userId the id of the user
+     * @param productId the id of the product
+     */
+    public void remove(Long userId, Long productId) {
+        change(userId, pending -> pending.changes.put(productId,
+                CartOperationType.REMOVE.applyTo(pending.changes.get(productId), productId, null)));
+    }
+
+    /**
+     * Remove all the products from the cart of a user, including the ones pending.
+     *
+     * @param userId the id of the user
+     */
+    public void clear(Long userId) {
+        change(userId, pending -> {
+            pending.changes.clear();
+            pending.cleared = true;
+        });
+    }
+
+    /**
+     * Write the pending changes of the cart of a user, e.g. before reading the cart or at checkout.
+     * It must be called outside of a transaction, since the changes are written in a transaction of their own.
+     *
+     * @param userId the id of the user
+     * @throws RuntimeException If the changes cannot be written, the exception is thrown and the changes are kept in
+     * the buffer, before the changes made in the meantime.
+     */
+    public void flush(Long userId) {
+        if (!enabled) {
+            return;
+        }
+
+        Lock lock = flushStripeOf(userId);
+        lock.lock();
+        try {
+            PendingCart pending = detach(userId);
+            if (pending == null) {
+                return;
+            }
+
+            try {
+                transactionTemplate.executeWithoutResult(status -> writeCart(userId, pending));
+            } catch (RuntimeException ex) {
+                restore(userId, pending);
+                throw ex;
+            }
+            written(pending);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the pending changes of all the carts, in batches of carts.
+     * The flush locks of the carts in a batch are taken in the order of their stripes and held until the batch is
+     * written, so only the users of these stripes wait for it.
+     */
+    @Scheduled(initialDelayString = "${api.cart.write-behind.flush-interval:PT1S}", fixedDelayString = "${api.cart.write-behind.flush-interval:PT1S}")
+    public void flushAll() {
+        if (!enabled) {
+            return;
+        }
+
+        Map<Integer, List<Long>> usersByStripe = new TreeMap<>();
+        for (Long userId : List.copyOf(pendingCarts.keySet())) {
+            usersByStripe.computeIfAbsent(stripeIndexOf(userId), index -> new ArrayList<>()).add(userId);
+        }
+
+        List<Lock> held = new ArrayList<>();
+        try {
+            Map<Long, PendingCart> batch = new LinkedHashMap<>();
+            for (Map.Entry<Integer, List<Long>> stripe : usersByStripe.entrySet()) {
+                Lock lock = flushStripes[stripe.getKey()];
+                lock.lock();
+                held.add(lock);
+
+                for (Long userId : stripe.getValue()) {
+                    PendingCart pending = detach(userId);
+                    if (pending != null) {
+                        batch.put(userId, pending);
+                    }
+                }
+                if (batch.size() >= Math.max(1, batchSize)) {
+                    write(batch);
+                    batch = new LinkedHashMap<>();
+                    unlock(held);
+                }
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+        } finally {
+            unlock(held);
+        }
+    }
+
+    /**
+     * Write the pending changes when the application stops, after the flushes already requested.
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        flushAll();
+    }
+
+    /**
+     * Get the number of changes received per change written, 1 if nothing was written yet.
+     *
+     * @return the coalescing ratio of the buffer
+     */
+    public double coalescingRatio() {
+        double written = writtenChanges.count();
+        return written == 0 ? 1.0 : receivedChanges.count() / written;
+    }
+
+    /**
+     * Apply a change to the pending cart of a user under the lock of its stripe, and request a flush if there are too
+     * many pending carts.
+     */
+    private void change(Long userId, Consumer<PendingCart> change) {
+        Lock lock = stripeOf(userId);
+        lock.lock();
+        try {
+            PendingCart pending = pendingCarts.computeIfAbsent(userId, id -> new PendingCart());
+            change.accept(pending);
+            pending.updatedAt = LocalDateTime.now();
+        } finally {
+            lock.unlock();
+        }
+        receivedChanges.increment();
+
+        if (pendingCarts.size() >= flushThreshold && flushRequested.compareAndSet(false, true)) {
+            flushExecutor.execute(() -> {
+                flushRequested.set(false);
+                flushAll();
+            });
+        }
+    }
+
+    /**
+     * Take the pending cart of a user out of the buffer, so the next changes start a new one.
+     */
+    private PendingCart detach(Long userId) {
+        Lock lock = stripeOf(userId);
+        lock.lock();
+        try {
+            return pendingCarts.remove(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Put the changes of a cart that could not be written back in the buffer, followed by the changes made since then.
+     */
+    private void restore(Long userId, PendingCart failed) {
+        Lock lock = stripeOf(userId);
+        lock.lock();
+        try {
+            PendingCart newer = pendingCarts.get(userId);
+            if (newer != null) {
+                if (newer.cleared) {
+                    failed.changes.clear();
+                    failed.cleared = true;
+                }
+                newer.changes.forEach((productId, change) -> failed.changes.put(productId, change.replace()
+                    ? change
+                    : CartOperationType.ADD.applyTo(failed.changes.get(productId), productId, change.quantity())));
+                failed.updatedAt = newer.updatedAt;
+            }
+            pendingCarts.put(userId, failed);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write a batch of pending carts in one transaction, or one by one if the batch fails.
+     * The carts that cannot be written are discarded, since nobody waits for the background flushes.
+     */
+    private void write(Map<Long, PendingCart> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> batch.forEach(this::writeCart));
+        } catch (RuntimeException ex) {
+            if (batch.size() == 1) {
+                failed(batch.keySet().iterator().next(), ex);
+                return;
+            }
+
+            log.warn("Could not write a batch of {} carts, writing them one by one", batch.size(), ex);
+            batch.forEach((userId, pending) -> {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> writeCart(userId, pending));
+                } catch (RuntimeException cartEx) {
+                    failed(userId, cartEx);
+                    return;
+                }
+                written(pending);
+            });
+            return;
+        }
+        batch.values().forEach(this::written);
+    }
+
+    /**
+     * Write the pending changes of the cart of a user, like the requests do: touch the cart, which locks its row,
+     * change the items and recalculate the totals.
+     */
+    private void writeCart(Long userId, PendingCart pending) {
+        Long shoppingCartId = shoppingCartRepository.upsertForUser(userId, pending.updatedAt);
+        if (pending.cleared) {
+            cartItemRepository.deleteByShoppingCartId(shoppingCartId);
+        }
+        if (!pending.changes.isEmpty()) {
+            cartItemRepository.applyChanges(shoppingCartId, new ArrayList<>(pending.changes.values()));
+        }
+        shoppingCartRepository.refreshTotals(shoppingCartId);
+    }
+
+    private void written(PendingCart pending) {
+        writtenChanges.increment(pending.writes());
+        flushLag.record(System.nanoTime() - pending.createdAt, TimeUnit.NANOSECONDS);
+    }
+
+    private void failed(Long userId, RuntimeException ex) {
+        failedCarts.increment();
+        log.warn("Could not write the pending changes of the cart of user {}, they are discarded", userId, ex);
+    }
+
+    private void unlock(List<Lock> held) {
+        held.forEach(Lock::unlock);
+        held.clear();
+    }
+
+    private Lock stripeOf(Long userId) {
+        return stripes[stripeIndexOf(userId)];
+    }
+
+    private Lock flushStripeOf(Long userId) {
+        return flushStripes[stripeIndexOf(userId)];
+    }
+
+    private int stripeIndexOf(Long userId) {
+        return Math.floorMod(userId.hashCode(), stripes.length);
+    }
+}
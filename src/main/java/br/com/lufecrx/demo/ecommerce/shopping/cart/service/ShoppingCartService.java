@@ -1,25 +1,37 @@
 package br.com.lufecrx.demo.ecommerce.shopping.cart.service;
 
 import java.time.LocalDateTime;
-import java.util.Optional;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
 import br.com.lufecrx.demo.ecommerce.api.repository.ProductRepository;
 import br.com.lufecrx.demo.ecommerce.auth.model.User;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.ProductNotFoundException;
-import br.com.lufecrx.demo.ecommerce.shopping.cart.model.CartItem;
+import br.com.lufecrx.demo.ecommerce.exception.shopping.domain.cart.InvalidCartOperationException;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.model.ShoppingCart;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto.CartOperationDTO;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto.ShoppingCartDTO;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto.ShoppingCartSummaryDTO;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.CartItemRepository;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.CartItemUpsertRepository.QuantityChange;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.ShoppingCartRepository;
 import jakarta.transaction.Transactional;
 
 /**
  * This service is responsible for handling the shopping cart operations.
+ * If the write-behind mode is enabled, the adds, removals and clears are buffered by the CartWriteBehindBuffer instead
+ * of written by the request, and the pending changes of the user are flushed before the cart is read or checked out.
+ * 
+ * @see CartWriteBehindBuffer
  */
 @Service
 public class ShoppingCartService {
@@ -29,30 +41,50 @@ public class ShoppingCartService {
 
     @Autowired
     private CartItemRepository cartItemRepository;
-   
+
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private CartWriteBehindBuffer cartWriteBehindBuffer;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * Get the user that is using the shopping cart.
+     * 
+     * @return The authenticated user.
+     */
+    private User currentUser() {
+        return (User) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+    }
+
     /**
      * Get the shopping cart of the user that is adding the product to the cart.
      * If the user does not have a shopping cart, create a new one.
+     * The cart is created by an upsert, so concurrent requests of the same user read the same cart instead of creating two.
      * 
      * @return The shopping cart of the user.
      */
     private ShoppingCart getOrCreateShoppingCartForUser() {
-        // Get the user that is adding the product to the cart
-        User currentUser = (User) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        Long userId = currentUser().getId();
 
         // Get the shopping cart of the user
-       return shoppingCartRepository.findByUserId(currentUser.getId())
-        .orElseGet(() -> {
-            ShoppingCart shoppingCart = new ShoppingCart(currentUser);
-            return shoppingCartRepository.save(shoppingCart);
-        });
+        return shoppingCartRepository.findByUserId(userId)
+            .orElseGet(() -> {
+                shoppingCartRepository.upsertForUser(userId, LocalDateTime.now());
+                return shoppingCartRepository.findByUserId(userId).orElseThrow();
+            });
     }
 
     /**
      * Add a product to the shopping cart of the user.
+     * The cart is created or touched and the item is inserted or has its quantity increased by two upserts, without loading
+     * the product, the cart or its items. The unique constraints of the tables make the concurrent adds of the same product
+     * add up their quantities instead of duplicating the item.
+     * The item count and the subtotal of the cart are recalculated in the same transaction.
+     * In the write-behind mode, only the product is read and the add is buffered.
      * 
      * @param productId The identifier of the product to add to the cart.
      * @param quantity The quantity of the product to add to the cart.
@@ -60,73 +92,114 @@ public class ShoppingCartService {
      */
     @Transactional
     public void addProductToCart(Long productId, Integer quantity) {
-        
-        Optional<Product> optProduct = productRepository.findById(productId);
-
-        if (!optProduct.isPresent()) {
-            throw new ProductNotFoundException(productId);
+        if (cartWriteBehindBuffer.isEnabled()) {
+            // The product is checked now, since the buffered change is written after the response
+            if (!productRepository.existsById(productId)) {
+                throw new ProductNotFoundException(productId);
+            }
+            cartWriteBehindBuffer.add(currentUser().getId(), productId, quantity);
+            return;
         }
-        Product product = optProduct.get();
 
-        ShoppingCart shoppingCart = getOrCreateShoppingCartForUser();
-        
-        // Verify if the product is already in the cart
-        Optional<CartItem> existingCartItem = shoppingCart.getCartItems().stream()
-            .filter(cartItem -> cartItem.getProduct().getId().equals(product.getId()))
-            .findFirst();
-
-        if (existingCartItem.isPresent()) {
-            // If the product is already in the cart, update the quantity
-            CartItem cartItem = existingCartItem.get();
-            cartItem.setQuantity(cartItem.getQuantity() + quantity);
-            cartItemRepository.save(cartItem);
-        } else {
-            // If the product is not in the cart, add the product to the cart
-            CartItem cartItem = new CartItem(product, quantity);
-            cartItem.setShoppingCart(shoppingCart);
-            cartItemRepository.save(cartItem);
-            shoppingCart.addCartItem(cartItem);
+        Long shoppingCartId = shoppingCartRepository.upsertForUser(currentUser().getId(), LocalDateTime.now());
+
+        // Nothing is inserted if the product does not exist, and the cart created for it is rolled back
+        if (cartItemRepository.addQuantity(shoppingCartId, productId, quantity) == 0) {
+            throw new ProductNotFoundException(productId);
         }
 
-        shoppingCart.setUpdatedAt(LocalDateTime.now());
-        shoppingCartRepository.save(shoppingCart);
+        shoppingCartRepository.refreshTotals(shoppingCartId);
     }
 
     /**
      * Remove a product from the shopping cart of the user.
+     * The cart is touched first, which locks its row until the commit, so the concurrent changes of the cart are applied
+     * one after the other and the recalculated totals always count all of them.
+     * In the write-behind mode, the removal is buffered and a product that is not in the cart is ignored.
      * 
      * @param productId The identifier of the product to remove from the cart.
+     * @throws ProductNotFoundException If the product is not in the cart.
      */
+    @Transactional
     public void removeProductFromCart(Long productId) {
+        if (cartWriteBehindBuffer.isEnabled()) {
+            cartWriteBehindBuffer.remove(currentUser().getId(), productId);
+            return;
+        }
 
-        ShoppingCart shoppingCart = getOrCreateShoppingCartForUser();
+        Long shoppingCartId = shoppingCartRepository.upsertForUser(currentUser().getId(), LocalDateTime.now());
 
-        // Get the product to remove from the cart
-        Optional<CartItem> existingCartItem = shoppingCart.getCartItems().stream()
-            .filter(cartItem -> cartItem.getProduct().getId().equals(productId))
-            .findFirst();
-    
-        if (existingCartItem.isPresent()) {
-            // If the product is in the cart, remove the product from the cart
-            CartItem cartItem = existingCartItem.get();
-            shoppingCart.removeCartItem(cartItem);
-            cartItemRepository.delete(cartItem);
-            shoppingCart.setUpdatedAt(LocalDateTime.now());
-            shoppingCartRepository.save(shoppingCart);
-        } else {
+        if (cartItemRepository.deleteByShoppingCartIdAndProductId(shoppingCartId, productId) == 0) {
             // If the product is not in the cart, throw an exception
             throw new ProductNotFoundException(productId);
         }
+
+        shoppingCartRepository.refreshTotals(shoppingCartId);
+    }
+
+    /**
+     * Apply a batch of changes to the shopping cart of the user, e.g. to restore a cart or to buy an order again, and return
+     * the resulting cart.
+     * The operations of each product are folded into a single change, the products added are checked with one query, and
+     * the items are written with JDBC batches after the cart row is locked. The totals are recalculated once, and the cart
+     * is read once at the end. Either all the operations are applied or none is.
+     * The changes buffered by the write-behind mode are written first, before the transaction of the batch is opened.
+     * 
+     * @param operations The operations, applied in order.
+     * @throws InvalidCartOperationException If an operation is invalid.
+     * @throws ProductNotFoundException If a product added does not exist.
+     * @return The shopping cart dto of the user after the changes.
+     */
+    public ShoppingCartDTO applyOperations(List<CartOperationDTO> operations) {
+        Map<Long, QuantityChange> changes = new LinkedHashMap<>();
+        for (CartOperationDTO operation : operations) {
+            changes.put(operation.productId(), CartOperationType.from(operation.type())
+                .applyTo(changes.get(operation.productId()), operation.productId(), operation.quantity()));
+        }
+
+        // Only the products that end up in the cart have to exist, the items removed are deleted by cart and product
+        Set<Long> productIds = changes.values().stream()
+            .filter(change -> !change.removes())
+            .map(QuantityChange::productId)
+            .collect(Collectors.toSet());
+        if (!productIds.isEmpty()) {
+            Set<Long> found = productRepository.findAllById(productIds).stream()
+                .map(Product::getId)
+                .collect(Collectors.toSet());
+            productIds.stream()
+                .filter(productId -> !found.contains(productId))
+                .findFirst()
+                .ifPresent(productId -> {
+                    throw new ProductNotFoundException(productId);
+                });
+        }
+
+        // The batch is written at once, after the changes buffered before it
+        Long userId = currentUser().getId();
+        cartWriteBehindBuffer.flush(userId);
+
+        return transactionTemplate.execute(status -> {
+            Long shoppingCartId = shoppingCartRepository.upsertForUser(userId, LocalDateTime.now());
+            cartItemRepository.applyChanges(shoppingCartId, changes.values());
+            shoppingCartRepository.refreshTotals(shoppingCartId);
+
+            return ShoppingCartDTO.from(shoppingCartRepository.findById(shoppingCartId).orElseThrow());
+        });
     }
 
     /**
      * Clear the shopping cart of the user.
      */
+    @Transactional
     public void clearCart() {   
-        ShoppingCart shoppingCart = getOrCreateShoppingCartForUser();
-        shoppingCart.getCartItems().clear();
-        shoppingCart.setUpdatedAt(LocalDateTime.now());
-        shoppingCartRepository.save(shoppingCart);
+        if (cartWriteBehindBuffer.isEnabled()) {
+            cartWriteBehindBuffer.clear(currentUser().getId());
+            return;
+        }
+
+        Long shoppingCartId = shoppingCartRepository.upsertForUser(currentUser().getId(), LocalDateTime.now());
+        cartItemRepository.deleteByShoppingCartId(shoppingCartId);
+        shoppingCartRepository.refreshTotals(shoppingCartId);
     }
 
     /**
@@ -135,16 +208,32 @@ public class ShoppingCartService {
      * @return The shopping cart dto of the user.
      */
     public ShoppingCartDTO getCart() {
+        cartWriteBehindBuffer.flush(currentUser().getId());
         ShoppingCart shoppingCart = getOrCreateShoppingCartForUser();
         return ShoppingCartDTO.from(shoppingCart);
     }
 
+    /**
+     * Get the item count and the subtotal of the shopping cart of the user, reading only the cart row.
+     * A user without a cart has an empty summary, the cart is not created.
+     * 
+     * @return The summary of the shopping cart of the user.
+     */
+    public ShoppingCartSummaryDTO getSummary() {
+        cartWriteBehindBuffer.flush(currentUser().getId());
+        return shoppingCartRepository.findSummaryByUserId(currentUser().getId())
+            .orElse(ShoppingCartSummaryDTO.EMPTY);
+    }
+
     /**
      * Checkout the shopping cart of the user.
      * This operation should create an order with the products in the shopping cart.
+     * The pending changes of the cart are written first, so the order has all of them.
      * 
      */
     public void checkout() {
+        cartWriteBehindBuffer.flush(currentUser().getId());
+
         // TODO: Implement the checkout operation
     }
 }
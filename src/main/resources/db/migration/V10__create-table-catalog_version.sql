@@ -0,0 +1,9 @@
+-- This is a SQL script for creating the catalog_version table
+-- The table has a single row with the version of the catalog, incremented by each write of the products or categories
+
+CREATE TABLE catalog_version (
+    id INT PRIMARY KEY,
+    version BIGINT NOT NULL
+);
+
+INSERT INTO catalog_version (id, version) VALUES (1, 0);
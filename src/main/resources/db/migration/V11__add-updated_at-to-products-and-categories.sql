@@ -0,0 +1,6 @@
+-- This script adds the time of the last change to the products and categories
+-- It is used to answer the conditional requests (ETag and Last-Modified) of the catalog
+
+ALTER TABLE products ADD COLUMN updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP;
+
+ALTER TABLE categories ADD COLUMN updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP;
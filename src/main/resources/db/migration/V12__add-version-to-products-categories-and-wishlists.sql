@@ -0,0 +1,8 @@
+-- This script adds the version used for the optimistic locking of the products, categories and wishlists
+-- It is incremented on each update, so concurrent updates of the same row are detected instead of overwritten
+
+ALTER TABLE products ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+ALTER TABLE categories ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
+
+ALTER TABLE wishlists ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,27 @@
+-- This script makes each user have a single shopping cart and each product a single item per cart
+-- The constraints let the cart and its items be upserted by a single statement, so concurrent adds cannot create duplicates
+
+-- Move the items of the duplicated carts to the oldest cart of the user, then delete the duplicated carts
+UPDATE cart_item SET shopping_cart_id = (
+    SELECT MIN(keeper.id) FROM shopping_cart keeper
+    WHERE keeper.user_id = (SELECT duplicate.user_id FROM shopping_cart duplicate WHERE duplicate.id = cart_item.shopping_cart_id)
+)
+WHERE shopping_cart_id NOT IN (SELECT MIN(id) FROM shopping_cart GROUP BY user_id);
+
+DELETE FROM shopping_cart WHERE id NOT IN (SELECT MIN(id) FROM shopping_cart GROUP BY user_id);
+
+-- Sum the quantities of the duplicated items in the oldest item, then delete the duplicated items
+UPDATE cart_item SET quantity = (
+    SELECT SUM(duplicate.quantity) FROM cart_item duplicate
+    WHERE duplicate.shopping_cart_id = cart_item.shopping_cart_id AND duplicate.product_id = cart_item.product_id
+)
+WHERE id IN (SELECT MIN(id) FROM cart_item GROUP BY shopping_cart_id, product_id HAVING COUNT(*) > 1);
+
+DELETE FROM cart_item WHERE id NOT IN (SELECT MIN(id) FROM cart_item GROUP BY shopping_cart_id, product_id);
+
+ALTER TABLE shopping_cart ADD CONSTRAINT uk_shopping_cart_user UNIQUE (user_id);
+
+ALTER TABLE cart_item ADD CONSTRAINT uk_cart_item_cart_product UNIQUE (shopping_cart_id, product_id);
+
+-- The unique index of the items starts with the cart, so the index of the cart is no longer needed
+DROP INDEX IF EXISTS idx_cart_item_cart_id;
@@ -0,0 +1,11 @@
+-- This script adds the totals of the shopping carts, kept up to date by each change of the carts and of the prices
+-- The cart badge and the header total read them from the cart row instead of loading every item and product
+
+ALTER TABLE shopping_cart ADD COLUMN item_count INT NOT NULL DEFAULT 0;
+
+ALTER TABLE shopping_cart ADD COLUMN subtotal DOUBLE PRECISION NOT NULL DEFAULT 0;
+
+UPDATE shopping_cart SET
+    item_count = (SELECT COALESCE(SUM(i.quantity), 0) FROM cart_item i WHERE i.shopping_cart_id = shopping_cart.id),
+    subtotal = (SELECT COALESCE(SUM(i.quantity * p.price), 0) FROM cart_item i JOIN products p ON p.id = i.product_id
+                WHERE i.shopping_cart_id = shopping_cart.id);
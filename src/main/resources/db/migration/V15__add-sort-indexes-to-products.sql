@@ -0,0 +1,9 @@
+-- This script adds the indexes of the keyset pagination of the products, one per supported sort
+-- A (sort key, id) index lets the database seek the position of the cursor and read the page in order, without sorting
+
+CREATE INDEX IF NOT EXISTS idx_products_product_name_id ON products(product_name, id);
+
+CREATE INDEX IF NOT EXISTS idx_products_price_id ON products(price, id);
+
+-- The index of the price range of the search (db/vendor/postgresql) is a prefix of the new one, so it is no longer needed
+DROP INDEX IF EXISTS idx_products_price;
@@ -0,0 +1,13 @@
+-- This is a SQL script for creating the cache_hot_keys table
+-- The table will store the most accessed keys of the catalog caches, preloaded when the application starts
+
+CREATE TABLE cache_hot_keys (
+    cache_name VARCHAR(100) NOT NULL,
+    cache_key VARCHAR(2048) NOT NULL,
+    frequency BIGINT NOT NULL,
+    recorded_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (cache_name, cache_key)
+);
+
+-- This script creates the index used to load the hottest keys first
+CREATE INDEX idx_cache_hot_keys_frequency ON cache_hot_keys(frequency DESC);
@@ -2,22 +2,31 @@ package br.com.lufecrx.demo.ecommerce.api.controller.domain.category;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.util.Arrays;
+import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.RevisedDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.SliceDTO;
 import br.com.lufecrx.demo.ecommerce.api.service.domain.category.CategoryServicePaginable;
 
 public class CategoryControllerPaginableTest {
@@ -40,7 +49,7 @@ public class CategoryControllerPaginableTest {
         public void testFindAllWhenSuccessful() throws Exception {
                 // Mock the service to return a list of categories
                 when(categoryService.getWithPagination(anyInt(), anyInt(), any()))
-                                .thenReturn(Arrays.asList(new CategoryDTO(""), new CategoryDTO("")));
+                                .thenReturn(new RevisedDTO<>(Arrays.asList(new CategoryDTO(""), new CategoryDTO("")), 1L));
 
                 // Perform a GET request and expect a 200 OK status, simulating a successful request to the endpoint /categories/paginable
                 mockMvc.perform(get("/categories/paginable")
@@ -50,4 +59,37 @@ public class CategoryControllerPaginableTest {
                                 .andExpect(status().isOk())
                                 .andExpect(content().json("[{}, {}]"));
         }
+
+        @Test
+        public void testFindAllWithSliceMode() throws Exception {
+                // Mock the service to return a slice without total
+                when(categoryService.getWithSlice(anyInt(), anyInt(), any(), eq(false)))
+                                .thenReturn(new RevisedDTO<>(new SliceDTO<>(List.of(new CategoryDTO("Books")), 0, 10, false, null), 1L));
+
+                // Perform a GET request in the slice mode and expect the slice fields, simulating a request to the endpoint /categories/paginable
+                mockMvc.perform(get("/categories/paginable")
+                                .param("mode", "slice"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.hasNext").value(false))
+                                .andExpect(jsonPath("$.content[0].name").value("Books"));
+        }
+
+        @Test
+        public void testFindAllIsTaggedWithTheVersionReturned() throws Exception {
+                // Mock the service to return a listing read at an older version than the current one
+                when(categoryService.getCatalogVersion()).thenReturn(6L);
+                when(categoryService.getWithPagination(anyInt(), anyInt(), any()))
+                                .thenReturn(new RevisedDTO<>(List.of(new CategoryDTO("Books")), 5L));
+
+                // The tag matches the body returned, so a request with the tag of the listing is not modified
+                mockMvc.perform(get("/categories/paginable"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(HttpHeaders.ETAG, "\"catalog-5\""));
+
+                mockMvc.perform(get("/categories/paginable")
+                                .header(HttpHeaders.IF_NONE_MATCH, "\"catalog-5\""))
+                                .andExpect(status().isNotModified());
+
+                verify(categoryService, never()).getCatalogVersion();
+        }
 }
\ No newline at end of file
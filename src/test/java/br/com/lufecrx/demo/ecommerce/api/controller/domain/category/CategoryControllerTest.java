@@ -6,8 +6,11 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.time.Instant;
 import java.util.Optional;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -16,13 +19,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import br.com.lufecrx.demo.ecommerce.api.model.Revision;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.RevisedDTO;
 import br.com.lufecrx.demo.ecommerce.api.service.domain.category.CategoryService;
 
 @SpringBootTest
@@ -43,9 +49,9 @@ public class CategoryControllerTest {
         dto = new CategoryDTO("Test Category");
         
         // Mock the CategoryService methods
-        when(categoryService.getCategoryById(1L)).thenReturn(Optional.of(dto));
+        when(categoryService.getCategoryById(1L)).thenReturn(new RevisedDTO<>(dto, 3L, Instant.parse("2024-05-01T10:15:30Z")));
         doNothing().when(categoryService).createCategory(dto);
-        doNothing().when(categoryService).renameCategory(1L, dto);
+        doNothing().when(categoryService).renameCategory(1L, dto, null);
         doNothing().when(categoryService).deleteCategory(1L);
     }
 
@@ -63,6 +69,31 @@ public class CategoryControllerTest {
                 });
     }
 
+    @Test
+    @WithMockUser(roles = "USER")
+    public void testFindByIdIsTaggedWithTheVersionReturned() throws Exception {
+        // The cached category is older than the current version
+        when(categoryService.getRevision(1L)).thenReturn(Optional.of(new Revision(4L, Instant.parse("2024-05-02T10:15:30Z"))));
+
+        mockMvc.perform(get("/categories/find")
+                .param("category", "1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"category-1-2\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"category-1-3\""))
+                .andExpect(jsonPath("$.name").value("Test Category"));
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    public void testFindByIdWithTheCurrentVersionIsNotModified() throws Exception {
+        when(categoryService.getRevision(1L)).thenReturn(Optional.of(new Revision(4L, Instant.parse("2024-05-02T10:15:30Z"))));
+
+        mockMvc.perform(get("/categories/find")
+                .param("category", "1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"category-1-4\""))
+                .andExpect(status().isNotModified());
+    }
+
     @Test
     @WithMockUser(roles = "ADMIN")
     public void testCreateCategoryAsAdmin() throws Exception {
@@ -2,24 +2,39 @@ package br.com.lufecrx.demo.ecommerce.api.controller.domain.product;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpHeaders;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import com.github.javafaker.Faker;
 
+import br.com.lufecrx.demo.ecommerce.api.model.dto.CursorPageDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.FacetedPageDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.PriceBucketDTO;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.RevisedDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.SliceDTO;
 import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductServicePaginable;
 
 public class ProductControllerPaginableTest {
@@ -48,7 +63,7 @@ public class ProductControllerPaginableTest {
 
         // Mock the service method to return a list of products
         when(productService.getWithPagination(anyInt(), anyInt(), any()))
-                .thenReturn(Arrays.asList(mockedProduct1, mockedProduct2));
+                .thenReturn(new RevisedDTO<>(Arrays.asList(mockedProduct1, mockedProduct2), 1L));
 
         // Perform a GET request and expect a 200 OK status, simulating a successful
         // request to the endpoint /products/paginable
@@ -59,6 +74,40 @@ public class ProductControllerPaginableTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    public void testFindAllNotModified() throws Exception {
+        when(productService.getWithPagination(anyInt(), anyInt(), any()))
+                .thenReturn(new RevisedDTO<>(List.of(), 7L));
+
+        // The listing is tagged with the version of the catalog it was read at
+        mockMvc.perform(get("/products/paginable"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"catalog-7\""));
+
+        mockMvc.perform(get("/products/paginable")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"catalog-7\""))
+                .andExpect(status().isNotModified());
+
+        // Both requests read the (cached) listing, and none reads the current version of the catalog
+        verify(productService, times(2)).getWithPagination(anyInt(), anyInt(), any());
+        verify(productService, never()).getCatalogVersion();
+    }
+
+    @Test
+    public void testSearchModified() throws Exception {
+        when(productService.getCatalogVersion()).thenReturn(9L);
+        when(productService.searchProducts(any(), any(), any(), any(), anyInt(), anyInt(), any()))
+                .thenReturn(new RevisedDTO<>(List.of(), 8L));
+
+        // The listing is tagged with the version it was read at, not with the current version of the catalog
+        mockMvc.perform(get("/products/paginable/search")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"catalog-7\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"catalog-8\""));
+
+        verify(productService).searchProducts(any(), any(), any(), any(), anyInt(), anyInt(), any());
+    }
+
     @Test
     public void testSearch() throws Exception {
 
@@ -67,7 +116,7 @@ public class ProductControllerPaginableTest {
 
         // Mock the service method to return a list of products
         when(productService.searchProducts(any(), any(), any(), any(), anyInt(), anyInt(), any()))
-                .thenReturn(Arrays.asList(mockedProduct1, mockedProduct2));
+                .thenReturn(new RevisedDTO<>(Arrays.asList(mockedProduct1, mockedProduct2), 1L));
 
         // Perform a GET request and expect a 200 OK status, simulating a successful
         // request to the endpoint /products/paginable/search
@@ -81,4 +130,105 @@ public class ProductControllerPaginableTest {
                 .param("sort", "name,asc"))
                 .andExpect(status().isOk());
     }
+
+    @Test
+    public void testFindAllWithCursor() throws Exception {
+
+        ProductDTO product = new ProductDTO(faker.commerce().productName(), 10.0, Set.of());
+
+        // Mock the service method to return a page with a cursor to the next page
+        when(productService.getWithCursor(eq("cursor"), anyInt(), any()))
+                .thenReturn(new CursorPageDTO<>(List.of(product), "next"));
+
+        // Perform a GET request and expect a 200 OK status with the next cursor, simulating a successful
+        // request to the endpoint /products/paginable/cursor
+        mockMvc.perform(get("/products/paginable/cursor")
+                .param("after", "cursor")
+                .param("size", "1")
+                .param("sort", "name,asc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.nextCursor").value("next"))
+                .andExpect(jsonPath("$.content[0].name").value(product.name()));
+    }
+
+    @Test
+    public void testSearchWithApproximateMode() throws Exception {
+
+        ProductDTO product = new ProductDTO(faker.commerce().productName(), 10.0, Set.of());
+
+        // Mock the service method to return a slice with an approximate total
+        when(productService.searchProductsSlice(any(), any(), any(), any(), anyInt(), anyInt(), any(), eq(true)))
+                .thenReturn(new RevisedDTO<>(new SliceDTO<>(List.of(product), 0, 10, true, 120L), 1L));
+
+        // Perform a GET request in the approximate mode and expect the slice fields instead of a page
+        mockMvc.perform(get("/products/paginable/search")
+                .param("name", "test")
+                .param("mode", "approximate"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.hasNext").value(true))
+                .andExpect(jsonPath("$.approximateTotal").value(120))
+                .andExpect(jsonPath("$.content[0].name").value(product.name()));
+    }
+
+    @Test
+    public void testSearchRanked() throws Exception {
+
+        ProductDTO product = new ProductDTO(faker.commerce().productName(), 10.0, Set.of());
+
+        // Mock the service method to return the most relevant products
+        when(productService.searchProductsRanked(eq("phone"), any(), any(), any(), anyInt(), anyInt()))
+                .thenReturn(new RevisedDTO<>(new SliceDTO<>(List.of(product), 0, 10, false, null), 1L));
+
+        // Perform a GET request and expect a 200 OK status, simulating a successful request to the endpoint /products/paginable/search/ranked
+        mockMvc.perform(get("/products/paginable/search/ranked")
+                .param("q", "phone"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].name").value(product.name()));
+    }
+
+    @Test
+    public void testSearchWithFacets() throws Exception {
+
+        ProductDTO product = new ProductDTO(faker.commerce().productName(), 10.0, Set.of());
+
+        // Mock the service method to return a page with the facet counts
+        when(productService.searchProductsWithFacets(eq("phone"), any(), eq(List.of("Smartphones", "Samsung")), eq("all"), any(), any(), anyInt(), anyInt()))
+                .thenReturn(new RevisedDTO<>(new FacetedPageDTO<>(List.of(product), 0, 10, 1, Map.of("Smartphones", 1L),
+                        List.of(new PriceBucketDTO(0.0, null, 1))), 1L));
+
+        // Perform a GET request with facets to the indexed search and expect the counts next to the page
+        mockMvc.perform(get("/products/paginable/search/indexed")
+                .param("name", "phone")
+                .param("categories", "Smartphones", "Samsung")
+                .param("categoryMatch", "all")
+                .param("facets", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].name").value(product.name()))
+                .andExpect(jsonPath("$.totalElements").value(1))
+                .andExpect(jsonPath("$.categoryCounts.Smartphones").value(1))
+                .andExpect(jsonPath("$.priceBuckets[0].count").value(1));
+    }
+
+    @Test
+    public void testSearchOfTheDatabaseIgnoresFacets() throws Exception {
+        when(productService.searchProducts(any(), any(), any(), any(), anyInt(), anyInt(), any()))
+                .thenReturn(new RevisedDTO<>(List.of(), 1L));
+
+        // The facets are counted by the index, so the search of the database never switches to it
+        mockMvc.perform(get("/products/paginable/search")
+                .param("name", "phone")
+                .param("facets", "true"))
+                .andExpect(status().isOk());
+
+        verify(productService).searchProducts(eq("phone"), any(), any(), any(), anyInt(), anyInt(), any());
+        verify(productService, never()).searchProductsWithFacets(any(), any(), any(), any(), any(), any(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void testSearchIndexedRequiresTheNameWithoutFacets() throws Exception {
+        mockMvc.perform(get("/products/paginable/search/indexed"))
+                .andExpect(status().isBadRequest());
+
+        verify(productService, never()).searchProductsIndexed(any(), any(), any(), any(), anyInt(), anyInt());
+    }
 }
\ No newline at end of file
@@ -1,13 +1,25 @@
 package br.com.lufecrx.demo.ecommerce.api.controller.domain.product;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -16,14 +28,26 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import br.com.lufecrx.demo.ecommerce.api.model.Revision;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.PriceAdjustmentReportDTO;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductImportErrorDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductImportReportDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductPatchDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.RevisedDTO;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductExportService;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductImportFormat;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductImportService;
 import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductService;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.ProductNotFoundException;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.version.VersionMismatchException;
 
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -35,6 +59,12 @@ public class ProductControllerTest {
     @MockBean
     private ProductService productService;
 
+    @MockBean
+    private ProductImportService productImportService;
+
+    @MockBean
+    private ProductExportService productExportService;
+
     private ProductDTO dto;
 
     @BeforeEach
@@ -43,9 +73,9 @@ public class ProductControllerTest {
         dto = new ProductDTO("Test Product", 10.0, null);
 
         // Mock the ProductService methods  
-        when(productService.getProductById(1L)).thenReturn(Optional.of(dto));
+        when(productService.getProductById(1L)).thenReturn(new RevisedDTO<>(dto, 3L, Instant.parse("2024-05-01T10:15:30Z")));
         doNothing().when(productService).createProduct(dto);
-        doNothing().when(productService).updateProduct(1L, dto);
+        doNothing().when(productService).updateProduct(1L, dto, null);
         doNothing().when(productService).deleteProduct(1L);
     }
 
@@ -90,6 +120,188 @@ public class ProductControllerTest {
                 .andExpect(status().isOk()); // The admin user is allowed to delete a product
     }
 
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void testImportProductsAsAdmin() throws Exception {
+        when(productImportService.importProducts(any(InputStream.class), eq(ProductImportFormat.CSV)))
+                .thenReturn(new ProductImportReportDTO(1, 1, List.of(new ProductImportErrorDTO(3, "Invalid price"))));
+
+        mockMvc.perform(post("/products/import")
+                .contentType("text/csv")
+                .content("name,price,categories\nPhone,10.0,Smartphones\nCase,abc,\n"))
+                .andExpect(status().isOk()) // The admin user is allowed to import products
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.errors[0].line").value(3));
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void testImportProductsWithUnsupportedFormat() throws Exception {
+        mockMvc.perform(post("/products/import")
+                .contentType(MediaType.APPLICATION_XML)
+                .content("<products/>"))
+                .andExpect(status().isUnsupportedMediaType());
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void testExportProductsWithGzip() throws Exception {
+        when(productExportService.exportProducts(any(OutputStream.class))).thenReturn(0L);
+
+        mockMvc.perform(get("/products/export")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, "application/x-ndjson;charset=UTF-8"));
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    public void testExportProductsAsUser() throws Exception {
+        mockMvc.perform(get("/products/export"))
+                // Unlike the other reads of the products, the export is not public
+                .andExpect(status().isForbidden());
+
+        verify(productExportService, never()).exportProducts(any(OutputStream.class));
+    }
+
+    @Test
+    public void testFindProductByIdNotModified() throws Exception {
+        when(productService.getRevision(1L)).thenReturn(Optional.of(new Revision(3L, Instant.parse("2024-05-01T10:15:30Z"))));
+
+        String etag = "\"product-1-3\"";
+        mockMvc.perform(get("/products/find")
+                .param("product", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"));
+
+        mockMvc.perform(get("/products/find")
+                .param("product", "1")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified()); // The product is not read again
+
+        verify(productService).getProductById(1L);
+    }
+
+    @Test
+    public void testFindProductByIdModified() throws Exception {
+        when(productService.getRevision(1L)).thenReturn(Optional.of(new Revision(3L, Instant.parse("2024-05-01T10:15:30Z"))));
+
+        mockMvc.perform(get("/products/find")
+                .param("product", "1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"product-1-2\""))
+                .andExpect(status().isOk()) // The product changed since the tag was sent
+                .andExpect(jsonPath("$.name").value("Test Product"));
+    }
+
+    @Test
+    public void testFindProductByIdIsTaggedWithTheVersionReturned() throws Exception {
+        // The cached product is older than the current version
+        when(productService.getRevision(1L)).thenReturn(Optional.of(new Revision(4L, Instant.parse("2024-05-02T10:15:30Z"))));
+
+        mockMvc.perform(get("/products/find")
+                .param("product", "1")
+                .header(HttpHeaders.IF_NONE_MATCH, "\"product-1-2\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"product-1-3\""))
+                .andExpect(jsonPath("$.name").value("Test Product"));
+    }
+
+    @Test
+    public void testFindMissingProductIsNotConditional() throws Exception {
+        when(productService.getRevision(2L)).thenReturn(Optional.empty());
+        when(productService.getProductById(2L)).thenThrow(new ProductNotFoundException(2L));
+
+        mockMvc.perform(get("/products/find")
+                .param("product", "2")
+                .header(HttpHeaders.IF_NONE_MATCH, "*"))
+                .andExpect(status().isNotFound());
+
+        verify(productService).getProductById(2L);
+        verify(productService, never()).getProductById(1L);
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void testUpdateProductWithIfMatch() throws Exception {
+        mockMvc.perform(put("/products/update")
+                .param("product", "1")
+                .header(HttpHeaders.IF_MATCH, "\"product-1-3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(dto)))
+                .andExpect(status().isOk());
+
+        // The version of the ETag is checked by the service
+        verify(productService).updateProduct(1L, dto, 3L);
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void testUpdateProductWithStaleIfMatch() throws Exception {
+        doThrow(new VersionMismatchException("product", 1L)).when(productService).updateProduct(1L, dto, 2L);
+
+        mockMvc.perform(put("/products/update")
+                .param("product", "1")
+                .header(HttpHeaders.IF_MATCH, "\"product-1-2\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(dto)))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void testUpdateProductWithIfMatchOfAnotherProduct() throws Exception {
+        mockMvc.perform(put("/products/update")
+                .param("product", "1")
+                .header(HttpHeaders.IF_MATCH, "\"product-2-3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(dto)))
+                .andExpect(status().isPreconditionFailed()); // The tag can never match this product
+
+        verify(productService, never()).updateProduct(any(), any(), any());
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void testPatchProductAsAdmin() throws Exception {
+        ProductPatchDTO patch = new ProductPatchDTO(null, 80.0);
+
+        mockMvc.perform(patch("/products/update")
+                .param("product", "1")
+                .header(HttpHeaders.IF_MATCH, "\"product-1-3\"")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(patch)))
+                .andExpect(status().isOk()); // The admin user is allowed to update a product
+
+        verify(productService).patchProduct(1L, patch, 3L);
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void testPatchProductWithNegativePrice() throws Exception {
+        mockMvc.perform(patch("/products/update")
+                .param("product", "1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(new ProductPatchDTO(null, -1.0))))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void testAdjustPricesAsAdmin() throws Exception {
+        when(productService.adjustPrices(5L, "percentage", 7.0, true)).thenReturn(new PriceAdjustmentReportDTO(120, true));
+
+        mockMvc.perform(post("/products/prices/adjust")
+                .param("category", "5")
+                .param("type", "percentage")
+                .param("amount", "7")
+                .param("dryRun", "true"))
+                .andExpect(status().isOk()) // The admin user is allowed to adjust the prices
+                .andExpect(jsonPath("$.affected").value(120))
+                .andExpect(jsonPath("$.dryRun").value(true));
+    }
+
     // ### Test methods when the user is authenticated as a USER, which has limited permissions ###
     @Test
     @WithMockUser(roles = "USER")
@@ -123,6 +335,26 @@ public class ProductControllerTest {
                 .andExpect(status().isForbidden()); // The user is prohibited from updating a product
     }
 
+    @Test
+    @WithMockUser(roles = "USER")
+    public void testPatchProductAsUser() throws Exception {
+        mockMvc.perform(patch("/products/update")
+                .param("product", "1")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(new ObjectMapper().writeValueAsString(new ProductPatchDTO(null, 80.0))))
+                .andExpect(status().isForbidden()); // The user is prohibited from updating a product
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    public void testAdjustPricesAsUser() throws Exception {
+        mockMvc.perform(post("/products/prices/adjust")
+                .param("category", "5")
+                .param("type", "percentage")
+                .param("amount", "7"))
+                .andExpect(status().isForbidden()); // The user is prohibited from adjusting the prices
+    }
+
     @Test
     @WithMockUser(roles = "USER")
     public void testDeleteProductAsUser() throws Exception {
@@ -131,6 +363,15 @@ public class ProductControllerTest {
                 .andExpect(status().isForbidden()); // The user is prohibited from deleting a product
     }
 
+    @Test
+    @WithMockUser(roles = "USER")
+    public void testImportProductsAsUser() throws Exception {
+        mockMvc.perform(post("/products/import")
+                .contentType("application/x-ndjson")
+                .content("{\"name\":\"Phone\",\"price\":10.0}"))
+                .andExpect(status().isForbidden()); // The user is prohibited from importing products
+    }
+
     // ### Test methods when the user is not authenticated ###	
     @Test
     public void testCreateProductAsNotAuthenticated() throws Exception {
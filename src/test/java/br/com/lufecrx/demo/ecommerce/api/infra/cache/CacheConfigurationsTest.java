@@ -0,0 +1,67 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+public class CacheConfigurationsTest {
+
+    @Test
+    public void testBuilderBoundsTheCacheBySize() {
+        Cache<Object, Object> cache = CacheConfigurations.builder("test", "maximumSize=2").build();
+
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, "value" + i);
+        }
+        cache.cleanUp();
+
+        assertTrue(cache.estimatedSize() <= 2);
+        assertTrue(cache.stats().evictionCount() >= 8);
+    }
+
+    @Test
+    public void testBuilderBoundsTheCacheByWeight() {
+        Cache<Object, Object> cache = CacheConfigurations.builder("test", "maximumWeight=10").build();
+
+        cache.put("page1", new PageImpl<>(List.of(1, 2, 3, 4, 5, 6)));
+        cache.put("page2", new PageImpl<>(List.of(7, 8, 9, 10, 11, 12)));
+        cache.cleanUp();
+
+        assertEquals(1, cache.estimatedSize());
+    }
+
+    @Test
+    public void testBuilderRecordsStatistics() {
+        Cache<Object, Object> cache = CacheConfigurations.builder("test", "maximumSize=10").build();
+
+        cache.put("key", "value");
+        cache.getIfPresent("key");
+        cache.getIfPresent("missing");
+
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    public void testBuilderRejectsRefreshAfterWrite() {
+        assertThrows(IllegalArgumentException.class,
+                () -> CacheConfigurations.builder("test", "maximumSize=10,refreshAfterWrite=1m"));
+    }
+
+    @Test
+    public void testEntryWeigher() {
+        var weigher = CacheConfigurations.entryWeigher();
+
+        assertEquals(3, weigher.weigh("key", List.of(1, 2, 3)));
+        assertEquals(2, weigher.weigh("key", new PageImpl<>(List.of(1, 2))));
+        assertEquals(CacheConfigurations.SINGLE_ENTRY_WEIGHT, weigher.weigh("key", List.of()));
+        assertEquals(CacheConfigurations.SINGLE_ENTRY_WEIGHT, weigher.weigh("key", "value"));
+    }
+}
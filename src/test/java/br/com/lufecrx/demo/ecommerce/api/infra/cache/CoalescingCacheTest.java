@@ -0,0 +1,246 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CoalescingCacheTest {
+
+    private ExecutorService executor;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private CacheRefresher refresher;
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(8);
+        meterRegistry = new SimpleMeterRegistry();
+        refresher = new CacheRefresher(1, 10, mock(PlatformTransactionManager.class), meterRegistry);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+        refresher.shutdown();
+    }
+
+    private CoalescingCache cache(Duration timeout) {
+        return new CoalescingCache(new ConcurrentMapCache("test"), timeout, 100, Duration.ofMinutes(1), null, null);
+    }
+
+    private CoalescingCache refreshingCache() {
+        // Every entry is stale as soon as it is loaded
+        return new CoalescingCache(new ConcurrentMapCache("test"), Duration.ofSeconds(10), 100, Duration.ofMinutes(1), Duration.ZERO, refresher);
+    }
+
+    private double refreshes(String result) {
+        Counter counter = meterRegistry.find("cache.refreshes").tag("cache", "test").tag("result", result).counter();
+        return counter != null ? counter.count() : 0;
+    }
+
+    private void awaitRefreshes(String result, double count) throws InterruptedException {
+        for (int i = 0; i < 100 && refreshes(result) < count; i++) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    public void testConcurrentMissesLoadOnce() throws Exception {
+        CoalescingCache cache = cache(Duration.ofSeconds(10));
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> cache.get("key", () -> {
+                loads.incrementAndGet();
+                release.await(5, TimeUnit.SECONDS);
+                return "value";
+            })));
+        }
+
+        // Let all the callers reach the cache before the load ends
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("value", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, loads.get());
+        assertEquals("value", cache.get("key").get());
+    }
+
+    @Test
+    public void testWaiterIsServedTheStaleValueAfterTheTimeout() throws Exception {
+        CoalescingCache cache = cache(Duration.ofMillis(50));
+        cache.put("key", "old");
+        // The entry expires in the decorated cache
+        cache.getDelegate().evict("key");
+
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> cache.get("key", () -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return "new";
+        }));
+        loading.await(5, TimeUnit.SECONDS);
+
+        // The load is stuck, so the second caller falls back to the stale value
+        assertEquals("old", cache.get("key", () -> "unused"));
+
+        release.countDown();
+        assertEquals("new", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("new", cache.get("key").get());
+    }
+
+    @Test
+    public void testWaiterIsNotServedAnEvictedValueAfterTheTimeout() throws Exception {
+        CoalescingCache cache = cache(Duration.ofMillis(50));
+        cache.put("key", "old");
+        cache.put("other", "old");
+        cache.put("remote", "old");
+
+        // The entries are evicted by writes, in this node and in another one
+        cache.evict("key");
+        cache.evictAll(List.of("other"));
+        cache.evictLocally("remote");
+
+        for (String key : List.of("key", "other", "remote")) {
+            CountDownLatch loading = new CountDownLatch(1);
+            Future<String> leader = executor.submit(() -> cache.get(key, () -> {
+                loading.countDown();
+                Thread.sleep(200);
+                return "new";
+            }));
+            loading.await(5, TimeUnit.SECONDS);
+
+            // The value older than the write is not served, so the second caller waits for the load
+            assertEquals("new", cache.get(key, () -> "unused"));
+            assertEquals("new", leader.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testWaiterWithoutStaleValueWaitsForTheLoad() throws Exception {
+        CoalescingCache cache = cache(Duration.ofMillis(50));
+
+        CountDownLatch loading = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> cache.get("key", () -> {
+            loading.countDown();
+            Thread.sleep(200);
+            return "value";
+        }));
+        loading.await(5, TimeUnit.SECONDS);
+
+        assertEquals("value", cache.get("key", () -> "unused"));
+        assertEquals("value", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLoadFailureIsPropagatedToTheWaiters() throws Exception {
+        CoalescingCache cache = cache(Duration.ofSeconds(10));
+
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> cache.get("key", () -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            throw new IllegalStateException("failed");
+        }));
+        loading.await(5, TimeUnit.SECONDS);
+
+        Future<String> waiter = executor.submit(() -> cache.get("key", () -> "unused"));
+        Thread.sleep(100);
+        release.countDown();
+
+        Exception ex = assertThrows(Exception.class, () -> waiter.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(Cache.ValueRetrievalException.class, ex.getCause());
+        assertInstanceOf(IllegalStateException.class, ex.getCause().getCause());
+        assertThrows(Exception.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertNull(cache.get("key"));
+    }
+
+    @Test
+    public void testCacheManagerDecoratesTheCaches() {
+        CoalescingCacheManager cacheManager = new CoalescingCacheManager(new ConcurrentMapCacheManager("test"),
+                Duration.ofSeconds(1), 100, Duration.ofMinutes(1), Map.of(), null);
+
+        Cache cache = cacheManager.getCache("test");
+
+        assertInstanceOf(CoalescingCache.class, cache);
+        assertEquals(cache, cacheManager.getCache("test"));
+        assertEquals(List.of("test"), List.copyOf(cacheManager.getCacheNames()));
+    }
+
+    @Test
+    public void testStaleEntryIsServedWhileItIsReloaded() throws Exception {
+        CoalescingCache cache = refreshingCache();
+        cache.put("key", "old");
+
+        // The stale value is served at once and reloaded in the background
+        assertEquals("old", cache.get("key", () -> "new"));
+        awaitRefreshes("success", 1);
+
+        assertEquals("new", cache.get("key").get());
+        assertEquals(1, meterRegistry.get("cache.stale.hits").tag("cache", "test").counter().count());
+    }
+
+    @Test
+    public void testFailedReloadKeepsTheStaleEntry() throws Exception {
+        CoalescingCache cache = refreshingCache();
+        cache.put("key", "old");
+
+        assertEquals("old", cache.get("key", () -> {
+            throw new IllegalStateException("failed");
+        }));
+        awaitRefreshes("failure", 1);
+
+        assertEquals(1, refreshes("failure"));
+        assertEquals("old", cache.get("key").get());
+    }
+
+    @Test
+    public void testReloadDoesNotRestoreAnEvictedEntry() throws Exception {
+        CoalescingCache cache = refreshingCache();
+        cache.put("key", "old");
+
+        CountDownLatch release = new CountDownLatch(1);
+        cache.get("key", () -> {
+            release.await(5, TimeUnit.SECONDS);
+            return "new";
+        });
+
+        // The entry is evicted by a write while it is reloaded
+        cache.evict("key");
+        release.countDown();
+        awaitRefreshes("success", 1);
+
+        assertNull(cache.get("key"));
+    }
+}
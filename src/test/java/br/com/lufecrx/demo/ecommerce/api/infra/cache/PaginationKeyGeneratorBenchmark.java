@@ -0,0 +1,85 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductServicePaginable;
+
+/**
+ * Benchmark of the cost of the cache keys of the pages: the string keys made by concatenating the parameters, as the SpEL
+ * keys did, against the keys of the PaginationKeyGenerator. Each benchmark creates the key and looks it up in a map, like a
+ * cache lookup does.
+ * It is not run by the tests. To run it, compile the tests and run this class with the test classpath, e.g.
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) br.com.lufecrx.demo.ecommerce.api.infra.cache.PaginationKeyGeneratorBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaginationKeyGeneratorBenchmark {
+
+    private PaginationKeyGenerator keyGenerator;
+
+    private Method method;
+
+    private Map<Object, Object> cache;
+
+    private int page;
+
+    private int size;
+
+    private String[] sort;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        keyGenerator = new PaginationKeyGenerator(new CacheGenerations(), "products", false);
+        method = ProductServicePaginable.class.getMethod("getWithPagination", int.class, int.class, String[].class);
+        page = 3;
+        size = 10;
+        sort = new String[] { "productName", "asc" };
+
+        cache = new HashMap<>();
+        cache.put(concatenatedKey(), Boolean.TRUE);
+        cache.put(keyGenerator.generate(null, method, page, size, sort), Boolean.TRUE);
+    }
+
+    private String concatenatedKey() {
+        return "1:" + Integer.toString(page) + Integer.toString(size) + Arrays.toString(sort);
+    }
+
+    @Benchmark
+    public Object concatenatedKeyLookup() {
+        return cache.get(concatenatedKey());
+    }
+
+    @Benchmark
+    public Object paginationKeyLookup() {
+        return cache.get(keyGenerator.generate(null, method, page, size, sort));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PaginationKeyGeneratorBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,129 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductServicePaginable;
+import br.com.lufecrx.demo.ecommerce.auth.model.User;
+
+public class PaginationKeyGeneratorTest {
+
+    private CacheGenerations cacheGenerations;
+
+    private PaginationKeyGenerator keyGenerator;
+
+    private Method getWithPagination;
+
+    private Method getWithSlice;
+
+    @BeforeEach
+    public void setUp() throws NoSuchMethodException {
+        cacheGenerations = new CacheGenerations();
+        keyGenerator = new PaginationKeyGenerator(cacheGenerations, "products", false);
+        getWithPagination = ProductServicePaginable.class.getMethod("getWithPagination", int.class, int.class, String[].class);
+        getWithSlice = ProductServicePaginable.class.getMethod("getWithSlice", int.class, int.class, String[].class, boolean.class);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private Object key(Method method, Object... params) {
+        return keyGenerator.generate(null, method, params);
+    }
+
+    @Test
+    public void testEqualParametersMakeEqualKeys() {
+        Object key = key(getWithPagination, 1, 10, new String[] { "productName", "asc" });
+        Object same = key(getWithPagination, 1, 10, new String[] { "productName", "asc" });
+
+        assertEquals(key, same);
+        assertEquals(key.hashCode(), same.hashCode());
+    }
+
+    @Test
+    public void testConcatenatedParametersDoNotCollide() {
+        // Both were the key "110[productName, asc]" when the parameters were concatenated
+        Object key = key(getWithPagination, 1, 10, new String[] { "productName", "asc" });
+        Object other = key(getWithPagination, 11, 0, new String[] { "productName", "asc" });
+
+        assertNotEquals(key, other);
+    }
+
+    @Test
+    public void testNoCollisionsInTheRangeOfPages() {
+        Set<Object> keys = new HashSet<>();
+        Set<String> concatenated = new HashSet<>();
+        int count = 0;
+
+        for (int page = 0; page < 100; page++) {
+            for (int size = 0; size <= 60; size++) {
+                for (String direction : new String[] { "asc", "desc" }) {
+                    String[] sort = new String[] { "productName", direction };
+                    keys.add(key(getWithPagination, page, size, sort));
+                    concatenated.add(Integer.toString(page) + Integer.toString(size) + Arrays.toString(sort));
+                    count++;
+                }
+            }
+        }
+
+        assertEquals(count, keys.size());
+        // The old keys collided in the same range
+        assertNotEquals(count, concatenated.size());
+    }
+
+    @Test
+    public void testMethodsOfTheSameCacheDoNotCollide() {
+        Object page = key(getWithPagination, 0, 10, new String[] { "productName", "asc" });
+        Object slice = key(getWithSlice, 0, 10, new String[] { "productName", "asc" }, false);
+
+        assertNotEquals(page, slice);
+    }
+
+    @Test
+    public void testAdvancedGenerationMakesNewKeys() {
+        Object before = key(getWithPagination, 0, 10, new String[] { "productName", "asc" });
+
+        cacheGenerations.advance("products");
+
+        assertNotEquals(before, key(getWithPagination, 0, 10, new String[] { "productName", "asc" }));
+    }
+
+    @Test
+    public void testKeysPerUserDoNotCollide() {
+        PaginationKeyGenerator perUser = new PaginationKeyGenerator(cacheGenerations, "wishlists", true);
+
+        authenticate(1L);
+        Object first = perUser.generate(null, getWithPagination, 0, 10, new String[] { "name", "asc" });
+        authenticate(2L);
+        Object second = perUser.generate(null, getWithPagination, 0, 10, new String[] { "name", "asc" });
+
+        assertNotEquals(first, second);
+    }
+
+    private void authenticate(Long userId) {
+        User user = new User();
+        user.setId(userId);
+
+        Authentication authentication = mock(Authentication.class);
+        when(authentication.getPrincipal()).thenReturn(user);
+        SecurityContext securityContext = mock(SecurityContext.class);
+        when(securityContext.getAuthentication()).thenReturn(authentication);
+        SecurityContextHolder.setContext(securityContext);
+    }
+}
@@ -0,0 +1,202 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CacheGenerations;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CoalescingCache;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CoalescingCacheManager;
+
+public class CacheInvalidationBusTest {
+
+    /**
+     * The caches, generations and bus of a node.
+     */
+    private record Node(CoalescingCacheManager cacheManager, CacheGenerations cacheGenerations, CacheInvalidationBus bus) {
+    }
+
+    private InMemoryCacheInvalidationTransport transport;
+
+    private Node first;
+
+    private Node second;
+
+    @BeforeEach
+    public void setUp() {
+        transport = new InMemoryCacheInvalidationTransport();
+        first = node();
+        second = node();
+    }
+
+    private Node node() {
+        CoalescingCacheManager cacheManager = new CoalescingCacheManager(new ConcurrentMapCacheManager("product", "products"),
+                Duration.ofSeconds(1), 100, Duration.ofMinutes(1), Map.of(), null);
+        CacheGenerations cacheGenerations = new CacheGenerations();
+        CacheInvalidationBus bus = new CacheInvalidationBus(transport, cacheManager, cacheGenerations);
+        cacheManager.setInvalidationListener(bus);
+        cacheGenerations.setInvalidationListener(bus);
+        return new Node(cacheManager, cacheGenerations, bus);
+    }
+
+    private Cache product(Node node) {
+        return node.cacheManager().getCache("product");
+    }
+
+    @Test
+    public void testEvictionIsAppliedInTheOtherNodes() {
+        product(first).put(1L, "product 1");
+        product(second).put(1L, "product 1");
+        product(second).put(2L, "product 2");
+
+        product(first).evict(1L);
+
+        assertNull(product(second).get(1L));
+        assertNotNull(product(second).get(2L));
+    }
+
+    @Test
+    public void testBatchEvictionIsAppliedInTheOtherNodes() {
+        for (long id = 1; id <= CacheInvalidationBus.EVICT_BATCH_SIZE + 1; id++) {
+            product(second).put(id, "product " + id);
+        }
+        product(second).put(0L, "product 0");
+
+        List<Long> ids = LongStream.rangeClosed(1, CacheInvalidationBus.EVICT_BATCH_SIZE + 1).boxed().toList();
+        ((CoalescingCache) product(first)).evictAll(ids);
+
+        // Two batches, both applied
+        assertNull(product(second).get(1L));
+        assertNull(product(second).get((long) CacheInvalidationBus.EVICT_BATCH_SIZE + 1));
+        assertNotNull(product(second).get(0L));
+    }
+
+    @Test
+    public void testAdvancedGenerationIsAppliedInTheOtherNodes() {
+        long generation = second.cacheGenerations().current("products");
+
+        first.cacheGenerations().advance("products");
+
+        assertNotEquals(generation, second.cacheGenerations().current("products"));
+    }
+
+    @Test
+    public void testInvalidationIsAppliedOnce() {
+        CacheInvalidation invalidation = new CacheInvalidation("other", "products", 1, CacheInvalidation.Type.ADVANCE, "products");
+
+        second.bus().receive(invalidation);
+        long generation = second.cacheGenerations().current("products");
+        second.bus().receive(invalidation);
+
+        assertEquals(generation, second.cacheGenerations().current("products"));
+    }
+
+    @Test
+    public void testGapInTheSequenceClearsTheCache() {
+        product(second).put(1L, "product 1");
+        product(second).put(2L, "product 2");
+        product(second).put(3L, "product 3");
+
+        second.bus().receive(new CacheInvalidation("other", "product", 1, CacheInvalidation.Type.EVICT, 1L));
+        assertNotNull(product(second).get(2L));
+
+        // The invalidation 2 was lost, so the evicted key is unknown
+        second.bus().receive(new CacheInvalidation("other", "product", 3, CacheInvalidation.Type.EVICT, 3L));
+
+        assertNull(product(second).get(2L));
+    }
+
+    @Test
+    public void testResyncClearsAllTheCaches() {
+        product(second).put(1L, "product 1");
+
+        second.bus().resync();
+
+        assertNull(product(second).get(1L));
+    }
+
+    /**
+     * A handler that records the invalidations it receives.
+     */
+    private static class RecordingHandler implements CacheInvalidationListener {
+
+        private final List<Object> evicted = new ArrayList<>();
+
+        private int clears;
+
+        @Override
+        public void onEvict(String cache, Object key) {
+            evicted.add(key);
+        }
+
+        @Override
+        public void onEvictAll(String cache, Collection<?> keys) {
+            evicted.addAll(keys);
+        }
+
+        @Override
+        public void onClear(String cache) {
+            clears++;
+        }
+
+        @Override
+        public void onAdvance(String scope) {
+        }
+    }
+
+    @Test
+    public void testInvalidationsOfARegisteredNameArePassedToItsHandler() {
+        RecordingHandler handler = new RecordingHandler();
+        second.bus().register("product-index", handler);
+
+        first.bus().onEvictAll("product-index", List.of(1L, 2L));
+
+        assertEquals(List.of(1L, 2L), handler.evicted);
+
+        // The handler is cleared when invalidations were missed, like the caches
+        second.bus().receive(new CacheInvalidation("other", "product-index", 1, CacheInvalidation.Type.EVICT, 3L));
+        second.bus().receive(new CacheInvalidation("other", "product-index", 3, CacheInvalidation.Type.EVICT, 4L));
+        second.bus().resync();
+
+        assertEquals(List.of(1L, 2L, 3L), handler.evicted);
+        assertEquals(2, handler.clears);
+    }
+
+    @Test
+    public void testInvalidationIsSerializedWithItsKey() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        CacheInvalidation invalidation = new CacheInvalidation("node", "product", 7, CacheInvalidation.Type.EVICT, 42L);
+
+        CacheInvalidation read = objectMapper.readValue(objectMapper.writeValueAsString(invalidation), CacheInvalidation.class);
+
+        assertEquals(invalidation.sequence(), read.sequence());
+        assertEquals(CacheInvalidation.Type.EVICT, read.type());
+        assertEquals(42L, read.normalizedKey());
+    }
+
+    @Test
+    public void testBatchInvalidationIsSerializedWithItsKeys() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        CacheInvalidation invalidation = new CacheInvalidation("node", "product", 7, CacheInvalidation.Type.EVICT_ALL, List.of(1L, 2L));
+
+        CacheInvalidation read = objectMapper.readValue(objectMapper.writeValueAsString(invalidation), CacheInvalidation.class);
+
+        assertEquals(CacheInvalidation.Type.EVICT_ALL, read.type());
+        assertEquals(List.of(1L, 2L), read.normalizedKeys());
+    }
+}
@@ -0,0 +1,143 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache.snapshot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.DataOutputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CatalogVersion;
+import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import br.com.lufecrx.demo.ecommerce.api.repository.ProductRepository;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductServicePaginable;
+
+@SpringBootTest
+public class CacheSnapshotsTest {
+
+    @Autowired
+    private CacheSnapshots cacheSnapshots;
+
+    @Autowired
+    private ProductServicePaginable productServicePaginable;
+
+    @Autowired
+    private CatalogVersion catalogVersion;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @SpyBean
+    private ProductRepository productRepository;
+
+    @TempDir
+    private Path directory;
+
+    private TransactionTemplate transactionTemplate;
+
+    private final String[] sort = new String[] { "productName", "asc" };
+
+    @BeforeEach
+    public void setUp() {
+        Product product = new Product();
+        product.setProductName("Snapshot product");
+        product.setPrice(10.0);
+        productRepository.save(product);
+
+        // The requests read the lazy categories in their open session
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.executeWithoutResult(status -> {
+            productServicePaginable.getWithPagination(0, 10, sort);
+            productServicePaginable.getWithSlice(0, 10, sort, false);
+        });
+    }
+
+    @AfterEach
+    public void tearDown() {
+        productRepository.deleteAll();
+        cacheManager.getCache("products").clear();
+        cacheManager.getCache("categories").clear();
+    }
+
+    @Test
+    public void testSnapshotIsReloadedAfterRestart() {
+        Path file = directory.resolve("cache-snapshot.bin");
+        int saved = cacheSnapshots.save(file);
+        assertTrue(saved > 0);
+        assertTrue(Files.exists(file));
+
+        // A restart starts with empty caches, and all the entries pass the filter of the classes
+        cacheManager.getCache("products").clear();
+        assertEquals(saved, cacheSnapshots.restore(file));
+        clearInvocations(productRepository);
+
+        transactionTemplate.executeWithoutResult(status -> productServicePaginable.getWithPagination(0, 10, sort));
+
+        verify(productRepository, never()).findAll(any(Pageable.class));
+    }
+
+    @Test
+    public void testSnapshotOfAnOlderCatalogVersionIsIgnored() {
+        Path file = directory.resolve("cache-snapshot.bin");
+        cacheSnapshots.save(file);
+
+        catalogVersion.increment();
+        cacheManager.getCache("products").clear();
+
+        assertEquals(0, cacheSnapshots.restore(file));
+    }
+
+    @Test
+    public void testMissingOrCorruptedSnapshotIsIgnored() throws Exception {
+        assertEquals(0, cacheSnapshots.restore(directory.resolve("missing.bin")));
+
+        Path file = directory.resolve("corrupted.bin");
+        Files.write(file, new byte[] { 1, 2, 3 });
+        assertEquals(0, cacheSnapshots.restore(file));
+    }
+
+    @Test
+    public void testSnapshotWithOtherClassesIsRejected() throws Exception {
+        Path file = directory.resolve("unexpected.bin");
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            out.writeInt(0x45435348);
+            out.writeInt(1);
+            out.writeLong(catalogVersion.current());
+
+            ObjectOutputStream objects = new ObjectOutputStream(out);
+            objects.writeBoolean(true);
+            objects.writeUTF("products");
+            objects.writeUTF(ProductServicePaginable.class.getName());
+            objects.writeUTF("getWithPagination");
+            objects.writeObject(new String[] { "int", "int", "[Ljava.lang.String;" });
+            // A class that is not a parameter or a value of the cached methods
+            objects.writeObject(new Object[] { new Date() });
+            objects.writeObject("value");
+            objects.writeBoolean(false);
+            objects.flush();
+        }
+
+        assertEquals(0, cacheSnapshots.restore(file));
+    }
+}
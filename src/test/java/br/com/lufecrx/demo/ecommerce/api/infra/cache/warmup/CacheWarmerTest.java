@@ -0,0 +1,107 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache.warmup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import br.com.lufecrx.demo.ecommerce.api.repository.ProductRepository;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductService;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductServicePaginable;
+
+@SpringBootTest
+public class CacheWarmerTest {
+
+    @Autowired
+    private CacheWarmer cacheWarmer;
+
+    @Autowired
+    private ProductService productService;
+
+    @Autowired
+    private ProductServicePaginable productServicePaginable;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @SpyBean
+    private ProductRepository productRepository;
+
+    private Product product;
+
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate.update("DELETE FROM cache_hot_keys");
+
+        product = new Product();
+        product.setProductName("Warm product");
+        product.setPrice(10.0);
+        product = productRepository.save(product);
+
+        // The requests read the lazy categories in their open session
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM cache_hot_keys");
+        productRepository.deleteAll();
+        cacheManager.getCache("product").clear();
+        cacheManager.getCache("products").clear();
+    }
+
+    @Test
+    public void testHotKeysAreWarmedAfterRestart() {
+        String[] sort = new String[] { "productName", "asc" };
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int i = 0; i < 10; i++) {
+                productService.getProductById(product.getId());
+                productServicePaginable.getWithPagination(0, 10, sort);
+            }
+        });
+        cacheWarmer.saveHotKeys();
+
+        // A restart starts with empty caches
+        cacheManager.getCache("product").clear();
+        cacheManager.getCache("products").clear();
+        cacheWarmer.warmUp();
+        clearInvocations(productRepository);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            productService.getProductById(product.getId());
+            productServicePaginable.getWithPagination(0, 10, sort);
+        });
+
+        verify(productRepository, never()).findById(product.getId());
+        verify(productRepository, never()).findAll(any(Pageable.class));
+    }
+
+    @Test
+    public void testWarmUpWithoutHotKeys() {
+        cacheWarmer.warmUp();
+
+        assertEquals(1.0, cacheWarmer.coverage());
+    }
+}
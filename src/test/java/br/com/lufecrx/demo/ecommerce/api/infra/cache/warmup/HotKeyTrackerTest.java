@@ -0,0 +1,82 @@
+package br.com.lufecrx.demo.ecommerce.api.infra.cache.warmup;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.PaginationKey;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.warmup.HotKeyTracker.HotKey;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.ProductServicePaginable;
+
+public class HotKeyTrackerTest {
+
+    private HotKeyTracker tracker;
+
+    @BeforeEach
+    public void setUp() {
+        tracker = new HotKeyTracker(Set.of("product", "products"), 10);
+    }
+
+    private void record(String cache, Object key, int times) {
+        for (int i = 0; i < times; i++) {
+            tracker.record(cache, key);
+        }
+    }
+
+    @Test
+    public void testHottestKeysAreSortedByFrequency() {
+        record("product", 1L, 5);
+        record("product", 2L, 20);
+        record("product", 3L, 10);
+
+        List<HotKey> hottest = tracker.hottest(2);
+
+        assertEquals(2, hottest.size());
+        assertEquals(2L, hottest.get(0).key());
+        assertEquals(3L, hottest.get(1).key());
+        assertTrue(hottest.get(0).frequency() >= 20);
+    }
+
+    @Test
+    public void testUntrackedCachesAreIgnored() {
+        record("wishlist", 1L, 10);
+
+        assertTrue(tracker.hottest(10).isEmpty());
+    }
+
+    @Test
+    public void testGenerationOfPaginationKeysIsIgnored() throws NoSuchMethodException {
+        Method getWithPagination = ProductServicePaginable.class.getMethod("getWithPagination", int.class, int.class, String[].class);
+
+        // The generation advances on each write, but the page is the same
+        for (long generation = 0; generation < 10; generation++) {
+            tracker.record("products", PaginationKey.of(getWithPagination, generation, null, new Object[] { 0, 10, new String[] { "id", "asc" } }));
+        }
+
+        List<HotKey> hottest = tracker.hottest(10);
+
+        assertEquals(1, hottest.size());
+        assertTrue(hottest.get(0).frequency() >= 10);
+    }
+
+    @Test
+    public void testHotKeysSurviveManyColdKeys() {
+        record("product", 42L, 50);
+
+        // Far more keys accessed once than the capacity of the tracker
+        for (long id = 1000; id < 2000; id++) {
+            tracker.record("product", id);
+        }
+
+        List<HotKey> hottest = tracker.hottest(10);
+
+        assertEquals(42L, hottest.get(0).key());
+        assertTrue(hottest.size() <= 20);
+    }
+}
@@ -10,12 +10,15 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
 
 import com.github.javafaker.Faker;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.database.DatabaseVendor;
 import br.com.lufecrx.demo.ecommerce.api.model.Category;
 
 @DataJpaTest
+@Import(DatabaseVendor.class)
 public class CategoryRepositoryTest {
 
     @Autowired
@@ -2,28 +2,43 @@ package br.com.lufecrx.demo.ecommerce.api.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 
 import com.github.javafaker.Faker;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.database.DatabaseVendor;
 import br.com.lufecrx.demo.ecommerce.api.model.Category;
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import br.com.lufecrx.demo.ecommerce.api.model.Revision;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
 
 @DataJpaTest
+@Import(DatabaseVendor.class)
 public class ProductRepositoryTest {
 
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private TestEntityManager entityManager;
+
     Faker faker = new Faker();
 
     @BeforeEach
@@ -70,4 +85,190 @@ public class ProductRepositoryTest {
 
         assertThat(foundProducts).isPresent();
         assertThat(foundProducts.get().getContent()).isEmpty();    }
+
+    @Test
+    public void whenFindKeysetByNameAfter_thenReturnNextProducts() {
+        Sort order = Sort.by("productName").ascending().and(Sort.by("id").ascending());
+        List<Product> firstPage = productRepository.findKeysetFirstPage(PageRequest.of(0, 1, order));
+
+        assertThat(firstPage).hasSize(1);
+        assertThat(firstPage.get(0).getProductName()).isEqualTo("Laptop");
+
+        Product last = firstPage.get(0);
+        List<Product> nextPage = productRepository.findKeysetByNameAfter(last.getProductName(), last.getId(), PageRequest.of(0, 10, order));
+
+        assertThat(nextPage).hasSize(1);
+        assertThat(nextPage.get(0).getProductName()).isEqualTo("Smartphone");
+    }
+
+    @Test
+    public void whenPatchWithExpectedVersion_thenUpdateOnlyTheGivenFieldsAndIncrementVersion() {
+        Product laptop = productRepository.findAll(Sort.by("id")).get(0);
+        Revision revision = productRepository.findRevisionById(laptop.getId()).orElseThrow();
+
+        int updated = productRepository.patch(laptop.getId(), null, 999.0, revision.version(), Instant.now());
+        entityManager.clear();
+
+        Product patched = productRepository.findById(laptop.getId()).orElseThrow();
+        assertThat(updated).isEqualTo(1);
+        assertThat(patched.getProductName()).isEqualTo("Laptop");
+        assertThat(patched.getPrice()).isEqualTo(999.0);
+        assertThat(patched.getVersion()).isEqualTo(revision.version() + 1);
+    }
+
+    @Test
+    public void whenPatchWithStaleVersion_thenUpdateNothing() {
+        Product laptop = productRepository.findAll(Sort.by("id")).get(0);
+        Long version = laptop.getVersion();
+
+        productRepository.patch(laptop.getId(), "Notebook", null, null, Instant.now());
+        int updated = productRepository.patch(laptop.getId(), "Ultrabook", null, version, Instant.now());
+        entityManager.clear();
+
+        assertThat(updated).isZero();
+        assertThat(productRepository.findById(laptop.getId()).orElseThrow().getProductName()).isEqualTo("Notebook");
+    }
+
+    @Test
+    public void whenAdjustPricesByCategoryId_thenUpdateOnlyTheProductsOfTheCategory() {
+        Category computers = entityManager.getEntityManager()
+                .createQuery("SELECT c FROM Category c WHERE c.name = 'Computers'", Category.class).getSingleResult();
+
+        int updated = productRepository.adjustPricesByCategoryId(computers.getId(), 1.07, 0, Instant.now());
+        entityManager.clear();
+
+        List<Product> products = productRepository.findAll(Sort.by("productName"));
+        assertThat(updated).isEqualTo(1);
+        assertThat(products.get(0).getPrice()).isEqualTo(1284.0);
+        assertThat(products.get(1).getPrice()).isEqualTo(800.0);
+    }
+
+    @Test
+    public void whenAdjustPricesBelowZero_thenClampToZero() {
+        Category electronics = entityManager.getEntityManager()
+                .createQuery("SELECT c FROM Category c WHERE c.name = 'Electronics'", Category.class).getSingleResult();
+
+        int updated = productRepository.adjustPricesByCategoryId(electronics.getId(), 1, -1000.0, Instant.now());
+        entityManager.clear();
+
+        List<Product> products = productRepository.findAll(Sort.by("productName"));
+        assertThat(updated).isEqualTo(2);
+        assertThat(products.get(0).getPrice()).isEqualTo(200.0);
+        assertThat(products.get(1).getPrice()).isEqualTo(0.0);
+    }
+
+    @Test
+    public void whenFindKeysetByPriceBefore_thenReturnNextProducts() {
+        Sort order = Sort.by("price").descending().and(Sort.by("id").descending());
+        List<Product> firstPage = productRepository.findKeysetFirstPage(PageRequest.of(0, 1, order));
+
+        assertThat(firstPage.get(0).getProductName()).isEqualTo("Laptop");
+
+        Product last = firstPage.get(0);
+        List<Product> nextPage = productRepository.findKeysetByPriceBefore(last.getPrice(), last.getId(), PageRequest.of(0, 10, order));
+
+        assertThat(nextPage).hasSize(1);
+        assertThat(nextPage.get(0).getProductName()).isEqualTo("Smartphone");
+    }
+
+    @Test
+    public void whenFindKeysetByIdAfterLastProduct_thenReturnEmpty() {
+        Sort order = Sort.by("id").ascending();
+        List<Product> products = productRepository.findKeysetFirstPage(PageRequest.of(0, 10, order));
+
+        List<Product> nextPage = productRepository.findKeysetByIdAfter(products.get(products.size() - 1).getId(), PageRequest.of(0, 10, order));
+
+        assertThat(nextPage).isEmpty();
+    }
+
+    @Test
+    public void whenFindSliceByNameAndCategoryAndPriceRange_thenReturnSliceAndCount() {
+        PageRequest pageRequest = PageRequest.of(0, 1, Sort.by("productName"));
+        Slice<Product> firstSlice = productRepository.findSliceByNameAndCategoryAndPriceRange(null, "Electronics", 0.0, 2000.0, pageRequest);
+
+        assertThat(firstSlice.getContent()).extracting(Product::getProductName).containsExactly("Laptop");
+        assertThat(firstSlice.hasNext()).isTrue();
+        assertThat(productRepository.countByNameAndCategoryAndPriceRange(null, "Electronics", 0.0, 2000.0)).isEqualTo(2);
+    }
+
+    @Test
+    public void whenFindSliceBy_thenReturnLastSlice() {
+        Slice<Product> lastSlice = productRepository.findSliceBy(PageRequest.of(1, 1, Sort.by("productName")));
+
+        assertThat(lastSlice.getContent()).extracting(Product::getProductName).containsExactly("Smartphone");
+        assertThat(lastSlice.hasNext()).isFalse();
+    }
+
+    @Test
+    public void whenSearchRanked_thenReturnExactMatchFirst() {
+        Product product = new Product();
+        product.setProductName("Smartphone Case");
+        product.setPrice(20.00);
+        productRepository.save(product);
+
+        Slice<Product> found = productRepository.searchRanked("SMARTPHONE", null, null, null, PageRequest.of(0, 10));
+
+        assertThat(found.getContent()).extracting(Product::getProductName).containsExactly("Smartphone", "Smartphone Case");
+        assertThat(found.hasNext()).isFalse();
+    }
+
+    @Test
+    public void whenSearchRankedWithFilters_thenReturnMatchingProducts() {
+        Slice<Product> found = productRepository.searchRanked("", "computer", null, 1500.00, PageRequest.of(0, 10));
+
+        assertThat(found.getContent()).extracting(Product::getProductName).containsExactly("Laptop");
+    }
+
+    @Test
+    public void whenSearchRankedWithWildcards_thenMatchThemLiterally() {
+        Slice<Product> found = productRepository.searchRanked("%", null, null, null, PageRequest.of(0, 10));
+
+        assertThat(found.getContent()).isEmpty();
+    }
+
+    /**
+     * Save products with their own categories and start counting the statements with an empty persistence context.
+     */
+    private Statistics saveProductsAndResetStatistics(int count) {
+        for (int i = 0; i < count; i++) {
+            Category category = new Category();
+            category.setName("Category " + i);
+
+            Product product = new Product();
+            product.setProductName("Product " + i);
+            product.setPrice(10.0 * i);
+            product.setCategories(new HashSet<>(Arrays.asList(category)));
+            productRepository.save(product);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+    @Test
+    public void whenMapPageToDTOs_thenLoadCategoriesOfThePageInOneQuery() {
+        Statistics statistics = saveProductsAndResetStatistics(20);
+
+        Page<Product> page = productRepository.findAll(PageRequest.of(0, 10, Sort.by("id")));
+        List<ProductDTO> products = page.map(ProductDTO::from).getContent();
+
+        // The page, the count and the categories of all the products of the page, instead of one query per product
+        assertThat(products).hasSize(10);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void whenMapSliceToDTOs_thenLoadCategoriesOfTheSliceInOneQuery() {
+        Statistics statistics = saveProductsAndResetStatistics(20);
+
+        Slice<Product> slice = productRepository.findSliceBy(PageRequest.of(1, 10, Sort.by("id")));
+        List<ProductDTO> products = slice.map(ProductDTO::from).getContent();
+
+        // The slice and the categories of all its products
+        assertThat(products).hasSize(10);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+    }
 }
\ No newline at end of file
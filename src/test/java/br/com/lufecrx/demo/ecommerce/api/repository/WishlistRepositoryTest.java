@@ -2,20 +2,32 @@ package br.com.lufecrx.demo.ecommerce.api.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.HashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
 
 import com.github.javafaker.Faker;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.database.DatabaseVendor;
+import br.com.lufecrx.demo.ecommerce.api.model.Category;
+import br.com.lufecrx.demo.ecommerce.api.model.Product;
 import br.com.lufecrx.demo.ecommerce.api.model.Wishlist;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.WishlistDTO;
 import br.com.lufecrx.demo.ecommerce.auth.model.User;
 
 @DataJpaTest
+@Import(DatabaseVendor.class)
 public class WishlistRepositoryTest {
 
     @Autowired
@@ -96,4 +108,33 @@ public class WishlistRepositoryTest {
 
         assertThat(exists).isFalse();
     }
+
+    @Test
+    public void whenMapWishlistsToDTOs_thenLoadProductsAndCategoriesInBatches() {
+        for (int i = 0; i < 5; i++) {
+            Wishlist userWishlist = Wishlist.builder().name("Wishlist " + i).user(user).build();
+            for (int j = 0; j < 3; j++) {
+                Category category = entityManager.persist(Category.builder().name("Category " + i + j).build());
+                Product product = entityManager.persist(Product.builder()
+                        .productName("Product " + i + j)
+                        .price(10.0)
+                        .categories(new HashSet<>(Set.of(category)))
+                        .build());
+                userWishlist.addToWishlist(product);
+            }
+            entityManager.persist(userWishlist);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        Statistics statistics = entityManager.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<WishlistDTO> wishlists = wishlistRepository.findAllByUser(user, PageRequest.of(0, 10)).map(WishlistDTO::from).getContent();
+
+        // The page, the products of all the wishlists and the categories of all the products, instead of queries per wishlist and product
+        assertThat(wishlists).hasSize(5);
+        assertThat(wishlists.get(0).products()).hasSize(3);
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(3);
+    }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package br.com.lufecrx.demo.ecommerce.api.service.domain.category;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -20,6 +21,7 @@ import com.github.javafaker.Faker;
 
 import br.com.lufecrx.demo.ecommerce.api.model.Category;
 import br.com.lufecrx.demo.ecommerce.api.repository.CategoryRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 
 @SpringBootTest
 public class CategoryCachingTest {
@@ -33,6 +35,9 @@ public class CategoryCachingTest {
     @Autowired
     private CacheManager cacheManager;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @SpyBean
     private CategoryRepository categoryRepository;
 
@@ -101,4 +106,20 @@ public class CategoryCachingTest {
         // Verify that the method was called again due to cache eviction
         verify(categoryRepository, times(2)).findAll(pageRequest);
     }
+
+    @Test
+    public void testCacheStatisticsAreExposed() {
+        double hitsBefore = cacheGets("hit");
+
+        // The first call is a miss and the others are hits
+        for (int i = 0; i < 10; i++) {
+            categoryServicePaginable.getWithPagination(1, 5, new String[] { "name", "asc" });
+        }
+
+        assertEquals(9, cacheGets("hit") - hitsBefore);
+    }
+
+    private double cacheGets(String result) {
+        return meterRegistry.get("cache.gets").tag("cache", "categories").tag("result", result).functionCounter().count();
+    }
 }
@@ -0,0 +1,77 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.category;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CacheGenerations;
+import br.com.lufecrx.demo.ecommerce.api.model.Category;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.repository.CategoryRepository;
+
+public class CategoryDictionaryTest {
+
+    @InjectMocks
+    private CategoryDictionary categoryDictionary;
+
+    @Mock
+    private CategoryRepository categoryRepository;
+
+    @Spy
+    private CacheGenerations cacheGenerations = new CacheGenerations();
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(categoryRepository.findAll()).thenReturn(List.of(new Category(1L, "Books"), new Category(2L, "Games")));
+    }
+
+    @Test
+    public void testDtoOfSharesTheDtoOfEachCategory() {
+        CategoryDTO first = categoryDictionary.dtoOf(new Category(1L, "Books"));
+        CategoryDTO second = categoryDictionary.dtoOf(new Category(1L, "Books"));
+
+        // The same instance is returned for every product of the category, and the categories are loaded once
+        assertSame(first, second);
+        assertSame(first, categoryDictionary.dtoOf("Books"));
+        assertEquals(new CategoryDTO("Books"), first);
+        verify(categoryRepository, times(1)).findAll();
+    }
+
+    @Test
+    public void testDtoOfUnknownOrRenamedCategory() {
+        // A category created or renamed since the dictionary was loaded is mapped to a new DTO with its current name
+        assertEquals(new CategoryDTO("Comics"), categoryDictionary.dtoOf(new Category(1L, "Comics")));
+        assertEquals(new CategoryDTO("Music"), categoryDictionary.dtoOf(new Category(3L, "Music")));
+        assertEquals(new CategoryDTO("Music"), categoryDictionary.dtoOf("Music"));
+    }
+
+    @Test
+    public void testIdsOfLeavesTheUnknownNamesOut() {
+        assertEquals(Map.of("Books", 1L), categoryDictionary.idsOf(List.of("Books", "Music")));
+    }
+
+    @Test
+    public void testReloadsWhenTheCategoriesGenerationAdvances() {
+        assertEquals(Map.of(), categoryDictionary.idsOf(List.of("Music")));
+
+        // A category is created and the generation of the categories is advanced, as by the category service
+        when(categoryRepository.findAll()).thenReturn(List.of(new Category(1L, "Books"), new Category(3L, "Music")));
+        cacheGenerations.advanceLocally("categories");
+
+        assertEquals(Map.of("Music", 3L), categoryDictionary.idsOf(List.of("Music", "Games")));
+        verify(categoryRepository, times(2)).findAll();
+    }
+}
@@ -1,12 +1,15 @@
 package br.com.lufecrx.demo.ecommerce.api.service.domain.category;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
+import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,11 +18,17 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CatalogVersion;
 import br.com.lufecrx.demo.ecommerce.api.model.Category;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.RevisedDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.SliceDTO;
 import br.com.lufecrx.demo.ecommerce.api.repository.CategoryRepository;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.pagination.ApproximateTotalService;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.category.CategoriesEmptyException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidArgumentsToPaginationException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidSortDirectionException;
@@ -32,9 +41,16 @@ public class CategoryServicePaginableTest {
     @Mock
     private CategoryRepository categoryRepository;
 
+    @Mock
+    private ApproximateTotalService approximateTotalService;
+
+    @Mock
+    private CatalogVersion catalogVersion;
+
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
+        when(catalogVersion.current()).thenReturn(4L);
     }
 
     @Test
@@ -46,9 +62,11 @@ public class CategoryServicePaginableTest {
         when(categoryRepository.findAll(any(Pageable.class))).thenReturn(page);
 
         // Getting the categories
-        Iterable<CategoryDTO> categories = categoryServicePaginable.getWithPagination(0, 1, new String[] { "id", "asc" });
+        RevisedDTO<Iterable<CategoryDTO>> listing = categoryServicePaginable.getWithPagination(0, 1, new String[] { "id", "asc" });
+        Iterable<CategoryDTO> categories = listing.content();
 
-        // Verifying if the methods were called correctly
+        // Verifying if the methods were called correctly, and the listing has the version of the catalog
+        assertEquals(4L, listing.version());
         assertTrue(categories.iterator().hasNext());
         assertEquals(CategoryDTO.from(category), categories.iterator().next());
     }
@@ -100,4 +118,32 @@ public class CategoryServicePaginableTest {
             categoryServicePaginable.getWithPagination(0, 1, new String[] { "id", "invalid" });
         });
     }
+
+
+    @Test
+    public void testGetWithSliceReturnsApproximateTotal() {
+        Category category = new Category();
+
+        // Mocking the last slice and the approximate total
+        when(categoryRepository.findSliceBy(any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(category), PageRequest.of(0, 1), false));
+        when(approximateTotalService.unfilteredTotal(eq("categories"), any())).thenReturn(1L);
+
+        // Getting the categories
+        SliceDTO<CategoryDTO> categories = categoryServicePaginable.getWithSlice(0, 1, new String[] { "id", "asc" }, true).content();
+
+        // Verifying the slice
+        assertEquals(CategoryDTO.from(category), categories.iterator().next());
+        assertFalse(categories.hasNext());
+        assertEquals(1L, categories.approximateTotal());
+    }
+
+    @Test
+    public void testGetWithSliceReturnsEmptySlice() {
+        when(categoryRepository.findSliceBy(any(Pageable.class))).thenReturn(new SliceImpl<>(List.of()));
+
+        assertThrows(CategoriesEmptyException.class, () -> {
+            categoryServicePaginable.getWithSlice(0, 1, new String[] { "id", "asc" }, false);
+        });
+    }
 }
\ No newline at end of file
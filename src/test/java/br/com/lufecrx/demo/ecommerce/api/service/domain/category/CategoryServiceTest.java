@@ -2,7 +2,6 @@ package br.com.lufecrx.demo.ecommerce.api.service.domain.category;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -17,10 +16,16 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.cache.CacheManager;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CacheGenerations;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CatalogVersion;
 import br.com.lufecrx.demo.ecommerce.api.model.Category;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.RevisedDTO;
 import br.com.lufecrx.demo.ecommerce.api.repository.CategoryRepository;
+import br.com.lufecrx.demo.ecommerce.api.repository.ProductRepository;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.search.ProductIndexer;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.category.CategoryAlreadyExistsException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.category.CategoryNotFoundException;
 
@@ -32,6 +37,21 @@ public class CategoryServiceTest {
     @Mock
     private CategoryRepository categoryRepository;
 
+    @Mock
+    private ProductIndexer productIndexer;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    @Mock
+    private CacheGenerations cacheGenerations;
+
+    @Mock
+    private CatalogVersion catalogVersion;
+
     @BeforeEach
     public void init() {
         MockitoAnnotations.openMocks(this);
@@ -49,6 +69,7 @@ public class CategoryServiceTest {
 
         // Verifying if the methods were called
         verify(categoryRepository, times(1)).save(any(Category.class));
+        verify(cacheGenerations, times(1)).advance("categories");
     }
 
     @Test
@@ -71,16 +92,17 @@ public class CategoryServiceTest {
         Category category = new Category();
         category.setId(1L);
         category.setName("Test Category");
+        category.setVersion(2L);
 
         // Mocking the behavior of the methods to simulate a find operation of a category by ID that exists
         when(categoryRepository.findById(anyLong())).thenReturn(Optional.of(category));
 
         // Getting the category by ID
-        Optional<CategoryDTO> categoryDTO = categoryService.getCategoryById(1L);
+        RevisedDTO<CategoryDTO> categoryDTO = categoryService.getCategoryById(1L);
 
-        // Verifying if the methods were called and the result
-        assertTrue(categoryDTO.isPresent());
-        assertEquals(categoryDTO.get().name(), category.getName());
+        // Verifying if the methods were called and the result, with the version it was read at
+        assertEquals(categoryDTO.content().name(), category.getName());
+        assertEquals(2L, categoryDTO.version());
     }
 
     @Test
@@ -106,10 +128,14 @@ public class CategoryServiceTest {
         when(categoryRepository.findById(anyLong())).thenReturn(Optional.of(category));
 
         // Updating the category
-        categoryService.renameCategory(1L, updatedCategory);
+        categoryService.renameCategory(1L, updatedCategory, null);
 
         // Verifying if the methods were called
         verify(categoryRepository, times(1)).save(any(Category.class));
+
+        // The products include the names of their categories, so their cached lists are invalidated too
+        verify(cacheGenerations, times(1)).advance("categories");
+        verify(cacheGenerations, times(1)).advance("products");
     }
 
     @Test
@@ -121,7 +147,7 @@ public class CategoryServiceTest {
 
         // Updating the category and expecting an exception
         assertThrows(CategoryNotFoundException.class, () -> {
-            categoryService.renameCategory(1L, updatedCategory);
+            categoryService.renameCategory(1L, updatedCategory, null);
         });
     }
 
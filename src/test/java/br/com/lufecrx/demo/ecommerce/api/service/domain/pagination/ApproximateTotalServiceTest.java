@@ -0,0 +1,123 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.pagination;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.database.DatabaseVendor;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidArgumentsToPaginationException;
+
+public class ApproximateTotalServiceTest {
+
+    @InjectMocks
+    private ApproximateTotalService approximateTotalService;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private DatabaseVendor databaseVendor;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+
+        // The @Value fields are not injected by Mockito
+        ReflectionTestUtils.setField(approximateTotalService, "ttlSeconds", 60L);
+        ReflectionTestUtils.setField(approximateTotalService, "maxEntries", 2);
+    }
+
+    @Test
+    public void testFilteredTotalIsCountedOncePerFilter() {
+        AtomicInteger counts = new AtomicInteger();
+
+        // Counting the same filter twice and another filter once
+        long first = approximateTotalService.filteredTotal("products", ApproximateTotalService.filterKey("phone", null), () -> counts.incrementAndGet() * 10L);
+        long second = approximateTotalService.filteredTotal("products", ApproximateTotalService.filterKey(" phone ", ""), () -> counts.incrementAndGet() * 10L);
+        long other = approximateTotalService.filteredTotal("products", ApproximateTotalService.filterKey("tv", null), () -> counts.incrementAndGet() * 10L);
+
+        // Verifying that the normalized filter reused the cached total
+        assertEquals(10L, first);
+        assertEquals(10L, second);
+        assertEquals(20L, other);
+        assertEquals(2, counts.get());
+    }
+
+    @Test
+    public void testFilteredTotalIsCountedAgainWhenExpired() {
+        ReflectionTestUtils.setField(approximateTotalService, "ttlSeconds", 0L);
+        AtomicInteger counts = new AtomicInteger();
+
+        approximateTotalService.filteredTotal("products", "", counts::incrementAndGet);
+        approximateTotalService.filteredTotal("products", "", counts::incrementAndGet);
+
+        assertEquals(2, counts.get());
+    }
+
+    @Test
+    public void testFilteredTotalsAreBounded() {
+        approximateTotalService.filteredTotal("products", "a", () -> 1L);
+        approximateTotalService.filteredTotal("products", "b", () -> 2L);
+        approximateTotalService.filteredTotal("products", "c", () -> 3L);
+
+        // The map was full, so the oldest totals were dropped and "a" is counted again
+        assertEquals(4L, approximateTotalService.filteredTotal("products", "a", () -> 4L));
+    }
+
+    @Test
+    public void testFilterKeyDoesNotCollide() {
+        assertNotEquals(ApproximateTotalService.filterKey("a;", "b"), ApproximateTotalService.filterKey("a", ";b"));
+        assertNotEquals(ApproximateTotalService.filterKey("Phone"), ApproximateTotalService.filterKey("phone"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUnfilteredTotalUsesPostgresStatistics() {
+        when(databaseVendor.isPostgres()).thenReturn(true);
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq("products"))).thenReturn(1500L);
+
+        assertEquals(1500L, approximateTotalService.unfilteredTotal("products", () -> {
+            throw new AssertionError("The exact count should not be executed");
+        }));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testUnfilteredTotalCountsWhenTableWasNeverAnalyzed() {
+        when(databaseVendor.isPostgres()).thenReturn(true);
+        when(jdbcTemplate.query(anyString(), any(ResultSetExtractor.class), eq("products"))).thenReturn(-1L);
+
+        assertEquals(7L, approximateTotalService.unfilteredTotal("products", () -> 7L));
+    }
+
+    @Test
+    public void testUnfilteredTotalCountsOnOtherDatabases() {
+        when(databaseVendor.isPostgres()).thenReturn(false);
+
+        assertEquals(7L, approximateTotalService.unfilteredTotal("products", () -> 7L));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    public void testPaginationModeFrom() {
+        assertEquals(PaginationMode.SLICE, PaginationMode.from("slice"));
+        assertEquals(PaginationMode.APPROXIMATE, PaginationMode.from("APPROXIMATE"));
+        assertThrows(InvalidArgumentsToPaginationException.class, () -> PaginationMode.from("unknown"));
+    }
+}
@@ -5,6 +5,7 @@ import static org.mockito.Mockito.verify;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -19,6 +20,7 @@ import org.springframework.data.domain.Sort;
 import com.github.javafaker.Faker;
 
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
 import br.com.lufecrx.demo.ecommerce.api.repository.ProductRepository;
 import jakarta.transaction.Transactional;
 
@@ -53,6 +55,7 @@ public class ProductCachingTest {
     public void tearDown() {
         productRepository.deleteAll();
         cacheManager.getCache("products").clear();
+        cacheManager.getCache("product").clear();
     }
 
     public List<Product> fillProducts() {
@@ -136,4 +139,23 @@ public class ProductCachingTest {
         // Verify that the method was called again due to cache eviction
         verify(productRepository, times(2)).findByNameAndCategoryAndPriceRange("product", null, 100.0, 1000.0, PageRequest.of(0, 5, Sort.by("productName").ascending()));
     }
+
+    @Test
+    public void testCacheEvictOnlyTheUpdatedProduct() {
+        Long updatedId = products.get(0).getId();
+        Long otherId = products.get(1).getId();
+
+        productService.getProductById(updatedId);
+        productService.getProductById(otherId);
+
+        // Update a product to evict its entry
+        productService.updateProduct(updatedId, new ProductDTO("Updated product", 10.0, Set.of()), null);
+
+        productService.getProductById(updatedId);
+        productService.getProductById(otherId);
+
+        // Verify that only the updated product was read again
+        verify(productRepository, times(3)).findById(updatedId);
+        verify(productRepository, times(1)).findById(otherId);
+    }
 }
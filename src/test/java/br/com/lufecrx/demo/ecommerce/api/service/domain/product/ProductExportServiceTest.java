@@ -0,0 +1,75 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.product;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import br.com.lufecrx.demo.ecommerce.api.model.Category;
+import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
+import br.com.lufecrx.demo.ecommerce.api.repository.CategoryRepository;
+import br.com.lufecrx.demo.ecommerce.api.repository.ProductRepository;
+
+@SpringBootTest
+public class ProductExportServiceTest {
+
+    @Autowired
+    private ProductExportService productExportService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @BeforeEach
+    public void setUp() {
+        // The category is persisted in cascade with the first product
+        Category phones = Category.builder().name("Smartphones").build();
+
+        // More products than a chunk, so the categories of several chunks are loaded
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            Set<Category> categories = i % 2 == 0 ? new HashSet<>(Set.of(phones)) : new HashSet<>();
+            products.add(Product.builder().productName("Product " + i).price((double) i).categories(categories).build());
+        }
+        productRepository.saveAll(products);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        productRepository.deleteAll();
+        categoryRepository.deleteAll();
+    }
+
+    @Test
+    public void testExportWritesAllProductsAsNdjson() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        long exported = productExportService.exportProducts(output);
+
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        // Verifying that every product was written once, in id order, with its categories
+        assertEquals(1200, exported);
+        assertEquals(1200, lines.length);
+        assertEquals(new ProductDTO("Product 0", 0.0, Set.of(new CategoryDTO("Smartphones"))), objectMapper.readValue(lines[0], ProductDTO.class));
+        assertEquals(new ProductDTO("Product 1199", 1199.0, Set.of()), objectMapper.readValue(lines[1199], ProductDTO.class));
+        assertEquals(new ProductDTO("Product 1000", 1000.0, Set.of(new CategoryDTO("Smartphones"))), objectMapper.readValue(lines[1000], ProductDTO.class));
+    }
+}
@@ -0,0 +1,125 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.product;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import br.com.lufecrx.demo.ecommerce.api.model.Category;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductImportErrorDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductImportReportDTO;
+import br.com.lufecrx.demo.ecommerce.api.repository.CategoryRepository;
+
+@SpringBootTest
+@TestPropertySource(properties = "api.products.import.batch-size=2")
+public class ProductImportServiceTest {
+
+    @Autowired
+    private ProductImportService productImportService;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.update("DELETE FROM product_categories");
+        jdbcTemplate.update("DELETE FROM products");
+        jdbcTemplate.update("DELETE FROM categories");
+        cacheManager.getCache("products").clear();
+    }
+
+    private ProductImportReportDTO importText(String text, ProductImportFormat format) {
+        return productImportService.importProducts(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), format);
+    }
+
+    @Test
+    public void testImportNdjsonReusesAndCreatesCategories() {
+        Category existing = categoryRepository.save(Category.builder().name("Smartphones").build());
+
+        String ndjson = """
+                {"name":"Galaxy","price":900.0,"categories":[{"name":"Smartphones"}]}
+                {"name":"iPhone","price":1200.0,"categories":[{"name":"Smartphones"},{"name":"Apple"}]}
+
+                {"name":"Case","price":20.0,"categories":[{"name":"Accessories"}]}
+                """;
+
+        ProductImportReportDTO report = importText(ndjson, ProductImportFormat.NDJSON);
+
+        // Verifying that the products of all the batches were imported and the existing category was reused
+        assertEquals(3, report.imported());
+        assertEquals(0, report.failed());
+        assertEquals(3, categoryRepository.count());
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM product_categories WHERE category_id = ?", Long.class, existing.getId()));
+        assertEquals(4, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM product_categories", Long.class));
+    }
+
+    @Test
+    public void testImportCsvReportsInvalidRows() {
+        String csv = """
+                name,price,categories
+                "Phone, 5G",10.0,Smartphones|Android
+                ,10.0,Smartphones
+                Case,-1,Accessories
+                Charger,abc,Accessories
+                "Cable ""USB-C""\",5.5,
+                """;
+
+        ProductImportReportDTO report = importText(csv, ProductImportFormat.CSV);
+
+        // Verifying that the valid rows were imported and the invalid ones were reported with their line numbers
+        assertEquals(2, report.imported());
+        assertEquals(3, report.failed());
+        assertEquals(List.of(3L, 4L, 5L), report.errors().stream().map(ProductImportErrorDTO::line).toList());
+        assertEquals(List.of("Cable \"USB-C\"", "Phone, 5G"),
+                jdbcTemplate.queryForList("SELECT product_name FROM products ORDER BY product_name", String.class));
+    }
+
+    @Test
+    public void testImportMalformedJsonIsReported() {
+        ProductImportReportDTO report = importText("{\"name\":\"Phone\",\n{\"name\":\"Case\",\"price\":20.0}\n", ProductImportFormat.NDJSON);
+
+        assertEquals(1, report.imported());
+        assertEquals(1, report.failed());
+        assertEquals(1L, report.errors().get(0).line());
+    }
+
+    @Test
+    public void testParseCsvLine() {
+        ProductDTO product = ProductImportFormat.CSV.parse("\"Phone, 5G\",10.0, Smartphones | Android ", new ObjectMapper());
+
+        assertEquals(new ProductDTO("Phone, 5G", 10.0, Set.of(new CategoryDTO("Smartphones"), new CategoryDTO("Android"))), product);
+        assertNull(ProductImportFormat.CSV.parse("Phone,", new ObjectMapper()).price());
+        assertThrows(IllegalArgumentException.class, () -> ProductImportFormat.CSV.parse("\"Phone,10.0", new ObjectMapper()));
+    }
+
+    @Test
+    public void testFormatFromContentType() {
+        assertEquals(ProductImportFormat.CSV, ProductImportFormat.from("text/csv;charset=UTF-8"));
+        assertEquals(ProductImportFormat.NDJSON, ProductImportFormat.from("application/x-ndjson"));
+        assertTrue(ProductImportFormat.CSV.isHeader("Name,Price,Categories"));
+        assertThrows(IllegalArgumentException.class, () -> ProductImportFormat.from("application/xml"));
+    }
+}
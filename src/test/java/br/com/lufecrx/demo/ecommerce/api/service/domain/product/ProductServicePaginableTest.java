@@ -1,12 +1,21 @@
 package br.com.lufecrx.demo.ecommerce.api.service.domain.product;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,13 +25,28 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.SliceImpl;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CatalogVersion;
+import br.com.lufecrx.demo.ecommerce.api.model.Category;
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.CursorPageDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.FacetedPageDTO;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.RevisedDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.SliceDTO;
 import br.com.lufecrx.demo.ecommerce.api.repository.ProductRepository;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.category.CategoryDictionary;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.pagination.ApproximateTotalService;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.search.ProductIndexer;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidArgumentsToPaginationException;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidCursorException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidSortDirectionException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.ProductsEmptyException;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.SearchIndexUnavailableException;
 
 public class ProductServicePaginableTest {
 
@@ -32,9 +56,23 @@ public class ProductServicePaginableTest {
     @Mock
     private ProductRepository productRepository;
 
+    @Mock
+    private ApproximateTotalService approximateTotalService;
+
+    @Mock
+    private CatalogVersion catalogVersion;
+
+    @Mock
+    private ProductIndexer productIndexer;
+
+    @Mock
+    private CategoryDictionary categoryDictionary;
+
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
+        when(catalogVersion.current()).thenReturn(4L);
+        when(categoryDictionary.dtoOf(any(Category.class))).thenAnswer(invocation -> CategoryDTO.from(invocation.getArgument(0, Category.class)));
     }
 
     @Test
@@ -46,9 +84,11 @@ public class ProductServicePaginableTest {
         when(productRepository.findAll(any(Pageable.class))).thenReturn(page);
 
         // Getting the products
-        Iterable<ProductDTO> products = productServicePaginable.getWithPagination(0, 1, new String[] { "id", "asc" });
+        RevisedDTO<Iterable<ProductDTO>> listing = productServicePaginable.getWithPagination(0, 1, new String[] { "id", "asc" });
+        Iterable<ProductDTO> products = listing.content();
 
-        // Verifying if the methods were called correctly
+        // Verifying if the methods were called correctly, and the listing has the version of the catalog
+        assertEquals(4L, listing.version());
         assertTrue(products.iterator().hasNext());
         assertEquals(ProductDTO.from(product), products.iterator().next());
     }
@@ -100,5 +140,225 @@ public class ProductServicePaginableTest {
             productServicePaginable.getWithPagination(0, 1, new String[] { "id", "invalid" });
         });
     }
+
+    @Test
+    public void testGetWithCursorReturnsNextCursorWhenThereAreMoreProducts() {
+        Product first = Product.builder().id(1L).productName("A").price(1.0).build();
+        Product second = Product.builder().id(2L).productName("B").price(2.0).build();
+
+        // Mocking the repository to return one row more than the page size
+        when(productRepository.findKeysetFirstPage(any(Pageable.class))).thenReturn(Arrays.asList(first, second));
+
+        CursorPageDTO<ProductDTO> page = productServicePaginable.getWithCursor(null, 1, new String[] { "name", "asc" });
+
+        // Verifying that only the page size is returned and the cursor points after the last product returned
+        assertEquals(1, page.content().size());
+        assertNotNull(page.nextCursor());
+        assertEquals(new ProductCursor("productName", Sort.Direction.ASC, "A", 1L), ProductCursor.decode(page.nextCursor()));
+    }
+
+    @Test
+    public void testGetWithCursorSeeksAfterTheCursor() {
+        Product product = Product.builder().id(5L).productName("C").price(3.0).build();
+        String after = new ProductCursor("price", Sort.Direction.DESC, "4.0", 4L).encode();
+
+        when(productRepository.findKeysetByPriceBefore(eq(4.0), eq(4L), any(Pageable.class))).thenReturn(List.of(product));
+
+        CursorPageDTO<ProductDTO> page = productServicePaginable.getWithCursor(after, 10, new String[] { "price", "desc" });
+
+        // Verifying that the last page has no next cursor
+        assertEquals(ProductDTO.from(product), page.content().get(0));
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    public void testGetWithCursorThrowsExceptionWhenCursorIsForAnotherSort() {
+        String after = new ProductCursor("price", Sort.Direction.ASC, "4.0", 4L).encode();
+
+        assertThrows(InvalidCursorException.class, () -> {
+            productServicePaginable.getWithCursor(after, 10, new String[] { "name", "asc" });
+        });
+    }
+
+    @Test
+    public void testGetWithCursorThrowsExceptionWhenCursorIsMalformed() {
+        assertThrows(InvalidCursorException.class, () -> {
+            productServicePaginable.getWithCursor("not-a-cursor", 10, new String[] { "name", "asc" });
+        });
+    }
+
+    @Test
+    public void testGetWithCursorThrowsExceptionWhenSortPropertyIsNotSupported() {
+        assertThrows(InvalidArgumentsToPaginationException.class, () -> {
+            productServicePaginable.getWithCursor(null, 10, new String[] { "categories", "asc" });
+        });
+    }
+
+    @Test
+    public void testGetWithCursorReturnsEmptyCatalog() {
+        when(productRepository.findKeysetFirstPage(any(Pageable.class))).thenReturn(List.of());
+
+        assertThrows(ProductsEmptyException.class, () -> {
+            productServicePaginable.getWithCursor(null, 10, new String[] { "id", "asc" });
+        });
+    }
     
+    @Test
+    public void testGetWithSliceDoesNotCount() {
+        Product product = new Product();
+
+        // Mocking a slice with a next page
+        when(productRepository.findSliceBy(any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(product), PageRequest.of(0, 1), true));
+
+        // Getting the products without the total
+        SliceDTO<ProductDTO> products = productServicePaginable.getWithSlice(0, 1, new String[] { "id", "asc" }, false).content();
+
+        // Verifying the slice and that no count was executed
+        assertEquals(List.of(ProductDTO.from(product)), products.content());
+        assertTrue(products.hasNext());
+        assertNull(products.approximateTotal());
+        verify(productRepository, never()).count();
+        verify(approximateTotalService, never()).unfilteredTotal(any(), any());
+    }
+
+    @Test
+    public void testGetWithSliceReturnsApproximateTotal() {
+        when(productRepository.findSliceBy(any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(new Product()), PageRequest.of(0, 1), false));
+        when(approximateTotalService.unfilteredTotal(eq("products"), any())).thenReturn(42L);
+
+        SliceDTO<ProductDTO> products = productServicePaginable.getWithSlice(0, 1, new String[] { "id", "asc" }, true).content();
+
+        assertEquals(42L, products.approximateTotal());
+    }
+
+    @Test
+    public void testGetWithSliceReturnsEmptySlice() {
+        when(productRepository.findSliceBy(any(Pageable.class))).thenReturn(new SliceImpl<>(List.of()));
+
+        assertThrows(ProductsEmptyException.class, () -> {
+            productServicePaginable.getWithSlice(0, 1, new String[] { "id", "asc" }, false);
+        });
+    }
+
+    @Test
+    public void testSearchProductsSliceReturnsApproximateTotal() {
+        when(productRepository.findSliceByNameAndCategoryAndPriceRange(eq("phone"), eq(null), eq(0.0), eq(100.0), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(new Product()), PageRequest.of(0, 1), true));
+        when(approximateTotalService.filteredTotal(eq("products"), eq(ApproximateTotalService.filterKey("phone", null, 0.0, 100.0)), any()))
+                .thenReturn(3L);
+
+        SliceDTO<ProductDTO> products = productServicePaginable.searchProductsSlice("phone", null, 0.0, 100.0, 0, 1, new String[] { "id", "asc" }, true).content();
+
+        assertTrue(products.hasNext());
+        assertEquals(3L, products.approximateTotal());
+    }
+
+    @Test
+    public void testSearchProductsSliceCapsTheSize() {
+        // Mocking the search and verifying that the size is capped
+        when(productRepository.findSliceByNameAndCategoryAndPriceRange(eq("phone"), eq(null), eq(null), eq(null), eq(PageRequest.of(0, 60, Sort.by(Sort.Direction.ASC, "id")))))
+                .thenReturn(new SliceImpl<>(List.of(new Product()), PageRequest.of(0, 60), false));
+
+        SliceDTO<ProductDTO> products = productServicePaginable.searchProductsSlice("phone", null, null, null, 0, 1000, new String[] { "id", "asc" }, false).content();
+
+        assertEquals(1, products.content().size());
+    }
+
+    @Test
+    public void testSearchProductsRankedReturnsSlice() {
+        Product product = new Product();
+
+        // Mocking the ranked search and verifying that the size is capped
+        when(productRepository.searchRanked(eq("phone"), eq(null), eq(null), eq(null), eq(PageRequest.of(0, 60))))
+                .thenReturn(new SliceImpl<>(List.of(product), PageRequest.of(0, 60), false));
+
+        SliceDTO<ProductDTO> products = productServicePaginable.searchProductsRanked("phone", null, null, null, 0, 100).content();
+
+        assertEquals(List.of(ProductDTO.from(product)), products.content());
+        assertNull(products.approximateTotal());
+    }
+
+    @Test
+    public void testSearchProductsRankedReturnsEmptySlice() {
+        when(productRepository.searchRanked(any(), any(), any(), any(), any(Pageable.class))).thenReturn(new SliceImpl<>(List.of()));
+
+        assertThrows(ProductsEmptyException.class, () -> {
+            productServicePaginable.searchProductsRanked("phone", null, null, null, 0, 10);
+        });
+    }
+
+    @Test
+    public void testSearchProductsIndexed() {
+        ProductDTO product = new ProductDTO("Phone", 10.0, Set.of());
+
+        // Mocking a ready index
+        when(productIndexer.isReady()).thenReturn(true);
+        when(productIndexer.search(eq("phone"), eq(null), eq(0.0), eq(100.0), eq(PageRequest.of(0, 60))))
+                .thenReturn(new PageImpl<>(List.of(product)));
+
+        Page<ProductDTO> products = productServicePaginable.searchProductsIndexed("phone", null, 0.0, 100.0, 0, 100).content();
+
+        // Verifying that the size was capped and the database was not queried
+        assertEquals(product, products.getContent().get(0));
+        verify(productRepository, never()).findByNameAndCategoryAndPriceRange(any(), any(), any(), any(), any(Pageable.class));
+    }
+
+    @Test
+    public void testSearchProductsIndexedRequiresIndex() {
+        when(productIndexer.isReady()).thenReturn(false);
+
+        assertThrows(SearchIndexUnavailableException.class, () -> {
+            productServicePaginable.searchProductsIndexed("phone", null, null, null, 0, 10);
+        });
+    }
+
+    @Test
+    public void testSearchProductsUsesDatabaseWhenIndexIsReady() {
+        Page<Product> page = new PageImpl<>(List.of(new Product()));
+
+        when(productIndexer.isReady()).thenReturn(true);
+        when(productRepository.findByNameAndCategoryAndPriceRange(eq("phone"), eq(null), eq(0.0), eq(100.0), any(Pageable.class)))
+                .thenReturn(Optional.of(page));
+
+        Iterable<ProductDTO> products = productServicePaginable.searchProducts("phone", null, 0.0, 100.0, 0, 10, new String[] { "id", "asc" }).content();
+
+        // Verifying that the default search keeps the matching and the sort of the database
+        assertTrue(products.iterator().hasNext());
+        verify(productIndexer, never()).search(any(), any(), any(), any(), any(Pageable.class));
+    }
+
+    @Test
+    public void testSearchProductsWithFacets() {
+        ProductDTO product = new ProductDTO("Phone", 10.0, Set.of());
+        FacetedPageDTO<ProductDTO> page = new FacetedPageDTO<>(List.of(product), 0, 60, 1, Map.of("Smartphones", 1L), List.of());
+
+        // Mocking a ready index and verifying that the size is capped and the category match is parsed
+        when(productIndexer.isReady()).thenReturn(true);
+        when(productIndexer.searchWithFacets(eq("phone"), eq(null), eq(List.of("Smartphones")), eq(true), eq(null), eq(null), eq(PageRequest.of(0, 60))))
+                .thenReturn(page);
+
+        FacetedPageDTO<ProductDTO> products = productServicePaginable.searchProductsWithFacets("phone", null, List.of("Smartphones"), "ALL", null, null, 0, 100).content();
+
+        assertEquals(page, products);
+    }
+
+    @Test
+    public void testSearchProductsWithFacetsRequiresIndex() {
+        when(productIndexer.isReady()).thenReturn(false);
+
+        assertThrows(SearchIndexUnavailableException.class, () -> {
+            productServicePaginable.searchProductsWithFacets("phone", null, null, "any", null, null, 0, 10);
+        });
+    }
+
+    @Test
+    public void testSearchProductsWithFacetsInvalidCategoryMatch() {
+        when(productIndexer.isReady()).thenReturn(true);
+
+        assertThrows(InvalidArgumentsToPaginationException.class, () -> {
+            productServicePaginable.searchProductsWithFacets("phone", null, List.of("Smartphones"), "some", null, null, 0, 10);
+        });
+    }
 }
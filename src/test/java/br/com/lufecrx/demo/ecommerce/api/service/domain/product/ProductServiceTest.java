@@ -4,7 +4,11 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -12,22 +16,36 @@ import static org.mockito.Mockito.when;
 
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.cache.CacheManager;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CacheGenerations;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CatalogVersion;
 import br.com.lufecrx.demo.ecommerce.api.model.Category;
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.PriceAdjustmentReportDTO;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductPatchDTO;
 import br.com.lufecrx.demo.ecommerce.api.repository.CategoryRepository;
 import br.com.lufecrx.demo.ecommerce.api.repository.ProductRepository;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.category.CategoryDictionary;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.product.search.ProductIndexer;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.category.CategoryNotFoundException;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.InvalidPriceAdjustmentException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.ProductNotFoundException;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.version.VersionMismatchException;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.ShoppingCartRepository;
 
 public class ProductServiceTest {
 
@@ -40,6 +58,24 @@ public class ProductServiceTest {
     @Mock
     private CategoryRepository categoryRepository;
 
+    @Mock
+    private ProductIndexer productIndexer;
+
+    @Mock
+    private CacheGenerations cacheGenerations;
+
+    @Mock
+    private CatalogVersion catalogVersion;
+
+    @Mock
+    private CacheManager cacheManager;
+
+    @Mock
+    private CategoryDictionary categoryDictionary;
+
+    @Mock
+    private ShoppingCartRepository shoppingCartRepository;
+
     @BeforeEach
     public void setUp() {
         MockitoAnnotations.openMocks(this);
@@ -49,17 +85,19 @@ public class ProductServiceTest {
     public void testCreateProduct() {
         ProductDTO productDTO = new ProductDTO("Test Product", 100.0,
                 Collections.singleton(new CategoryDTO("Test Category")));
-        Category category = new Category();
+        Category category = new Category(1L, "Test Category");
 
-        // Mocking the findByName method to return a category
-        when(categoryRepository.findByName(anyString())).thenReturn(Optional.of(category));
+        // Mocking the category dictionary and the findAllById method to return the category
+        when(categoryDictionary.idsOf(any())).thenReturn(Map.of("Test Category", 1L));
+        when(categoryRepository.findAllById(any())).thenReturn(List.of(category));
 
         // Creating the product
         productService.createProduct(productDTO);
 
-        // Verifying if the methods were called
+        // Verifying if the methods were called, the category is not searched by name
         verify(productRepository, times(1)).save(any(Product.class));
-        verify(categoryRepository, times(1)).findByName(anyString());
+        verify(categoryRepository, times(1)).findAllById(any());
+        verify(categoryRepository, never()).findByNameIn(any());
     }
 
     @Test
@@ -97,20 +135,21 @@ public class ProductServiceTest {
         ProductDTO productDTO = new ProductDTO("Test Product", 100.0,
                 Collections.singleton(new CategoryDTO("Test Category")));
         Product product = new Product();
-        Category category = new Category();
+        Category category = new Category(1L, "Test Category");
 
-        // Mocking the findById method to return a product and the findByName method to
-        // return a category
+        // Mocking the findById method to return a product and the findByNameIn method to
+        // return a category unknown to the category dictionary
         when(productRepository.findById(productId)).thenReturn(Optional.of(product));
-        when(categoryRepository.findByName(anyString())).thenReturn(Optional.of(category));
+        when(categoryRepository.findByNameIn(any())).thenReturn(List.of(category));
 
         // Updating the product
-        productService.updateProduct(productId, productDTO);
+        productService.updateProduct(productId, productDTO, null);
 
         // Verifying if the methods were called
         verify(productRepository, times(1)).save(any(Product.class));
         verify(productRepository, times(1)).findById(productId);
-        verify(categoryRepository, times(1)).findByName(anyString());
+        verify(categoryRepository, times(1)).findByNameIn(any());
+        verify(shoppingCartRepository, times(1)).refreshTotalsByProductId(productId);
 
         // Asserting if the product was updated correctly
         assert product.getProductName().equals(productDTO.name());
@@ -128,7 +167,7 @@ public class ProductServiceTest {
         when(productRepository.findById(productId)).thenReturn(Optional.empty());
 
         // Updating the product and expecting an exception
-        assertThrows(ProductNotFoundException.class, () -> productService.updateProduct(productId, productDTO));
+        assertThrows(ProductNotFoundException.class, () -> productService.updateProduct(productId, productDTO, null));
 
         // Verifying if the findById method was called once and the save method was
         // never called
@@ -136,6 +175,110 @@ public class ProductServiceTest {
         verify(productRepository, never()).save(any(Product.class));
     }
 
+    @Test
+    public void testUpdateProductWithStaleVersion() {
+        Long productId = 1L;
+        ProductDTO productDTO = new ProductDTO("Test Product", 100.0, Collections.emptySet());
+        Product product = new Product();
+        product.setVersion(3L);
+
+        when(productRepository.findById(productId)).thenReturn(Optional.of(product));
+
+        // The client read the version 2, so the update must not overwrite the version 3
+        assertThrows(VersionMismatchException.class, () -> productService.updateProduct(productId, productDTO, 2L));
+
+        verify(productRepository, never()).save(any(Product.class));
+    }
+
+    @Test
+    public void testPatchProduct() {
+        Long productId = 1L;
+        ProductPatchDTO patch = new ProductPatchDTO(null, 80.0);
+
+        when(productRepository.patch(eq(productId), eq(null), eq(80.0), eq(2L), any())).thenReturn(1);
+
+        productService.patchProduct(productId, patch, 2L);
+
+        // A single UPDATE, the product is not loaded
+        verify(productRepository, never()).findById(productId);
+        verify(productIndexer, times(1)).onUpdated(productId);
+        verify(shoppingCartRepository, times(1)).refreshTotalsByProductId(productId);
+        verify(catalogVersion, times(1)).increment();
+    }
+
+    @Test
+    public void testPatchProductWithStaleVersion() {
+        Long productId = 1L;
+        ProductPatchDTO patch = new ProductPatchDTO("New name", null);
+
+        when(productRepository.patch(eq(productId), eq("New name"), eq(null), eq(2L), any())).thenReturn(0);
+        when(productRepository.existsById(productId)).thenReturn(true);
+
+        assertThrows(VersionMismatchException.class, () -> productService.patchProduct(productId, patch, 2L));
+
+        verify(catalogVersion, never()).increment();
+        verify(shoppingCartRepository, never()).refreshTotalsByProductId(anyLong());
+    }
+
+    @Test
+    public void testPatchProductWhenProductDoesNotExist() {
+        Long productId = 1L;
+        ProductPatchDTO patch = new ProductPatchDTO("New name", null);
+
+        when(productRepository.patch(eq(productId), eq("New name"), eq(null), eq(null), any())).thenReturn(0);
+        when(productRepository.existsById(productId)).thenReturn(false);
+
+        assertThrows(ProductNotFoundException.class, () -> productService.patchProduct(productId, patch, null));
+    }
+
+    @Test
+    public void testAdjustPricesByPercentage() {
+        when(categoryRepository.existsById(1L)).thenReturn(true);
+        when(productRepository.findIdsByCategoryId(1L)).thenReturn(List.of(10L, 11L));
+        when(productRepository.adjustPricesByCategoryId(eq(1L), eq(1.07), eq(0.0), any())).thenReturn(2);
+
+        PriceAdjustmentReportDTO report = productService.adjustPrices(1L, "percentage", 7.0, false);
+
+        // A single UPDATE for the whole category, and the products to evict are read after it, in its transaction
+        assertEquals(2, report.affected());
+        InOrder order = inOrder(productRepository);
+        order.verify(productRepository).adjustPricesByCategoryId(eq(1L), eq(1.07), eq(0.0), any());
+        order.verify(productRepository).findIdsByCategoryId(1L);
+        verify(productRepository, never()).save(any(Product.class));
+        verify(productIndexer, times(1)).onCategoryChanged(1L);
+        verify(shoppingCartRepository, times(1)).refreshTotalsByCategoryId(1L);
+        verify(cacheGenerations, times(1)).advance("products");
+    }
+
+    @Test
+    public void testAdjustPricesDryRun() {
+        when(categoryRepository.existsById(1L)).thenReturn(true);
+        when(productRepository.findIdsByCategoryId(1L)).thenReturn(List.of(10L, 11L, 12L));
+
+        PriceAdjustmentReportDTO report = productService.adjustPrices(1L, "ABSOLUTE", -5.0, true);
+
+        // The products are only counted
+        assertEquals(3, report.affected());
+        assertTrue(report.dryRun());
+        verify(productRepository, never()).adjustPricesByCategoryId(anyLong(), anyDouble(), anyDouble(), any());
+        verify(catalogVersion, never()).increment();
+    }
+
+    @Test
+    public void testAdjustPricesWithInvalidArguments() {
+        when(categoryRepository.existsById(1L)).thenReturn(true);
+
+        assertThrows(InvalidPriceAdjustmentException.class, () -> productService.adjustPrices(1L, "double", 2.0, false));
+        assertThrows(InvalidPriceAdjustmentException.class, () -> productService.adjustPrices(1L, "percentage", -101.0, false));
+    }
+
+    @Test
+    public void testAdjustPricesWhenCategoryDoesNotExist() {
+        when(categoryRepository.existsById(1L)).thenReturn(false);
+
+        assertThrows(CategoryNotFoundException.class, () -> productService.adjustPrices(1L, "percentage", 7.0, false));
+    }
+
     @Test
     public void testDeleteProductWhenProductExists() {
         Long productId = 1L;
@@ -151,6 +294,7 @@ public class ProductServiceTest {
         // called once
         verify(productRepository, times(1)).delete(product);
         verify(productRepository, times(1)).findById(productId);
+        verify(productIndexer, times(1)).onDeleted(productId);
     }
 
     @Test
@@ -167,22 +311,46 @@ public class ProductServiceTest {
         Category existingCategory = new Category(1L, "Existing Category");
         Category newCategory = new Category(2L, "New Category");
     
-        // Mocking the behavior of the category repository in the validateCategories method
-        when(categoryRepository.findByName("Existing Category")).thenReturn(Optional.of(existingCategory));
-        when(categoryRepository.findByName("New Category")).thenReturn(Optional.empty());
-    
-        when(categoryRepository.save(any(Category.class))).thenReturn(newCategory);
+        // Mocking the category dictionary, which only knows the existing category, and the category repository
+        when(categoryDictionary.idsOf(any())).thenReturn(Map.of("Existing Category", 1L));
+        when(categoryRepository.findAllById(any())).thenReturn(List.of(existingCategory));
+        when(categoryRepository.findByNameIn(Set.of("New Category"))).thenReturn(List.of());
+
+        when(categoryRepository.saveAll(any())).thenReturn(List.of(newCategory));
     
         // Validating the categories
         Optional<Set<Category>> categories = productService.validateCategories(productDTO, categoryRepository);
 
-        // Verifying if the methods were called and if the categories were validated, not containing duplicates (categories with the same name)
-        verify(categoryRepository, times(1)).findByName("Existing Category");
-        verify(categoryRepository, times(1)).findByName("New Category");
-        verify(categoryRepository, times(1)).save(any(Category.class));
+        // Verifying if each query was made once and if the categories were validated, not containing duplicates (categories with the same name)
+        verify(categoryRepository, times(1)).findAllById(any());
+        verify(categoryRepository, times(1)).findByNameIn(Set.of("New Category"));
+        verify(categoryRepository, times(1)).saveAll(any());
+        verify(categoryRepository, never()).findByName(anyString());
+        verify(cacheGenerations, times(1)).advance("categories");
         assertTrue(categories.isPresent());
         assertEquals(2, categories.get().size());
         assertTrue(categories.get().contains(existingCategory));
         assertTrue(categories.get().contains(newCategory));
     }
+
+    @Test
+    public void testValidateCategoriesWhenTheCategoryDictionaryIsStale() {
+        ProductDTO productDTO = new ProductDTO("Test Product", 100.0, Set.of(new CategoryDTO("Books")));
+
+        // The category dictionary still maps the name to a category renamed meanwhile, e.g. by another node
+        Category renamedCategory = new Category(1L, "Comics");
+        Category category = new Category(2L, "Books");
+
+        when(categoryDictionary.idsOf(any())).thenReturn(Map.of("Books", 1L));
+        when(categoryRepository.findAllById(any())).thenReturn(List.of(renamedCategory));
+        when(categoryRepository.findByNameIn(Set.of("Books"))).thenReturn(List.of(category));
+
+        // Validating the categories
+        Optional<Set<Category>> categories = productService.validateCategories(productDTO, categoryRepository);
+
+        // The name is searched in the database instead of trusting the dictionary, and no category is created
+        assertEquals(Optional.of(Set.of(category)), categories);
+        verify(categoryRepository, never()).saveAll(any());
+        verify(cacheGenerations, never()).advance("categories");
+    }
 }
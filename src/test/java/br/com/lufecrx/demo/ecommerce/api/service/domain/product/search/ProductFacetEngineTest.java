@@ -0,0 +1,126 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.product.search;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.RoaringBitmap;
+
+import br.com.lufecrx.demo.ecommerce.api.model.dto.PriceBucketDTO;
+
+public class ProductFacetEngineTest {
+
+    private ProductFacetEngine facets;
+
+    @BeforeEach
+    public void setUp() {
+        facets = new ProductFacetEngine(new double[] { 100, 0, 500 });
+        facets.replace(List.of(
+                new ProductIndexDocument(1L, "Galaxy", 900.0, Set.of("Smartphones", "Samsung")),
+                new ProductIndexDocument(2L, "Case", 20.0, Set.of("Accessories", "Samsung")),
+                new ProductIndexDocument(3L, "iPhone", 1200.0, Set.of("Smartphones", "Apple")),
+                new ProductIndexDocument(4L, "Charger", 100.0, Set.of("Accessories"))));
+    }
+
+    private int[] ids(RoaringBitmap bitmap) {
+        return bitmap.toArray();
+    }
+
+    @Test
+    public void testFilterByAnyCategory() {
+        assertArrayEquals(new int[] { 1, 2, 3 }, ids(facets.filter(List.of("Smartphones", "Samsung"), false, null, null, null)));
+    }
+
+    @Test
+    public void testFilterByAllCategories() {
+        assertArrayEquals(new int[] { 1 }, ids(facets.filter(List.of("Smartphones", "Samsung"), true, null, null, null)));
+
+        // Verifying that an unknown category matches nothing when all are required
+        assertArrayEquals(new int[] {}, ids(facets.filter(List.of("Smartphones", "Unknown"), true, null, null, null)));
+    }
+
+    @Test
+    public void testFilterByPartOfCategoryNameAndPriceRange() {
+        assertArrayEquals(new int[] { 1, 3 }, ids(facets.filter(null, false, "phone", null, null)));
+
+        // Verifying that both bounds are inclusive
+        assertArrayEquals(new int[] { 1, 4 }, ids(facets.filter(null, false, null, 100.0, 900.0)));
+        assertArrayEquals(new int[] { 2 }, ids(facets.filter(null, false, null, null, 99.0)));
+    }
+
+    @Test
+    public void testCountCategoriesAndPriceBuckets() {
+        ProductFacetEngine.FacetCounts counts = facets.count(facets.filter(null, false, null, null, null));
+
+        // Verifying that the largest categories come first and the ties are ordered by name
+        assertEquals(List.of("Accessories", "Samsung", "Smartphones", "Apple"), new ArrayList<>(counts.categories().keySet()));
+        assertEquals(List.of(
+                new PriceBucketDTO(0.0, 100.0, 1),
+                new PriceBucketDTO(100.0, 500.0, 1),
+                new PriceBucketDTO(500.0, null, 2)), counts.priceBuckets());
+        assertNull(counts.priceBuckets().get(2).to());
+    }
+
+    @Test
+    public void testUpsertMovesProductBetweenFacets() {
+        facets.upsert(List.of(new ProductIndexDocument(2L, "Case", 600.0, Set.of("Premium"))));
+
+        ProductFacetEngine.FacetCounts counts = facets.count(facets.filter(null, false, null, null, null));
+
+        assertEquals(Map.of("Accessories", 1L, "Samsung", 1L, "Smartphones", 2L, "Apple", 1L, "Premium", 1L), counts.categories());
+        assertEquals(List.of(0L, 1L, 3L), counts.priceBuckets().stream().map(PriceBucketDTO::count).toList());
+        assertArrayEquals(new int[] { 1, 2 }, ids(facets.filter(null, false, null, 500.0, 1000.0)));
+        assertArrayEquals(new int[] {}, ids(facets.filter(null, false, null, null, 50.0)));
+    }
+
+    @Test
+    public void testDeleteRemovesProductFromFacets() {
+        facets.delete(List.of(1L, 3L));
+
+        assertEquals(2, facets.size());
+        assertArrayEquals(new int[] {}, ids(facets.filter(List.of("Smartphones"), false, null, null, null)));
+        assertEquals(Map.of("Accessories", 2L, "Samsung", 1L), facets.count(facets.filter(null, false, null, null, null)).categories());
+    }
+
+    @Test
+    public void testSnapshotIsNotChangedByLaterWrites() {
+        RoaringBitmap samsung = facets.filter(List.of("Samsung"), false, null, null, null);
+        ProductFacetEngine.FacetCounts before = facets.count(samsung);
+
+        facets.upsert(List.of(new ProductIndexDocument(5L, "Tab", 300.0, Set.of("Samsung"))));
+
+        // Verifying that the filtered ids are a copy owned by the caller
+        assertEquals(before, facets.count(samsung));
+        assertArrayEquals(new int[] { 1, 2, 5 }, ids(facets.filter(List.of("Samsung"), false, null, null, null)));
+    }
+
+    @Test
+    public void testManyPriceUpdatesCompactTheColumn() {
+        List<ProductIndexDocument> documents = new ArrayList<>();
+        for (long id = 1; id <= 3000; id++) {
+            documents.add(new ProductIndexDocument(id, "Product " + id, 10.0, Set.of()));
+        }
+        facets.replace(documents);
+
+        // More updates than the compaction threshold, each one alone
+        for (long id = 1; id <= 1500; id++) {
+            facets.upsert(List.of(new ProductIndexDocument(id, "Product " + id, 200.0, Set.of())));
+        }
+
+        assertEquals(1500, facets.filter(null, false, null, 150.0, 250.0).getCardinality());
+        assertEquals(1500, facets.filter(null, false, null, null, 10.0).getCardinality());
+    }
+
+    @Test
+    public void testRequiresPriceBuckets() {
+        assertThrows(IllegalArgumentException.class, () -> new ProductFacetEngine(new double[] {}));
+    }
+}
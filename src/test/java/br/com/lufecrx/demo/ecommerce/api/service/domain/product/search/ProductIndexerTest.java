@@ -0,0 +1,230 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.product.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation.CacheInvalidationBus;
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.invalidation.CacheInvalidationListener;
+import br.com.lufecrx.demo.ecommerce.api.model.Category;
+import br.com.lufecrx.demo.ecommerce.api.model.Product;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.CategoryDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.FacetedPageDTO;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.ProductDTO;
+import br.com.lufecrx.demo.ecommerce.api.repository.ProductRepository;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.category.CategoryDictionary;
+
+public class ProductIndexerTest {
+
+    @InjectMocks
+    private ProductIndexer productIndexer;
+
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private CategoryDictionary categoryDictionary;
+
+    @Mock
+    private CacheInvalidationBus cacheInvalidationBus;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(categoryDictionary.dtoOf(anyString())).thenAnswer(invocation -> new CategoryDTO(invocation.getArgument(0)));
+
+        // The @Value fields are not injected by Mockito
+        ReflectionTestUtils.setField(productIndexer, "enabled", true);
+        ReflectionTestUtils.setField(productIndexer, "rebuildThreads", 2);
+        ReflectionTestUtils.setField(productIndexer, "rebuildBatchSize", 2);
+        ReflectionTestUtils.setField(productIndexer, "priceBuckets", new double[] { 0, 100, 500 });
+        productIndexer.init();
+    }
+
+    private Product product(Long id, String name, Double price, String category) {
+        return Product.builder()
+                .id(id)
+                .productName(name)
+                .price(price)
+                .categories(new HashSet<>(Set.of(Category.builder().name(category).build())))
+                .build();
+    }
+
+    @Test
+    public void testRebuildLoadsAllBatches() {
+        when(productRepository.findMinId()).thenReturn(1L);
+        when(productRepository.findMaxId()).thenReturn(5L);
+        when(productRepository.findWithCategoriesByIdBetween(anyLong(), anyLong())).thenAnswer(invocation -> {
+            long from = invocation.getArgument(0);
+            long to = invocation.getArgument(1);
+            return LongStream.rangeClosed(from, to)
+                    .mapToObj(id -> product(id, "Phone " + id, 10.0 * id, "Smartphones"))
+                    .toList();
+        });
+
+        assertFalse(productIndexer.isReady());
+        productIndexer.rebuild();
+
+        // Verifying that the batches of the two workers were all indexed
+        assertTrue(productIndexer.isReady());
+        assertEquals(5, productIndexer.search("phone", null, null, null, PageRequest.of(0, 10)).getTotalElements());
+    }
+
+    @Test
+    public void testSearchAppliesFilters() {
+        productIndexer.onSaved(product(1L, "Galaxy Phone", 900.0, "Smartphones"));
+        productIndexer.onSaved(product(2L, "Phone Case", 20.0, "Accessories"));
+
+        Page<ProductDTO> byCategory = productIndexer.search("phone", "access", null, null, PageRequest.of(0, 10));
+        assertEquals(List.of("Phone Case"), byCategory.map(ProductDTO::name).getContent());
+
+        Page<ProductDTO> byPrice = productIndexer.search("phone", null, 100.0, 1000.0, PageRequest.of(0, 10));
+        assertEquals(List.of("Galaxy Phone"), byPrice.map(ProductDTO::name).getContent());
+    }
+
+    @Test
+    public void testDeletedProductIsNotFound() {
+        productIndexer.onSaved(product(1L, "Galaxy Phone", 900.0, "Smartphones"));
+        productIndexer.onDeleted(1L);
+
+        assertEquals(0, productIndexer.search("phone", null, null, null, PageRequest.of(0, 10)).getTotalElements());
+    }
+
+    @Test
+    public void testCategoryChangeReindexesProducts() {
+        productIndexer.onSaved(product(1L, "Galaxy", 900.0, "Phones"));
+        when(productRepository.findWithCategoriesByCategoryId(7L)).thenReturn(List.of(product(1L, "Galaxy", 900.0, "Smartphones")));
+
+        productIndexer.onCategoryChanged(7L);
+
+        assertEquals(1, productIndexer.search("smartphones", null, null, null, PageRequest.of(0, 10)).getTotalElements());
+        assertEquals(0, productIndexer.search("phones", null, null, null, PageRequest.of(0, 10)).getTotalElements());
+    }
+
+    @Test
+    public void testDisabledIndexerIgnoresWrites() {
+        ReflectionTestUtils.setField(productIndexer, "enabled", false);
+
+        productIndexer.onSaved(null);
+        productIndexer.onCategoryChanged(7L);
+
+        assertFalse(productIndexer.isReady());
+        verifyNoInteractions(productRepository);
+    }
+
+    @Test
+    public void testSearchWithFacetsCountsAllMatches() {
+        productIndexer.onSaved(product(1L, "Galaxy Phone", 900.0, "Smartphones"));
+        productIndexer.onSaved(product(2L, "Phone Case", 20.0, "Accessories"));
+        productIndexer.onSaved(product(3L, "Phone Charger", 30.0, "Accessories"));
+        productIndexer.onSaved(product(4L, "Laptop", 1500.0, "Computers"));
+
+        FacetedPageDTO<ProductDTO> products = productIndexer.searchWithFacets("phone", null, null, false, null, null, PageRequest.of(0, 1));
+
+        // Verifying that the counts include the matches of the other pages, but not the products that do not match
+        assertEquals(1, products.content().size());
+        assertEquals(3, products.totalElements());
+        assertEquals(Map.of("Accessories", 2L, "Smartphones", 1L), products.categoryCounts());
+        assertEquals(List.of(2L, 0L, 1L), products.priceBuckets().stream().map(bucket -> bucket.count()).toList());
+    }
+
+    @Test
+    public void testSearchWithFacetsWithoutNameFiltersByCategories() {
+        productIndexer.onSaved(product(1L, "Galaxy Phone", 900.0, "Smartphones"));
+        productIndexer.onSaved(product(2L, "Phone Case", 20.0, "Accessories"));
+        productIndexer.onSaved(product(3L, "Laptop", 1500.0, "Computers"));
+        productIndexer.onDeleted(2L);
+
+        FacetedPageDTO<ProductDTO> products = productIndexer.searchWithFacets(null, null, List.of("Smartphones", "Accessories"), false,
+                null, null, PageRequest.of(0, 10));
+
+        // Verifying that the deleted product is not counted and that the products are ordered by id
+        assertEquals(List.of("Galaxy Phone"), products.content().stream().map(ProductDTO::name).toList());
+        assertEquals(Map.of("Smartphones", 1L), products.categoryCounts());
+    }
+
+    @Test
+    public void testWritesArePublishedToTheOtherNodes() {
+        productIndexer.onSaved(product(1L, "Galaxy Phone", 900.0, "Smartphones"));
+        productIndexer.onDeleted(2L);
+
+        verify(cacheInvalidationBus).onEvictAll(ProductIndexer.INVALIDATIONS, List.of(1L));
+        verify(cacheInvalidationBus).onEvictAll(ProductIndexer.INVALIDATIONS, List.of(2L));
+    }
+
+    @Test
+    public void testWritesInATransactionAreAppliedAfterTheCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            productIndexer.onSaved(product(1L, "Galaxy Phone", 900.0, "Smartphones"));
+
+            // Nothing is searchable or published before the commit
+            assertEquals(0, productIndexer.search("phone", null, null, null, PageRequest.of(0, 10)).getTotalElements());
+            verify(cacheInvalidationBus, never()).onEvictAll(anyString(), any());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(1, productIndexer.search("phone", null, null, null, PageRequest.of(0, 10)).getTotalElements());
+        verify(cacheInvalidationBus).onEvictAll(ProductIndexer.INVALIDATIONS, List.of(1L));
+    }
+
+    @Test
+    public void testWritesOfARolledBackTransactionAreDiscarded() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            productIndexer.onSaved(product(1L, "Galaxy Phone", 900.0, "Smartphones"));
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals(0, productIndexer.search("phone", null, null, null, PageRequest.of(0, 10)).getTotalElements());
+        verify(cacheInvalidationBus, never()).onEvictAll(anyString(), any());
+    }
+
+    @Test
+    public void testWritesOfOtherNodesAreReindexed() {
+        ArgumentCaptor<CacheInvalidationListener> handler = ArgumentCaptor.forClass(CacheInvalidationListener.class);
+        verify(cacheInvalidationBus).register(eq(ProductIndexer.INVALIDATIONS), handler.capture());
+
+        productIndexer.onSaved(product(2L, "Phone Case", 20.0, "Accessories"));
+        when(productRepository.findWithCategoriesByIdIn(List.of(1L, 2L))).thenReturn(List.of(product(1L, "Galaxy Phone", 900.0, "Smartphones")));
+
+        // Another node saved the product 1 and deleted the product 2
+        handler.getValue().onEvictAll(ProductIndexer.INVALIDATIONS, List.of(1L, 2L));
+
+        Page<ProductDTO> products = productIndexer.search("phone", null, null, null, PageRequest.of(0, 10));
+        assertEquals(List.of("Galaxy Phone"), products.map(ProductDTO::name).getContent());
+    }
+}
@@ -0,0 +1,91 @@
+package br.com.lufecrx.demo.ecommerce.api.service.domain.product.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ProductSearchIndexTest {
+
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    public void setUp() {
+        index = new ProductSearchIndex();
+        index.upsert(List.of(
+                new ProductIndexDocument(1L, "Samsung Galaxy Phone", 900.0, Set.of("Smartphones")),
+                new ProductIndexDocument(2L, "Phone Case for Phone Lovers", 20.0, Set.of("Accessories")),
+                new ProductIndexDocument(3L, "Gaming Laptop", 2500.0, Set.of("Computers"))));
+    }
+
+    private List<Long> ids(ProductSearchIndex.SearchResult result) {
+        return result.hits().stream().map(hit -> hit.document().id()).toList();
+    }
+
+    @Test
+    public void testTokenizeNormalizesCaseAndDiacritics() {
+        assertEquals(List.of("cafe", "com", "acucar", "2kg"), ProductSearchIndex.tokenize("Café com AÇÚCAR - 2kg"));
+    }
+
+    @Test
+    public void testSearchRequiresAllTermsAndRanksByScore() {
+        // Both phones match, and the case ranks first because it repeats the term, despite its longer name
+        assertEquals(List.of(2L, 1L), ids(index.search("phone", document -> true, 0, 10)));
+        assertEquals(List.of(1L), ids(index.search("galaxy phone", document -> true, 0, 10)));
+        assertTrue(index.search("galaxy laptop", document -> true, 0, 10).hits().isEmpty());
+    }
+
+    @Test
+    public void testSearchMatchesCategoryNames() {
+        assertEquals(List.of(3L), ids(index.search("computers", document -> true, 0, 10)));
+    }
+
+    @Test
+    public void testSearchAppliesFilterAndPagination() {
+        ProductSearchIndex.SearchResult filtered = index.search("phone", document -> document.price() < 100, 0, 10);
+        assertEquals(List.of(2L), ids(filtered));
+        assertEquals(1, filtered.totalHits());
+
+        ProductSearchIndex.SearchResult secondPage = index.search("phone", document -> true, 1, 1);
+        assertEquals(List.of(1L), ids(secondPage));
+        assertEquals(2, secondPage.totalHits());
+    }
+
+    @Test
+    public void testUpsertReplacesPreviousVersion() {
+        index.upsert(List.of(new ProductIndexDocument(3L, "Gaming Phone", 700.0, Set.of("Smartphones"))));
+
+        assertTrue(index.search("laptop", document -> true, 0, 10).hits().isEmpty());
+        assertTrue(ids(index.search("phone", document -> true, 0, 10)).contains(3L));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    public void testDeleteRemovesDocument() {
+        index.delete(List.of(1L));
+
+        assertEquals(List.of(2L), ids(index.search("phone", document -> true, 0, 10)));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testManyWritesKeepFewSegments() {
+        List<ProductIndexDocument> documents = new ArrayList<>();
+        for (long id = 100; id < 1100; id++) {
+            ProductIndexDocument document = new ProductIndexDocument(id, "Product " + id, 1.0, Set.of("Bulk"));
+            documents.add(document);
+            index.upsert(List.of(document));
+        }
+        // Updating every product again leaves tombstones that must be merged away
+        documents.forEach(document -> index.upsert(List.of(document)));
+
+        assertEquals(1003, index.size());
+        assertEquals(1000, index.search("bulk", document -> true, 0, 10).totalHits());
+        assertTrue(index.segmentCount() <= 20, "segments: " + index.segmentCount());
+    }
+}
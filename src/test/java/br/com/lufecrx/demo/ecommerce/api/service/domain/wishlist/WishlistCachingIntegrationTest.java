@@ -23,6 +23,7 @@ import org.springframework.security.core.context.SecurityContextHolder;
 
 import com.github.javafaker.Faker;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CacheGenerations;
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
 import br.com.lufecrx.demo.ecommerce.api.model.Wishlist;
 import br.com.lufecrx.demo.ecommerce.api.repository.WishlistRepository;
@@ -43,6 +44,9 @@ public class WishlistCachingIntegrationTest {
     @Autowired
     private CacheManager cacheManager;
 
+    @Autowired
+    private CacheGenerations cacheGenerations;
+
     @Autowired
     private EntityManager entityManager;
 
@@ -162,4 +166,22 @@ public class WishlistCachingIntegrationTest {
         verify(wishlistRepository, times(2)).findAllByUser(user, pageRequest);
     }
 
+    @Test
+    public void testCacheInvalidatesOnlyTheWishlistsOfTheUser() {
+        wishlistServicePag.getWithPagination(1, 5, new String[] { "name", "asc" });
+
+        PageRequest pageRequest = PageRequest.of(1, 5, Sort.by("name").ascending());
+
+        // A write of another user does not invalidate the wishlists of this user
+        cacheGenerations.advanceOfUser("wishlists", user.getId() + 1);
+        wishlistServicePag.getWithPagination(1, 5, new String[] { "name", "asc" });
+
+        verify(wishlistRepository, times(1)).findAllByUser(user, pageRequest);
+
+        // A write of this user does
+        cacheGenerations.advanceOfUser("wishlists", user.getId());
+        wishlistServicePag.getWithPagination(1, 5, new String[] { "name", "asc" });
+
+        verify(wishlistRepository, times(2)).findAllByUser(user, pageRequest);
+    }
 }
@@ -9,6 +9,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
+import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,14 +18,18 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 
 import br.com.lufecrx.demo.ecommerce.api.model.Wishlist;
+import br.com.lufecrx.demo.ecommerce.api.model.dto.SliceDTO;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.WishlistDTO;
 import br.com.lufecrx.demo.ecommerce.api.repository.WishlistRepository;
+import br.com.lufecrx.demo.ecommerce.api.service.domain.pagination.ApproximateTotalService;
 import br.com.lufecrx.demo.ecommerce.auth.model.User;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidArgumentsToPaginationException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidSortDirectionException;
@@ -38,6 +43,9 @@ public class WishlistServicePaginableTest {
     @Mock
     private WishlistRepository wishlistRepository;
 
+    @Mock
+    private ApproximateTotalService approximateTotalService;
+
     private Authentication authentication;
 
     private SecurityContext securityContext;
@@ -126,4 +134,32 @@ public class WishlistServicePaginableTest {
             wishlistServicePaginable.getWithPagination(0, 1, new String[] { "id", "invalid" });
         });
     }
+
+
+    @Test
+    public void testGetWithSliceReturnsApproximateTotal() {
+        Wishlist wishlist = new Wishlist();
+
+        // Mocking the slice of the user and the approximate total of its wishlists
+        when(wishlistRepository.findSliceByUser(eq(user), any(Pageable.class)))
+                .thenReturn(new SliceImpl<>(List.of(wishlist), PageRequest.of(0, 1), true));
+        when(approximateTotalService.filteredTotal(eq("wishlists"), any(), any())).thenReturn(2L);
+
+        // Getting the wishlists
+        SliceDTO<WishlistDTO> wishlists = wishlistServicePaginable.getWithSlice(0, 1, new String[] { "id", "asc" }, true);
+
+        // Verifying the slice
+        assertEquals(WishlistDTO.from(wishlist), wishlists.iterator().next());
+        assertTrue(wishlists.hasNext());
+        assertEquals(2L, wishlists.approximateTotal());
+    }
+
+    @Test
+    public void testGetWithSliceReturnsEmptySlice() {
+        when(wishlistRepository.findSliceByUser(eq(user), any(Pageable.class))).thenReturn(new SliceImpl<>(List.of()));
+
+        assertThrows(WishlistsEmptyException.class, () -> {
+            wishlistServicePaginable.getWithSlice(0, 1, new String[] { "id", "asc" }, false);
+        });
+    }
 }
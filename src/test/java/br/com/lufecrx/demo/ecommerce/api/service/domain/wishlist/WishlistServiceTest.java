@@ -19,6 +19,7 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.cache.CacheGenerations;
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
 import br.com.lufecrx.demo.ecommerce.api.model.Wishlist;
 import br.com.lufecrx.demo.ecommerce.api.model.dto.WishlistDTO;
@@ -42,6 +43,9 @@ public class WishlistServiceTest {
     @Mock
     private ProductRepository productRepository;
 
+    @Mock
+    private CacheGenerations cacheGenerations;
+
     private Authentication authentication;
 
     private SecurityContext securityContext;
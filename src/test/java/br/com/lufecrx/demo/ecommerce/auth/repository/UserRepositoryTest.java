@@ -9,13 +9,16 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import com.github.javafaker.Faker;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.database.DatabaseVendor;
 import br.com.lufecrx.demo.ecommerce.auth.model.User;
 
 @DataJpaTest
+@Import(DatabaseVendor.class)
 public class UserRepositoryTest {
 
     @Autowired
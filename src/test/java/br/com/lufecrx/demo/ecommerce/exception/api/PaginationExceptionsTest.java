@@ -11,6 +11,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidArgumentsToPaginationException;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidCursorException;
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.pagination.InvalidSortDirectionException;
 import br.com.lufecrx.demo.ecommerce.exception.api.handler.PaginationExceptionsHandler;
 import br.com.lufecrx.demo.ecommerce.exception.message.RestErrorMessage;
@@ -50,4 +51,16 @@ public class PaginationExceptionsTest {
         assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
         assertEquals(expectedMessage, responseEntity.getBody().getMessage());
     }
+
+    @Test
+    public void testInvalidCursorException() {
+        InvalidCursorException invalidCursorException = new InvalidCursorException();
+        String expectedMessage = bundle.getString("pagination.invalid_cursor");
+
+        ResponseEntity<RestErrorMessage> responseEntity = paginationExceptionsHandler.handleInvalidCursorException(invalidCursorException);
+
+        // Assert that the response status is BAD_REQUEST and the message is the expected one
+        assertEquals(HttpStatus.BAD_REQUEST, responseEntity.getStatusCode());
+        assertEquals(expectedMessage, responseEntity.getBody().getMessage());
+    }
 }
\ No newline at end of file
@@ -1,5 +1,6 @@
 package br.com.lufecrx.demo.ecommerce.shopping.cart.controller;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.doNothing;
@@ -9,8 +10,10 @@ import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.util.List;
 import java.util.Locale;
 import java.util.ResourceBundle;
 
@@ -25,7 +28,9 @@ import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
 
 import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.ProductNotFoundException;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto.CartItemDTO;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto.ShoppingCartDTO;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto.ShoppingCartSummaryDTO;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.service.ShoppingCartService;
 
 @SpringBootTest
@@ -45,6 +50,47 @@ public class ShoppingCartControllerTest {
         bundle = ResourceBundle.getBundle("messages", Locale.getDefault());
     }
 
+    @Test
+    @WithMockUser(roles = "USER")
+    void testGetSummarySuccess() throws Exception {
+        when(shoppingCartService.getSummary()).thenReturn(new ShoppingCartSummaryDTO(3, 45.5, null));
+
+        mockMvc.perform(get("/shopping-cart/summary")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.itemCount").value(3))
+                .andExpect(jsonPath("$.subtotal").value(45.5));
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    void testApplyOperationsSuccess() throws Exception {
+        ShoppingCartDTO cart = new ShoppingCartDTO(List.of(new CartItemDTO(1L, 5)), 5, 50.0, null, null);
+        when(shoppingCartService.applyOperations(any())).thenReturn(cart);
+
+        mockMvc.perform(put("/shopping-cart/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("""
+                    {"operations": [
+                        {"type": "add", "productId": 1, "quantity": 2},
+                        {"type": "add", "productId": 1, "quantity": 3},
+                        {"type": "remove", "productId": 2}
+                    ]}
+                    """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.cartItems[0].quantity").value(5))
+                .andExpect(jsonPath("$.itemCount").value(5));
+    }
+
+    @Test
+    @WithMockUser(roles = "USER")
+    void testApplyOperationsWithoutOperations() throws Exception {
+        mockMvc.perform(put("/shopping-cart/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"operations\": []}"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     @WithMockUser(roles = "USER")
     void testGetCartSuccess() throws Exception {
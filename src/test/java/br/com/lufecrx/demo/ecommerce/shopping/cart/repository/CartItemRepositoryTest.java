@@ -1,6 +1,7 @@
 package br.com.lufecrx.demo.ecommerce.shopping.cart.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 import java.util.List;
 
@@ -9,15 +10,19 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
 
 import com.github.javafaker.Faker;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.database.DatabaseVendor;
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
 import br.com.lufecrx.demo.ecommerce.auth.model.User;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.model.CartItem;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.model.ShoppingCart;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.CartItemUpsertRepository.QuantityChange;
 
 @DataJpaTest
+@Import(DatabaseVendor.class)
 public class CartItemRepositoryTest {
     
     @Autowired
@@ -117,4 +122,114 @@ public class CartItemRepositoryTest {
         // Verify if all CartItem were found correctly
         assertThat(cartItems).hasSize(3);
     }
+
+    @Test
+    void testAddQuantityInsertsThenIncrementsTheItem() {
+        User user = new User();
+        user.setLogin(faker.lorem().characters(5, 14));
+        user.setPassword(faker.internet().password() + "passwordA1@");
+        user.setEmail(faker.internet().emailAddress());
+        entityManager.persist(user);
+
+        Product product = new Product();
+        product.setProductName(faker.commerce().productName());
+        product.setPrice(faker.number().randomDouble(2, 1, 100));
+        entityManager.persist(product);
+
+        ShoppingCart shoppingCart = new ShoppingCart();
+        shoppingCart.setUser(user);
+        entityManager.persist(shoppingCart);
+        entityManager.flush();
+
+        // The first add inserts the item and the second one increases its quantity
+        assertThat(cartItemRepository.addQuantity(shoppingCart.getId(), product.getId(), 2)).isEqualTo(1);
+        assertThat(cartItemRepository.addQuantity(shoppingCart.getId(), product.getId(), 3)).isEqualTo(1);
+        entityManager.clear();
+
+        List<CartItem> cartItems = cartItemRepository.findAll();
+        assertThat(cartItems).hasSize(1);
+        assertThat(cartItems.get(0).getQuantity()).isEqualTo(5);
+
+        // A product that does not exist is not added
+        assertThat(cartItemRepository.addQuantity(shoppingCart.getId(), product.getId() + 1, 1)).isZero();
+        assertThat(cartItemRepository.count()).isEqualTo(1);
+    }
+
+    @Test
+    void testUpdateAndDeleteOnlyTheItemsOfTheUser() {
+        User owner = user();
+        User other = user();
+
+        Product product = new Product();
+        product.setProductName(faker.commerce().productName());
+        product.setPrice(faker.number().randomDouble(2, 1, 100));
+        entityManager.persist(product);
+
+        ShoppingCart shoppingCart = new ShoppingCart();
+        shoppingCart.setUser(owner);
+        entityManager.persist(shoppingCart);
+
+        CartItem cartItem = new CartItem(product, 1);
+        cartItem.setShoppingCart(shoppingCart);
+        entityManager.persist(cartItem);
+        entityManager.flush();
+
+        // Another user can neither update nor delete the item
+        assertThat(cartItemRepository.updateQuantityByIdAndUserId(cartItem.getId(), other.getId(), 9)).isZero();
+        assertThat(cartItemRepository.deleteByIdAndUserId(cartItem.getId(), other.getId())).isZero();
+
+        assertThat(cartItemRepository.updateQuantityByIdAndUserId(cartItem.getId(), owner.getId(), 4)).isEqualTo(1);
+        entityManager.clear();
+        assertThat(cartItemRepository.findById(cartItem.getId())).get().extracting(CartItem::getQuantity).isEqualTo(4);
+
+        assertThat(cartItemRepository.deleteByIdAndUserId(cartItem.getId(), owner.getId())).isEqualTo(1);
+        assertThat(cartItemRepository.existsById(cartItem.getId())).isFalse();
+    }
+
+    @Test
+    void testApplyChangesAddsSetsAndRemovesTheItems() {
+        ShoppingCart shoppingCart = new ShoppingCart();
+        shoppingCart.setUser(user());
+        entityManager.persist(shoppingCart);
+
+        Product added = product();
+        Product replaced = product();
+        Product removed = product();
+        Product inserted = product();
+        for (Product product : List.of(added, replaced, removed)) {
+            CartItem cartItem = new CartItem(product, 2);
+            cartItem.setShoppingCart(shoppingCart);
+            entityManager.persist(cartItem);
+        }
+        entityManager.flush();
+        entityManager.clear();
+
+        cartItemRepository.applyChanges(shoppingCart.getId(), List.of(
+            new QuantityChange(added.getId(), false, 3),
+            new QuantityChange(replaced.getId(), true, 7),
+            new QuantityChange(removed.getId(), true, 0),
+            new QuantityChange(inserted.getId(), true, 1)));
+
+        assertThat(cartItemRepository.findAll())
+            .extracting(cartItem -> cartItem.getProduct().getId(), CartItem::getQuantity)
+            .containsExactlyInAnyOrder(
+                tuple(added.getId(), 5),
+                tuple(replaced.getId(), 7),
+                tuple(inserted.getId(), 1));
+    }
+
+    private Product product() {
+        Product product = new Product();
+        product.setProductName(faker.lorem().characters(5, 14));
+        product.setPrice(faker.number().randomDouble(2, 1, 100));
+        return entityManager.persist(product);
+    }
+
+    private User user() {
+        User user = new User();
+        user.setLogin(faker.lorem().characters(5, 14));
+        user.setPassword(faker.internet().password() + "passwordA1@");
+        user.setEmail(faker.internet().emailAddress());
+        return entityManager.persist(user);
+    }
 }
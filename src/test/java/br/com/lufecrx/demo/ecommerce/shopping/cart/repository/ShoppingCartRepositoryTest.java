@@ -2,6 +2,7 @@ package br.com.lufecrx.demo.ecommerce.shopping.cart.repository;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -9,13 +10,18 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
 
 import com.github.javafaker.Faker;
 
+import br.com.lufecrx.demo.ecommerce.api.infra.database.DatabaseVendor;
+import br.com.lufecrx.demo.ecommerce.api.model.Product;
 import br.com.lufecrx.demo.ecommerce.auth.model.User;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.model.ShoppingCart;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto.ShoppingCartSummaryDTO;
 
 @DataJpaTest
+@Import(DatabaseVendor.class)
 public class ShoppingCartRepositoryTest {
 
     @Autowired
@@ -24,6 +30,9 @@ public class ShoppingCartRepositoryTest {
     @Autowired
     private ShoppingCartRepository shoppingCartRepository;
 
+    @Autowired
+    private CartItemRepository cartItemRepository;
+
     private Faker faker = new Faker();
 
     private User user;
@@ -66,4 +75,58 @@ public class ShoppingCartRepositoryTest {
         assertThat(foundShoppingCart).isPresent();
         assertThat(foundShoppingCart.get()).isEqualTo(savedShoppingCart);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testUpsertForUserCreatesASingleCart() {
+        LocalDateTime createdAt = LocalDateTime.of(2024, 1, 1, 10, 0);
+        LocalDateTime updatedAt = createdAt.plusHours(1);
+
+        Long id = shoppingCartRepository.upsertForUser(user.getId(), createdAt);
+
+        // The second upsert finds the same cart and only updates it
+        assertThat(shoppingCartRepository.upsertForUser(user.getId(), updatedAt)).isEqualTo(id);
+        entityManager.clear();
+
+        assertThat(shoppingCartRepository.count()).isEqualTo(1);
+        ShoppingCart shoppingCart = shoppingCartRepository.findByUserId(user.getId()).orElseThrow();
+        assertThat(shoppingCart.getId()).isEqualTo(id);
+        assertThat(shoppingCart.getCreatedAt()).isEqualTo(createdAt);
+        assertThat(shoppingCart.getUpdatedAt()).isEqualTo(updatedAt);
+    }
+
+    @Test
+    public void testRefreshTotalsAndFindSummary() {
+        Long id = shoppingCartRepository.upsertForUser(user.getId(), LocalDateTime.now());
+
+        Product book = product(10.0);
+        Product game = product(25.5);
+        entityManager.flush();
+
+        cartItemRepository.addQuantity(id, book.getId(), 3);
+        cartItemRepository.addQuantity(id, game.getId(), 2);
+        shoppingCartRepository.refreshTotals(id);
+
+        ShoppingCartSummaryDTO summary = shoppingCartRepository.findSummaryByUserId(user.getId()).orElseThrow();
+        assertThat(summary.itemCount()).isEqualTo(5);
+        assertThat(summary.subtotal()).isEqualTo(81.0);
+
+        // A change of price is reconciled in the carts with the product
+        book.setPrice(12.0);
+        entityManager.flush();
+        assertThat(shoppingCartRepository.refreshTotalsByProductId(book.getId())).isEqualTo(1);
+
+        assertThat(shoppingCartRepository.findSummaryByUserId(user.getId()).orElseThrow().subtotal()).isEqualTo(87.0);
+    }
+
+    @Test
+    public void testFindSummaryWithoutCart() {
+        assertThat(shoppingCartRepository.findSummaryByUserId(user.getId())).isEmpty();
+    }
+
+    private Product product(Double price) {
+        Product product = new Product();
+        product.setProductName(faker.commerce().productName());
+        product.setPrice(price);
+        return entityManager.persist(product);
+    }
+}
@@ -1,26 +1,35 @@
 package br.com.lufecrx.demo.ecommerce.shopping.cart.service;
 
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.util.Optional;
+import java.time.LocalDateTime;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import br.com.lufecrx.demo.ecommerce.auth.model.User;
-import br.com.lufecrx.demo.ecommerce.shopping.cart.model.CartItem;
-import br.com.lufecrx.demo.ecommerce.shopping.cart.model.ShoppingCart;
+import br.com.lufecrx.demo.ecommerce.exception.shopping.domain.cart.CartItemNotFoundException;
+import br.com.lufecrx.demo.ecommerce.exception.shopping.domain.cart.UnauthorizedCartItemUpdateException;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.CartItemRepository;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.ShoppingCartRepository;
 
 public class CartItemServiceTest {
 
@@ -30,15 +39,25 @@ public class CartItemServiceTest {
     @Mock
     private CartItemRepository cartItemRepository;
 
+    @Mock
+    private ShoppingCartRepository shoppingCartRepository;
+
+    @Mock
+    private CartWriteBehindBuffer cartWriteBehindBuffer;
+
     @Mock
     private SecurityContext securityContext;
 
     @Mock
     private Authentication authentication;
 
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(cartItemService, "transactionTemplate", new TransactionTemplate(transactionManager));
         when(securityContext.getAuthentication()).thenReturn(authentication);
         SecurityContextHolder.setContext(securityContext);
     }
@@ -48,34 +67,75 @@ public class CartItemServiceTest {
         User user = new User();
         user.setId(1L);
 
-        CartItem cartItem = new CartItem();
-        ShoppingCart shoppingCart = new ShoppingCart();
-        shoppingCart.setUser(user);
-        cartItem.setShoppingCart(shoppingCart);
-
         when(authentication.getPrincipal()).thenReturn(user);
-        when(cartItemRepository.findById(anyLong())).thenReturn(Optional.of(cartItem));
+        when(shoppingCartRepository.upsertForUser(eq(1L), any(LocalDateTime.class))).thenReturn(7L);
+        when(cartItemRepository.updateQuantityByIdAndUserId(1L, 1L, 5)).thenReturn(1);
 
         cartItemService.updateCartItemQuantity(1L, 5);
 
-        verify(cartItemRepository, times(1)).save(any(CartItem.class));
+        // The buffered changes are written before the transaction of the update is opened
+        InOrder order = inOrder(cartWriteBehindBuffer, transactionManager, cartItemRepository);
+        order.verify(cartWriteBehindBuffer).flush(1L);
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(cartItemRepository).updateQuantityByIdAndUserId(1L, 1L, 5);
+
+        // A single UPDATE checks the ownership, the item is not loaded
+        verify(cartItemRepository, times(1)).updateQuantityByIdAndUserId(1L, 1L, 5);
+        verify(cartItemRepository, never()).findById(anyLong());
+        verify(shoppingCartRepository, times(1)).refreshTotals(7L);
     }
 
     @Test
-    public void testDeleteCartItem() {
+    public void testUpdateCartItemQuantityOfAnotherUser() {
         User user = new User();
         user.setId(1L);
 
-        CartItem cartItem = new CartItem();
-        ShoppingCart shoppingCart = new ShoppingCart();
-        shoppingCart.setUser(user);
-        cartItem.setShoppingCart(shoppingCart);
+        when(authentication.getPrincipal()).thenReturn(user);
+        when(cartItemRepository.updateQuantityByIdAndUserId(1L, 1L, 5)).thenReturn(0);
+        when(cartItemRepository.existsById(1L)).thenReturn(true);
+
+        assertThrows(UnauthorizedCartItemUpdateException.class, () -> cartItemService.updateCartItemQuantity(1L, 5));
+        verify(shoppingCartRepository, never()).refreshTotals(anyLong());
+    }
+
+    @Test
+    public void testUpdateCartItemQuantityWhenItemDoesNotExist() {
+        User user = new User();
+        user.setId(1L);
 
         when(authentication.getPrincipal()).thenReturn(user);
-        when(cartItemRepository.findById(anyLong())).thenReturn(Optional.of(cartItem));
+        when(cartItemRepository.updateQuantityByIdAndUserId(1L, 1L, 5)).thenReturn(0);
+        when(cartItemRepository.existsById(1L)).thenReturn(false);
+
+        assertThrows(CartItemNotFoundException.class, () -> cartItemService.updateCartItemQuantity(1L, 5));
+    }
+
+    @Test
+    public void testDeleteCartItem() {
+        User user = new User();
+        user.setId(1L);
+
+        when(authentication.getPrincipal()).thenReturn(user);
+        when(shoppingCartRepository.upsertForUser(eq(1L), any(LocalDateTime.class))).thenReturn(7L);
+        when(cartItemRepository.deleteByIdAndUserId(1L, 1L)).thenReturn(1);
 
         cartItemService.deleteCartItem(1L);
 
-        verify(cartItemRepository, times(1)).delete(any(CartItem.class));
+        // A single DELETE checks the ownership, the item is not loaded
+        verify(cartItemRepository, times(1)).deleteByIdAndUserId(1L, 1L);
+        verify(cartItemRepository, never()).findById(anyLong());
+        verify(shoppingCartRepository, times(1)).refreshTotals(7L);
+    }
+
+    @Test
+    public void testDeleteCartItemOfAnotherUser() {
+        User user = new User();
+        user.setId(1L);
+
+        when(authentication.getPrincipal()).thenReturn(user);
+        when(cartItemRepository.deleteByIdAndUserId(1L, 1L)).thenReturn(0);
+        when(cartItemRepository.existsById(1L)).thenReturn(true);
+
+        assertThrows(UnauthorizedCartItemUpdateException.class, () -> cartItemService.deleteCartItem(1L));
     }
-}
\ No newline at end of file
+}
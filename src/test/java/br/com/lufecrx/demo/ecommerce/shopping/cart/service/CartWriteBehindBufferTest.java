@@ -0,0 +1,188 @@
+package br.com.lufecrx.demo.ecommerce.shopping.cart.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.CartItemRepository;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.CartItemUpsertRepository.QuantityChange;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.ShoppingCartRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CartWriteBehindBufferTest {
+
+    @InjectMocks
+    private CartWriteBehindBuffer cartWriteBehindBuffer;
+
+    @Mock
+    private ShoppingCartRepository shoppingCartRepository;
+
+    @Mock
+    private CartItemRepository cartItemRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+
+        // The @Value fields are not injected by Mockito
+        ReflectionTestUtils.setField(cartWriteBehindBuffer, "enabled", true);
+        ReflectionTestUtils.setField(cartWriteBehindBuffer, "flushThreshold", 1000);
+        ReflectionTestUtils.setField(cartWriteBehindBuffer, "batchSize", 100);
+        ReflectionTestUtils.setField(cartWriteBehindBuffer, "lockStripes", 4);
+        cartWriteBehindBuffer.init();
+
+        when(shoppingCartRepository.upsertForUser(eq(1L), any(LocalDateTime.class))).thenReturn(7L);
+        when(shoppingCartRepository.upsertForUser(eq(2L), any(LocalDateTime.class))).thenReturn(8L);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cartWriteBehindBuffer.shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testChangesOfAnItemAreCoalesced() {
+        // The user clicks +/+/+/- on a product and removes another one
+        cartWriteBehindBuffer.add(1L, 10L, 1);
+        cartWriteBehindBuffer.add(1L, 10L, 1);
+        cartWriteBehindBuffer.add(1L, 10L, 1);
+        cartWriteBehindBuffer.remove(1L, 10L);
+        cartWriteBehindBuffer.add(1L, 10L, 1);
+        cartWriteBehindBuffer.remove(1L, 20L);
+
+        // Nothing is written until the flush
+        verify(shoppingCartRepository, never()).upsertForUser(anyLong(), any(LocalDateTime.class));
+
+        cartWriteBehindBuffer.flushAll();
+
+        ArgumentCaptor<Collection<QuantityChange>> changes = ArgumentCaptor.forClass(Collection.class);
+        verify(cartItemRepository, times(1)).applyChanges(eq(7L), changes.capture());
+        assertEquals(List.of(new QuantityChange(10L, true, 1), new QuantityChange(20L, true, 0)), List.copyOf(changes.getValue()));
+        verify(shoppingCartRepository, times(1)).upsertForUser(eq(1L), any(LocalDateTime.class));
+        verify(shoppingCartRepository, times(1)).refreshTotals(7L);
+
+        // Six changes were written with two statements
+        assertEquals(3.0, cartWriteBehindBuffer.coalescingRatio());
+        assertEquals(1, meterRegistry.get("cart.write_behind.flush.lag").timer().count());
+        assertEquals(0.0, meterRegistry.get("cart.write_behind.pending").gauge().value());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testClearDropsThePendingChanges() {
+        cartWriteBehindBuffer.add(1L, 10L, 2);
+        cartWriteBehindBuffer.clear(1L);
+        cartWriteBehindBuffer.add(1L, 20L, 1);
+
+        cartWriteBehindBuffer.flushAll();
+
+        // The items are deleted and only the product added after the clear is written
+        ArgumentCaptor<Collection<QuantityChange>> changes = ArgumentCaptor.forClass(Collection.class);
+        verify(cartItemRepository, times(1)).deleteByShoppingCartId(7L);
+        verify(cartItemRepository, times(1)).applyChanges(eq(7L), changes.capture());
+        assertEquals(List.of(new QuantityChange(20L, false, 1)), List.copyOf(changes.getValue()));
+    }
+
+    @Test
+    public void testFlushOfAUserWritesOnlyItsCart() {
+        cartWriteBehindBuffer.add(1L, 10L, 1);
+        cartWriteBehindBuffer.add(2L, 10L, 1);
+
+        cartWriteBehindBuffer.flush(1L);
+
+        verify(shoppingCartRepository, times(1)).refreshTotals(7L);
+        verify(shoppingCartRepository, never()).refreshTotals(8L);
+        assertEquals(1.0, meterRegistry.get("cart.write_behind.pending").gauge().value());
+
+        // The flush of a user without pending changes writes nothing
+        cartWriteBehindBuffer.flush(1L);
+        verify(shoppingCartRepository, times(1)).upsertForUser(eq(1L), any(LocalDateTime.class));
+    }
+
+    @Test
+    public void testFailedCartDoesNotDiscardTheOthers() {
+        doThrow(new DataIntegrityViolationException("product deleted"))
+            .when(cartItemRepository).applyChanges(eq(7L), any());
+
+        cartWriteBehindBuffer.add(1L, 10L, 1);
+        cartWriteBehindBuffer.add(2L, 20L, 1);
+
+        cartWriteBehindBuffer.flushAll();
+
+        // The batch failed, so the carts are written one by one and only the cart of user 1 is discarded
+        verify(cartItemRepository, atLeastOnce()).applyChanges(eq(8L), any());
+        verify(shoppingCartRepository, never()).refreshTotals(7L);
+        assertEquals(1.0, meterRegistry.get("cart.write_behind.changes").tag("stage", "written").counter().count());
+        assertEquals(1.0, meterRegistry.get("cart.write_behind.failures").counter().count());
+        assertEquals(0.0, meterRegistry.get("cart.write_behind.pending").gauge().value());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailedFlushOfAUserKeepsItsChanges() {
+        doThrow(new DataIntegrityViolationException("deadlock"))
+            .doNothing()
+            .when(cartItemRepository).applyChanges(eq(7L), any());
+
+        cartWriteBehindBuffer.add(1L, 10L, 1);
+        cartWriteBehindBuffer.remove(1L, 20L);
+
+        // The caller gets the failure, and nothing is discarded
+        assertThrows(DataIntegrityViolationException.class, () -> cartWriteBehindBuffer.flush(1L));
+        assertEquals(1.0, meterRegistry.get("cart.write_behind.pending").gauge().value());
+        assertEquals(0.0, meterRegistry.get("cart.write_behind.failures").counter().count());
+
+        // The changes made in the meantime are applied after the ones kept
+        cartWriteBehindBuffer.add(1L, 10L, 2);
+        cartWriteBehindBuffer.add(1L, 20L, 1);
+        cartWriteBehindBuffer.flush(1L);
+
+        ArgumentCaptor<Collection<QuantityChange>> changes = ArgumentCaptor.forClass(Collection.class);
+        verify(cartItemRepository, times(2)).applyChanges(eq(7L), changes.capture());
+        assertEquals(List.of(new QuantityChange(10L, false, 3), new QuantityChange(20L, true, 1)), List.copyOf(changes.getValue()));
+        verify(shoppingCartRepository, times(1)).refreshTotals(7L);
+        assertEquals(0.0, meterRegistry.get("cart.write_behind.pending").gauge().value());
+    }
+
+    @Test
+    public void testDisabledBufferDoesNotFlush() {
+        ReflectionTestUtils.setField(cartWriteBehindBuffer, "enabled", false);
+
+        cartWriteBehindBuffer.flush(1L);
+        cartWriteBehindBuffer.flushAll();
+
+        verify(shoppingCartRepository, never()).upsertForUser(anyLong(), any(LocalDateTime.class));
+    }
+}
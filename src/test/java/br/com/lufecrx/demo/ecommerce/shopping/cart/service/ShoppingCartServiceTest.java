@@ -1,28 +1,48 @@
 package br.com.lufecrx.demo.ecommerce.shopping.cart.service;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import br.com.lufecrx.demo.ecommerce.api.model.Product;
 import br.com.lufecrx.demo.ecommerce.api.repository.ProductRepository;
 import br.com.lufecrx.demo.ecommerce.auth.model.User;
+import br.com.lufecrx.demo.ecommerce.exception.api.domain.product.ProductNotFoundException;
+import br.com.lufecrx.demo.ecommerce.exception.shopping.domain.cart.InvalidCartOperationException;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.model.CartItem;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.model.ShoppingCart;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto.CartOperationDTO;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto.ShoppingCartDTO;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.model.dto.ShoppingCartSummaryDTO;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.CartItemRepository;
+import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.CartItemUpsertRepository.QuantityChange;
 import br.com.lufecrx.demo.ecommerce.shopping.cart.repository.ShoppingCartRepository;
 
 public class ShoppingCartServiceTest {
@@ -33,6 +53,9 @@ public class ShoppingCartServiceTest {
     @Mock
     private ShoppingCartRepository shoppingCartRepository;
 
+    @Mock
+    private CartWriteBehindBuffer cartWriteBehindBuffer;
+
     @Mock
     private CartItemRepository cartItemRepository;
 
@@ -45,9 +68,13 @@ public class ShoppingCartServiceTest {
     @Mock
     private Authentication authentication;
 
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(shoppingCartService, "transactionTemplate", new TransactionTemplate(transactionManager));
         when(securityContext.getAuthentication()).thenReturn(authentication);
         SecurityContextHolder.setContext(securityContext);
     }
@@ -57,18 +84,64 @@ public class ShoppingCartServiceTest {
         User user = new User();
         user.setId(1L);
 
-        Product product = new Product();
-        product.setId(1L);
+        when(authentication.getPrincipal()).thenReturn(user);
+        when(shoppingCartRepository.upsertForUser(eq(1L), any(LocalDateTime.class))).thenReturn(7L);
+        when(cartItemRepository.addQuantity(7L, 1L, 5)).thenReturn(1);
 
-        ShoppingCart shoppingCart = new ShoppingCart();
+        shoppingCartService.addProductToCart(1L, 5);
+
+        // The cart and the item are upserted without loading the product, the cart or its items
+        verify(cartItemRepository, times(1)).addQuantity(7L, 1L, 5);
+        verify(shoppingCartRepository, times(1)).refreshTotals(7L);
+        verify(productRepository, never()).findById(anyLong());
+        verify(shoppingCartRepository, never()).findByUserId(anyLong());
+        verify(cartItemRepository, never()).save(any(CartItem.class));
+    }
+
+    @Test
+    public void testAddProductToCartWhenProductDoesNotExist() {
+        User user = new User();
+        user.setId(1L);
 
         when(authentication.getPrincipal()).thenReturn(user);
-        when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
-        when(shoppingCartRepository.findByUserId(anyLong())).thenReturn(Optional.of(shoppingCart));
+        when(shoppingCartRepository.upsertForUser(eq(1L), any(LocalDateTime.class))).thenReturn(7L);
+        when(cartItemRepository.addQuantity(7L, 1L, 5)).thenReturn(0);
+
+        assertThrows(ProductNotFoundException.class, () -> shoppingCartService.addProductToCart(1L, 5));
+    }
+
+    @Test
+    public void testAddProductToCartWithWriteBehind() {
+        User user = new User();
+        user.setId(1L);
+
+        when(authentication.getPrincipal()).thenReturn(user);
+        when(cartWriteBehindBuffer.isEnabled()).thenReturn(true);
+        when(productRepository.existsById(1L)).thenReturn(true);
 
         shoppingCartService.addProductToCart(1L, 5);
+        shoppingCartService.removeProductFromCart(2L);
+        shoppingCartService.clearCart();
 
-        verify(cartItemRepository, times(1)).save(any(CartItem.class));
+        // The changes are buffered, nothing is written by the requests
+        verify(cartWriteBehindBuffer, times(1)).add(1L, 1L, 5);
+        verify(cartWriteBehindBuffer, times(1)).remove(1L, 2L);
+        verify(cartWriteBehindBuffer, times(1)).clear(1L);
+        verify(shoppingCartRepository, never()).upsertForUser(anyLong(), any(LocalDateTime.class));
+        verify(shoppingCartRepository, never()).refreshTotals(anyLong());
+    }
+
+    @Test
+    public void testAddProductToCartWithWriteBehindWhenProductDoesNotExist() {
+        User user = new User();
+        user.setId(1L);
+
+        when(authentication.getPrincipal()).thenReturn(user);
+        when(cartWriteBehindBuffer.isEnabled()).thenReturn(true);
+        when(productRepository.existsById(1L)).thenReturn(false);
+
+        assertThrows(ProductNotFoundException.class, () -> shoppingCartService.addProductToCart(1L, 5));
+        verify(cartWriteBehindBuffer, never()).add(anyLong(), anyLong(), any());
     }
 
     @Test
@@ -76,36 +149,138 @@ public class ShoppingCartServiceTest {
         User user = new User();
         user.setId(1L);
     
-        Product product = new Product();
-        product.setId(1L);
-    
-        ShoppingCart shoppingCart = new ShoppingCart();
-        CartItem cartItem = new CartItem();
-        cartItem.setProduct(product);
-        shoppingCart.addCartItem(cartItem);
-    
         when(authentication.getPrincipal()).thenReturn(user);
-        when(productRepository.findById(anyLong())).thenReturn(Optional.of(product));
-        when(shoppingCartRepository.findByUserId(anyLong())).thenReturn(Optional.of(shoppingCart));
+        when(shoppingCartRepository.upsertForUser(eq(1L), any(LocalDateTime.class))).thenReturn(7L);
+        when(cartItemRepository.deleteByShoppingCartIdAndProductId(7L, 1L)).thenReturn(1);
     
         shoppingCartService.removeProductFromCart(1L);
     
-        verify(cartItemRepository, times(1)).delete(any(CartItem.class));
-        verify(shoppingCartRepository, times(1)).save(any(ShoppingCart.class));
+        verify(cartItemRepository, times(1)).deleteByShoppingCartIdAndProductId(7L, 1L);
+        verify(shoppingCartRepository, times(1)).refreshTotals(7L);
+    }
+
+    @Test
+    public void testRemoveProductNotInCart() {
+        User user = new User();
+        user.setId(1L);
+
+        when(authentication.getPrincipal()).thenReturn(user);
+        when(shoppingCartRepository.upsertForUser(eq(1L), any(LocalDateTime.class))).thenReturn(7L);
+        when(cartItemRepository.deleteByShoppingCartIdAndProductId(7L, 1L)).thenReturn(0);
+
+        assertThrows(ProductNotFoundException.class, () -> shoppingCartService.removeProductFromCart(1L));
+        verify(shoppingCartRepository, never()).refreshTotals(anyLong());
     }
 
     @Test
     public void testClearCart() {
         User user = new User();
         user.setId(1L);
-        ShoppingCart shoppingCart = new ShoppingCart();
 
         when(authentication.getPrincipal()).thenReturn(user);
-        when(shoppingCartRepository.findByUserId(anyLong())).thenReturn(Optional.of(shoppingCart));
+        when(shoppingCartRepository.upsertForUser(eq(1L), any(LocalDateTime.class))).thenReturn(7L);
 
         shoppingCartService.clearCart();
 
-        verify(shoppingCartRepository, times(1)).save(any(ShoppingCart.class));
+        verify(cartItemRepository, times(1)).deleteByShoppingCartId(7L);
+        verify(shoppingCartRepository, times(1)).refreshTotals(7L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testApplyOperations() {
+        User user = new User();
+        user.setId(1L);
+        Product first = new Product();
+        first.setId(1L);
+        Product second = new Product();
+        second.setId(2L);
+        ShoppingCart shoppingCart = new ShoppingCart();
+        shoppingCart.setId(7L);
+
+        when(authentication.getPrincipal()).thenReturn(user);
+        when(productRepository.findAllById(any())).thenReturn(List.of(first, second));
+        when(shoppingCartRepository.upsertForUser(eq(1L), any(LocalDateTime.class))).thenReturn(7L);
+        when(shoppingCartRepository.findById(7L)).thenReturn(Optional.of(shoppingCart));
+
+        ShoppingCartDTO cart = shoppingCartService.applyOperations(List.of(
+            new CartOperationDTO("add", 1L, 2),
+            new CartOperationDTO("ADD", 1L, 3),
+            new CartOperationDTO("set", 2L, 1),
+            new CartOperationDTO("add", 2L, 1),
+            new CartOperationDTO("add", 3L, 1),
+            new CartOperationDTO("remove", 3L, null)));
+
+        // The operations of each product are folded, and only the products left in the cart are checked, with one query
+        ArgumentCaptor<Iterable<Long>> productIds = ArgumentCaptor.forClass(Iterable.class);
+        verify(productRepository, times(1)).findAllById(productIds.capture());
+        assertEquals(Set.of(1L, 2L), productIds.getValue());
+        ArgumentCaptor<Collection<QuantityChange>> changes = ArgumentCaptor.forClass(Collection.class);
+        verify(cartItemRepository, times(1)).applyChanges(eq(7L), changes.capture());
+        assertEquals(List.of(
+            new QuantityChange(1L, false, 5),
+            new QuantityChange(2L, true, 2),
+            new QuantityChange(3L, true, 0)), List.copyOf(changes.getValue()));
+        verify(shoppingCartRepository, times(1)).refreshTotals(7L);
+        verify(cartItemRepository, never()).addQuantity(anyLong(), anyLong(), any());
+        assertEquals(ShoppingCartDTO.from(shoppingCart), cart);
+
+        // The buffered changes are written before the transaction of the batch is opened
+        InOrder order = inOrder(cartWriteBehindBuffer, transactionManager, shoppingCartRepository);
+        order.verify(cartWriteBehindBuffer).flush(1L);
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(shoppingCartRepository).upsertForUser(eq(1L), any(LocalDateTime.class));
+    }
+
+    @Test
+    public void testApplyOperationsWhenProductDoesNotExist() {
+        Product product = new Product();
+        product.setId(1L);
+
+        when(productRepository.findAllById(any())).thenReturn(List.of(product));
+
+        assertThrows(ProductNotFoundException.class, () -> shoppingCartService.applyOperations(List.of(
+            new CartOperationDTO("add", 1L, 1),
+            new CartOperationDTO("set", 2L, 4))));
+        verify(shoppingCartRepository, never()).upsertForUser(anyLong(), any(LocalDateTime.class));
+        verify(cartItemRepository, never()).applyChanges(anyLong(), any());
+    }
+
+    @Test
+    public void testApplyOperationsWithInvalidOperation() {
+        assertThrows(InvalidCartOperationException.class, () -> shoppingCartService.applyOperations(List.of(
+            new CartOperationDTO("increase", 1L, 1))));
+        assertThrows(InvalidCartOperationException.class, () -> shoppingCartService.applyOperations(List.of(
+            new CartOperationDTO("add", 1L, 0))));
+        assertThrows(InvalidCartOperationException.class, () -> shoppingCartService.applyOperations(List.of(
+            new CartOperationDTO("set", 1L, null))));
+        verify(productRepository, never()).findAllById(any());
+    }
+
+    @Test
+    public void testGetSummary() {
+        User user = new User();
+        user.setId(1L);
+        ShoppingCartSummaryDTO summary = new ShoppingCartSummaryDTO(3, 45.5, LocalDateTime.now());
+
+        when(authentication.getPrincipal()).thenReturn(user);
+        when(shoppingCartRepository.findSummaryByUserId(1L)).thenReturn(Optional.of(summary));
+
+        assertEquals(summary, shoppingCartService.getSummary());
+        verify(cartWriteBehindBuffer, times(1)).flush(1L);
+        verify(shoppingCartRepository, never()).findByUserId(anyLong());
+    }
+
+    @Test
+    public void testGetSummaryWithoutCart() {
+        User user = new User();
+        user.setId(1L);
+
+        when(authentication.getPrincipal()).thenReturn(user);
+        when(shoppingCartRepository.findSummaryByUserId(1L)).thenReturn(Optional.empty());
+
+        assertEquals(ShoppingCartSummaryDTO.EMPTY, shoppingCartService.getSummary());
+        verify(shoppingCartRepository, never()).upsertForUser(anyLong(), any(LocalDateTime.class));
     }
 
     @Test
@@ -113,11 +288,19 @@ public class ShoppingCartServiceTest {
         User user = new User();
         user.setId(1L);
 
+        ShoppingCart shoppingCart = new ShoppingCart();
+        shoppingCart.setId(7L);
+        shoppingCart.setUser(user);
+
         when(authentication.getPrincipal()).thenReturn(user);
+        // The user has no cart yet, so it is created and read again
+        when(shoppingCartRepository.findByUserId(1L)).thenReturn(Optional.empty(), Optional.of(shoppingCart));
+        when(shoppingCartRepository.upsertForUser(eq(1L), any(LocalDateTime.class))).thenReturn(7L);
 
         shoppingCartService.getCart();
 
-        verify(shoppingCartRepository, times(1)).findByUserId(anyLong());
+        verify(shoppingCartRepository, times(1)).upsertForUser(eq(1L), any(LocalDateTime.class));
+        verify(shoppingCartRepository, times(2)).findByUserId(1L);
     }
 
 }
\ No newline at end of file